@@ -57,6 +57,20 @@ public class RestApiController {
         }
     }
 
+    @PostMapping(value = "/BuildModelStreaming")
+    public ResponseEntity buildModelStreaming(@RequestParam("organization") String organization,
+                                              @RequestParam("compare") boolean compare,
+                                              @RequestParam("useComponent") boolean useComponent,
+                                              @RequestParam("responseId") String responseId,
+                                              @RequestParam("file") MultipartFile file) {
+        try {
+            compareService.buildModelStreaming(responseId,compare,useComponent,organization,file);
+            return new ResponseEntity<>(null,HttpStatus.OK);
+        } catch (ComponentException e) {
+            return new ResponseEntity<>(e,HttpStatus.valueOf(e.getStatus()));
+        }
+    }
+
     @PostMapping(value = "/AddRequirements")
     public ResponseEntity addRequirements(@RequestParam("organization") String organization,
                                      @RequestParam("responseId") String responseId,
@@ -97,9 +111,11 @@ public class RestApiController {
                                              @RequestParam("responseId") String responseId,
                                              @RequestParam("threshold") double threshold,
                                              @RequestParam("maxDeps") int maxNumDeps,
+                                             @RequestParam(value = "approximate", required = false, defaultValue = "false") boolean approximate,
+                                             @RequestParam(value = "duplicates", required = false, defaultValue = "false") boolean duplicates,
                                              @RequestBody List<String> requirements) {
         try {
-            compareService.simReqOrganization(responseId,organization,threshold,requirements,maxNumDeps);
+            compareService.simReqOrganization(responseId,organization,threshold,requirements,maxNumDeps,approximate,duplicates);
             return new ResponseEntity<>(null,HttpStatus.OK);
         } catch (ComponentException e) {
             return new ResponseEntity<>(e,HttpStatus.valueOf(e.getStatus()));
@@ -111,9 +127,10 @@ public class RestApiController {
                                              @RequestParam("responseId") String responseId,
                                              @RequestParam("threshold") double threshold,
                                              @RequestParam("maxDeps") int maxNumDeps,
+                                             @RequestParam(value = "approximate", required = false, defaultValue = "false") boolean approximate,
                                              @RequestBody List<Requirement> requirements) {
         try {
-            compareService.simNewReqOrganization(responseId,organization,threshold,requirements,maxNumDeps);
+            compareService.simNewReqOrganization(responseId,organization,threshold,requirements,maxNumDeps,approximate);
             return new ResponseEntity<>(null,HttpStatus.OK);
         } catch (ComponentException e) {
             return new ResponseEntity<>(e,HttpStatus.valueOf(e.getStatus()));
@@ -139,9 +156,10 @@ public class RestApiController {
                                      @RequestParam("responseId") String responseId,
                                      @RequestParam("threshold") double threshold,
                                      @RequestParam("maxDeps") int maxNumDeps,
+                                     @RequestParam(value = "duplicates", required = false, defaultValue = "false") boolean duplicates,
                                      @RequestBody List<String> projectRequirements) {
         try {
-            compareService.simProject(responseId,organization,threshold,projectRequirements,maxNumDeps);
+            compareService.simProject(responseId,organization,threshold,projectRequirements,maxNumDeps,duplicates);
             return new ResponseEntity<>(null,HttpStatus.OK);
         } catch (ComponentException e) {
             return new ResponseEntity<>(e,HttpStatus.valueOf(e.getStatus()));
@@ -10,6 +10,7 @@ import upc.similarity.compareapi.entity.Requirement;
 import upc.similarity.compareapi.entity.exception.InternalErrorException;
 import upc.similarity.compareapi.entity.exception.NotFoundException;
 import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityModel;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityScoresSink;
 import upc.similarity.compareapi.service.RequirementsSimilarity;
 
 import java.util.*;
@@ -454,48 +455,75 @@ public class ClustersAlgorithmMaxGraph implements ClustersAlgorithm {
             RequirementsSimilarity requirementsSimilarity = Constants.getInstance().getRequirementsSimilarity();
             ClustersModelMaxGraph clustersModelMaxGraph = (ClustersModelMaxGraph) organizationModels.getClustersModel();
             Map<Integer, List<String>> clusters = clustersModelMaxGraph.getClusters();
-            Set<String> rejectedDependencies = loadDependenciesByStatus(organization, "rejected", useAuxiliaryTable);
+            Map<String, Set<String>> rejectedDependencies = loadDependenciesByStatus(organization, "rejected", useAuxiliaryTable);
             List<Dependency> proposedDependencies = new ArrayList<>();
 
-            //Loops for each requirement
-            int cont = 0;
+            //Loops for each requirement (in parallel blocks, the results are saved in the same order as a sequential loop)
             int maxDeps = Constants.getInstance().getMaxDepsForPage();
-            for (String req1 : requirements) {
-                //Loops for each input cluster
-                for (int clusterId : clustersIds) {
-                    List<String> clusterRequirements = clusters.get(clusterId);
-                    double maxScore = organizationModels.getThreshold();
-                    String maxReq = null;
-                    //Loops for each requirement inside the cluster
-                    for (String req2 : clusterRequirements) {
-                        //Checks they are not equal nor a rejected dependency
-                        if (!rejectedDependencies.contains(req1 + req2) && !req1.equals(req2)) {
-                            //Computes the similarity score and updates the maxScore if it is higher
-                            double score = requirementsSimilarity.computeSimilarity(organizationModels, req1, req2);
-                            if (score >= maxScore) {
-                                maxScore = score;
-                                maxReq = req2;
-                            }
-                        }
-                    }
-                    if (maxReq != null) {
+            List<String> requirementsList = new ArrayList<>(requirements);
+            List<Integer> clustersList = new ArrayList<>(clustersIds);
+            long clustersSize = 0;
+            for (int clusterId : clustersList) clustersSize += clusters.get(clusterId).size();
+            long[] costs = new long[requirementsList.size()];
+            Arrays.fill(costs, clustersSize);
+            Constants.getInstance().getSimilarityScoresExecutor().execute(costs, (from, to) -> () -> {
+                List<Dependency> blockDependencies = new ArrayList<>();
+                for (int i = from; i < to; ++i) {
+                    String req1 = requirementsList.get(i);
+                    Set<String> req1Rejected = rejectedDependencies.getOrDefault(req1, Collections.emptySet());
+                    //Loops for each input cluster
+                    for (int clusterId : clustersList) {
+                        //Computes the similarity scores with all the requirements inside the cluster and keeps the highest one
+                        MaxScoreSink maxScoreSink = new MaxScoreSink(req1Rejected, organizationModels.getThreshold());
+                        requirementsSimilarity.computeSimilarities(organizationModels, req1, clusters.get(clusterId), organizationModels.getThreshold(), maxScoreSink);
                         //Updates the found dependency
-                        ++cont;
-                        proposedDependencies.add(new Dependency(req1, maxReq, "proposed", maxScore, clusterId));
-                        if (cont >= maxDeps) {
-                            cont = 0;
-                            databaseOperations.saveDependencies(organization, proposedDependencies, useAuxiliaryTable);
-                            proposedDependencies = new ArrayList<>();
-                        }
+                        if (maxScoreSink.maxReq != null) blockDependencies.add(new Dependency(req1, maxScoreSink.maxReq, "proposed", maxScoreSink.maxScore, clusterId));
                     }
                 }
-            }
+                return blockDependencies;
+            }, blockDependencies -> {
+                for (Dependency dependency : blockDependencies) {
+                    proposedDependencies.add(dependency);
+                    if (proposedDependencies.size() >= maxDeps) {
+                        databaseOperations.saveDependencies(organization, new ArrayList<>(proposedDependencies), useAuxiliaryTable);
+                        proposedDependencies.clear();
+                    }
+                }
+            });
             if (!proposedDependencies.isEmpty())
                 databaseOperations.saveDependencies(organization, proposedDependencies, useAuxiliaryTable);
         } catch (ClassCastException e) {
             throw new InternalErrorException("A max_graph method received a model that is not max_graph");
         }
     }
+    /**
+     * Keeps the requirement with the highest score that is not a rejected dependency (the last one in case of a tie)
+     */
+    private class MaxScoreSink implements SimilarityScoresSink {
+        Set<String> rejectedRequirements;
+        double maxScore;
+        String maxReq;
+        MaxScoreSink(Set<String> rejectedRequirements, double threshold) {
+            this.rejectedRequirements = rejectedRequirements;
+            this.maxScore = threshold;
+            this.maxReq = null;
+        }
+
+        @Override
+        public void addScore(String requirementIdA, String requirementIdB, double score) {
+            if (score >= maxScore && !rejectedRequirements.contains(requirementIdB)) {
+                maxScore = score;
+                maxReq = requirementIdB;
+            }
+        }
+
+        @Override
+        public double getScoreBound() {
+            //the scores equal to the current maximum replace it
+            return Math.nextDown(maxScore);
+        }
+    }
+
     private class Clusters {
         HashMap<Integer,List<String>> candidateClusters;
         HashMap<String,Integer> reqCluster; //TODO is truly necessary?
@@ -505,16 +533,16 @@ public class ClustersAlgorithmMaxGraph implements ClustersAlgorithm {
         }
     }
 
-    private Set<String> loadDependenciesByStatus(String organization, String status, boolean useAuxiliaryTable) throws InternalErrorException {
-        //Loads the dependencies from the database with the input status
-        Set<String> result = new HashSet<>();
+    private Map<String, Set<String>> loadDependenciesByStatus(String organization, String status, boolean useAuxiliaryTable) throws InternalErrorException {
+        //Loads the dependencies from the database with the input status, each requirement is mapped to the other requirements of its dependencies
+        Map<String, Set<String>> result = new HashMap<>();
         if (Constants.getInstance().getDatabaseModel().existsOrganization(organization)) {
             List<Dependency> dependencies = databaseOperations.getDependenciesByStatus(organization, status, useAuxiliaryTable);
             for (Dependency dependency : dependencies) {
                 String fromId = dependency.getFromid();
                 String toId = dependency.getToid();
-                result.add(fromId + toId);
-                result.add(toId + fromId);
+                result.computeIfAbsent(fromId, k -> new HashSet<>()).add(toId);
+                result.computeIfAbsent(toId, k -> new HashSet<>()).add(fromId);
             }
         }
         return result;
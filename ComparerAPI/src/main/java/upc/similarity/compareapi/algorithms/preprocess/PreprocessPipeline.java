@@ -3,6 +3,7 @@ package upc.similarity.compareapi.algorithms.preprocess;
 import upc.similarity.compareapi.entity.Requirement;
 import upc.similarity.compareapi.entity.exception.InternalErrorException;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -14,4 +15,20 @@ public interface PreprocessPipeline {
      * @return A map with each requirement id as key and the preprocessed tokens as value
      */
     Map<String, List<String>> preprocessRequirements(boolean compare, List<Requirement> requirements) throws InternalErrorException;
+
+    /**
+     * Preprocesses one requirement sending its tokens to the consumer instead of returning them, so the pipelines can
+     * avoid creating a string for each token (see RequirementsTerms). The consumer must receive the same tokens as
+     * preprocessRequirements returns, in any order. By default the tokens returned by preprocessRequirements are sent
+     * @param compare whether to use the text attribute or not
+     * @param requirement the requirement to preprocess
+     * @param consumer receives each token of the requirement
+     */
+    default void preprocessRequirement(boolean compare, Requirement requirement, TokenConsumer consumer) throws InternalErrorException {
+        List<Requirement> requirements = new ArrayList<>();
+        requirements.add(requirement);
+        for (String token : preprocessRequirements(compare, requirements).get(requirement.getId())) {
+            consumer.accept(token.toCharArray(), token.length());
+        }
+    }
 }
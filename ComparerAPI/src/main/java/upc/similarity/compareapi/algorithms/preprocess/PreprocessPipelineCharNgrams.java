@@ -0,0 +1,73 @@
+package upc.similarity.compareapi.algorithms.preprocess;
+
+import upc.similarity.compareapi.entity.Requirement;
+import upc.similarity.compareapi.entity.exception.InternalErrorException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The default pipeline plus the character n-grams of each token. The n-grams are computed over the token surrounded by
+ * the marks < and >, so the beginning and the end of the words are distinguished, and they are prefixed with # to not
+ * be confused with the tokens. It allows the similarity algorithms to match the words with small spelling differences,
+ * and it is intended to be used with the tf_idf_hashing algorithm, whose model size does not grow with the number of
+ * different n-grams
+ */
+public class PreprocessPipelineCharNgrams implements PreprocessPipeline {
+
+    private PreprocessPipelineDefault preprocessPipelineDefault;
+    private int size;
+
+    public PreprocessPipelineCharNgrams(int size) {
+        this.preprocessPipelineDefault = new PreprocessPipelineDefault();
+        this.size = size;
+    }
+
+    @Override
+    public Map<String, List<String>> preprocessRequirements(boolean compare, List<Requirement> requirements) throws InternalErrorException {
+        Map<String, List<String>> result = preprocessPipelineDefault.preprocessRequirements(compare, requirements);
+        for (Map.Entry<String, List<String>> entry : result.entrySet()) {
+            entry.setValue(addNgrams(entry.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * The n-grams of each token are sent after it, so the order is not the same as in preprocessRequirements
+     */
+    @Override
+    public void preprocessRequirement(boolean compare, Requirement requirement, TokenConsumer consumer) throws InternalErrorException {
+        char[] ngram = new char[size + 1];
+        ngram[0] = '#';
+        char[][] word = {new char[16]};
+        preprocessPipelineDefault.preprocessRequirement(compare, requirement, (buffer, length) -> {
+            consumer.accept(buffer, length);
+            if (word[0].length < length + 2) word[0] = new char[length + 2];
+            char[] marked = word[0];
+            marked[0] = '<';
+            System.arraycopy(buffer, 0, marked, 1, length);
+            marked[length + 1] = '>';
+            for (int i = 0; i + size <= length + 2; ++i) {
+                System.arraycopy(marked, i, ngram, 1, size);
+                consumer.accept(ngram, size + 1);
+            }
+        });
+    }
+
+
+    /*
+    Private methods
+     */
+
+    private List<String> addNgrams(List<String> tokens) {
+        List<String> result = new ArrayList<>(tokens);
+        for (String token : tokens) {
+            String word = "<" + token + ">";
+            for (int i = 0; i + size <= word.length(); ++i) {
+                result.add("#" + word.substring(i, i + size));
+            }
+        }
+        return result;
+    }
+}
@@ -4,78 +4,205 @@ import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.custom.CustomAnalyzer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityScoresExecutor;
+import upc.similarity.compareapi.config.Constants;
 import upc.similarity.compareapi.entity.Requirement;
 import upc.similarity.compareapi.entity.exception.InternalErrorException;
 
 import java.io.IOException;
-import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class PreprocessPipelineDefault implements PreprocessPipeline {
 
+    /**
+     * The characters replaced by spaces before analyzing the text (punctuation marks and digits)
+     */
+    private static final String SEPARATORS = ".$,;\"/:|!?=%()><_0123456789-[]{}'";
+    private static final boolean[] IS_SEPARATOR = new boolean[128];
+
+    static {
+        for (int i = 0; i < SEPARATORS.length(); ++i) IS_SEPARATOR[SEPARATORS.charAt(i)] = true;
+    }
+
+    /**
+     * The analyzer is built the first time it is used and then shared by all the threads. Lucene keeps the components of
+     * the token streams (the tokenizer and the filters) of each thread, so they are reused between requirements as long
+     * as each token stream is closed after being consumed
+     */
+    private volatile Analyzer englishAnalyzer;
+
+    /**
+     * The requirements are preprocessed in parallel blocks with the executor used to build the models. The result is the
+     * same as preprocessing them one by one (if an id is repeated, the tokens of its last requirement are kept)
+     */
     @Override
     public Map<String, List<String>> preprocessRequirements(boolean compare, List<Requirement> requirements) throws InternalErrorException {
-        Map<String, List<String>> result = new HashMap<>();
+        Analyzer analyzer;
         try {
-            for (Requirement requirement : requirements) {
-                String id = requirement.getId();
-                String info = extractRequirementInfo(compare, requirement);
-                List<String> tokens = englishAnalyze(info);
-                result.put(id,tokens);
-            }
+            analyzer = getEnglishAnalyzer();
         } catch (IOException e) {
             throw new InternalErrorException("Error while loading preprocess pipeline");
         }
+        int size = requirements.size();
+        List<List<String>> tokens = new ArrayList<>(Collections.nCopies(size, (List<String>) null));
+        executor().execute(requirementsCosts(compare, requirements), (from, to) -> () -> {
+            StringBuilder buffer = new StringBuilder();
+            for (int i = from; i < to; ++i) {
+                String info = extractRequirementInfo(compare, requirements.get(i), buffer);
+                tokens.set(i, analyze(info, analyzer));
+            }
+            return null;
+        }, ignored -> {});
+
+        Map<String, List<String>> result = new HashMap<>();
+        for (int i = 0; i < size; ++i) {
+            result.put(requirements.get(i).getId(), tokens.get(i));
+        }
         return result;
     }
 
+    /**
+     * The buffer of each token of the analyzer is sent to the consumer, without creating a string
+     */
+    @Override
+    public void preprocessRequirement(boolean compare, Requirement requirement, TokenConsumer consumer) throws InternalErrorException {
+        Analyzer analyzer;
+        try {
+            analyzer = getEnglishAnalyzer();
+        } catch (IOException e) {
+            throw new InternalErrorException("Error while loading preprocess pipeline");
+        }
+        analyze(extractRequirementInfo(compare, requirement, new StringBuilder()), analyzer, consumer);
+    }
+
+    /**
+     * The cost of preprocessing each requirement is the length of its text
+     */
+    static long[] requirementsCosts(boolean compare, List<Requirement> requirements) {
+        long[] costs = new long[requirements.size()];
+        for (int i = 0; i < costs.length; ++i) {
+            Requirement requirement = requirements.get(i);
+            if (requirement.getName() != null) costs[i] += requirement.getName().length();
+            if (compare && requirement.getText() != null) costs[i] += requirement.getText().length();
+        }
+        return costs;
+    }
+
 
     /*
     Private methods
      */
 
-    private String extractRequirementInfo(boolean compare, Requirement requirement) {
-        String result = "";
-        if (requirement.getName() != null) result = result.concat(cleanText(requirement.getName()) + ". ");
-        if (compare && (requirement.getText() != null)) result = result.concat(cleanText(requirement.getText()));
-        return result;
+    /**
+     * @param buffer the buffer where the info is written, it is reused between requirements
+     */
+    private String extractRequirementInfo(boolean compare, Requirement requirement, StringBuilder buffer) {
+        buffer.setLength(0);
+        if (requirement.getName() != null) {
+            cleanText(requirement.getName(), buffer);
+            buffer.append(". ");
+        }
+        if (compare && (requirement.getText() != null)) cleanText(requirement.getText(), buffer);
+        return buffer.toString();
     }
 
-    private String cleanText(String text) {
-        text = text.replaceAll("(\\{.*?})", " code ");
-        text = text.replaceAll("[.$,;\\\"/:|!?=%,()><_0-9\\-\\[\\]{}']", " ");
-        String[] aux2 = text.split(" ");
-        String result = "";
-        for (String a : aux2) {
-            if (a.length() > 1) {
-                result = result.concat(" " + a);
+    /**
+     * Appends the cleaned text to the buffer in a single pass. The code blocks (from a { to the first } of the same line)
+     * are replaced by the word code, the separators are treated as spaces and the words with only one character are
+     * removed. Each remaining word is appended preceded by a space
+     */
+    private void cleanText(String text, StringBuilder buffer) {
+        int length = text.length();
+        int wordStart = -1;
+        //there is not any code block starting before this position
+        int noCodeBlockUntil = 0;
+        for (int i = 0; i < length; ++i) {
+            char c = text.charAt(i);
+            if (c == '{' && i >= noCodeBlockUntil) {
+                int end = i + 1;
+                while (end < length && text.charAt(end) != '}' && !isLineTerminator(text.charAt(end))) ++end;
+                if (end < length && text.charAt(end) == '}') {
+                    finishWord(buffer, wordStart);
+                    buffer.append(" code");
+                    wordStart = -1;
+                    i = end;
+                    continue;
+                }
+                noCodeBlockUntil = end;
+            }
+            if (c == ' ' || (c < 128 && IS_SEPARATOR[c])) {
+                finishWord(buffer, wordStart);
+                wordStart = -1;
+            } else {
+                if (wordStart < 0) {
+                    wordStart = buffer.length();
+                    buffer.append(' ');
+                }
+                buffer.append(c);
             }
         }
-        return result;
+        finishWord(buffer, wordStart);
     }
-    private List<String> englishAnalyze(String text) throws IOException {
-        Analyzer analyzer = CustomAnalyzer.builder()
-                .withTokenizer("standard")
-                .addTokenFilter("lowercase")
-                .addTokenFilter("stop")
-                .addTokenFilter("porterstem")
-                .addTokenFilter("commongrams")
-                .build();
-        return analyze(text, analyzer);
+
+    /**
+     * Removes the last word of the buffer if it only has one character
+     */
+    private void finishWord(StringBuilder buffer, int wordStart) {
+        if (wordStart >= 0 && buffer.length() - wordStart <= 2) buffer.setLength(wordStart);
     }
 
-    private List<String> analyze(String text, Analyzer analyzer) throws IOException {
-        List<String> result = new ArrayList<>();
-        TokenStream tokenStream = analyzer.tokenStream(null, new StringReader(text));
-        CharTermAttribute attr = tokenStream.addAttribute(CharTermAttribute.class);
-        tokenStream.reset();
-        while (tokenStream.incrementToken()) {
-            result.add(attr.toString());
+    /**
+     * The characters that can not be inside a code block, the same ones that the regular expression dot does not match
+     */
+    private boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private Analyzer getEnglishAnalyzer() throws IOException {
+        Analyzer result = englishAnalyzer;
+        if (result == null) {
+            synchronized (this) {
+                result = englishAnalyzer;
+                if (result == null) {
+                    result = CustomAnalyzer.builder()
+                            .withTokenizer("standard")
+                            .addTokenFilter("lowercase")
+                            .addTokenFilter("stop")
+                            .addTokenFilter("porterstem")
+                            .addTokenFilter("commongrams")
+                            .build();
+                    englishAnalyzer = result;
+                }
+            }
         }
         return result;
     }
 
+    private List<String> analyze(String text, Analyzer analyzer) throws InternalErrorException {
+        List<String> result = new ArrayList<>();
+        analyze(text, analyzer, (buffer, length) -> result.add(new String(buffer, 0, length)));
+        return result;
+    }
+
+    private void analyze(String text, Analyzer analyzer, TokenConsumer consumer) throws InternalErrorException {
+        try (TokenStream tokenStream = analyzer.tokenStream(null, text)) {
+            CharTermAttribute attr = tokenStream.addAttribute(CharTermAttribute.class);
+            tokenStream.reset();
+            while (tokenStream.incrementToken()) {
+                consumer.accept(attr.buffer(), attr.length());
+            }
+            tokenStream.end();
+        } catch (IOException e) {
+            throw new InternalErrorException("Error while loading preprocess pipeline");
+        }
+    }
+
+    private SimilarityScoresExecutor executor() {
+        return Constants.getInstance().getModelBuildExecutor();
+    }
+
 }
@@ -0,0 +1,248 @@
+package upc.similarity.compareapi.algorithms.preprocess;
+
+import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityScoresExecutor;
+import upc.similarity.compareapi.config.Constants;
+import upc.similarity.compareapi.entity.Requirement;
+import upc.similarity.compareapi.entity.exception.InternalErrorException;
+
+import java.util.*;
+
+/**
+ * The preprocessed tokens of a list of requirements translated to term ids. The tokens are received from the pipeline
+ * without creating a string for each one (see PreprocessPipeline.preprocessRequirement), only the different terms are
+ * saved as strings. Each requirement is represented by the ids of its terms (sorted and not repeated) and the number of
+ * appearances of each one. The ids are local to this object and they are assigned in order of appearance, so the
+ * similarity algorithms must translate them to the ids of their dictionaries
+ */
+public class RequirementsTerms {
+
+    private List<String> requirementIds;
+    private List<String> terms;
+    private int[][] termIds;
+    private int[][] frequencies;
+
+    private RequirementsTerms(List<String> requirementIds, List<String> terms, int[][] termIds, int[][] frequencies) {
+        this.requirementIds = requirementIds;
+        this.terms = terms;
+        this.termIds = termIds;
+        this.frequencies = frequencies;
+    }
+
+    /**
+     * Preprocesses the requirements in parallel blocks with the executor used to build the models. The tokens of each block
+     * are translated to ids of the block in parallel, the terms of the blocks are merged in order and then the ids of each
+     * requirement are translated and counted in parallel. The result does not depend on the number of threads
+     * @param preprocessPipeline the pipeline used to preprocess each requirement
+     * @param compare whether to use the text attribute or not
+     * @param requirements the requirements to preprocess, their ids must not be repeated
+     */
+    public static RequirementsTerms preprocessRequirements(PreprocessPipeline preprocessPipeline, boolean compare, List<Requirement> requirements) throws InternalErrorException {
+        int size = requirements.size();
+        long[] costs = PreprocessPipelineDefault.requirementsCosts(compare, requirements);
+        SimilarityScoresExecutor executor = Constants.getInstance().getModelBuildExecutor();
+        int[][] localIds = new int[size][];
+        int[][] blockIds = new int[size][];
+        Map<String, Integer> vocabulary = new HashMap<>();
+        List<String> terms = new ArrayList<>();
+        executor.execute(costs, (from, to) -> () -> {
+            BlockTerms blockTerms = new BlockTerms();
+            for (int i = from; i < to; ++i) {
+                preprocessPipeline.preprocessRequirement(compare, requirements.get(i), blockTerms);
+                localIds[i] = blockTerms.finishRequirement();
+            }
+            return new TermsBlock(from, to, blockTerms.getTerms());
+        }, block -> {
+            //the blocks are received in order, so the ids are assigned in order of appearance
+            int[] ids = new int[block.terms.size()];
+            for (int j = 0; j < ids.length; ++j) {
+                String term = block.terms.get(j);
+                Integer id = vocabulary.get(term);
+                if (id == null) {
+                    id = terms.size();
+                    vocabulary.put(term, id);
+                    terms.add(term);
+                }
+                ids[j] = id;
+            }
+            for (int i = block.from; i < block.to; ++i) blockIds[i] = ids;
+        });
+
+        int[][] termIds = new int[size][];
+        int[][] frequencies = new int[size][];
+        executor.execute(costs, (from, to) -> () -> {
+            for (int i = from; i < to; ++i) {
+                int[] ids = localIds[i];
+                for (int j = 0; j < ids.length; ++j) ids[j] = blockIds[i][ids[j]];
+                countTerms(ids, i, termIds, frequencies);
+            }
+            return null;
+        }, ignored -> {});
+
+        List<String> requirementIds = new ArrayList<>(size);
+        for (Requirement requirement : requirements) requirementIds.add(requirement.getId());
+        return new RequirementsTerms(requirementIds, terms, termIds, frequencies);
+    }
+
+    /**
+     * Converts the requirements to the output of PreprocessPipeline.preprocessRequirements. The tokens of each requirement
+     * are sorted by term id and the strings are shared between requirements. Used by the similarity algorithms that need
+     * the tokens
+     */
+    public Map<String, List<String>> toTokens() {
+        Map<String, List<String>> result = new HashMap<>();
+        for (int i = 0; i < requirementIds.size(); ++i) {
+            List<String> tokens = new ArrayList<>();
+            for (int j = 0; j < termIds[i].length; ++j) {
+                String term = terms.get(termIds[i][j]);
+                for (int k = 0; k < frequencies[i][j]; ++k) tokens.add(term);
+            }
+            result.put(requirementIds.get(i), tokens);
+        }
+        return result;
+    }
+
+    public int size() {
+        return requirementIds.size();
+    }
+
+    /*
+    Get methods
+     */
+
+    public List<String> getRequirementIds() {
+        return requirementIds;
+    }
+
+    /**
+     * Returns the term of each id
+     */
+    public List<String> getTerms() {
+        return terms;
+    }
+
+    /**
+     * Returns the ids of the terms of the requirement at the input position, sorted in ascending order
+     */
+    public int[] getTermIds(int position) {
+        return termIds[position];
+    }
+
+    /**
+     * Returns the number of appearances of each term of the requirement at the input position (in the same order as getTermIds)
+     */
+    public int[] getFrequencies(int position) {
+        return frequencies[position];
+    }
+
+
+    /*
+    Private methods
+     */
+
+    private static void countTerms(int[] ids, int position, int[][] termIds, int[][] frequencies) {
+        Arrays.sort(ids);
+        int[] resultIds = new int[ids.length];
+        int[] resultFrequencies = new int[ids.length];
+        int size = 0;
+        for (int id : ids) {
+            if (size > 0 && resultIds[size-1] == id) ++resultFrequencies[size-1];
+            else {
+                resultIds[size] = id;
+                resultFrequencies[size] = 1;
+                ++size;
+            }
+        }
+        termIds[position] = Arrays.copyOf(resultIds, size);
+        frequencies[position] = Arrays.copyOf(resultFrequencies, size);
+    }
+
+    /**
+     * The terms of a block of requirements in order of appearance, the tokens of the block are translated to positions
+     * of this list
+     */
+    private static class TermsBlock {
+        private int from;
+        private int to;
+        private List<String> terms;
+
+        TermsBlock(int from, int to, List<String> terms) {
+            this.from = from;
+            this.to = to;
+            this.terms = terms;
+        }
+    }
+
+    /**
+     * Translates the tokens of a block of requirements to ids of the block. The terms are found with an open addressing
+     * table over the characters of the tokens, so a string is only created the first time each term appears in the block
+     */
+    private static class BlockTerms implements TokenConsumer {
+
+        private List<String> terms = new ArrayList<>();
+        private int[] hashes = new int[16];
+        //the id + 1 of the term in each slot, 0 if the slot is empty
+        private int[] slots = new int[32];
+        private int[] tokens = new int[64];
+        private int numberTokens;
+
+        @Override
+        public void accept(char[] buffer, int length) {
+            int hash = 0;
+            for (int i = 0; i < length; ++i) hash = 31 * hash + buffer[i];
+            int mask = slots.length - 1;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            int id = -1;
+            while (id < 0 && slots[slot] != 0) {
+                int candidate = slots[slot] - 1;
+                if (hashes[candidate] == hash && equalTerm(terms.get(candidate), buffer, length)) id = candidate;
+                else slot = (slot + 1) & mask;
+            }
+            if (id < 0) id = addTerm(new String(buffer, 0, length), hash, slot);
+            if (numberTokens == tokens.length) tokens = Arrays.copyOf(tokens, tokens.length * 2);
+            tokens[numberTokens++] = id;
+        }
+
+        /**
+         * Returns the ids of the tokens received since the last call
+         */
+        int[] finishRequirement() {
+            int[] result = Arrays.copyOf(tokens, numberTokens);
+            numberTokens = 0;
+            return result;
+        }
+
+        List<String> getTerms() {
+            return terms;
+        }
+
+        private int addTerm(String term, int hash, int slot) {
+            int id = terms.size();
+            terms.add(term);
+            if (id == hashes.length) hashes = Arrays.copyOf(hashes, hashes.length * 2);
+            hashes[id] = hash;
+            slots[slot] = id + 1;
+            //the table is kept at most half full
+            if (terms.size() * 2 > slots.length) rehash();
+            return id;
+        }
+
+        private void rehash() {
+            slots = new int[slots.length * 2];
+            int mask = slots.length - 1;
+            for (int id = 0; id < terms.size(); ++id) {
+                int hash = hashes[id];
+                int slot = (hash ^ (hash >>> 16)) & mask;
+                while (slots[slot] != 0) slot = (slot + 1) & mask;
+                slots[slot] = id + 1;
+            }
+        }
+
+        private boolean equalTerm(String term, char[] buffer, int length) {
+            if (term.length() != length) return false;
+            for (int i = 0; i < length; ++i) {
+                if (term.charAt(i) != buffer[i]) return false;
+            }
+            return true;
+        }
+    }
+}
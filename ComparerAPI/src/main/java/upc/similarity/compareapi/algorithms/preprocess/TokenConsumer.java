@@ -0,0 +1,12 @@
+package upc.similarity.compareapi.algorithms.preprocess;
+
+public interface TokenConsumer {
+
+    /**
+     * Receives a token of a requirement. The buffer can be reused by the caller after the method returns, so the token
+     * must be copied if it has to be kept
+     * @param buffer the characters of the token, starting at position 0
+     * @param length the number of characters of the token
+     */
+    void accept(char[] buffer, int length);
+}
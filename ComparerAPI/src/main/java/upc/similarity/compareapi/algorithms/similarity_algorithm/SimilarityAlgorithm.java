@@ -1,5 +1,6 @@
 package upc.similarity.compareapi.algorithms.similarity_algorithm;
 
+import upc.similarity.compareapi.algorithms.preprocess.RequirementsTerms;
 import upc.similarity.compareapi.entity.exception.InternalErrorException;
 
 import java.util.List;
@@ -14,6 +15,25 @@ public interface SimilarityAlgorithm {
      */
     SimilarityModel buildModel(Map<String, List<String>> requirementsTokens) throws InternalErrorException;
 
+    /**
+     * Same as buildModel, but with the requirements represented by term ids (see RequirementsTerms). By default the tokens
+     * of the requirements are used
+     * @param requirementsTerms the terms of each requirement
+     * @return a model containing the similarity algorithm representation
+     */
+    default SimilarityModel buildModel(RequirementsTerms requirementsTerms) throws InternalErrorException {
+        return buildModel(requirementsTerms.toTokens());
+    }
+
+    /**
+     * Creates an empty streaming build of a model, which receives the requirements one by one and is saved directly to the
+     * database (see StreamingModelBuild)
+     * @return the streaming build or null if the algorithm can only build the models in memory
+     */
+    default StreamingModelBuild createStreamingBuild() throws InternalErrorException {
+        return null;
+    }
+
     /**
      * Computes the similarity score between two requirements of the model
      * @param similarityModel the model containing all the requirements information
@@ -23,6 +43,55 @@ public interface SimilarityAlgorithm {
      */
     double computeSimilarity(SimilarityModel similarityModel, String requirementIdA, String requirementIdB) throws InternalErrorException;
 
+    /**
+     * Computes the similarity score between one requirement and each requirement of the input list (in the same order as
+     * the list). The representation of the first requirement is only resolved once. The candidates that are not inside the
+     * model and the ones with the same id as the first requirement are skipped
+     * @param similarityModel the model containing all the requirements information
+     * @param requirementId the id of the requirement to compare (is inside the input model)
+     * @param candidates the ids of the requirements to compare with it
+     * @param threshold the pairs with a score lower than the threshold are not returned
+     * @param sink receives the score of each returned pair, with the input requirement as the first one
+     */
+    void computeSimilarities(SimilarityModel similarityModel, String requirementId, List<String> candidates, double threshold, SimilarityScoresSink sink) throws InternalErrorException;
+
+    /**
+     * Computes the similarity score between all the pairs of requirements of the input list (each pair only once, in the same
+     * order as a nested loop over the list would compare them). The requirements that are not inside the model and the pairs
+     * with the same id are skipped
+     * @param similarityModel the model containing all the requirements information
+     * @param requirements the ids of the requirements to compare
+     * @param threshold the pairs with a score lower than the threshold are not returned
+     * @param sink receives the score of each returned pair
+     */
+    void computeProjectSimilarities(SimilarityModel similarityModel, List<String> requirements, double threshold, SimilarityScoresSink sink) throws InternalErrorException;
+
+    /**
+     * Computes the similarity score between each requirement of the first list and each requirement of the second list (in the
+     * same order as a nested loop over both lists would compare them). The requirements that are not inside the model and the
+     * pairs with the same id are skipped
+     * @param similarityModel the model containing all the requirements information
+     * @param requirementsToCompare the ids of the requirements to compare with the project
+     * @param projectRequirements the ids of the requirements of the project
+     * @param include if true, each requirement to compare is added to the project after being compared
+     * @param threshold the pairs with a score lower than the threshold are not returned
+     * @param sink receives the score of each returned pair
+     */
+    void computeReqProjectSimilarities(SimilarityModel similarityModel, List<String> requirementsToCompare, List<String> projectRequirements, boolean include, double threshold, SimilarityScoresSink sink) throws InternalErrorException;
+
+    /**
+     * Approximate version of computeReqProjectSimilarities. Only the pairs that are likely to be similar are compared (e.g.
+     * the ones found with an LSH index), so some pairs with a score greater or equal than the threshold may not be returned.
+     * The returned pairs have their exact score and are returned in the same order as computeReqProjectSimilarities would do it
+     * @param similarityModel the model containing all the requirements information
+     * @param requirementsToCompare the ids of the requirements to compare with the project
+     * @param projectRequirements the ids of the requirements of the project
+     * @param include if true, each requirement to compare is added to the project after being compared
+     * @param threshold the pairs with a score lower than the threshold are not returned
+     * @param sink receives the score of each returned pair
+     */
+    void computeApproximateReqProjectSimilarities(SimilarityModel similarityModel, List<String> requirementsToCompare, List<String> projectRequirements, boolean include, double threshold, SimilarityScoresSink sink) throws InternalErrorException;
+
     /**
      * Adds the input requirements to the input model
      * @param similarityModel algorithm model
@@ -30,6 +99,16 @@ public interface SimilarityAlgorithm {
      */
     void addRequirements(SimilarityModel similarityModel, Map<String, List<String>> requirements) throws InternalErrorException;
 
+    /**
+     * Same as addRequirements, but with the requirements represented by term ids (see RequirementsTerms). By default the
+     * tokens of the requirements are used
+     * @param similarityModel algorithm model
+     * @param requirementsTerms the terms of the requirements to add. The input requirements are not inside the model
+     */
+    default void addRequirements(SimilarityModel similarityModel, RequirementsTerms requirementsTerms) throws InternalErrorException {
+        addRequirements(similarityModel, requirementsTerms.toTokens());
+    }
+
     /**
      * Deletes the input requirements from the input model
      * @param similarityModel algorithm model
@@ -1,6 +1,10 @@
 package upc.similarity.compareapi.algorithms.similarity_algorithm;
 
+import upc.similarity.compareapi.algorithms.preprocess.RequirementsTerms;
+import upc.similarity.compareapi.entity.exception.InternalErrorException;
+
 import java.util.List;
+import java.util.Map;
 
 public interface SimilarityModel {
 
@@ -25,5 +29,20 @@ public interface SimilarityModel {
      */
     boolean checkIfRequirementIsUpdated(String requirementId, List<String> tokens);
 
+    /**
+     * Same as checkIfRequirementIsUpdated for a batch of requirements represented by term ids (see RequirementsTerms). By
+     * default each requirement is checked with its tokens
+     * @param requirementsTerms the new terms of the requirements, all of them must be inside the model
+     * @return true for each requirement that has been changed (in the same order as the input), false otherwise
+     */
+    default boolean[] checkIfRequirementsAreUpdated(RequirementsTerms requirementsTerms) throws InternalErrorException {
+        Map<String, List<String>> tokens = requirementsTerms.toTokens();
+        boolean[] result = new boolean[requirementsTerms.size()];
+        for (int i = 0; i < result.length; ++i) {
+            String requirementId = requirementsTerms.getRequirementIds().get(i);
+            result[i] = checkIfRequirementIsUpdated(requirementId, tokens.get(requirementId));
+        }
+        return result;
+    }
 
 }
@@ -0,0 +1,236 @@
+package upc.similarity.compareapi.algorithms.similarity_algorithm;
+
+import upc.similarity.compareapi.entity.exception.InternalErrorException;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Executes a list of queries (e.g. the rows of a pairwise comparison) in parallel. The queries are split in consecutive
+ * blocks with a similar cost, the blocks are computed in a ForkJoinPool and their results are consumed in the calling
+ * thread in the same order as a sequential execution would produce them. Only a few blocks are computed at the same time,
+ * so the memory used by the buffered results is bounded.
+ */
+public class SimilarityScoresExecutor {
+
+    /**
+     * The minimum and maximum cost (e.g. number of pairs) of each block
+     */
+    private static final long MIN_BLOCK_COST = 1L << 12;
+    private static final long MAX_BLOCK_COST = 1L << 18;
+
+    public interface BlockTask<T> {
+        T compute() throws InternalErrorException;
+    }
+
+    public interface BlockTaskFactory<T> {
+        /**
+         * Creates the task that computes the queries inside [from, to). It is called from the calling thread
+         */
+        BlockTask<T> create(int from, int to);
+    }
+
+    public interface BlockConsumer<T> {
+        /**
+         * Receives the result of each block, in ascending order of queries. It is called from the calling thread
+         */
+        void accept(T result) throws InternalErrorException;
+    }
+
+    public interface ScoresBlock {
+        /**
+         * Computes the queries inside [from, to) sending the scores to the sink in the same order as a sequential execution
+         */
+        void compute(int from, int to, SimilarityScoresSink sink) throws InternalErrorException;
+    }
+
+    private int parallelism;
+    private ForkJoinPool pool;
+
+    public SimilarityScoresExecutor(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        this.pool = (this.parallelism > 1) ? new ForkJoinPool(this.parallelism) : null;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Computes all the queries and consumes the results of the blocks in order
+     * @param costs the estimated cost of each query
+     * @param factory creates the task of each block
+     * @param consumer receives the result of each block
+     */
+    public <T> void execute(long[] costs, BlockTaskFactory<T> factory, BlockConsumer<T> consumer) throws InternalErrorException {
+        int[] bounds = splitBlocks(costs);
+        if (pool == null || bounds.length <= 2) {
+            for (int i = 0; i + 1 < bounds.length; ++i) consumer.accept(factory.create(bounds[i], bounds[i + 1]).compute());
+            return;
+        }
+        Deque<Future<T>> running = new ArrayDeque<>();
+        int next = 0;
+        try {
+            while (next + 1 < bounds.length || !running.isEmpty()) {
+                while (next + 1 < bounds.length && running.size() < parallelism * 2) {
+                    BlockTask<T> task = factory.create(bounds[next], bounds[next + 1]);
+                    running.addLast(pool.submit(task::compute));
+                    ++next;
+                }
+                consumer.accept(running.pollFirst().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalErrorException("Interrupted while computing the similarity scores");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            //the ForkJoinPool wraps the checked exceptions of the tasks in a RuntimeException (it can be wrapped again when
+            //the exception is received in another thread)
+            while (cause instanceof RuntimeException && cause.getCause() != null) cause = cause.getCause();
+            if (cause instanceof InternalErrorException) throw (InternalErrorException) cause;
+            throw new InternalErrorException("Error while computing the similarity scores: " + cause.getMessage());
+        } finally {
+            for (Future<T> future : running) future.cancel(true);
+        }
+    }
+
+    /**
+     * Computes all the queries and sends the scores to the sink in the same order as a sequential execution. When the
+     * sink has a score bound, each block only keeps the pairs that can still be accepted by the sink
+     * @param costs the estimated cost of each query
+     * @param block computes the queries of a block
+     * @param sink receives the scores
+     */
+    public void executeScores(long[] costs, ScoresBlock block, SimilarityScoresSink sink) throws InternalErrorException {
+        if (pool == null) {
+            block.compute(0, costs.length, sink);
+            return;
+        }
+        execute(costs, (from, to) -> {
+            ScoresBuffer buffer = new ScoresBuffer(sink.getScoreBound(), sink.getMaxScores());
+            return () -> {
+                block.compute(from, to, buffer);
+                return buffer;
+            };
+        }, buffer -> buffer.flush(sink));
+    }
+
+    /*
+    Private methods
+     */
+
+    private int[] splitBlocks(long[] costs) {
+        long total = 0;
+        for (long cost : costs) total += Math.max(1, cost);
+        long blockCost = Math.max(MIN_BLOCK_COST, Math.min(MAX_BLOCK_COST, total / (parallelism * 8L)));
+        int[] bounds = new int[costs.length + 1];
+        int size = 0;
+        bounds[size++] = 0;
+        long aux = 0;
+        for (int i = 0; i < costs.length; ++i) {
+            aux += Math.max(1, costs[i]);
+            if (aux >= blockCost && i + 1 < costs.length) {
+                bounds[size++] = i + 1;
+                aux = 0;
+            }
+        }
+        if (costs.length > 0) bounds[size++] = costs.length;
+        return Arrays.copyOf(bounds, size);
+    }
+
+    /**
+     * Stores the scores of a block until it can be sent to the real sink. When the sink only keeps the k pairs with the
+     * highest scores, a pair is discarded as soon as the block has k different pairs with a strictly higher score, because
+     * these k pairs make it impossible for the discarded one to be in the final result
+     */
+    private static class ScoresBuffer implements SimilarityScoresSink {
+
+        private double sinkBound;
+        private int maxScores;
+        private TreeSet<ScoreEntry> best;
+        private String[] requirementsA;
+        private String[] requirementsB;
+        private double[] scores;
+        private int size;
+        private int compactSize;
+
+        ScoresBuffer(double sinkBound, int maxScores) {
+            this.sinkBound = sinkBound;
+            this.maxScores = maxScores;
+            this.best = (maxScores > 0) ? new TreeSet<>(Comparator.comparingDouble((ScoreEntry entry) -> entry.score).thenComparing(entry -> entry.requirementB).thenComparing(entry -> entry.requirementA)) : null;
+            this.requirementsA = new String[16];
+            this.requirementsB = new String[16];
+            this.scores = new double[16];
+            this.size = 0;
+            this.compactSize = 2 * maxScores + 16;
+        }
+
+        @Override
+        public void addScore(String requirementIdA, String requirementIdB, double score) {
+            if (score <= sinkBound || score < localBound()) return;
+            if (best != null) {
+                best.add(new ScoreEntry(requirementIdA, requirementIdB, score));
+                if (best.size() > maxScores) best.pollFirst();
+                if (size >= compactSize) compact();
+            }
+            if (size == scores.length) {
+                requirementsA = Arrays.copyOf(requirementsA, size * 2);
+                requirementsB = Arrays.copyOf(requirementsB, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            requirementsA[size] = requirementIdA;
+            requirementsB[size] = requirementIdB;
+            scores[size] = score;
+            ++size;
+        }
+
+        @Override
+        public double getScoreBound() {
+            double localBound = localBound();
+            return Math.max(sinkBound, (localBound == Double.NEGATIVE_INFINITY) ? localBound : Math.nextDown(localBound));
+        }
+
+        void flush(SimilarityScoresSink sink) throws InternalErrorException {
+            for (int i = 0; i < size; ++i) sink.addScore(requirementsA[i], requirementsB[i], scores[i]);
+        }
+
+        private double localBound() {
+            return (best != null && best.size() == maxScores) ? best.first().score : Double.NEGATIVE_INFINITY;
+        }
+
+        private void compact() {
+            double localBound = localBound();
+            int newSize = 0;
+            for (int i = 0; i < size; ++i) {
+                if (scores[i] >= localBound) {
+                    requirementsA[newSize] = requirementsA[i];
+                    requirementsB[newSize] = requirementsB[i];
+                    scores[newSize] = scores[i];
+                    ++newSize;
+                }
+            }
+            Arrays.fill(requirementsA, newSize, size, null);
+            Arrays.fill(requirementsB, newSize, size, null);
+            size = newSize;
+            compactSize = Math.max(2 * maxScores + 16, 2 * size);
+        }
+    }
+
+    private static class ScoreEntry {
+        private String requirementA;
+        private String requirementB;
+        private double score;
+
+        ScoreEntry(String requirementA, String requirementB, double score) {
+            this.requirementA = requirementA;
+            this.requirementB = requirementB;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package upc.similarity.compareapi.algorithms.similarity_algorithm;
+
+import upc.similarity.compareapi.entity.exception.InternalErrorException;
+
+public interface SimilarityScoresSink {
+
+    /**
+     * Receives the similarity score computed between two requirements
+     * @param requirementIdA the id of the first requirement
+     * @param requirementIdB the id of the second requirement
+     * @param score the similarity score between the two requirements
+     */
+    void addScore(String requirementIdA, String requirementIdB, double score) throws InternalErrorException;
+
+    /**
+     * Returns the current score bound of the sink: a pair with a score lower or equal than the bound would be ignored by
+     * the sink, so the algorithms can skip it. The bound can change after each call to addScore
+     * @return the bound or Double.NEGATIVE_INFINITY if the sink accepts all the pairs
+     */
+    default double getScoreBound() {
+        return Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Returns the maximum number of pairs kept by the sink. When it is positive, the sink only keeps the pairs with the
+     * highest scores (see SizeFixedDependenciesQueue)
+     * @return the maximum number of pairs or 0 if the sink keeps all of them
+     */
+    default int getMaxScores() {
+        return 0;
+    }
+}
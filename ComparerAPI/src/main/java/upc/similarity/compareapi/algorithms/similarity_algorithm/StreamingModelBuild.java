@@ -0,0 +1,33 @@
+package upc.similarity.compareapi.algorithms.similarity_algorithm;
+
+import upc.similarity.compareapi.entity.exception.InternalErrorException;
+
+import java.util.List;
+
+/**
+ * Builds a similarity model with requirements received one by one, without keeping their representations in memory. The
+ * representations are written to a temporary file and they are saved directly to the database of the organization (see
+ * SimilarityModelDatabase.saveStreamingModel), so only the data shared by all the requirements (e.g. the dictionary of a
+ * tf-idf model) stays in memory. The saved model is the same as the one built with SimilarityAlgorithm.buildModel with the
+ * same requirements in the same order
+ */
+public interface StreamingModelBuild extends AutoCloseable {
+
+    /**
+     * Adds a requirement to the model
+     * @param requirementId the id of the requirement, it can not be repeated
+     * @param tokens the preprocessed tokens of the requirement
+     */
+    void addRequirement(String requirementId, List<String> tokens) throws InternalErrorException;
+
+    /**
+     * @return the number of requirements added to the model
+     */
+    int size();
+
+    /**
+     * Deletes the temporary file
+     */
+    @Override
+    void close();
+}
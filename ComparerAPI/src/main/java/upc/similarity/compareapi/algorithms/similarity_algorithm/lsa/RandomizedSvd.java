@@ -0,0 +1,201 @@
+package upc.similarity.compareapi.algorithms.similarity_algorithm.lsa;
+
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SparseVector;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static java.lang.StrictMath.sqrt;
+
+/**
+ * Randomized truncated SVD (Halko, Martinsson and Tropp) of a sparse matrix whose rows are tf-idf vectors. Only the right
+ * singular vectors are returned: the matrix V_k (terms x k) that projects a tf-idf vector to the k-dimensional latent space.
+ * The projection of the rows of the matrix is A * V_k = U_k * S_k, so the new requirements can be projected (folded in)
+ * in the same way as the ones used to compute the decomposition.
+ */
+public class RandomizedSvd {
+
+    private static final int MAX_JACOBI_SWEEPS = 60;
+    private static final double JACOBI_TOLERANCE = 1e-12;
+
+    private RandomizedSvd() {}
+
+    /**
+     * Computes the projection matrix of the input rows
+     * @param rows the tf-idf vectors of the requirements (the rows of the matrix)
+     * @param numberTerms the number of columns of the matrix
+     * @param dimensions the number of dimensions (k) of the latent space
+     * @param oversampling the number of extra random directions used to improve the accuracy
+     * @param powerIterations the number of power iterations used to improve the accuracy when the singular values decay slowly
+     * @param seed the seed of the random directions, the same input always returns the same projection
+     * @return the projection matrix V_k stored by rows (the k values of term t start at t * dimensions). The dimensions
+     * that do not exist (e.g. the matrix has a lower rank) are filled with zeros
+     */
+    public static float[] computeProjection(List<SparseVector> rows, int numberTerms, int dimensions, int oversampling, int powerIterations, long seed) {
+        int n = rows.size();
+        int l = Math.min(dimensions + oversampling, Math.min(n, numberTerms));
+        float[] result = new float[numberTerms * dimensions];
+        if (l == 0) return result;
+
+        //range finder: Q is an orthonormal basis of A * Omega
+        Random random = new Random(seed);
+        double[] omega = new double[numberTerms * l];
+        for (int i = 0; i < omega.length; ++i) omega[i] = random.nextGaussian();
+        double[] q = multiply(rows, omega, n, l);
+        orthonormalize(q, n, l);
+        for (int i = 0; i < powerIterations; ++i) {
+            double[] z = multiplyTransposed(rows, q, numberTerms, l);
+            orthonormalize(z, numberTerms, l);
+            q = multiply(rows, z, n, l);
+            orthonormalize(q, n, l);
+        }
+
+        //B = Q^T * A is small (l x terms), its singular vectors are obtained from the eigenvectors of B * B^T
+        double[] bt = multiplyTransposed(rows, q, numberTerms, l);
+        double[] gram = new double[l * l];
+        for (int t = 0; t < numberTerms; ++t) {
+            int base = t * l;
+            for (int i = 0; i < l; ++i) {
+                double value = bt[base + i];
+                if (value == 0) continue;
+                for (int j = i; j < l; ++j) gram[i * l + j] += value * bt[base + j];
+            }
+        }
+        for (int i = 0; i < l; ++i) {
+            for (int j = 0; j < i; ++j) gram[i * l + j] = gram[j * l + i];
+        }
+        double[] eigenvectors = new double[l * l];
+        double[] eigenvalues = jacobi(gram, eigenvectors, l);
+        Integer[] order = new Integer[l];
+        for (int i = 0; i < l; ++i) order[i] = i;
+        Arrays.sort(order, (i, j) -> Double.compare(eigenvalues[j], eigenvalues[i]));
+
+        //V_k = B^T * W_k * S_k^-1
+        int k = Math.min(dimensions, l);
+        for (int c = 0; c < k; ++c) {
+            int column = order[c];
+            double singularValue = sqrt(Math.max(0, eigenvalues[column]));
+            if (singularValue <= JACOBI_TOLERANCE) continue;
+            for (int t = 0; t < numberTerms; ++t) {
+                int base = t * l;
+                double value = 0;
+                for (int i = 0; i < l; ++i) value += bt[base + i] * eigenvectors[i * l + column];
+                result[t * dimensions + c] = (float) (value / singularValue);
+            }
+        }
+        return result;
+    }
+
+    /*
+    Private methods
+     */
+
+    /**
+     * Returns A * M, where M is a dense (terms x columns) matrix stored by rows
+     */
+    private static double[] multiply(List<SparseVector> rows, double[] matrix, int n, int columns) {
+        double[] result = new double[n * columns];
+        for (int d = 0; d < n; ++d) {
+            SparseVector row = rows.get(d);
+            int[] termIds = row.getTermIds();
+            double[] weights = row.getWeights();
+            int base = d * columns;
+            for (int i = 0; i < termIds.length; ++i) {
+                int termBase = termIds[i] * columns;
+                double weight = weights[i];
+                for (int j = 0; j < columns; ++j) result[base + j] += weight * matrix[termBase + j];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns A^T * M, where M is a dense (n x columns) matrix stored by rows
+     */
+    private static double[] multiplyTransposed(List<SparseVector> rows, double[] matrix, int numberTerms, int columns) {
+        double[] result = new double[numberTerms * columns];
+        for (int d = 0; d < rows.size(); ++d) {
+            SparseVector row = rows.get(d);
+            int[] termIds = row.getTermIds();
+            double[] weights = row.getWeights();
+            int base = d * columns;
+            for (int i = 0; i < termIds.length; ++i) {
+                int termBase = termIds[i] * columns;
+                double weight = weights[i];
+                for (int j = 0; j < columns; ++j) result[termBase + j] += weight * matrix[base + j];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Orthonormalizes the columns of the dense (size x columns) matrix with the modified Gram-Schmidt method. The columns
+     * that are linearly dependent on the previous ones are set to zero
+     */
+    private static void orthonormalize(double[] matrix, int size, int columns) {
+        for (int c = 0; c < columns; ++c) {
+            for (int p = 0; p < c; ++p) {
+                double dot = 0;
+                for (int i = 0; i < size; ++i) dot += matrix[i * columns + c] * matrix[i * columns + p];
+                if (dot == 0) continue;
+                for (int i = 0; i < size; ++i) matrix[i * columns + c] -= dot * matrix[i * columns + p];
+            }
+            double norm = 0;
+            for (int i = 0; i < size; ++i) norm += matrix[i * columns + c] * matrix[i * columns + c];
+            norm = sqrt(norm);
+            for (int i = 0; i < size; ++i) matrix[i * columns + c] = (norm > JACOBI_TOLERANCE) ? matrix[i * columns + c] / norm : 0;
+        }
+    }
+
+    /**
+     * Cyclic Jacobi eigenvalue algorithm for a symmetric (size x size) matrix. The input matrix is modified
+     * @param eigenvectors output matrix, the eigenvector of each eigenvalue is stored in the column with the same index
+     * @return the eigenvalues (not sorted)
+     */
+    private static double[] jacobi(double[] matrix, double[] eigenvectors, int size) {
+        Arrays.fill(eigenvectors, 0);
+        for (int i = 0; i < size; ++i) eigenvectors[i * size + i] = 1;
+        double total = 0;
+        for (double value : matrix) total += value * value;
+        for (int sweep = 0; sweep < MAX_JACOBI_SWEEPS; ++sweep) {
+            double offDiagonal = 0;
+            for (int i = 0; i < size; ++i) {
+                for (int j = i + 1; j < size; ++j) offDiagonal += matrix[i * size + j] * matrix[i * size + j];
+            }
+            if (offDiagonal <= JACOBI_TOLERANCE * JACOBI_TOLERANCE * total) break;
+            for (int p = 0; p < size; ++p) {
+                for (int r = p + 1; r < size; ++r) {
+                    double apr = matrix[p * size + r];
+                    if (apr == 0) continue;
+                    double theta = (matrix[r * size + r] - matrix[p * size + p]) / (2 * apr);
+                    double t = Math.signum(theta) / (Math.abs(theta) + sqrt(theta * theta + 1));
+                    if (theta == 0) t = 1;
+                    double c = 1 / sqrt(t * t + 1);
+                    double s = t * c;
+                    for (int k = 0; k < size; ++k) {
+                        double akp = matrix[k * size + p];
+                        double akr = matrix[k * size + r];
+                        matrix[k * size + p] = c * akp - s * akr;
+                        matrix[k * size + r] = s * akp + c * akr;
+                    }
+                    for (int k = 0; k < size; ++k) {
+                        double apk = matrix[p * size + k];
+                        double ark = matrix[r * size + k];
+                        matrix[p * size + k] = c * apk - s * ark;
+                        matrix[r * size + k] = s * apk + c * ark;
+                    }
+                    for (int k = 0; k < size; ++k) {
+                        double vkp = eigenvectors[k * size + p];
+                        double vkr = eigenvectors[k * size + r];
+                        eigenvectors[k * size + p] = c * vkp - s * vkr;
+                        eigenvectors[k * size + r] = s * vkp + c * vkr;
+                    }
+                }
+            }
+        }
+        double[] result = new double[size];
+        for (int i = 0; i < size; ++i) result[i] = matrix[i * size + i];
+        return result;
+    }
+}
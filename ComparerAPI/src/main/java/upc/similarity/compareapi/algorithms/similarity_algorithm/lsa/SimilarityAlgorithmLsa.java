@@ -0,0 +1,168 @@
+package upc.similarity.compareapi.algorithms.similarity_algorithm.lsa;
+
+import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityAlgorithm;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityModel;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityScoresExecutor;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityScoresSink;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SimilarityAlgorithmTfIdf;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SimilarityModelTfIdf;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SparseVector;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.TermDictionary;
+import upc.similarity.compareapi.config.Constants;
+import upc.similarity.compareapi.entity.exception.InternalErrorException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class SimilarityAlgorithmLsa implements SimilarityAlgorithm {
+
+    private static final long SEED = 42;
+
+    private SimilarityAlgorithmTfIdf similarityAlgorithmTfIdf;
+    private int dimensions;
+    private int oversampling;
+    private int powerIterations;
+
+    public SimilarityAlgorithmLsa(double cutOffValue, boolean cutOffDummy, boolean smoothingActive, int dimensions, int oversampling, int powerIterations) {
+        this.similarityAlgorithmTfIdf = new SimilarityAlgorithmTfIdf(cutOffValue,cutOffDummy,smoothingActive);
+        this.dimensions = dimensions;
+        this.oversampling = oversampling;
+        this.powerIterations = powerIterations;
+    }
+
+    @Override
+    public SimilarityModelLsa buildModel(Map<String, List<String>> requirements) throws InternalErrorException {
+        //the decomposition is computed over the tf-idf matrix of the requirements
+        SimilarityModelTfIdf modelTfIdf = similarityAlgorithmTfIdf.buildModel(requirements);
+        Map<String, SparseVector> docs = modelTfIdf.getDocs();
+        TermDictionary dictionary = modelTfIdf.getDictionary();
+        List<SparseVector> rows = new ArrayList<>(docs.values());
+        float[] projection = RandomizedSvd.computeProjection(rows, dictionary.size(), dimensions, oversampling, powerIterations, SEED);
+
+        SimilarityModelLsa model = new SimilarityModelLsa(dimensions, dictionary, docs.size(), projection);
+        for (Map.Entry<String, List<String>> requirement : requirements.entrySet()) {
+            SparseVector vector = docs.get(requirement.getKey());
+            float[] latent = model.project(vector.getTermIds(), vector.getWeights());
+            model.putRequirement(requirement.getKey(), SimilarityModelLsa.normalize(latent), SimilarityModelLsa.computeFingerprint(requirement.getValue()));
+        }
+        return model;
+    }
+
+    @Override
+    public double computeSimilarity(SimilarityModel similarityModel, String requirementIdA, String requirementIdB) throws InternalErrorException {
+        SimilarityModelLsa modelLsa = castModel(similarityModel);
+        return modelLsa.dotProduct(modelLsa.getPosition(requirementIdA), modelLsa.getPosition(requirementIdB));
+    }
+
+    @Override
+    public void computeSimilarities(SimilarityModel similarityModel, String requirementId, List<String> candidates, double threshold, SimilarityScoresSink sink) throws InternalErrorException {
+        SimilarityModelLsa modelLsa = castModel(similarityModel);
+        int query = modelLsa.getPosition(requirementId);
+        int[] positions = computePositions(modelLsa, candidates);
+        computeQuery(modelLsa, query, positions, 0, positions.length, threshold, sink);
+    }
+
+    @Override
+    public void computeProjectSimilarities(SimilarityModel similarityModel, List<String> requirements, double threshold, SimilarityScoresSink sink) throws InternalErrorException {
+        SimilarityModelLsa modelLsa = castModel(similarityModel);
+        int[] positions = computePositions(modelLsa, requirements);
+        int size = positions.length;
+        long[] costs = new long[size];
+        for (int i = 0; i < size; ++i) costs[i] = size - i - 1L;
+        executor().executeScores(costs, (from, to, blockSink) -> {
+            for (int i = from; i < to; ++i) computeQuery(modelLsa, positions[i], positions, i + 1, size, threshold, blockSink);
+        }, sink);
+    }
+
+    @Override
+    public void computeReqProjectSimilarities(SimilarityModel similarityModel, List<String> requirementsToCompare, List<String> projectRequirements, boolean include, double threshold, SimilarityScoresSink sink) throws InternalErrorException {
+        SimilarityModelLsa modelLsa = castModel(similarityModel);
+        int[] projectPositions = computePositions(modelLsa, projectRequirements);
+        int[] queries = computePositions(modelLsa, requirementsToCompare);
+        int projectSize = projectPositions.length;
+
+        //each included requirement is only compared with the requirements placed before it
+        int[] positions = projectPositions;
+        if (include) {
+            positions = new int[projectSize + queries.length];
+            System.arraycopy(projectPositions, 0, positions, 0, projectSize);
+            System.arraycopy(queries, 0, positions, projectSize, queries.length);
+        }
+        int[] candidates = positions;
+        long[] costs = new long[queries.length];
+        for (int i = 0; i < queries.length; ++i) costs[i] = include ? projectSize + (long) i : projectSize;
+        executor().executeScores(costs, (from, to, blockSink) -> {
+            for (int i = from; i < to; ++i) computeQuery(modelLsa, queries[i], candidates, 0, include ? projectSize + i : projectSize, threshold, blockSink);
+        }, sink);
+    }
+
+    @Override
+    public void computeApproximateReqProjectSimilarities(SimilarityModel similarityModel, List<String> requirementsToCompare, List<String> projectRequirements, boolean include, double threshold, SimilarityScoresSink sink) throws InternalErrorException {
+        //the dense scores are cheap enough to compare all the pairs
+        computeReqProjectSimilarities(similarityModel, requirementsToCompare, projectRequirements, include, threshold, sink);
+    }
+
+    @Override
+    public void addRequirements(SimilarityModel similarityModel, Map<String, List<String>> requirements) throws InternalErrorException {
+        //the new requirements are folded in the latent space computed when the model was built, with the idf values of
+        //that moment (see SimilarityModelLsa.corpusSize)
+        SimilarityModelLsa modelLsa = castModel(similarityModel);
+        Map<String, SparseVector> docs = similarityAlgorithmTfIdf.computeTfIdfVectors(requirements, modelLsa.getDictionary(), modelLsa.getCorpusSize());
+        for (Map.Entry<String, List<String>> requirement : requirements.entrySet()) {
+            SparseVector vector = docs.get(requirement.getKey());
+            float[] latent = modelLsa.project(vector.getTermIds(), vector.getWeights());
+            modelLsa.putRequirement(requirement.getKey(), SimilarityModelLsa.normalize(latent), SimilarityModelLsa.computeFingerprint(requirement.getValue()));
+        }
+    }
+
+    @Override
+    public void deleteRequirements(SimilarityModel similarityModel, List<String> requirements) throws InternalErrorException {
+        //the frequencies of the dictionary are the ones used to compute the decomposition, they are not updated
+        SimilarityModelLsa modelLsa = castModel(similarityModel);
+        for (String requirement : requirements) modelLsa.removeRequirement(requirement);
+    }
+
+
+    /*
+    Private methods
+     */
+
+    private SimilarityModelLsa castModel(SimilarityModel similarityModel) throws InternalErrorException {
+        try {
+            return (SimilarityModelLsa) similarityModel;
+        } catch (ClassCastException e) {
+            throw new InternalErrorException("Error while computing similarity with lsa algorithm without a lsa model");
+        }
+    }
+
+    private SimilarityScoresExecutor executor() {
+        return Constants.getInstance().getSimilarityScoresExecutor();
+    }
+
+    /**
+     * Returns the position inside the model of each requirement, the requirements that are not inside the model are skipped
+     */
+    private int[] computePositions(SimilarityModelLsa modelLsa, List<String> requirements) {
+        int[] result = new int[requirements.size()];
+        int size = 0;
+        for (String requirement : requirements) {
+            int position = modelLsa.getPosition(requirement);
+            if (position != -1) result[size++] = position;
+        }
+        int[] aux = new int[size];
+        System.arraycopy(result, 0, aux, 0, size);
+        return aux;
+    }
+
+    private void computeQuery(SimilarityModelLsa modelLsa, int query, int[] positions, int from, int to, double threshold, SimilarityScoresSink sink) throws InternalErrorException {
+        String requirement = modelLsa.getId(query);
+        for (int j = from; j < to; ++j) {
+            double score = modelLsa.dotProduct(query, positions[j]);
+            if (score >= threshold) {
+                String candidate = modelLsa.getId(positions[j]);
+                if (!requirement.equals(candidate)) sink.addScore(requirement, candidate, score);
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package upc.similarity.compareapi.algorithms.similarity_algorithm.lsa;
+
+import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityModel;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.TermDictionary;
+
+import java.util.*;
+
+public class SimilarityModelLsa implements SimilarityModel {
+
+    /**
+     * The number of dimensions of the latent space
+     */
+    private int dimensions;
+
+    /**
+     * The ids of the requirements. The position of each requirement is its row inside vectors and fingerprints
+     */
+    private List<String> ids;
+    private Map<String, Integer> positions;
+
+    /**
+     * The normalized latent vector of each requirement, stored contiguously (the vector of the requirement at position p
+     * starts at p * dimensions). The cosine similarity between two requirements is the dot product of their vectors
+     */
+    private float[] vectors;
+
+    /**
+     * A hash of the set of tokens of each requirement, used to check if a requirement has been updated
+     */
+    private long[] fingerprints;
+
+    /**
+     * The dictionary of the organization. It is needed to compute the tf-idf vectors of the new requirements
+     */
+    private TermDictionary dictionary;
+
+    /**
+     * The number of requirements used to compute the decomposition. The idf values of the new requirements are computed
+     * with it and the frequencies of the dictionary at that moment, which are not modified afterwards (the latent space does
+     * not change either, so adding or deleting requirements does not change the idf values)
+     */
+    private int corpusSize;
+
+    /**
+     * The projection matrix from the tf-idf space to the latent space (see RandomizedSvd), stored by rows (the row of the
+     * term t starts at t * dimensions). The models saved before the idf values were fixed can have terms added after
+     * computing the decomposition, they do not have a row
+     */
+    private float[] projection;
+
+    public SimilarityModelLsa(int dimensions, TermDictionary dictionary, int corpusSize, float[] projection) {
+        this.dimensions = dimensions;
+        this.ids = new ArrayList<>();
+        this.positions = new HashMap<>();
+        this.vectors = new float[16 * dimensions];
+        this.fingerprints = new long[16];
+        this.dictionary = dictionary;
+        this.corpusSize = corpusSize;
+        this.projection = projection;
+    }
+
+    @Override
+    public boolean containsRequirement(String requirementId) {
+        return positions.containsKey(requirementId);
+    }
+
+    @Override
+    public List<String> getRequirementsIds() {
+        return new ArrayList<>(ids);
+    }
+
+    @Override
+    public boolean checkIfRequirementIsUpdated(String requirementId, List<String> tokens) {
+        return fingerprints[positions.get(requirementId)] != computeFingerprint(tokens);
+    }
+
+    /**
+     * Adds a requirement to the model or replaces its vector if it was already inside
+     * @param id the id of the requirement
+     * @param vector the normalized latent vector of the requirement (see normalize)
+     * @param fingerprint the fingerprint of the tokens of the requirement (see computeFingerprint)
+     */
+    public void putRequirement(String id, float[] vector, long fingerprint) {
+        Integer position = positions.get(id);
+        if (position == null) {
+            position = ids.size();
+            ids.add(id);
+            positions.put(id, position);
+            if (position >= fingerprints.length) {
+                fingerprints = Arrays.copyOf(fingerprints, fingerprints.length * 2);
+                vectors = Arrays.copyOf(vectors, fingerprints.length * dimensions);
+            }
+        }
+        System.arraycopy(vector, 0, vectors, position * dimensions, dimensions);
+        fingerprints[position] = fingerprint;
+    }
+
+    /**
+     * Deletes a requirement from the model. The last requirement is moved to its position
+     * @param id the id of the requirement
+     */
+    public void removeRequirement(String id) {
+        Integer position = positions.remove(id);
+        if (position == null) return;
+        int last = ids.size() - 1;
+        if (position != last) {
+            String lastId = ids.get(last);
+            ids.set(position, lastId);
+            positions.put(lastId, position);
+            System.arraycopy(vectors, last * dimensions, vectors, position * dimensions, dimensions);
+            fingerprints[position] = fingerprints[last];
+        }
+        ids.remove(last);
+    }
+
+    /**
+     * Projects a tf-idf vector to the latent space (the terms without a row in the projection matrix are ignored)
+     * @param termIds the ids of the terms of the vector
+     * @param weights the tf-idf value of each term
+     * @return the latent vector (not normalized)
+     */
+    public float[] project(int[] termIds, double[] weights) {
+        double[] result = new double[dimensions];
+        for (int i = 0; i < termIds.length; ++i) {
+            int base = termIds[i] * dimensions;
+            if (base + dimensions > projection.length) continue;
+            for (int j = 0; j < dimensions; ++j) result[j] += weights[i] * projection[base + j];
+        }
+        float[] vector = new float[dimensions];
+        for (int j = 0; j < dimensions; ++j) vector[j] = (float) result[j];
+        return vector;
+    }
+
+    /**
+     * Normalizes the input vector (the zero vector is not modified)
+     */
+    public static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) norm += value * value;
+        norm = Math.sqrt(norm);
+        float[] result = new float[vector.length];
+        if (norm != 0) {
+            for (int i = 0; i < vector.length; ++i) result[i] = (float) (vector[i] / norm);
+        }
+        return result;
+    }
+
+    /**
+     * Computes the dot product between the vectors of the requirements at the input positions
+     */
+    public float dotProduct(int positionA, int positionB) {
+        int a = positionA * dimensions;
+        int b = positionB * dimensions;
+        float result = 0;
+        for (int i = 0; i < dimensions; ++i) result += vectors[a + i] * vectors[b + i];
+        return result;
+    }
+
+    /**
+     * Returns the position of the requirement inside the model or -1 if it is not inside
+     */
+    public int getPosition(String requirementId) {
+        Integer position = positions.get(requirementId);
+        return (position == null) ? -1 : position;
+    }
+
+    public String getId(int position) {
+        return ids.get(position);
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * Computes a hash of the set of tokens (the order and the repetitions of the tokens do not change it)
+     */
+    public static long computeFingerprint(List<String> tokens) {
+        TreeSet<String> set = new TreeSet<>(tokens);
+        long result = 1125899906842597L;
+        for (String token : set) {
+            for (int i = 0; i < token.length(); ++i) result = 31 * result + token.charAt(i);
+            result = 31 * result + 0x1F;
+        }
+        return result;
+    }
+
+    /*
+    Get methods
+     */
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    public TermDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public int getCorpusSize() {
+        return corpusSize;
+    }
+
+    public float[] getProjection() {
+        return projection;
+    }
+
+    /**
+     * Returns a copy of the vector of the requirement at the input position
+     */
+    public float[] getVector(int position) {
+        return Arrays.copyOfRange(vectors, position * dimensions, (position + 1) * dimensions);
+    }
+
+    public long getFingerprint(int position) {
+        return fingerprints[position];
+    }
+}
@@ -1,10 +1,6 @@
 package upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf;
 
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
-
-import static java.lang.StrictMath.sqrt;
 
 public class CosineSimilarityTfIdf {
 
@@ -24,35 +20,47 @@ public class CosineSimilarityTfIdf {
      * @return a double between -1 and 1
      */
     public double compute(SimilarityModelTfIdf modelTfIdf, String a, String b) {
-        Map<String, Map<String, Double>> documents = modelTfIdf.getDocs();
-        double cosine = 0.0;
-        Map<String, Double> wordsA = documents.get(a);
-        Map<String, Double> wordsB = documents.get(b);
-        Set<String> intersection = new HashSet<>(wordsA.keySet());
-        intersection.retainAll(wordsB.keySet());
-        for (String s : intersection) {
-            Double forA = wordsA.get(s);
-            Double forB = wordsB.get(s);
-            cosine += forA * forB;
-        }
-        double normA = norm(wordsA);
-        double normB = norm(wordsB);
+        Map<String, SparseVector> documents = modelTfIdf.getDocs();
+        SparseVector wordsA = documents.get(a);
+        SparseVector wordsB = documents.get(b);
+        return compute(wordsA, wordsB, dotProduct(wordsA, wordsB));
+    }
+
+    /**
+     * Method that computes the similarity between two tf-idf vectors whose dot product is already known
+     * @param wordsA the vector of the first requirement
+     * @param wordsB the vector of the second requirement
+     * @param dotProduct the dot product between both vectors
+     * @return a double between -1 and 1
+     */
+    public double compute(SparseVector wordsA, SparseVector wordsB, double dotProduct) {
+        double normA = wordsA.getNorm();
+        double normB = wordsB.getNorm();
 
         if (normA == 0 || normB == 0) return 0;
 
-        cosine = cosine / (normA * normB);
-        return cosine;
+        return dotProduct / (normA * normB);
     }
 
-    /*
-    Private methods
-     */
-
-    private Double norm(Map<String, Double> wordsB) {
-        double norm=0.0;
-        for (Map.Entry<String,Double> value: wordsB.entrySet()) {
-            norm+=value.getValue()*value.getValue();
+    public double dotProduct(SparseVector wordsA, SparseVector wordsB) {
+        //most pairs do not have common terms, the signatures discard a lot of them without the merge
+        if (!wordsA.mayShareTerms(wordsB)) return 0.0;
+        //both vectors are sorted by term id, so the intersection is computed with a merge
+        int[] idsA = wordsA.getTermIds();
+        int[] idsB = wordsB.getTermIds();
+        double[] valuesA = wordsA.getWeights();
+        double[] valuesB = wordsB.getWeights();
+        double cosine = 0.0;
+        int i = 0;
+        int j = 0;
+        while (i < idsA.length && j < idsB.length) {
+            if (idsA[i] == idsB[j]) {
+                cosine += valuesA[i] * valuesB[j];
+                ++i;
+                ++j;
+            } else if (idsA[i] < idsB[j]) ++i;
+            else ++j;
         }
-        return sqrt(norm);
+        return cosine;
     }
 }
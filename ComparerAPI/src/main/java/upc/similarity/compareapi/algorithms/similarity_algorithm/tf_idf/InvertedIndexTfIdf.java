@@ -0,0 +1,368 @@
+package upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class InvertedIndexTfIdf {
+
+    /**
+     * The maximum number of queries computed at the same time by accumulateBlock
+     */
+    public static final int BLOCK_QUERIES = 16;
+
+    /**
+     * The ids of the indexed requirements. The position of each requirement inside the index is its position in this list
+     */
+    private List<String> ids;
+
+    /**
+     * The tf-idf vectors of the indexed requirements (in the same order as ids)
+     */
+    private List<SparseVector> vectors;
+
+    /**
+     * The postings list of each term (indexed by term id): the positions of the requirements that contain the term, in
+     * ascending order, and the weight of the term in each one of them
+     */
+    private int[][] postingsPositions;
+    private double[][] postingsWeights;
+    private int[] postingsSizes;
+
+    /**
+     * Auxiliary structures used to accumulate the dot products of a query. They are reused between queries
+     */
+    private double[] accumulators;
+    private boolean[] touched;
+    private int[] candidates;
+    private int numberCandidates;
+
+    /**
+     * Auxiliary structures used by accumulateBlock, created the first time they are needed. The dot product between the
+     * query q of the block and the requirement at position p is stored at p * BLOCK_QUERIES + q
+     */
+    private double[] blockAccumulators;
+    private boolean[] blockTouched;
+    private boolean[] blockCandidatesTouched;
+    private int[] blockCandidates;
+    private int numberBlockCandidates;
+
+    /**
+     * The auxiliary structures of the released copies (see release). The queue is shared by the index and all its copies,
+     * so a copy reuses the structures of a previous one instead of allocating new ones (they have the size of the index)
+     */
+    private ConcurrentLinkedQueue<QueryBuffers> freeBuffers;
+
+    public InvertedIndexTfIdf(int numberTerms) {
+        this.ids = new ArrayList<>();
+        this.vectors = new ArrayList<>();
+        this.postingsPositions = new int[numberTerms][];
+        this.postingsWeights = new double[numberTerms][];
+        this.postingsSizes = new int[numberTerms];
+        this.accumulators = new double[16];
+        this.touched = new boolean[16];
+        this.candidates = new int[16];
+        this.numberCandidates = 0;
+        this.freeBuffers = new ConcurrentLinkedQueue<>();
+    }
+
+    private InvertedIndexTfIdf(InvertedIndexTfIdf index) {
+        this.ids = index.ids;
+        this.vectors = index.vectors;
+        this.postingsPositions = index.postingsPositions;
+        this.postingsWeights = index.postingsWeights;
+        this.postingsSizes = index.postingsSizes;
+        this.freeBuffers = index.freeBuffers;
+        QueryBuffers buffers = freeBuffers.poll();
+        if (buffers != null && buffers.accumulators.length == index.accumulators.length) {
+            this.accumulators = buffers.accumulators;
+            this.touched = buffers.touched;
+            this.candidates = buffers.candidates;
+            this.numberCandidates = buffers.numberCandidates;
+            this.blockAccumulators = buffers.blockAccumulators;
+            this.blockTouched = buffers.blockTouched;
+            this.blockCandidatesTouched = buffers.blockCandidatesTouched;
+            this.blockCandidates = buffers.blockCandidates;
+            this.numberBlockCandidates = buffers.numberBlockCandidates;
+        } else {
+            this.accumulators = new double[index.accumulators.length];
+            this.touched = new boolean[index.touched.length];
+            this.candidates = new int[index.candidates.length];
+            this.numberCandidates = 0;
+        }
+    }
+
+    /**
+     * Returns a copy of the index that shares the postings lists but has its own auxiliary structures, so both indexes can
+     * be queried at the same time from different threads. The index must not be modified after calling this method
+     */
+    public InvertedIndexTfIdf copy() {
+        return new InvertedIndexTfIdf(this);
+    }
+
+    /**
+     * Returns the auxiliary structures of the copy, so they can be reused by the next copy of the index instead of
+     * allocating new ones. The copy must not be used after calling this method
+     */
+    public void release() {
+        freeBuffers.offer(new QueryBuffers(this));
+        accumulators = null;
+        touched = null;
+        candidates = null;
+        blockAccumulators = null;
+        blockTouched = null;
+        blockCandidatesTouched = null;
+        blockCandidates = null;
+    }
+
+    /**
+     * Adds a requirement at the end of the index
+     * @param id the id of the requirement
+     * @param vector the tf-idf vector of the requirement
+     */
+    public void addRequirement(String id, SparseVector vector) {
+        addRequirement(id, vector, vector);
+    }
+
+    /**
+     * Adds a requirement at the end of the index, but only the terms of indexedVector are added to the postings lists
+     * @param id the id of the requirement
+     * @param vector the tf-idf vector of the requirement
+     * @param indexedVector the part of the vector that is indexed (it can have different weights, e.g. normalized ones)
+     */
+    public void addRequirement(String id, SparseVector vector, SparseVector indexedVector) {
+        int position = ids.size();
+        ids.add(id);
+        vectors.add(vector);
+        int[] termIds = indexedVector.getTermIds();
+        double[] weights = indexedVector.getWeights();
+        for (int i = 0; i < termIds.length; ++i) {
+            int term = termIds[i];
+            int size = postingsSizes[term];
+            if (postingsPositions[term] == null) {
+                postingsPositions[term] = new int[4];
+                postingsWeights[term] = new double[4];
+            } else if (size == postingsPositions[term].length) {
+                postingsPositions[term] = Arrays.copyOf(postingsPositions[term], size * 2);
+                postingsWeights[term] = Arrays.copyOf(postingsWeights[term], size * 2);
+            }
+            postingsPositions[term][size] = position;
+            postingsWeights[term][size] = weights[i];
+            postingsSizes[term] = size + 1;
+        }
+        if (position >= accumulators.length) {
+            int newLength = accumulators.length * 2;
+            accumulators = Arrays.copyOf(accumulators, newLength);
+            touched = Arrays.copyOf(touched, newLength);
+            candidates = Arrays.copyOf(candidates, newLength);
+        }
+    }
+
+    /**
+     * Computes the dot product between the query vector and all the indexed requirements with a position inside [from, to)
+     * that share at least one term with it. The terms are traversed in ascending order, so each dot product is summed in
+     * the same order as a merge of the two vectors would do it
+     * @param query the tf-idf vector of the query
+     * @param from the first position to consider (inclusive)
+     * @param to the last position to consider (exclusive)
+     * @return the number of candidates found, see getCandidate and getDotProduct
+     */
+    public int accumulate(SparseVector query, int from, int to) {
+        return accumulate(query, null, from, to);
+    }
+
+    /**
+     * Same as accumulate but only using the query terms marked in the mask
+     * @param query the tf-idf vector of the query
+     * @param mask the terms of the query to use (indexed by position inside the query vector) or null to use all of them
+     * @param from the first position to consider (inclusive)
+     * @param to the last position to consider (exclusive)
+     * @return the number of candidates found, see getCandidate and getDotProduct
+     */
+    public int accumulate(SparseVector query, boolean[] mask, int from, int to) {
+        for (int i = 0; i < numberCandidates; ++i) {
+            int position = candidates[i];
+            accumulators[position] = 0.0;
+            touched[position] = false;
+        }
+        numberCandidates = 0;
+
+        int[] termIds = query.getTermIds();
+        double[] weights = query.getWeights();
+        for (int i = 0; i < termIds.length; ++i) {
+            int term = termIds[i];
+            if ((mask != null && !mask[i]) || term >= postingsSizes.length || postingsSizes[term] == 0) continue;
+            int[] positions = postingsPositions[term];
+            double[] values = postingsWeights[term];
+            int size = postingsSizes[term];
+            int start = (from == 0) ? 0 : Arrays.binarySearch(positions, 0, size, from);
+            if (start < 0) start = -start - 1;
+            double weight = weights[i];
+            for (int j = start; j < size && positions[j] < to; ++j) {
+                int position = positions[j];
+                if (!touched[position]) {
+                    touched[position] = true;
+                    candidates[numberCandidates] = position;
+                    ++numberCandidates;
+                }
+                accumulators[position] += weight * values[j];
+            }
+        }
+        Arrays.sort(candidates, 0, numberCandidates);
+        return numberCandidates;
+    }
+
+    /**
+     * Blocked version of accumulate: computes at the same time the dot products between a block of queries and all the
+     * indexed requirements with a position inside [0, to). The query terms are merged in ascending order, so the postings
+     * list of each term is traversed only once for the whole block, and the dot products are stored in a matrix with one
+     * row per position (the scores of a posting for all the queries are contiguous in memory). Each dot product is summed
+     * in the same order as accumulate would do it
+     * @param queries the tf-idf vectors of the queries
+     * @param masks the terms of each query to use (indexed by position inside the query vector)
+     * @param numberQueries the number of queries of the block, at most BLOCK_QUERIES
+     * @param to the last position to consider (exclusive)
+     * @return the number of positions that share at least one term with some query, see getBlockCandidate
+     */
+    public int accumulateBlock(SparseVector[] queries, boolean[][] masks, int numberQueries, int to) {
+        if (blockAccumulators == null || blockAccumulators.length < accumulators.length * BLOCK_QUERIES) {
+            blockAccumulators = new double[accumulators.length * BLOCK_QUERIES];
+            blockTouched = new boolean[accumulators.length * BLOCK_QUERIES];
+            blockCandidatesTouched = new boolean[accumulators.length];
+            blockCandidates = new int[accumulators.length];
+        }
+        for (int i = 0; i < numberBlockCandidates; ++i) {
+            int position = blockCandidates[i];
+            int base = position * BLOCK_QUERIES;
+            Arrays.fill(blockAccumulators, base, base + BLOCK_QUERIES, 0.0);
+            Arrays.fill(blockTouched, base, base + BLOCK_QUERIES, false);
+            blockCandidatesTouched[position] = false;
+        }
+        numberBlockCandidates = 0;
+
+        int[] pointers = new int[numberQueries];
+        int[] groupQueries = new int[numberQueries];
+        double[] groupWeights = new double[numberQueries];
+        while (true) {
+            //next term in ascending order and the queries that contain it
+            int term = Integer.MAX_VALUE;
+            int groupSize = 0;
+            for (int q = 0; q < numberQueries; ++q) {
+                int[] termIds = queries[q].getTermIds();
+                while (pointers[q] < termIds.length && !masks[q][pointers[q]]) ++pointers[q];
+                if (pointers[q] < termIds.length) {
+                    int aux = termIds[pointers[q]];
+                    if (aux < term) {
+                        term = aux;
+                        groupSize = 0;
+                    }
+                    if (aux == term) {
+                        groupQueries[groupSize] = q;
+                        groupWeights[groupSize] = queries[q].getWeights()[pointers[q]];
+                        ++groupSize;
+                    }
+                }
+            }
+            if (groupSize == 0) break;
+            for (int k = 0; k < groupSize; ++k) ++pointers[groupQueries[k]];
+            if (term >= postingsSizes.length) continue;
+
+            int[] positions = postingsPositions[term];
+            double[] values = postingsWeights[term];
+            int size = postingsSizes[term];
+            for (int j = 0; j < size && positions[j] < to; ++j) {
+                int position = positions[j];
+                if (!blockCandidatesTouched[position]) {
+                    blockCandidatesTouched[position] = true;
+                    blockCandidates[numberBlockCandidates] = position;
+                    ++numberBlockCandidates;
+                }
+                int base = position * BLOCK_QUERIES;
+                double value = values[j];
+                for (int k = 0; k < groupSize; ++k) {
+                    int cell = base + groupQueries[k];
+                    blockTouched[cell] = true;
+                    blockAccumulators[cell] += groupWeights[k] * value;
+                }
+            }
+        }
+        Arrays.sort(blockCandidates, 0, numberBlockCandidates);
+        return numberBlockCandidates;
+    }
+
+    /**
+     * Returns the position of the i-th candidate (in ascending order) found by the last call to accumulateBlock
+     */
+    public int getBlockCandidate(int i) {
+        return blockCandidates[i];
+    }
+
+    /**
+     * Returns true if the query of the last block at the input index shares some term with the requirement at the input position
+     */
+    public boolean isBlockCandidate(int query, int position) {
+        return blockTouched[position * BLOCK_QUERIES + query];
+    }
+
+    /**
+     * Returns the dot product between the query of the last block at the input index and the requirement at the input position
+     */
+    public double getBlockDotProduct(int query, int position) {
+        return blockAccumulators[position * BLOCK_QUERIES + query];
+    }
+
+    /**
+     * Returns the position of the i-th candidate (in ascending order) found by the last call to accumulate
+     */
+    public int getCandidate(int i) {
+        return candidates[i];
+    }
+
+    /**
+     * Returns the dot product between the last query and the requirement at the input position (0 if they do not share any term)
+     */
+    public double getDotProduct(int position) {
+        return accumulators[position];
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    public String getId(int position) {
+        return ids.get(position);
+    }
+
+    public SparseVector getVector(int position) {
+        return vectors.get(position);
+    }
+
+    /**
+     * The auxiliary structures of a released copy, with the number of candidates of its last queries (they must be
+     * cleared before the next query)
+     */
+    private static class QueryBuffers {
+        private double[] accumulators;
+        private boolean[] touched;
+        private int[] candidates;
+        private int numberCandidates;
+        private double[] blockAccumulators;
+        private boolean[] blockTouched;
+        private boolean[] blockCandidatesTouched;
+        private int[] blockCandidates;
+        private int numberBlockCandidates;
+
+        QueryBuffers(InvertedIndexTfIdf index) {
+            this.accumulators = index.accumulators;
+            this.touched = index.touched;
+            this.candidates = index.candidates;
+            this.numberCandidates = index.numberCandidates;
+            this.blockAccumulators = index.blockAccumulators;
+            this.blockTouched = index.blockTouched;
+            this.blockCandidatesTouched = index.blockCandidatesTouched;
+            this.blockCandidates = index.blockCandidates;
+            this.numberBlockCandidates = index.numberBlockCandidates;
+        }
+    }
+}
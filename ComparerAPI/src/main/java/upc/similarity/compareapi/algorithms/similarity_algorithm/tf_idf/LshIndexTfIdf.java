@@ -0,0 +1,130 @@
+package upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * LSH index over the SimHash signatures of a list of requirements (see SimHashTfIdf). For each band it saves the positions
+ * of the requirements sorted by the value of the band, so the requirements that collide with a query in a band are a
+ * consecutive range found with a binary search
+ */
+public class LshIndexTfIdf {
+
+    private List<String> ids;
+    private List<SparseVector> vectors;
+    private List<long[]> signatures;
+
+    /**
+     * For each band: the value of the band (high bits) and the position of the requirement (low bits) sorted in ascending order
+     */
+    private long[][] buckets;
+
+    /**
+     * Auxiliary structures used to collect the candidates of a query. They are reused between queries
+     */
+    private boolean[] seen;
+    private int[] candidates;
+
+    public LshIndexTfIdf() {
+        this.ids = new ArrayList<>();
+        this.vectors = new ArrayList<>();
+        this.signatures = new ArrayList<>();
+        this.buckets = null;
+    }
+
+    private LshIndexTfIdf(LshIndexTfIdf index) {
+        this.ids = index.ids;
+        this.vectors = index.vectors;
+        this.signatures = index.signatures;
+        this.buckets = index.buckets;
+        this.seen = new boolean[ids.size()];
+        this.candidates = new int[ids.size()];
+    }
+
+    /**
+     * Returns a copy of the index that shares the buckets but has its own auxiliary structures, so both indexes can be
+     * queried at the same time from different threads. The index must be built before calling this method
+     */
+    public LshIndexTfIdf copy() {
+        return new LshIndexTfIdf(this);
+    }
+
+    /**
+     * Adds a requirement at the end of the index. The index must be built again after adding requirements
+     * @param id the id of the requirement
+     * @param vector the tf-idf vector of the requirement
+     * @param signature the SimHash signature of the requirement
+     */
+    public void addRequirement(String id, SparseVector vector, long[] signature) {
+        ids.add(id);
+        vectors.add(vector);
+        signatures.add(signature);
+        buckets = null;
+    }
+
+    /**
+     * Sorts the buckets of each band, must be called after adding the requirements and before querying the index
+     */
+    public void build() {
+        int size = ids.size();
+        buckets = new long[SimHashTfIdf.BANDS][size];
+        for (int band = 0; band < SimHashTfIdf.BANDS; ++band) {
+            long[] bucket = buckets[band];
+            for (int i = 0; i < size; ++i) bucket[i] = ((long) SimHashTfIdf.getBand(signatures.get(i), band) << 32) | i;
+            Arrays.sort(bucket);
+        }
+        seen = new boolean[size];
+        candidates = new int[size];
+    }
+
+    /**
+     * Finds the requirements with a position inside [0, to) that share at least one band with the input signature
+     * @param signature the signature of the query
+     * @param to the last position to consider (exclusive)
+     * @return the number of candidates found, see getCandidate
+     */
+    public int findCandidates(long[] signature, int to) {
+        int numberCandidates = 0;
+        for (int band = 0; band < SimHashTfIdf.BANDS; ++band) {
+            long[] bucket = buckets[band];
+            long value = (long) SimHashTfIdf.getBand(signature, band) << 32;
+            int start = Arrays.binarySearch(bucket, value);
+            if (start < 0) start = -start - 1;
+            for (int i = start; i < bucket.length && (bucket[i] & 0xFFFFFFFF00000000L) == value; ++i) {
+                int position = (int) bucket[i];
+                if (position < to && !seen[position]) {
+                    seen[position] = true;
+                    candidates[numberCandidates] = position;
+                    ++numberCandidates;
+                }
+            }
+        }
+        for (int i = 0; i < numberCandidates; ++i) seen[candidates[i]] = false;
+        Arrays.sort(candidates, 0, numberCandidates);
+        return numberCandidates;
+    }
+
+    /**
+     * Returns the position of the i-th candidate (in ascending order) found by the last call to findCandidates
+     */
+    public int getCandidate(int i) {
+        return candidates[i];
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    public String getId(int position) {
+        return ids.get(position);
+    }
+
+    public SparseVector getVector(int position) {
+        return vectors.get(position);
+    }
+
+    public long[] getSignature(int position) {
+        return signatures.get(position);
+    }
+}
@@ -0,0 +1,135 @@
+package upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * SimHash signatures of the tf-idf vectors (random hyperplane LSH). Each bit of a signature is the sign of the projection
+ * of the vector onto a pseudo-random hyperplane, so two vectors with cosine c have the same bit with probability
+ * 1 - acos(c)/pi. The bits are grouped in BANDS bands of BAND_BITS bits, and two requirements are candidates when they
+ * have the same bits in at least one band. With p = 1 - acos(c)/pi the probability of being candidates is
+ * 1 - (1 - p^BAND_BITS)^BANDS: about 0.93 for c = 0.9, 0.65 for c = 0.8 and 0.004 for unrelated requirements (c = 0).
+ * The hyperplanes are derived from the terms themselves (not from their ids), so the signatures do not change when the
+ * dictionary is compacted.
+ */
+public class SimHashTfIdf {
+
+    public static final int BANDS = 16;
+    public static final int BAND_BITS = 12;
+    public static final int SIGNATURE_BITS = BANDS * BAND_BITS;
+    public static final int SIGNATURE_LONGS = (SIGNATURE_BITS + 63) / 64;
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private SimHashTfIdf() {}
+
+    /**
+     * Computes the signatures of all the input vectors
+     * @param docs the tf-idf vector of each requirement
+     * @param dictionary the dictionary used to translate the term ids of the vectors
+     * @return a map with the signature of each requirement
+     */
+    public static Map<String, long[]> computeSignatures(Map<String, SparseVector> docs, TermDictionary dictionary) {
+        long[][] hyperplanes = new long[dictionary.size()][];
+        Map<String, long[]> result = new HashMap<>();
+        for (Map.Entry<String, SparseVector> entry : docs.entrySet()) {
+            result.put(entry.getKey(), computeSignature(entry.getValue(), dictionary, hyperplanes));
+        }
+        return result;
+    }
+
+    /**
+     * Computes the signatures of the input vectors that do not have one yet (or have one with a different size)
+     * @param docs the tf-idf vector of each requirement
+     * @param dictionary the dictionary used to translate the term ids of the vectors
+     * @param signatures the signatures already computed, the missing ones are added to it
+     */
+    public static void completeSignatures(Map<String, SparseVector> docs, TermDictionary dictionary, Map<String, long[]> signatures) {
+        long[][] hyperplanes = null;
+        for (Map.Entry<String, SparseVector> entry : docs.entrySet()) {
+            long[] signature = signatures.get(entry.getKey());
+            if (signature == null || signature.length != SIGNATURE_LONGS) {
+                if (hyperplanes == null) hyperplanes = new long[dictionary.size()][];
+                signatures.put(entry.getKey(), computeSignature(entry.getValue(), dictionary, hyperplanes));
+            }
+        }
+        signatures.keySet().retainAll(docs.keySet());
+    }
+
+    /**
+     * Returns the bits of the input band of the signature
+     */
+    public static int getBand(long[] signature, int band) {
+        int first = band * BAND_BITS;
+        int word = first >>> 6;
+        int offset = first & 63;
+        long bits = signature[word] >>> offset;
+        if (offset + BAND_BITS > 64) bits |= signature[word + 1] << (64 - offset);
+        return (int) (bits & ((1L << BAND_BITS) - 1));
+    }
+
+    /*
+    Private methods
+     */
+
+    /**
+     * The sign of the term in each hyperplane, one bit per hyperplane
+     */
+    private static long[] computeHyperplanes(TermDictionary dictionary, int termId) {
+        long seed = dictionary.getTerm(termId).hashCode();
+        long[] bits = new long[SIGNATURE_LONGS];
+        for (int j = 0; j < bits.length; ++j) {
+            seed += GOLDEN_GAMMA;
+            bits[j] = mix(seed);
+        }
+        return bits;
+    }
+
+    /**
+     * @param hyperplanes the signs of each term (indexed by term id), the ones of the terms that are not computed yet are
+     *                    null and are added to it (only the terms used by the vectors are computed)
+     */
+    private static long[] computeSignature(SparseVector vector, TermDictionary dictionary, long[][] hyperplanes) {
+        return computeSignature(vector, termId -> {
+            long[] bits = hyperplanes[termId];
+            if (bits == null) {
+                bits = computeHyperplanes(dictionary, termId);
+                hyperplanes[termId] = bits;
+            }
+            return bits;
+        });
+    }
+
+    private static long[] computeSignature(SparseVector vector, IntFunction<long[]> hyperplanes) {
+        double[] projections = new double[SIGNATURE_BITS];
+        int[] termIds = vector.getTermIds();
+        double[] weights = vector.getWeights();
+        //the weight with the sign of each bit value, adding -weight gives the same result as subtracting weight but
+        //the loop does not need a branch
+        double[] signedWeights = new double[2];
+        for (int i = 0; i < termIds.length; ++i) {
+            long[] bits = hyperplanes.apply(termIds[i]);
+            signedWeights[0] = -weights[i];
+            signedWeights[1] = weights[i];
+            for (int j = 0; j < SIGNATURE_BITS; ++j) {
+                projections[j] += signedWeights[(int) ((bits[j >>> 6] >>> (j & 63)) & 1)];
+            }
+        }
+        long[] signature = new long[SIGNATURE_LONGS];
+        for (int j = 0; j < SIGNATURE_BITS; ++j) {
+            if (projections[j] > 0) signature[j >>> 6] |= 1L << (j & 63);
+        }
+        return signature;
+    }
+
+    /**
+     * SplitMix64 finalizer
+     */
+    private static long mix(long value) {
+        long z = value;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -1,57 +1,112 @@
 package upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf;
 
+import upc.similarity.compareapi.algorithms.preprocess.RequirementsTerms;
 import upc.similarity.compareapi.entity.exception.InternalErrorException;
 import upc.similarity.compareapi.util.Logger;
 import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityModel;
 import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityAlgorithm;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityScoresExecutor;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityScoresSink;
+import upc.similarity.compareapi.config.Constants;
 
 import java.util.*;
 
 public class SimilarityAlgorithmTfIdf implements SimilarityAlgorithm {
 
+    /**
+     * Computes the score of a pair of requirements found by the inverted index. It must return 0 when the two vectors do not
+     * share any term, because these pairs are only visited when the threshold is not positive. The pairs with a score lower
+     * than minScore are discarded, so the scorer can return any value lower than minScore for them instead of computing
+     * their exact score
+     */
+    public interface PairScorer {
+        double score(String requirementIdA, SparseVector vectorA, String requirementIdB, SparseVector vectorB, double dotProduct, double minScore);
+    }
+
     private CosineSimilarityTfIdf cosineSimilarityTfIdf = CosineSimilarityTfIdf.getInstance();
-    private double cutOffValue;
-    private boolean cutOffDummy;
-    private boolean smoothingActive;
+    private TfIdfWeighting weighting;
+    private boolean lazyIdf;
 
     public SimilarityAlgorithmTfIdf(double cutOffValue, boolean cutOffDummy, boolean smoothingActive) {
-        this.cutOffValue = cutOffValue;
-        this.cutOffDummy = cutOffDummy;
-        this.smoothingActive = smoothingActive;
+        this(cutOffValue, cutOffDummy, smoothingActive, false);
     }
 
+    /**
+     * @param lazyIdf if true the models only save the raw term frequencies and compute the idf values when they are read
+     *                (see SimilarityModelTfIdfLazy), so the cost of adding or deleting requirements does not depend on
+     *                the size of the model
+     */
+    public SimilarityAlgorithmTfIdf(double cutOffValue, boolean cutOffDummy, boolean smoothingActive, boolean lazyIdf) {
+        this.weighting = new TfIdfWeighting(cutOffValue, cutOffDummy, smoothingActive);
+        this.lazyIdf = lazyIdf;
+    }
 
-    @Override
-    public SimilarityModelTfIdf buildModel(Map<String, List<String>> requirements) {
-        //Initialization
-        double cutOffParameter = computeCutOffParameter(requirements.size());
-        boolean smoothing = checkIfSmoothing(requirements.size());
-        Logger.getInstance().showInfoMessage("Cutoff: " + cutOffParameter);
 
-        Map<String,Map<String, Double>> tfIdfValues = new HashMap<>();
-        Map<String, Integer> frequencyValues = new HashMap<>();
-        List<Map<String, Integer>> tfValues = new ArrayList<>();
+    /**
+     * The requirements are processed in parallel (see computeTf), the model is the same as the one built sequentially
+     */
+    @Override
+    public SimilarityModelTfIdf buildModel(Map<String, List<String>> requirements) throws InternalErrorException {
+        TermDictionary dictionary = createDictionary();
+        List<String> ids = new ArrayList<>(requirements.size());
+        List<List<String>> tokens = new ArrayList<>(requirements.size());
+        for (Map.Entry<String,List<String>> requirement : requirements.entrySet()) {
+            ids.add(requirement.getKey());
+            tokens.add(requirement.getValue());
+        }
 
         //Computes frequencies of each word in all requirements and in each requirement
-        for(Map.Entry<String,List<String>> requirement : requirements.entrySet()) {
-            tfValues.add(tf(requirement.getValue(),frequencyValues));
-        }
+        int[][][] tfValues = computeTf(tokens, dictionary);
 
-        //Computes the tf_idf vectors of each requirement
-        int i = 0;
-        for (Map.Entry<String,List<String>> requirement : requirements.entrySet()) {
-            HashMap<String, Double> aux = new HashMap<>();
-            for (String token : requirement.getValue()) {
-                double idf = idf(requirements.size(), frequencyValues.get(token), smoothing);
-                int tf = tfValues.get(i).get(token);
-                double tfidf = tf * idf;
-                if (tfidf>=cutOffParameter) aux.put(token, tfidf);
+        if (lazyIdf) return buildLazyModel(ids, tfValues, dictionary);
+        return buildModel(ids, tfValues, dictionary);
+    }
+
+    /**
+     * Same as buildModel with the tokens, the terms are added to the dictionary in order of id (see computeTf). The model
+     * is equivalent to the one built with the tokens, only the ids of the terms can be different
+     */
+    @Override
+    public SimilarityModelTfIdf buildModel(RequirementsTerms requirementsTerms) throws InternalErrorException {
+        TermDictionary dictionary = createDictionary();
+        int[][][] tfValues = computeTf(requirementsTerms, dictionary);
+
+        if (lazyIdf) return buildLazyModel(requirementsTerms.getRequirementIds(), tfValues, dictionary);
+        return buildModel(requirementsTerms.getRequirementIds(), tfValues, dictionary);
+    }
+
+    /**
+     * The lazy models are only built in memory, because they save the raw frequencies instead of the tf-idf vectors
+     */
+    @Override
+    public StreamingBuildTfIdf createStreamingBuild() throws InternalErrorException {
+        if (lazyIdf) return null;
+        return new StreamingBuildTfIdf(this, createDictionary());
+    }
+
+    /**
+     * Computes the tf-idf vectors of new requirements without adding them to a model. The dictionary is not modified: the
+     * terms that are not inside it are ignored and the idf values are computed with its current frequencies
+     * @param requirements a map with each requirement id as key and the preprocessed tokens as value
+     * @param dictionary the dictionary of the corpus
+     * @param corpusSize the number of requirements counted by the frequencies of the dictionary
+     * @return a map with the tf-idf vector of each new requirement
+     */
+    public Map<String, SparseVector> computeTfIdfVectors(Map<String, List<String>> requirements, TermDictionary dictionary, int corpusSize) {
+        double cutOffParameter = computeCutOffParameter(corpusSize);
+        boolean smoothing = checkIfSmoothing(corpusSize);
+        Map<String, SparseVector> result = new HashMap<>();
+        for (Map.Entry<String, List<String>> requirement : requirements.entrySet()) {
+            List<String> tokens = requirement.getValue();
+            int[] ids = new int[tokens.size()];
+            int size = 0;
+            for (String token : tokens) {
+                int termId = dictionary.getId(token);
+                if (termId != -1) ids[size++] = termId;
             }
-            tfIdfValues.put(requirement.getKey(),aux);
-            ++i;
+            result.put(requirement.getKey(), tfIdf(countTerms(Arrays.copyOf(ids, size)), dictionary, corpusSize, cutOffParameter, smoothing));
         }
-
-        return new SimilarityModelTfIdf(tfIdfValues,frequencyValues);
+        return result;
     }
 
     @Override
@@ -65,46 +120,206 @@ public class SimilarityAlgorithmTfIdf implements SimilarityAlgorithm {
     }
 
 
+    @Override
+    public void computeSimilarities(SimilarityModel similarityModel, String requirementId, List<String> candidates, double threshold, SimilarityScoresSink sink) throws InternalErrorException {
+        SimilarityModelTfIdf modelTfIdf;
+        try {
+            modelTfIdf = (SimilarityModelTfIdf) similarityModel;
+        } catch (ClassCastException e) {
+            throw new InternalErrorException("Error while computing similarity with tf_idf algorithm without a tf_idf model");
+        }
+        Map<String, SparseVector> docs = modelTfIdf.getDocs();
+        SparseVector vector = docs.get(requirementId);
+        for (String candidate : candidates) {
+            SparseVector candidateVector = docs.get(candidate);
+            if (candidateVector != null && !requirementId.equals(candidate)) {
+                double score = cosineSimilarityTfIdf.compute(vector, candidateVector, cosineSimilarityTfIdf.dotProduct(vector, candidateVector));
+                if (score >= threshold) sink.addScore(requirementId, candidate, score);
+            }
+        }
+    }
+
+    @Override
+    public void computeProjectSimilarities(SimilarityModel similarityModel, List<String> requirements, double threshold, SimilarityScoresSink sink) throws InternalErrorException {
+        SimilarityModelTfIdf modelTfIdf;
+        try {
+            modelTfIdf = (SimilarityModelTfIdf) similarityModel;
+        } catch (ClassCastException e) {
+            throw new InternalErrorException("Error while computing similarity with tf_idf algorithm without a tf_idf model");
+        }
+        //the bounds of the join are only valid with non-negative weights (e.g. the models saved before the idf values
+        //were clamped can have negative ones), otherwise all the candidates found by the inverted index are verified
+        if (hasNegativeWeights(modelTfIdf, requirements)) computeProjectSimilarities(modelTfIdf, requirements, threshold, cosineScorer(), sink);
+        else computeProjectJoin(modelTfIdf, requirements, threshold, sink);
+    }
+
+    @Override
+    public void computeReqProjectSimilarities(SimilarityModel similarityModel, List<String> requirementsToCompare, List<String> projectRequirements, boolean include, double threshold, SimilarityScoresSink sink) throws InternalErrorException {
+        SimilarityModelTfIdf modelTfIdf;
+        try {
+            modelTfIdf = (SimilarityModelTfIdf) similarityModel;
+        } catch (ClassCastException e) {
+            throw new InternalErrorException("Error while computing similarity with tf_idf algorithm without a tf_idf model");
+        }
+        //see computeProjectSimilarities
+        if (hasNegativeWeights(modelTfIdf, requirementsToCompare) || hasNegativeWeights(modelTfIdf, projectRequirements)) computeReqProjectSimilarities(modelTfIdf, requirementsToCompare, projectRequirements, include, threshold, cosineScorer(), sink);
+        else computeReqProjectJoin(modelTfIdf, requirementsToCompare, projectRequirements, include, threshold, sink);
+    }
+
+    @Override
+    public void computeApproximateReqProjectSimilarities(SimilarityModel similarityModel, List<String> requirementsToCompare, List<String> projectRequirements, boolean include, double threshold, SimilarityScoresSink sink) throws InternalErrorException {
+        SimilarityModelTfIdf modelTfIdf;
+        try {
+            modelTfIdf = (SimilarityModelTfIdf) similarityModel;
+        } catch (ClassCastException e) {
+            throw new InternalErrorException("Error while computing similarity with tf_idf algorithm without a tf_idf model");
+        }
+        computeApproximateReqProjectSimilarities(modelTfIdf, requirementsToCompare, projectRequirements, include, threshold, cosineScorer(), sink);
+    }
+
+    /**
+     * Same as computeProjectSimilarities but with a custom pair scorer. Instead of comparing all the pairs, the candidates
+     * of each requirement are found with an inverted index over the project
+     */
+    public void computeProjectSimilarities(SimilarityModelTfIdf modelTfIdf, List<String> requirements, double threshold, PairScorer scorer, SimilarityScoresSink sink) throws InternalErrorException {
+        InvertedIndexTfIdf index = new InvertedIndexTfIdf(modelTfIdf.getDictionary().size());
+        Map<String, SparseVector> docs = modelTfIdf.getDocs();
+        for (String requirement : requirements) {
+            SparseVector vector = docs.get(requirement);
+            if (vector != null) index.addRequirement(requirement, vector);
+        }
+
+        int size = index.size();
+        executor().executeScores(projectCosts(size), (from, to, blockSink) -> {
+            InvertedIndexTfIdf blockIndex = index.copy();
+            for (int i = from; i < to; ++i) {
+                computeQuery(blockIndex, blockIndex.getId(i), blockIndex.getVector(i), i + 1, size, threshold, scorer, blockSink);
+            }
+            blockIndex.release();
+        }, sink);
+    }
+
+    /**
+     * Same as computeReqProjectSimilarities but with a custom pair scorer. Instead of comparing all the pairs, the candidates
+     * of each requirement are found with an inverted index over the project
+     */
+    public void computeReqProjectSimilarities(SimilarityModelTfIdf modelTfIdf, List<String> requirementsToCompare, List<String> projectRequirements, boolean include, double threshold, PairScorer scorer, SimilarityScoresSink sink) throws InternalErrorException {
+        InvertedIndexTfIdf index = new InvertedIndexTfIdf(modelTfIdf.getDictionary().size());
+        Map<String, SparseVector> docs = modelTfIdf.getDocs();
+        for (String requirement : projectRequirements) {
+            SparseVector vector = docs.get(requirement);
+            if (vector != null) index.addRequirement(requirement, vector);
+        }
+        int projectSize = index.size();
+
+        List<String> queries = new ArrayList<>();
+        for (String requirement : requirementsToCompare) {
+            if (docs.containsKey(requirement)) queries.add(requirement);
+        }
+        //each included requirement is only compared with the requirements placed before it in the index
+        if (include) {
+            for (String requirement : queries) index.addRequirement(requirement, docs.get(requirement));
+        }
+
+        executor().executeScores(reqProjectCosts(queries.size(), projectSize, include), (from, to, blockSink) -> {
+            InvertedIndexTfIdf blockIndex = index.copy();
+            for (int i = from; i < to; ++i) {
+                String requirement = queries.get(i);
+                computeQuery(blockIndex, requirement, docs.get(requirement), 0, include ? projectSize + i : projectSize, threshold, scorer, blockSink);
+            }
+            blockIndex.release();
+        }, sink);
+    }
+
+    /**
+     * Same as computeApproximateReqProjectSimilarities but with a custom pair scorer. The candidates of each requirement
+     * are the requirements of the project that share at least one band of their SimHash signatures with it (see LshIndexTfIdf)
+     */
+    public void computeApproximateReqProjectSimilarities(SimilarityModelTfIdf modelTfIdf, List<String> requirementsToCompare, List<String> projectRequirements, boolean include, double threshold, PairScorer scorer, SimilarityScoresSink sink) throws InternalErrorException {
+        LshIndexTfIdf index = new LshIndexTfIdf();
+        Map<String, SparseVector> docs = modelTfIdf.getDocs();
+        Map<String, long[]> signatures = modelTfIdf.getSignatures();
+        for (String requirement : projectRequirements) {
+            SparseVector vector = docs.get(requirement);
+            if (vector != null) index.addRequirement(requirement, vector, signatures.get(requirement));
+        }
+        int projectSize = index.size();
+
+        List<String> queries = new ArrayList<>();
+        for (String requirement : requirementsToCompare) {
+            if (docs.containsKey(requirement)) queries.add(requirement);
+        }
+        //each included requirement is only compared with the requirements placed before it in the index
+        if (include) {
+            for (String requirement : queries) index.addRequirement(requirement, docs.get(requirement), signatures.get(requirement));
+        }
+        index.build();
+
+        executor().executeScores(reqProjectCosts(queries.size(), projectSize, include), (from, to, blockSink) -> {
+            LshIndexTfIdf blockIndex = index.copy();
+            for (int i = from; i < to; ++i) {
+                String requirement = queries.get(i);
+                SparseVector vector = docs.get(requirement);
+                int numberCandidates = blockIndex.findCandidates(signatures.get(requirement), include ? projectSize + i : projectSize);
+                for (int j = 0; j < numberCandidates; ++j) {
+                    int position = blockIndex.getCandidate(j);
+                    String candidate = blockIndex.getId(position);
+                    if (!requirement.equals(candidate)) {
+                        SparseVector candidateVector = blockIndex.getVector(position);
+                        double score = scorer.score(requirement, vector, candidate, candidateVector, cosineSimilarityTfIdf.dotProduct(vector, candidateVector), minScore(threshold, blockSink));
+                        if (score >= threshold) blockSink.addScore(requirement, candidate, score);
+                    }
+                }
+            }
+        }, sink);
+    }
+
     @Override
     public void addRequirements(SimilarityModel similarityModel, Map<String,List<String>> requirements) throws InternalErrorException {
+        if (similarityModel instanceof SimilarityModelTfIdfLazy) {
+            addLazyRequirements((SimilarityModelTfIdfLazy) similarityModel, requirements);
+            return;
+        }
         try {
             //Initialization
             SimilarityModelTfIdf modelTfIdf = (SimilarityModelTfIdf) similarityModel;
-            Map<String, Integer> newCorpusFrequency = modelTfIdf.getCorpusFrequency();
-            Map<String, Integer> oldCorpusFrequency = cloneCorpusFrequency(newCorpusFrequency);
-            Map<String, Map<String, Double>> docs = modelTfIdf.getDocs();
-
-            int oldSize = docs.size();
-            int finalSize = oldSize + requirements.size();
-            double cutOffParameter = computeCutOffParameter(finalSize);
-            boolean smoothing = checkIfSmoothing(finalSize);
+            TermDictionary dictionary = modelTfIdf.getDictionary();
+            int[] oldCorpusFrequency = dictionary.cloneFrequencies();
 
             //Computes frequencies of the new requirements and updates the total frequencies of each word in all the requirements
-            List<Map<String, Integer>> wordBagArray = new ArrayList<>();
+            List<String> ids = new ArrayList<>();
+            List<int[][]> wordBagArray = new ArrayList<>();
             for (Map.Entry<String, List<String>> requirement : requirements.entrySet()) {
-                List<String> tokens = requirement.getValue();
-                wordBagArray.add(tf(tokens, newCorpusFrequency));
+                ids.add(requirement.getKey());
+                wordBagArray.add(tf(requirement.getValue(), dictionary));
             }
 
-            //Recomputes the idf values of the old requirements
-            recomputeIdfValues(docs, oldCorpusFrequency, newCorpusFrequency, oldSize, finalSize, smoothing);
+            addTfValues(modelTfIdf, ids, wordBagArray, oldCorpusFrequency);
 
-            //Computes the tf_idf vectors of the new requirements
-            int i = 0;
-            for (Map.Entry<String, List<String>> requirement : requirements.entrySet()) {
-                String id = requirement.getKey();
-                List<String> tokens = requirement.getValue();
-                HashMap<String, Double> aux = new HashMap<>();
-                for (String s : tokens) {
-                    double idf = idf(finalSize, newCorpusFrequency.get(s), smoothing);
-                    Integer tf = wordBagArray.get(i).get(s);
-                    double tfidf = idf * tf;
-                    if (tfidf >= cutOffParameter) aux.put(s, tfidf);
-                }
-                docs.put(id, aux);
-                ++i;
-            }
+        } catch (ClassCastException e) {
+            throw new InternalErrorException("Error while adding requirements with tf_idf algorithm without a tf_idf model");
+        }
+    }
 
+    /**
+     * Same as addRequirements with the tokens, the new terms are added to the dictionary in order of id (see computeTf)
+     */
+    @Override
+    public void addRequirements(SimilarityModel similarityModel, RequirementsTerms requirementsTerms) throws InternalErrorException {
+        List<String> ids = requirementsTerms.getRequirementIds();
+        if (similarityModel instanceof SimilarityModelTfIdfLazy) {
+            SimilarityModelTfIdfLazy modelTfIdf = (SimilarityModelTfIdfLazy) similarityModel;
+            for (String id : ids) removeLazyRequirement(modelTfIdf, id);
+            int[][][] tfValues = computeTf(requirementsTerms, modelTfIdf.getDictionary());
+            for (int i = 0; i < tfValues.length; ++i) modelTfIdf.putRequirement(ids.get(i), rawTf(tfValues[i]));
+            return;
+        }
+        try {
+            SimilarityModelTfIdf modelTfIdf = (SimilarityModelTfIdf) similarityModel;
+            TermDictionary dictionary = modelTfIdf.getDictionary();
+            int[] oldCorpusFrequency = dictionary.cloneFrequencies();
+            int[][][] tfValues = computeTf(requirementsTerms, dictionary);
+            addTfValues(modelTfIdf, ids, Arrays.asList(tfValues), oldCorpusFrequency);
         } catch (ClassCastException e) {
             throw new InternalErrorException("Error while adding requirements with tf_idf algorithm without a tf_idf model");
         }
@@ -112,12 +327,16 @@ public class SimilarityAlgorithmTfIdf implements SimilarityAlgorithm {
 
     @Override
     public void deleteRequirements(SimilarityModel similarityModel, List<String> requirements) throws InternalErrorException {
+        if (similarityModel instanceof SimilarityModelTfIdfLazy) {
+            deleteLazyRequirements((SimilarityModelTfIdfLazy) similarityModel, requirements);
+            return;
+        }
         try {
             //Initialization
             SimilarityModelTfIdf modelTfIdf = (SimilarityModelTfIdf) similarityModel;
-            Map<String, Map<String, Double>> docs = modelTfIdf.getDocs();
-            Map<String, Integer> newCorpusFrequency = modelTfIdf.getCorpusFrequency();
-            Map<String, Integer> oldCorpusFrequency = cloneCorpusFrequency(newCorpusFrequency);
+            Map<String, SparseVector> docs = modelTfIdf.getDocs();
+            TermDictionary dictionary = modelTfIdf.getDictionary();
+            int[] oldCorpusFrequency = dictionary.cloneFrequencies();
 
             int oldSize = docs.size();
             int newSize = oldSize;
@@ -128,86 +347,496 @@ public class SimilarityAlgorithmTfIdf implements SimilarityAlgorithm {
                 //Checks if the requirement is valid
                 if (docs.containsKey(id)) { //problem: if the requirement had this word before applying cutoff parameter
                     --newSize;
-                    Map<String, Double> words = docs.get(id);
+                    SparseVector words = docs.get(id);
                     //Updates the total frequencies of each word
-                    for (String word : words.keySet()) {
-                        int value = newCorpusFrequency.get(word);
-                        if (value == 1) newCorpusFrequency.remove(word);
-                        else newCorpusFrequency.put(word, value - 1);
+                    for (int word : words.getTermIds()) {
+                        dictionary.setFrequency(word, dictionary.getFrequency(word) - 1);
                     }
                     docs.remove(id);
                 }
             }
-            recomputeIdfValues(docs, oldCorpusFrequency, newCorpusFrequency, oldSize, newSize, smoothing);
+            recomputeIdfValues(docs, oldCorpusFrequency, dictionary, oldSize, newSize, smoothing);
+
+            //Deletes the words that are not used anymore
+            int[] newTermIds = dictionary.removeUnusedTerms();
+            if (newTermIds != null) {
+                for (SparseVector vector : docs.values()) vector.remapTermIds(newTermIds);
+            }
+
+            //Discards the signatures because the idf values of all the requirements have changed
+            modelTfIdf.updateSignatures();
 
         } catch (ClassCastException e) {
             throw new InternalErrorException("Error while deleting requirements with tf_idf algorithm without a tf_idf model");
         }
     }
 
+    /**
+     * Creates the empty dictionary of a new model. The subclasses can use other ways of assigning the term ids (see
+     * HashedTermDictionary)
+     */
+    protected TermDictionary createDictionary() {
+        return new TermDictionary();
+    }
+
 
     /*
     Private methods
      */
 
+    /**
+     * Computes the tf-idf vectors of each requirement in parallel
+     * @param tfValues the output of tf for each requirement, the frequencies of the dictionary are already updated
+     */
+    private SimilarityModelTfIdf buildModel(List<String> ids, int[][][] tfValues, TermDictionary dictionary) throws InternalErrorException {
+        //Initialization
+        int size = ids.size();
+        double cutOffParameter = computeCutOffParameter(size);
+        boolean smoothing = checkIfSmoothing(size);
+        Logger.getInstance().showInfoMessage("Cutoff: " + cutOffParameter);
+
+        //Computes the tf_idf vectors of each requirement (the SimHash signatures are computed when they are requested)
+        SparseVector[] vectors = new SparseVector[size];
+        buildExecutor().execute(tfCosts(tfValues), (from, to) -> () -> {
+            for (int i = from; i < to; ++i) vectors[i] = tfIdf(tfValues[i],dictionary,size,cutOffParameter,smoothing);
+            return null;
+        }, result -> {});
+
+        Map<String, SparseVector> tfIdfValues = new HashMap<>();
+        for (int i = 0; i < size; ++i) tfIdfValues.put(ids.get(i),vectors[i]);
 
-    private Map<String, Integer> cloneCorpusFrequency(Map<String, Integer> corpusFrequency) {
-        Map<String, Integer> oldCorpusFrequency = new HashMap<>();
-        for (Map.Entry<String, Integer> entry : corpusFrequency.entrySet()) {
-            String word = entry.getKey();
-            int value = entry.getValue();
-            oldCorpusFrequency.put(word, value);
+        return new SimilarityModelTfIdf(tfIdfValues,dictionary);
+    }
+
+    private SimilarityModelTfIdfLazy buildLazyModel(List<String> ids, int[][][] tfValues, TermDictionary dictionary) {
+        Map<String, SparseVector> frequencies = new HashMap<>();
+        for (int i = 0; i < tfValues.length; ++i) frequencies.put(ids.get(i), rawTf(tfValues[i]));
+        return new SimilarityModelTfIdfLazy(frequencies, dictionary, weighting);
+    }
+
+    /**
+     * Adds the new requirements to the model and recomputes the idf values of the old ones
+     * @param tfValues the output of tf for each new requirement, the frequencies of the dictionary are already updated
+     * @param oldCorpusFrequency the frequencies of the dictionary before adding the new requirements
+     */
+    private void addTfValues(SimilarityModelTfIdf modelTfIdf, List<String> ids, List<int[][]> tfValues, int[] oldCorpusFrequency) {
+        TermDictionary dictionary = modelTfIdf.getDictionary();
+        Map<String, SparseVector> docs = modelTfIdf.getDocs();
+
+        int oldSize = docs.size();
+        int finalSize = oldSize + ids.size();
+        double cutOffParameter = computeCutOffParameter(finalSize);
+        boolean smoothing = checkIfSmoothing(finalSize);
+
+        //Recomputes the idf values of the old requirements
+        recomputeIdfValues(docs, oldCorpusFrequency, dictionary, oldSize, finalSize, smoothing);
+
+        //Computes the tf_idf vectors of the new requirements
+        for (int i = 0; i < ids.size(); ++i) {
+            docs.put(ids.get(i), tfIdf(tfValues.get(i), dictionary, finalSize, cutOffParameter, smoothing));
+        }
+
+        //Discards the signatures because the idf values of all the requirements have changed
+        modelTfIdf.updateSignatures();
+    }
+
+    /**
+     * Only the frequencies of the terms of the new requirements are updated, the idf values are computed when the model is read
+     */
+    private void addLazyRequirements(SimilarityModelTfIdfLazy modelTfIdf, Map<String, List<String>> requirements) {
+        TermDictionary dictionary = modelTfIdf.getDictionary();
+        for (Map.Entry<String, List<String>> requirement : requirements.entrySet()) {
+            removeLazyRequirement(modelTfIdf, requirement.getKey());
+            modelTfIdf.putRequirement(requirement.getKey(), rawTf(tf(requirement.getValue(), dictionary)));
+        }
+    }
+
+    private void deleteLazyRequirements(SimilarityModelTfIdfLazy modelTfIdf, List<String> requirements) {
+        for (String id : requirements) removeLazyRequirement(modelTfIdf, id);
+
+        //the dictionary is only compacted when most of its terms are not used, because all the term ids change
+        TermDictionary dictionary = modelTfIdf.getDictionary();
+        int unused = 0;
+        for (int i = 0; i < dictionary.size(); ++i) {
+            if (dictionary.getFrequency(i) == 0) ++unused;
+        }
+        if (unused * 2 > dictionary.size()) {
+            int[] newTermIds = dictionary.removeUnusedTerms();
+            if (newTermIds != null) modelTfIdf.remapTerms(newTermIds);
+        }
+    }
+
+    private void removeLazyRequirement(SimilarityModelTfIdfLazy modelTfIdf, String id) {
+        SparseVector vector = modelTfIdf.removeRequirement(id);
+        if (vector != null) {
+            TermDictionary dictionary = modelTfIdf.getDictionary();
+            for (int word : vector.getTermIds()) dictionary.setFrequency(word, dictionary.getFrequency(word) - 1);
+        }
+    }
+
+
+    private void computeProjectJoin(SimilarityModelTfIdf modelTfIdf, List<String> requirements, double threshold, SimilarityScoresSink sink) throws InternalErrorException {
+        SimilarityJoinTfIdf join = new SimilarityJoinTfIdf(modelTfIdf.getDictionary(), threshold);
+        Map<String, SparseVector> docs = modelTfIdf.getDocs();
+        for (String requirement : requirements) {
+            SparseVector vector = docs.get(requirement);
+            if (vector != null) join.addRequirement(requirement, vector);
+        }
+
+        int size = join.size();
+        executor().executeScores(projectCosts(size), (from, to, blockSink) -> {
+            SimilarityJoinTfIdf blockJoin = join.copy();
+            for (int i = from; i < to; ++i) {
+                blockJoin.computeQuery(blockJoin.getId(i), blockJoin.getVector(i), i + 1, size, blockSink);
+            }
+            blockJoin.release();
+        }, sink);
+    }
+
+    private void computeReqProjectJoin(SimilarityModelTfIdf modelTfIdf, List<String> requirementsToCompare, List<String> projectRequirements, boolean include, double threshold, SimilarityScoresSink sink) throws InternalErrorException {
+        SimilarityJoinTfIdf join = new SimilarityJoinTfIdf(modelTfIdf.getDictionary(), threshold);
+        Map<String, SparseVector> docs = modelTfIdf.getDocs();
+        for (String requirement : projectRequirements) {
+            SparseVector vector = docs.get(requirement);
+            if (vector != null) join.addRequirement(requirement, vector);
+        }
+        int projectSize = join.size();
+
+        List<String> queries = new ArrayList<>();
+        for (String requirement : requirementsToCompare) {
+            if (docs.containsKey(requirement)) queries.add(requirement);
+        }
+        if (include) {
+            for (String requirement : queries) join.addRequirement(requirement, docs.get(requirement));
+        }
+
+        if (include) {
+            executor().executeScores(reqProjectCosts(queries.size(), projectSize, true), (from, to, blockSink) -> {
+                SimilarityJoinTfIdf blockJoin = join.copy();
+                for (int i = from; i < to; ++i) {
+                    String requirement = queries.get(i);
+                    blockJoin.computeQuery(requirement, docs.get(requirement), 0, projectSize + i, blockSink);
+                }
+                blockJoin.release();
+            }, sink);
+        } else {
+            //all the queries are compared with the whole project, so they are computed in groups of BLOCK_QUERIES queries
+            //(the executor splits the groups, not the queries, so each block of the index is complete)
+            int groupSize = InvertedIndexTfIdf.BLOCK_QUERIES;
+            executor().executeScores(groupCosts(queries.size(), projectSize, groupSize), (from, to, blockSink) -> {
+                SimilarityJoinTfIdf blockJoin = join.copy();
+                List<String> blockQueries = queries.subList(from * groupSize, Math.min(queries.size(), to * groupSize));
+                List<SparseVector> blockVectors = new ArrayList<>();
+                for (String requirement : blockQueries) blockVectors.add(docs.get(requirement));
+                blockJoin.computeQueries(blockQueries, blockVectors, projectSize, blockSink);
+                blockJoin.release();
+            }, sink);
+        }
+    }
+
+    private PairScorer cosineScorer() {
+        return (idA, vectorA, idB, vectorB, dotProduct, minScore) -> cosineSimilarityTfIdf.compute(vectorA, vectorB, dotProduct);
+    }
+
+    private boolean hasNegativeWeights(SimilarityModelTfIdf modelTfIdf, List<String> requirements) {
+        Map<String, SparseVector> docs = modelTfIdf.getDocs();
+        for (String requirement : requirements) {
+            SparseVector vector = docs.get(requirement);
+            if (vector != null) {
+                for (double weight : vector.getWeights()) {
+                    if (weight < 0) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private SimilarityScoresExecutor executor() {
+        return Constants.getInstance().getSimilarityScoresExecutor();
+    }
+
+    private SimilarityScoresExecutor buildExecutor() {
+        return Constants.getInstance().getModelBuildExecutor();
+    }
+
+    private long[] tfCosts(int[][][] tfValues) {
+        long[] costs = new long[tfValues.length];
+        for (int i = 0; i < costs.length; ++i) costs[i] = tfValues[i][0].length;
+        return costs;
+    }
+
+    private long[] tokensCosts(List<List<String>> tokens) {
+        long[] costs = new long[tokens.size()];
+        for (int i = 0; i < costs.length; ++i) costs[i] = tokens.get(i).size();
+        return costs;
+    }
+
+    /**
+     * In a project each requirement is compared with the requirements placed after it
+     */
+    private long[] projectCosts(int size) {
+        long[] costs = new long[size];
+        for (int i = 0; i < size; ++i) costs[i] = size - i - 1L;
+        return costs;
+    }
+
+    private long[] reqProjectCosts(int numberQueries, int projectSize, boolean include) {
+        long[] costs = new long[numberQueries];
+        for (int i = 0; i < numberQueries; ++i) costs[i] = include ? projectSize + (long) i : projectSize;
+        return costs;
+    }
+
+    private long[] groupCosts(int numberQueries, int projectSize, int groupSize) {
+        long[] costs = new long[(numberQueries + groupSize - 1) / groupSize];
+        for (int i = 0; i < costs.length; ++i) costs[i] = (long) projectSize * (Math.min(numberQueries, (i + 1) * groupSize) - i * groupSize);
+        return costs;
+    }
+
+    private void computeQuery(InvertedIndexTfIdf index, String requirement, SparseVector vector, int from, int to, double threshold, PairScorer scorer, SimilarityScoresSink sink) throws InternalErrorException {
+        int numberCandidates = index.accumulate(vector, from, to);
+        if (threshold > 0) {
+            for (int i = 0; i < numberCandidates; ++i) {
+                computePair(index, requirement, vector, index.getCandidate(i), threshold, scorer, sink);
+            }
+        } else {
+            //the pairs without common terms have score 0, so they must be returned too (unless the sink ignores them)
+            int next = 0;
+            for (int position = from; position < to; ++position) {
+                if (next < numberCandidates && index.getCandidate(next) == position) {
+                    computePair(index, requirement, vector, position, threshold, scorer, sink);
+                    ++next;
+                } else if (0.0 > sink.getScoreBound()) computePair(index, requirement, vector, position, threshold, scorer, sink);
+            }
+        }
+    }
+
+    private void computePair(InvertedIndexTfIdf index, String requirement, SparseVector vector, int position, double threshold, PairScorer scorer, SimilarityScoresSink sink) throws InternalErrorException {
+        String candidate = index.getId(position);
+        if (!requirement.equals(candidate)) {
+            double score = scorer.score(requirement, vector, candidate, index.getVector(position), index.getDotProduct(position), minScore(threshold, sink));
+            if (score >= threshold) sink.addScore(requirement, candidate, score);
+        }
+    }
+
+    /**
+     * The pairs with a lower score are not returned or are ignored by the sink (see SimilarityScoresSink.getScoreBound)
+     */
+    private double minScore(double threshold, SimilarityScoresSink sink) {
+        return Math.max(threshold, sink.getScoreBound());
+    }
+
+    double computeCutOffParameter(long totalSize) {
+        return weighting.computeCutOffParameter(totalSize);
+    }
+
+    /**
+     * Computes the frequency of each word of the requirement and updates the total frequencies of the dictionary
+     * @return two arrays, the first one with the ids of the words (sorted and not repeated) and the second one with their frequencies
+     */
+    int[][] tf(List<String> tokens, TermDictionary dictionary) {
+        int[] ids = new int[tokens.size()];
+        for (int i = 0; i < ids.length; ++i) ids[i] = dictionary.addTerm(tokens.get(i));
+        int[][] result = countTerms(ids);
+        for (int termId : result[0]) dictionary.setFrequency(termId, dictionary.getFrequency(termId) + 1);
+        return result;
+    }
+
+    /**
+     * Same as calling tf with each list of tokens in order, the ids of the terms and the frequencies of the dictionary are
+     * the same. The lists are processed in blocks: the new terms of each block are collected in parallel and added to the
+     * dictionary in order of block, then the ids of each list are translated and counted in parallel. Only the update of
+     * the frequencies of the dictionary is sequential
+     */
+    private int[][][] computeTf(List<List<String>> tokens, TermDictionary dictionary) throws InternalErrorException {
+        int size = tokens.size();
+        long[] costs = tokensCosts(tokens);
+        int[][] localIds = new int[size][];
+        int[][] blockIds = new int[size][];
+        buildExecutor().execute(costs, (from, to) -> () -> {
+            Map<String, Integer> blockTerms = new HashMap<>();
+            List<String> newTerms = new ArrayList<>();
+            for (int i = from; i < to; ++i) {
+                List<String> requirementTokens = tokens.get(i);
+                int[] ids = new int[requirementTokens.size()];
+                for (int j = 0; j < ids.length; ++j) {
+                    String token = requirementTokens.get(j);
+                    Integer id = blockTerms.get(token);
+                    if (id == null) {
+                        id = newTerms.size();
+                        blockTerms.put(token, id);
+                        newTerms.add(token);
+                    }
+                    ids[j] = id;
+                }
+                localIds[i] = ids;
+            }
+            return new TermsBlock(from, to, newTerms);
+        }, block -> {
+            //the blocks are received in order, so the terms are added to the dictionary in order of appearance
+            int[] ids = new int[block.newTerms.size()];
+            for (int j = 0; j < ids.length; ++j) ids[j] = dictionary.addTerm(block.newTerms.get(j));
+            for (int i = block.from; i < block.to; ++i) blockIds[i] = ids;
+        });
+
+        int[][][] result = new int[size][][];
+        buildExecutor().execute(costs, (from, to) -> () -> {
+            for (int i = from; i < to; ++i) {
+                int[] ids = localIds[i];
+                for (int j = 0; j < ids.length; ++j) ids[j] = blockIds[i][ids[j]];
+                result[i] = countTerms(ids);
+            }
+            return null;
+        }, ignored -> {});
+
+        for (int[][] requirementTf : result) {
+            for (int termId : requirementTf[0]) dictionary.setFrequency(termId, dictionary.getFrequency(termId) + 1);
+        }
+        return result;
+    }
+
+    /**
+     * Same as computeTf with the tokens of the requirements. The terms are added to the dictionary in order of id and then
+     * the ids of each requirement are translated in parallel. Only the update of the frequencies of the dictionary is sequential
+     */
+    private int[][][] computeTf(RequirementsTerms requirementsTerms, TermDictionary dictionary) throws InternalErrorException {
+        List<String> terms = requirementsTerms.getTerms();
+        int[] dictionaryIds = new int[terms.size()];
+        for (int j = 0; j < dictionaryIds.length; ++j) dictionaryIds[j] = dictionary.addTerm(terms.get(j));
+
+        int size = requirementsTerms.size();
+        long[] costs = new long[size];
+        for (int i = 0; i < size; ++i) costs[i] = requirementsTerms.getTermIds(i).length;
+        int[][][] result = new int[size][][];
+        buildExecutor().execute(costs, (from, to) -> () -> {
+            for (int i = from; i < to; ++i) {
+                result[i] = translateTerms(requirementsTerms.getTermIds(i), requirementsTerms.getFrequencies(i), dictionaryIds);
+            }
+            return null;
+        }, ignored -> {});
+
+        for (int[][] requirementTf : result) {
+            for (int termId : requirementTf[0]) dictionary.setFrequency(termId, dictionary.getFrequency(termId) + 1);
         }
-        return oldCorpusFrequency;
+        return result;
     }
 
-    private double computeCutOffParameter(long totalSize) {
-        if (cutOffDummy || totalSize < 100) return -1;
-        else return cutOffValue;
+    /**
+     * Translates the terms of a requirement to ids of the dictionary. The frequencies of the terms with the same id (in a
+     * dictionary with collisions, see HashedTermDictionary) are added together
+     * @return two arrays, the first one with the ids (sorted and not repeated) and the second one with their frequencies
+     */
+    private int[][] translateTerms(int[] termIds, int[] frequencies, int[] dictionaryIds) {
+        long[] pairs = new long[termIds.length];
+        for (int i = 0; i < pairs.length; ++i) pairs[i] = ((long) dictionaryIds[termIds[i]] << 32) | frequencies[i];
+        Arrays.sort(pairs);
+        int[] resultIds = new int[pairs.length];
+        int[] resultFrequencies = new int[pairs.length];
+        int size = 0;
+        for (long pair : pairs) {
+            int id = (int) (pair >>> 32);
+            if (size > 0 && resultIds[size-1] == id) resultFrequencies[size-1] += (int) pair;
+            else {
+                resultIds[size] = id;
+                resultFrequencies[size] = (int) pair;
+                ++size;
+            }
+        }
+        return new int[][]{Arrays.copyOf(resultIds, size), Arrays.copyOf(resultFrequencies, size)};
     }
 
-    private Map<String, Integer> tf(List<String> tokens, Map<String, Integer> frequencyValues) {
-        Map<String, Integer> frequency = new HashMap<>();
-        for (String s : tokens) {
-            if (frequency.containsKey(s)) frequency.put(s, frequency.get(s) + 1);
+    /**
+     * Sorts the ids and counts the appearances of each one
+     * @return two arrays, the first one with the ids (sorted and not repeated) and the second one with their frequencies
+     */
+    private int[][] countTerms(int[] ids) {
+        Arrays.sort(ids);
+        int[] termIds = new int[ids.length];
+        int[] frequency = new int[ids.length];
+        int size = 0;
+        for (int i = 0; i < ids.length; ++i) {
+            if (size > 0 && termIds[size-1] == ids[i]) ++frequency[size-1];
             else {
-                frequency.put(s, 1);
-                if (frequencyValues.containsKey(s)) frequencyValues.put(s, frequencyValues.get(s) + 1);
-                else frequencyValues.put(s, 1);
+                termIds[size] = ids[i];
+                frequency[size] = 1;
+                ++size;
             }
         }
-        return frequency;
+        return new int[][]{Arrays.copyOf(termIds, size), Arrays.copyOf(frequency, size)};
+    }
+
+    /**
+     * Converts the output of tf to a vector whose weights are the raw frequencies
+     */
+    private SparseVector rawTf(int[][] tfValues) {
+        double[] weights = new double[tfValues[1].length];
+        for (int i = 0; i < weights.length; ++i) weights[i] = tfValues[1][i];
+        return new SparseVector(tfValues[0], weights);
+    }
+
+    SparseVector tfIdf(int[][] tfValues, TermDictionary dictionary, int size, double cutOffParameter, boolean smoothing) {
+        int[] termIds = tfValues[0];
+        int[] frequency = tfValues[1];
+        int[] resultIds = new int[termIds.length];
+        double[] resultWeights = new double[termIds.length];
+        int resultSize = 0;
+        for (int i = 0; i < termIds.length; ++i) {
+            double idf = idf(size, dictionary.getFrequency(termIds[i]), smoothing);
+            int tf = frequency[i];
+            double tfidf = tf * idf;
+            if (tfidf >= cutOffParameter) {
+                resultIds[resultSize] = termIds[i];
+                resultWeights[resultSize] = tfidf;
+                ++resultSize;
+            }
+        }
+        return new SparseVector(Arrays.copyOf(resultIds, resultSize), Arrays.copyOf(resultWeights, resultSize));
     }
 
     private double idf(int size, int frequency, boolean smoothing) {
-        double value = Math.log(size / (frequency + 1.0));
-        if (value < 0) value = 0;
-        return doSmoothing(smoothing,value);
+        return weighting.idf(size, frequency, smoothing);
     }
 
-    private void recomputeIdfValues(Map<String, Map<String, Double>> docs, Map<String, Integer> oldCorpusFrequency, Map<String, Integer> newCorpusFrequency, double oldSize, double newSize, boolean smoothing) {
-        for (Map.Entry<String, Map<String, Double>> requirement : docs.entrySet()) {
-            Map<String, Double> words = requirement.getValue();
-            for (Map.Entry<String, Double> word : words.entrySet()) { //problem: if the value was 0 (because corpus + 1 == totalSize) it will be always 0
-                String wordId = word.getKey();
-                double score = word.getValue();
-                double newScore = recomputeIdf(score, oldSize, oldCorpusFrequency.get(wordId), newSize, newCorpusFrequency.get(wordId),smoothing);
-                word.setValue(newScore);
+    private void recomputeIdfValues(Map<String, SparseVector> docs, int[] oldCorpusFrequency, TermDictionary newCorpusFrequency, double oldSize, double newSize, boolean smoothing) {
+        for (SparseVector requirement : docs.values()) {
+            int[] words = requirement.getTermIds();
+            double[] scores = requirement.getWeights();
+            for (int i = 0; i < words.length; ++i) { //problem: if the value was 0 (because corpus + 1 == totalSize) it will be always 0
+                int wordId = words[i];
+                scores[i] = recomputeIdf(scores[i], oldSize, oldCorpusFrequency[wordId], newSize, newCorpusFrequency.getFrequency(wordId), smoothing);
             }
+            requirement.updateNorm();
         }
     }
 
     private double recomputeIdf(double oldValue, double oldSize, double oldCorpusFrequency, double newSize, double newCorpusFrequency, boolean smoothing) {
         double quocient = Math.log(oldSize/(oldCorpusFrequency+1));
         double value = (quocient <= 0) ? 0 : (oldValue * Math.log(newSize/(newCorpusFrequency+1)))/quocient;
+        //the idf values are not negative, as in TfIdfWeighting.idf (the bounds of SimilarityJoinTfIdf rely on it)
+        if (value < 0) value = 0;
         return doSmoothing(smoothing,value);
     }
 
     private double doSmoothing(boolean smoothing, double value) {
-        return (smoothing && smoothingActive) ? (value + 0.1) : value;
+        return weighting.doSmoothing(smoothing, value);
+    }
+
+    boolean checkIfSmoothing(int requirementsSize) {
+        return weighting.checkIfSmoothing(requirementsSize);
     }
 
-    private boolean checkIfSmoothing(int requirementsSize) {
-        return (requirementsSize < 100);
+    /**
+     * The terms of a block of requirements in order of appearance, the tokens of the block are translated to positions
+     * of this list
+     */
+    private static class TermsBlock {
+        private int from;
+        private int to;
+        private List<String> newTerms;
+
+        TermsBlock(int from, int to, List<String> newTerms) {
+            this.from = from;
+            this.to = to;
+            this.newTerms = newTerms;
+        }
     }
 }
@@ -0,0 +1,308 @@
+package upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf;
+
+import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityScoresSink;
+import upc.similarity.compareapi.entity.exception.InternalErrorException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.lang.StrictMath.sqrt;
+
+/**
+ * Exact all-pairs cosine similarity join (L2AP-style prefix filtering). Each requirement is split in two parts: a prefix
+ * with its most frequent terms, whose normalized norm is lower than the threshold, and a suffix with the rest of the terms.
+ * Only the suffixes are indexed, so two requirements that only share prefix terms are never visited (their score can not
+ * reach the threshold). When the sink has a score bound (e.g. a top-k queue) the query terms whose contributions can not
+ * reach it are not used to find candidates either (MaxScore). The candidates found are discarded with the norm and size
+ * bounds, and the remaining ones are verified with the exact cosine, so the sink receives the same results as comparing
+ * all the pairs.
+ */
+public class SimilarityJoinTfIdf {
+
+    /**
+     * Slack used in all the bounds to avoid discarding pairs because of rounding errors
+     */
+    private static final double EPSILON = 1e-9;
+
+    private CosineSimilarityTfIdf cosineSimilarityTfIdf = CosineSimilarityTfIdf.getInstance();
+    private TermDictionary dictionary;
+    private double threshold;
+    private double boundThreshold;
+    private InvertedIndexTfIdf index;
+
+    /**
+     * For each position of the index: the norm of the not indexed prefix and the highest weight (both normalized)
+     */
+    private double[] prefixNorms;
+    private double[] maxWeights;
+    private double maxPrefixNorm;
+
+    /**
+     * The highest indexed weight of each term (indexed by term id)
+     */
+    private double[] termMaxWeights;
+
+    public SimilarityJoinTfIdf(TermDictionary dictionary, double threshold) {
+        this.dictionary = dictionary;
+        this.threshold = threshold;
+        this.boundThreshold = threshold - EPSILON;
+        this.index = new InvertedIndexTfIdf(dictionary.size());
+        this.prefixNorms = new double[16];
+        this.maxWeights = new double[16];
+        this.maxPrefixNorm = 0.0;
+        this.termMaxWeights = new double[dictionary.size()];
+    }
+
+    private SimilarityJoinTfIdf(SimilarityJoinTfIdf join) {
+        this.dictionary = join.dictionary;
+        this.threshold = join.threshold;
+        this.boundThreshold = join.boundThreshold;
+        this.index = join.index.copy();
+        this.prefixNorms = join.prefixNorms;
+        this.maxWeights = join.maxWeights;
+        this.maxPrefixNorm = join.maxPrefixNorm;
+        this.termMaxWeights = join.termMaxWeights;
+    }
+
+    /**
+     * Returns a copy of the join that can compute queries at the same time as this one (see InvertedIndexTfIdf.copy)
+     */
+    public SimilarityJoinTfIdf copy() {
+        return new SimilarityJoinTfIdf(this);
+    }
+
+    /**
+     * Returns the auxiliary structures of the copy to the join (see InvertedIndexTfIdf.release)
+     */
+    public void release() {
+        index.release();
+    }
+
+    /**
+     * Adds a requirement at the end of the index
+     * @param id the id of the requirement
+     * @param vector the tf-idf vector of the requirement
+     */
+    public void addRequirement(String id, SparseVector vector) {
+        int position = index.size();
+        if (position >= prefixNorms.length) {
+            prefixNorms = Arrays.copyOf(prefixNorms, prefixNorms.length * 2);
+            maxWeights = Arrays.copyOf(maxWeights, maxWeights.length * 2);
+        }
+        SparseVector normalized = normalize(vector);
+        double[] weights = normalized.getWeights();
+        int[] termIds = normalized.getTermIds();
+
+        //the prefix is built with the most frequent terms (the ones with the longest postings lists)
+        Integer[] order = new Integer[termIds.length];
+        for (int i = 0; i < order.length; ++i) order[i] = i;
+        Arrays.sort(order, (i, j) -> {
+            int result = Integer.compare(dictionary.getFrequency(termIds[j]), dictionary.getFrequency(termIds[i]));
+            if (result == 0) result = Integer.compare(termIds[i], termIds[j]);
+            return result;
+        });
+        boolean[] indexed = new boolean[termIds.length];
+        double prefix = 0.0;
+        double prefixNorm = 0.0;
+        boolean inPrefix = true;
+        for (int i : order) {
+            if (inPrefix) {
+                double aux = prefix + weights[i] * weights[i];
+                if (sqrt(aux) < boundThreshold) {
+                    prefix = aux;
+                    prefixNorm = sqrt(aux);
+                } else inPrefix = false;
+            }
+            indexed[i] = !inPrefix;
+        }
+
+        List<Integer> suffix = new ArrayList<>();
+        double maxWeight = 0.0;
+        for (int i = 0; i < termIds.length; ++i) {
+            if (indexed[i]) {
+                suffix.add(i);
+                termMaxWeights[termIds[i]] = Math.max(termMaxWeights[termIds[i]], weights[i]);
+            }
+            maxWeight = Math.max(maxWeight, weights[i]);
+        }
+        int[] suffixIds = new int[suffix.size()];
+        double[] suffixWeights = new double[suffix.size()];
+        for (int i = 0; i < suffixIds.length; ++i) {
+            suffixIds[i] = termIds[suffix.get(i)];
+            suffixWeights[i] = weights[suffix.get(i)];
+        }
+
+        index.addRequirement(id, vector, new SparseVector(suffixIds, suffixWeights, 0));
+        prefixNorms[position] = prefixNorm;
+        maxWeights[position] = maxWeight;
+        maxPrefixNorm = Math.max(maxPrefixNorm, prefixNorm);
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public String getId(int position) {
+        return index.getId(position);
+    }
+
+    public SparseVector getVector(int position) {
+        return index.getVector(position);
+    }
+
+    /**
+     * Computes the similarity between the query and all the indexed requirements with a position inside [from, to) and
+     * sends to the sink the pairs with a score greater or equal than the threshold (in ascending order of position). The
+     * pairs with the same id are skipped, and the pairs that the sink would ignore (see SimilarityScoresSink.getScoreBound)
+     * may be skipped too
+     * @param requirement the id of the query
+     * @param vector the tf-idf vector of the query
+     * @param from the first position to consider (inclusive)
+     * @param to the last position to consider (exclusive)
+     * @param sink receives the score of each returned pair
+     */
+    public void computeQuery(String requirement, SparseVector vector, int from, int to, SimilarityScoresSink sink) throws InternalErrorException {
+        SparseVector normalized = normalize(vector);
+        double bound = computeBound(sink);
+        boolean[] essential = new boolean[vector.size()];
+        double nonEssentialBound = selectEssentialTerms(normalized, bound, essential);
+        int numberCandidates = index.accumulate(normalized, essential, from, to);
+        emitQuery(requirement, vector, normalized, bound, essential, nonEssentialBound, -1, numberCandidates, from, to, sink);
+    }
+
+    /**
+     * Same as calling computeQuery(requirements[i], vectors[i], 0, to, sink) for each query in order, but the candidates of
+     * the queries are found in blocks (see InvertedIndexTfIdf.accumulateBlock), so each postings list is traversed once per
+     * block instead of once per query. Used when all the queries are compared with the same range of the index (e.g. the
+     * requirements of another project)
+     * @param requirements the ids of the queries
+     * @param vectors the tf-idf vectors of the queries
+     * @param to the last position to consider (exclusive)
+     * @param sink receives the score of each returned pair
+     */
+    public void computeQueries(List<String> requirements, List<SparseVector> vectors, int to, SimilarityScoresSink sink) throws InternalErrorException {
+        int blockSize = InvertedIndexTfIdf.BLOCK_QUERIES;
+        SparseVector[] normalized = new SparseVector[blockSize];
+        boolean[][] essential = new boolean[blockSize][];
+        double[] nonEssentialBounds = new double[blockSize];
+        for (int first = 0; first < requirements.size(); first += blockSize) {
+            int numberQueries = Math.min(blockSize, requirements.size() - first);
+            //the bound can only increase while the block is computed, so the terms discarded with it are never needed
+            double bound = computeBound(sink);
+            for (int q = 0; q < numberQueries; ++q) {
+                normalized[q] = normalize(vectors.get(first + q));
+                essential[q] = new boolean[normalized[q].size()];
+                nonEssentialBounds[q] = selectEssentialTerms(normalized[q], bound, essential[q]);
+            }
+            int numberCandidates = index.accumulateBlock(normalized, essential, numberQueries, to);
+            for (int q = 0; q < numberQueries; ++q) {
+                emitQuery(requirements.get(first + q), vectors.get(first + q), normalized[q], bound, essential[q], nonEssentialBounds[q], q, numberCandidates, 0, to, sink);
+            }
+        }
+    }
+
+    /*
+    Private methods
+     */
+
+    private SparseVector normalize(SparseVector vector) {
+        double norm = vector.getNorm();
+        double[] weights = vector.getWeights();
+        double[] normalized = new double[weights.length];
+        if (norm != 0) {
+            for (int i = 0; i < weights.length; ++i) normalized[i] = weights[i] / norm;
+        }
+        return new SparseVector(vector.getTermIds(), normalized, (norm == 0) ? 0 : 1);
+    }
+
+    private double computeBound(SimilarityScoresSink sink) {
+        return Math.max(threshold, sink.getScoreBound());
+    }
+
+    private boolean zeroScoreAccepted(SimilarityScoresSink sink) {
+        return 0.0 >= threshold && 0.0 > sink.getScoreBound();
+    }
+
+    /**
+     * Marks as not essential the query terms with the lowest upper bounds while the sum of their bounds (plus the highest
+     * prefix norm) is lower than the input bound. A requirement that only shares not essential terms with the query can
+     * not reach the bound
+     * @return the sum of the upper bounds of the not essential terms
+     */
+    private double selectEssentialTerms(SparseVector query, double bound, boolean[] essential) {
+        int[] termIds = query.getTermIds();
+        double[] weights = query.getWeights();
+        double[] upperBounds = new double[termIds.length];
+        Integer[] order = new Integer[termIds.length];
+        for (int i = 0; i < termIds.length; ++i) {
+            upperBounds[i] = (termIds[i] < termMaxWeights.length) ? weights[i] * termMaxWeights[termIds[i]] : 0;
+            order[i] = i;
+        }
+        Arrays.sort(order, (i, j) -> Double.compare(upperBounds[i], upperBounds[j]));
+
+        double limit = bound - EPSILON - maxPrefixNorm;
+        double sum = 0.0;
+        int i = 0;
+        while (i < order.length && sum + upperBounds[order[i]] < limit) {
+            sum += upperBounds[order[i]];
+            ++i;
+        }
+        for (; i < order.length; ++i) essential[order[i]] = true;
+        return sum;
+    }
+
+    /**
+     * Verifies the candidates found for a query and sends the accepted pairs to the sink
+     * @param blockQuery the index of the query inside the last block (see InvertedIndexTfIdf.accumulateBlock) or -1 if the
+     *                   candidates were found with InvertedIndexTfIdf.accumulate
+     */
+    private void emitQuery(String requirement, SparseVector vector, SparseVector normalized, double bound, boolean[] essential, double nonEssentialBound,
+                           int blockQuery, int numberCandidates, int from, int to, SimilarityScoresSink sink) throws InternalErrorException {
+        double queryMaxWeight = 0.0;
+        for (double weight : normalized.getWeights()) queryMaxWeight = Math.max(queryMaxWeight, weight);
+        boolean allEssential = true;
+        for (boolean value : essential) allEssential = allEssential && value;
+
+        int next = from;
+        for (int i = 0; i <= numberCandidates; ++i) {
+            int position = to;
+            if (i < numberCandidates) {
+                position = (blockQuery < 0) ? index.getCandidate(i) : index.getBlockCandidate(i);
+                if (blockQuery >= 0 && !index.isBlockCandidate(blockQuery, position)) continue;
+            }
+            double currentBound = computeBound(sink);
+            if (!allEssential && currentBound < bound) {
+                //the bound of the sink has decreased, so the discarded terms are needed again
+                computeQuery(requirement, vector, next, to, sink);
+                return;
+            }
+            //the pairs without common terms have score 0, they are only returned if the threshold and the sink accept them
+            while (next < position && zeroScoreAccepted(sink)) {
+                computePair(requirement, vector, next, 0.0, sink);
+                ++next;
+            }
+            if (i < numberCandidates) {
+                currentBound = computeBound(sink);
+                double dotProduct = (blockQuery < 0) ? index.getDotProduct(position) : index.getBlockDotProduct(blockQuery, position);
+                //norm bound: the not indexed prefix of the candidate can not add more than its norm
+                if (dotProduct + nonEssentialBound + prefixNorms[position] >= currentBound - EPSILON) {
+                    SparseVector candidateVector = index.getVector(position);
+                    //size bound: each common term can not add more than the product of the highest weights
+                    if (Math.min(vector.size(), candidateVector.size()) * queryMaxWeight * maxWeights[position] >= currentBound - EPSILON) {
+                        computePair(requirement, vector, position, cosineSimilarityTfIdf.dotProduct(vector, candidateVector), sink);
+                    }
+                }
+                next = position + 1;
+            }
+        }
+    }
+
+    private void computePair(String requirement, SparseVector vector, int position, double dotProduct, SimilarityScoresSink sink) throws InternalErrorException {
+        String candidate = index.getId(position);
+        if (!requirement.equals(candidate)) {
+            double score = cosineSimilarityTfIdf.compute(vector, index.getVector(position), dotProduct);
+            if (score >= threshold) sink.addScore(requirement, candidate, score);
+        }
+    }
+}
@@ -2,7 +2,10 @@ package upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
+import upc.similarity.compareapi.algorithms.preprocess.RequirementsTerms;
 import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityModel;
+import upc.similarity.compareapi.config.Constants;
+import upc.similarity.compareapi.entity.exception.InternalErrorException;
 
 import java.util.*;
 
@@ -10,21 +13,56 @@ public class SimilarityModelTfIdf implements SimilarityModel {
 
     /**
      * A map with the tf-idf metric of all the words of each requirement. It is represented as a Map with a
-     * String key (requirement id) and a bag of words which are saved as objects with a String value (word id)
-     * and their corresponding tf-idf value (a double)
+     * String key (requirement id) and a sparse vector which saves the ids of the words (see dictionary) sorted
+     * in ascending order and their corresponding tf-idf values as primitive arrays
      */
-    private Map<String, Map<String, Double>> docs;
+    private Map<String, SparseVector> docs;
 
     /**
-     * A map with the frequency of each word in the corpus. It is implemented as a Map with a String key (word id)
-     * and an Integer number which represents the number of requirements that contain this word. It is useful when
-     * updating the model with new requirements or deleting old ones.
+     * The dictionary of the organization. It maps each word to an integer id and saves the frequency of each word
+     * in the corpus, i.e. the number of requirements that contain it. The frequencies are useful when updating the
+     * model with new requirements or deleting old ones.
      */
-    private Map<String, Integer> corpusFrequency;
+    private TermDictionary dictionary;
 
-    public SimilarityModelTfIdf(Map<String, Map<String, Double>> docs, Map<String, Integer> corpusFrequency) {
+    /**
+     * The SimHash signature of each requirement (see SimHashTfIdf). It is used by the approximate comparison methods to
+     * find the candidate pairs without comparing all of them. The signatures are computed the first time they are requested
+     * (see getSignatures) and discarded every time the docs change (see updateSignatures), so the models that are never
+     * compared with the approximate methods do not compute them
+     */
+    private Map<String, long[]> signatures;
+
+    /**
+     * Increased every time the docs change, the signatures are only valid for the version they were computed with
+     */
+    private int version;
+    private int signaturesVersion;
+    private boolean signaturesComplete;
+
+    public SimilarityModelTfIdf(Map<String, SparseVector> docs, TermDictionary dictionary) {
         this.docs = docs;
-        this.corpusFrequency = corpusFrequency;
+        this.dictionary = dictionary;
+        this.signaturesVersion = -1;
+    }
+
+    /**
+     * @param signatures the saved signatures, they are completed the first time they are requested (e.g. the organizations
+     *                   created before the approximate methods do not have them). If they are empty, the model has never
+     *                   been compared with the approximate methods
+     */
+    public SimilarityModelTfIdf(Map<String, SparseVector> docs, TermDictionary dictionary, Map<String, long[]> signatures) {
+        this.docs = docs;
+        this.dictionary = dictionary;
+        this.signatures = signatures;
+        this.signaturesVersion = signatures.isEmpty() ? -1 : 0;
+    }
+
+    /**
+     * Used by the models that compute the docs and the signatures on demand (see SimilarityModelTfIdfLazy)
+     */
+    protected SimilarityModelTfIdf(TermDictionary dictionary) {
+        this.dictionary = dictionary;
     }
 
     @Override
@@ -39,33 +77,134 @@ public class SimilarityModelTfIdf implements SimilarityModel {
 
     @Override
     public boolean checkIfRequirementIsUpdated(String requirementId, List<String> tokens) {
-        Set<String> newRequirement = new HashSet<>(tokens);
-        Set<String> oldRequirement = docs.get(requirementId).keySet();
-        return !oldRequirement.equals(newRequirement);
+        return checkIfTermsAreUpdated(docs.get(requirementId).getTermIds(), tokens);
+    }
+
+    /**
+     * The terms of the batch are translated to ids of the dictionary only once, and the requirements are checked in parallel
+     * blocks with the executor used to build the models. The stored term ids of each requirement are compared directly, so
+     * neither the tokens nor a set of them are created
+     */
+    @Override
+    public boolean[] checkIfRequirementsAreUpdated(RequirementsTerms requirementsTerms) throws InternalErrorException {
+        List<String> terms = requirementsTerms.getTerms();
+        int[] dictionaryIds = new int[terms.size()];
+        for (int j = 0; j < dictionaryIds.length; ++j) dictionaryIds[j] = dictionary.getId(terms.get(j));
+
+        int size = requirementsTerms.size();
+        long[] costs = new long[size];
+        for (int i = 0; i < size; ++i) costs[i] = requirementsTerms.getTermIds(i).length;
+        boolean[] result = new boolean[size];
+        Constants.getInstance().getModelBuildExecutor().execute(costs, (from, to) -> () -> {
+            for (int i = from; i < to; ++i) {
+                int[] oldRequirement = getRequirementTermIds(requirementsTerms.getRequirementIds().get(i));
+                result[i] = checkIfTermsAreUpdated(oldRequirement, requirementsTerms.getTermIds(i), dictionaryIds);
+            }
+            return null;
+        }, ignored -> {});
+        return result;
+    }
+
+    /**
+     * Checks if the set of terms of the input tokens is different from the old one
+     * @param oldRequirement the ids of the old terms sorted in ascending order
+     * @param tokens the new tokens of the requirement
+     */
+    protected boolean checkIfTermsAreUpdated(int[] oldRequirement, List<String> tokens) {
+        int[] newRequirement = new int[tokens.size()];
+        for (int i = 0; i < newRequirement.length; ++i) {
+            int termId = dictionary.getId(tokens.get(i));
+            if (termId == -1) return true;
+            newRequirement[i] = termId;
+        }
+        Arrays.sort(newRequirement);
+        int size = 0;
+        for (int i = 0; i < newRequirement.length; ++i) {
+            if (i == 0 || newRequirement[i] != newRequirement[i-1]) newRequirement[size++] = newRequirement[i];
+        }
+        return !Arrays.equals(oldRequirement, Arrays.copyOf(newRequirement, size));
+    }
+
+    /**
+     * Same as checkIfTermsAreUpdated with the terms of a batch
+     * @param termIds the ids of the new terms inside the batch
+     * @param dictionaryIds the id inside the dictionary of each term of the batch (-1 if the term is not inside it)
+     */
+    private boolean checkIfTermsAreUpdated(int[] oldRequirement, int[] termIds, int[] dictionaryIds) {
+        int[] newRequirement = new int[termIds.length];
+        for (int i = 0; i < newRequirement.length; ++i) {
+            int termId = dictionaryIds[termIds[i]];
+            if (termId == -1) return true;
+            newRequirement[i] = termId;
+        }
+        //the ids of the batch are already sorted and not repeated, but the ids of the dictionary can be in another order
+        //and different terms can have the same id (see HashedTermDictionary)
+        Arrays.sort(newRequirement);
+        int size = 0;
+        for (int i = 0; i < newRequirement.length; ++i) {
+            if (i == 0 || newRequirement[i] != newRequirement[i-1]) newRequirement[size++] = newRequirement[i];
+        }
+        return !Arrays.equals(oldRequirement, Arrays.copyOf(newRequirement, size));
+    }
+
+    /**
+     * Returns the ids of the terms of a requirement of the model, sorted in ascending order
+     */
+    protected int[] getRequirementTermIds(String requirementId) {
+        return docs.get(requirementId).getTermIds();
+    }
+
+    /**
+     * Discards the signatures of all the requirements, must be called after modifying the docs (the idf values of all the
+     * requirements change when the model is updated). They are computed again the next time they are requested
+     */
+    public synchronized void updateSignatures() {
+        ++version;
+        signatures = null;
+    }
+
+    /**
+     * Returns true if the signatures of the current version of the model have been requested (or loaded), only these ones
+     * are saved with the model
+     */
+    public synchronized boolean hasSignatures() {
+        return signaturesVersion == version;
     }
 
     /*
     Get methods
      */
 
-    public Map<String, Map<String, Double>> getDocs() {
+    public Map<String, SparseVector> getDocs() {
         return docs;
     }
 
-    public Map<String, Integer> getCorpusFrequency() {
-        return corpusFrequency;
+    public TermDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public synchronized Map<String, long[]> getSignatures() {
+        if (signaturesVersion != version) {
+            signatures = SimHashTfIdf.computeSignatures(docs, dictionary);
+            signaturesVersion = version;
+            signaturesComplete = true;
+        } else if (!signaturesComplete) {
+            SimHashTfIdf.completeSignatures(docs, dictionary, signatures);
+            signaturesComplete = true;
+        }
+        return signatures;
     }
 
     /*
     Set methods
      */
 
-    public void setDocs(Map<String, Map<String, Double>> docs) {
+    public void setDocs(Map<String, SparseVector> docs) {
         this.docs = docs;
     }
 
-    public void setCorpusFrequency(Map<String, Integer> corpusFrequency) {
-        this.corpusFrequency = corpusFrequency;
+    public void setDictionary(TermDictionary dictionary) {
+        this.dictionary = dictionary;
     }
 
     /*
@@ -75,24 +214,21 @@ public class SimilarityModelTfIdf implements SimilarityModel {
     public JSONObject extractModel(boolean withDocs, boolean withFrequency) {
         JSONArray reqsArray = new JSONArray();
         if (withDocs) {
-            Iterator it = docs.entrySet().iterator();
-            while (it.hasNext()) {
-                Map.Entry pair = (Map.Entry) it.next();
-                String id = (String) pair.getKey();
-                HashMap<String, Double> words = (HashMap<String, Double>) pair.getValue();
-                Iterator it2 = words.entrySet().iterator();
+            for (Map.Entry<String, SparseVector> entry : getDocs().entrySet()) {
+                String id = entry.getKey();
+                SparseVector vector = entry.getValue();
+                //the words are returned in the same order as the old map representation
+                Map<String, Double> words = new HashMap<>();
+                int[] termIds = vector.getTermIds();
+                double[] weights = vector.getWeights();
+                for (int i = 0; i < termIds.length; ++i) words.put(dictionary.getTerm(termIds[i]), weights[i]);
                 JSONArray wordsArray = new JSONArray();
-                while (it2.hasNext()) {
-                    Map.Entry pair2 = (Map.Entry) it2.next();
-                    String word = (String) pair2.getKey();
-                    double value = (double) pair2.getValue();
+                for (Map.Entry<String, Double> word : words.entrySet()) {
                     JSONObject auxWord = new JSONObject();
-                    auxWord.put("word", word);
-                    auxWord.put("tfIdf", value);
+                    auxWord.put("word", word.getKey());
+                    auxWord.put("tfIdf", (double) word.getValue());
                     wordsArray.put(auxWord);
-                    it2.remove();
                 }
-                it.remove();
                 JSONObject auxReq = new JSONObject();
                 auxReq.put("id", id);
                 auxReq.put("words", wordsArray);
@@ -101,16 +237,16 @@ public class SimilarityModelTfIdf implements SimilarityModel {
         }
         JSONArray wordsFreq = new JSONArray();
         if (withFrequency) {
-            Iterator it = corpusFrequency.entrySet().iterator();
-            while (it.hasNext()) {
-                Map.Entry pair = (Map.Entry) it.next();
-                String word = (String) pair.getKey();
-                int value = (int) pair.getValue();
+            Map<String, Integer> corpusFrequency = new HashMap<>();
+            for (int i = 0; i < dictionary.size(); ++i) {
+                int frequency = dictionary.getFrequency(i);
+                if (frequency > 0) corpusFrequency.put(dictionary.getTerm(i), frequency);
+            }
+            for (Map.Entry<String, Integer> word : corpusFrequency.entrySet()) {
                 JSONObject auxWord = new JSONObject();
-                auxWord.put("word", word);
-                auxWord.put("corpusTf", value);
+                auxWord.put("word", word.getKey());
+                auxWord.put("corpusTf", (int) word.getValue());
                 wordsFreq.put(auxWord);
-                it.remove();
             }
         }
         JSONObject result = new JSONObject();
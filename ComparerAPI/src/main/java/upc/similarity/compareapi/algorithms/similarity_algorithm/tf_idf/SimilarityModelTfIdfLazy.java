@@ -0,0 +1,291 @@
+package upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A tf-idf model that only saves the raw term frequencies of each requirement. The idf values are computed from the
+ * frequencies of the dictionary when the docs are read, so adding or deleting requirements only updates the frequencies of
+ * their terms instead of recomputing the values of all the requirements of the organization. The idf values and the tf-idf
+ * vectors are cached until the next update of the model.
+ */
+public class SimilarityModelTfIdfLazy extends SimilarityModelTfIdf {
+
+    /**
+     * The raw frequency of each term inside each requirement. The vectors have the same representation as the tf-idf
+     * vectors, but their weights are the number of appearances of each term
+     */
+    private Map<String, SparseVector> frequencies;
+
+    /**
+     * The parameters used to compute the tf-idf values (the same ones of the algorithm that built the model)
+     */
+    private TfIdfWeighting weighting;
+
+    /**
+     * Increased every time the requirements or the frequencies of the dictionary change, the caches of older versions are discarded
+     */
+    private int version;
+    private volatile IdfCache idfCache;
+    private Map<String, long[]> signatures;
+    private int signaturesVersion;
+
+    /**
+     * The requirements added or deleted since the model was saved. If fullWrite is true (e.g. the model has just been built
+     * or the term ids have changed) all the requirements must be saved again
+     */
+    private Set<String> modifiedRequirements;
+    private Set<String> deletedRequirements;
+    private boolean fullWrite;
+
+    public SimilarityModelTfIdfLazy(Map<String, SparseVector> frequencies, TermDictionary dictionary, TfIdfWeighting weighting) {
+        super(dictionary);
+        this.frequencies = frequencies;
+        this.weighting = weighting;
+        this.version = 0;
+        this.signaturesVersion = -1;
+        this.modifiedRequirements = new HashSet<>();
+        this.deletedRequirements = new HashSet<>();
+        this.fullWrite = true;
+    }
+
+    @Override
+    public boolean containsRequirement(String requirementId) {
+        return frequencies.containsKey(requirementId);
+    }
+
+    @Override
+    public List<String> getRequirementsIds() {
+        return new ArrayList<>(frequencies.keySet());
+    }
+
+    @Override
+    public boolean checkIfRequirementIsUpdated(String requirementId, List<String> tokens) {
+        return checkIfTermsAreUpdated(frequencies.get(requirementId).getTermIds(), tokens);
+    }
+
+    @Override
+    protected int[] getRequirementTermIds(String requirementId) {
+        return frequencies.get(requirementId).getTermIds();
+    }
+
+    /**
+     * Adds a requirement to the model or replaces it if it was already inside. The frequencies of the dictionary must be
+     * updated by the caller
+     * @param id the id of the requirement
+     * @param vector the raw frequency of each term of the requirement
+     */
+    public void putRequirement(String id, SparseVector vector) {
+        frequencies.put(id, vector);
+        deletedRequirements.remove(id);
+        modifiedRequirements.add(id);
+        ++version;
+    }
+
+    /**
+     * Deletes a requirement from the model. The frequencies of the dictionary must be updated by the caller
+     * @param id the id of the requirement
+     * @return the raw frequencies of the deleted requirement or null if it was not inside the model
+     */
+    public SparseVector removeRequirement(String id) {
+        SparseVector vector = frequencies.remove(id);
+        if (vector != null) {
+            modifiedRequirements.remove(id);
+            deletedRequirements.add(id);
+            ++version;
+        }
+        return vector;
+    }
+
+    /**
+     * Translates the term ids of all the requirements after compacting the dictionary (see TermDictionary.removeUnusedTerms)
+     * @param newTermIds the new id of each old term
+     */
+    public void remapTerms(int[] newTermIds) {
+        for (SparseVector vector : frequencies.values()) vector.remapTermIds(newTermIds);
+        fullWrite = true;
+        ++version;
+    }
+
+    /**
+     * The signatures are computed on demand, so there is nothing to do after an update
+     */
+    @Override
+    public void updateSignatures() {
+        //the signatures of the current version are computed the next time they are requested
+    }
+
+    /**
+     * The signatures of the lazy models are never saved
+     */
+    @Override
+    public boolean hasSignatures() {
+        return false;
+    }
+
+    /**
+     * Must be called after saving the model (or loading it) to restart the tracking of the modified requirements
+     */
+    public void markAsSaved() {
+        modifiedRequirements.clear();
+        deletedRequirements.clear();
+        fullWrite = false;
+    }
+
+    /*
+    Get methods
+     */
+
+    /**
+     * Returns a read-only view with the tf-idf vector of each requirement. The vectors are computed the first time they
+     * are read after an update of the model, they must not be modified
+     */
+    @Override
+    public Map<String, SparseVector> getDocs() {
+        return new WeightedDocs();
+    }
+
+    @Override
+    public synchronized Map<String, long[]> getSignatures() {
+        if (signaturesVersion != version) {
+            signatures = SimHashTfIdf.computeSignatures(getDocs(), getDictionary());
+            signaturesVersion = version;
+        }
+        return signatures;
+    }
+
+    public Map<String, SparseVector> getFrequencies() {
+        return frequencies;
+    }
+
+    public TfIdfWeighting getWeighting() {
+        return weighting;
+    }
+
+    public Set<String> getModifiedRequirements() {
+        return modifiedRequirements;
+    }
+
+    public Set<String> getDeletedRequirements() {
+        return deletedRequirements;
+    }
+
+    public boolean isFullWrite() {
+        return fullWrite;
+    }
+
+
+    /*
+    Private methods
+     */
+
+    private IdfCache getIdfCache() {
+        IdfCache cache = idfCache;
+        if (cache == null || cache.version != version) cache = computeIdfCache();
+        return cache;
+    }
+
+    private synchronized IdfCache computeIdfCache() {
+        IdfCache cache = idfCache;
+        if (cache != null && cache.version == version) return cache;
+        TermDictionary dictionary = getDictionary();
+        int size = frequencies.size();
+        boolean smoothing = weighting.checkIfSmoothing(size);
+        double[] idf = new double[dictionary.size()];
+        for (int i = 0; i < idf.length; ++i) idf[i] = weighting.idf(size, dictionary.getFrequency(i), smoothing);
+        cache = new IdfCache(version, idf, weighting.computeCutOffParameter(size));
+        idfCache = cache;
+        return cache;
+    }
+
+    private SparseVector computeTfIdf(SparseVector vector, IdfCache cache) {
+        int[] termIds = vector.getTermIds();
+        double[] counts = vector.getWeights();
+        int[] resultIds = new int[termIds.length];
+        double[] resultWeights = new double[termIds.length];
+        int resultSize = 0;
+        for (int i = 0; i < termIds.length; ++i) {
+            double tfidf = counts[i] * cache.idf[termIds[i]];
+            if (tfidf >= cache.cutOffParameter) {
+                resultIds[resultSize] = termIds[i];
+                resultWeights[resultSize] = tfidf;
+                ++resultSize;
+            }
+        }
+        return new SparseVector(Arrays.copyOf(resultIds, resultSize), Arrays.copyOf(resultWeights, resultSize));
+    }
+
+    private SparseVector getTfIdf(String requirementId) {
+        SparseVector vector = frequencies.get(requirementId);
+        if (vector == null) return null;
+        IdfCache cache = getIdfCache();
+        return cache.vectors.computeIfAbsent(requirementId, id -> computeTfIdf(vector, cache));
+    }
+
+    /**
+     * The idf value of each term (indexed by term id) and the tf-idf vectors already computed for one version of the model
+     */
+    private static class IdfCache {
+        private final int version;
+        private final double[] idf;
+        private final double cutOffParameter;
+        private final Map<String, SparseVector> vectors;
+
+        IdfCache(int version, double[] idf, double cutOffParameter) {
+            this.version = version;
+            this.idf = idf;
+            this.cutOffParameter = cutOffParameter;
+            this.vectors = new ConcurrentHashMap<>();
+        }
+    }
+
+    private class WeightedDocs extends AbstractMap<String, SparseVector> {
+
+        @Override
+        public SparseVector get(Object key) {
+            return (key instanceof String) ? getTfIdf((String) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return frequencies.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return frequencies.size();
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return Collections.unmodifiableSet(frequencies.keySet());
+        }
+
+        @Override
+        public Set<Map.Entry<String, SparseVector>> entrySet() {
+            return new AbstractSet<Map.Entry<String, SparseVector>>() {
+                @Override
+                public Iterator<Map.Entry<String, SparseVector>> iterator() {
+                    Iterator<String> ids = frequencies.keySet().iterator();
+                    return new Iterator<Map.Entry<String, SparseVector>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return ids.hasNext();
+                        }
+
+                        @Override
+                        public Map.Entry<String, SparseVector> next() {
+                            String id = ids.next();
+                            return new AbstractMap.SimpleImmutableEntry<>(id, getTfIdf(id));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return frequencies.size();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf;
+
+import static java.lang.StrictMath.sqrt;
+
+public class SparseVector {
+
+    /**
+     * The ids of the terms of the vector (see TermDictionary). They are sorted in ascending order and not repeated
+     */
+    private int[] termIds;
+
+    /**
+     * The tf-idf value of each term. The value at position i corresponds to the term at position i of termIds
+     */
+    private double[] weights;
+
+    /**
+     * The euclidean norm of the weights. It must be updated every time the weights change (see updateNorm)
+     */
+    private double norm;
+
+    /**
+     * A 128 bits signature of the term ids (one bit per term, see updateSignature). Two vectors whose signatures do not
+     * have common bits do not have common terms, so their dot product is 0 without comparing the terms
+     */
+    private long signatureLow;
+    private long signatureHigh;
+
+    public SparseVector(int[] termIds, double[] weights) {
+        this.termIds = termIds;
+        this.weights = weights;
+        updateNorm();
+        updateSignature();
+    }
+
+    public SparseVector(int[] termIds, double[] weights, double norm) {
+        this.termIds = termIds;
+        this.weights = weights;
+        this.norm = norm;
+        updateSignature();
+    }
+
+    public int size() {
+        return termIds.length;
+    }
+
+    /**
+     * Checks if the vector can have common terms with the other vector. If it returns false there are no common terms,
+     * if it returns true there may be common terms or not (each bit of the signatures is shared by several terms)
+     */
+    public boolean mayShareTerms(SparseVector other) {
+        return (signatureLow & other.signatureLow) != 0 || (signatureHigh & other.signatureHigh) != 0;
+    }
+
+    /**
+     * Recomputes the norm of the vector, must be called after modifying the weights
+     */
+    public void updateNorm() {
+        double aux = 0.0;
+        for (double value : weights) {
+            aux += value * value;
+        }
+        norm = sqrt(aux);
+    }
+
+    /**
+     * Translates the term ids of the vector after compacting the dictionary (see TermDictionary.removeUnusedTerms) and
+     * recomputes its signature. The relative order between the terms is maintained
+     * @param newTermIds the new id of each old term
+     */
+    public void remapTermIds(int[] newTermIds) {
+        for (int j = 0; j < termIds.length; ++j) termIds[j] = newTermIds[termIds[j]];
+        updateSignature();
+    }
+
+    /*
+    Private methods
+     */
+
+    /**
+     * Recomputes the signature of the vector, must be called after modifying the term ids. The bit of each term is taken
+     * from the highest bits of a multiplicative hash of its id, so consecutive ids are spread over the signature
+     */
+    private void updateSignature() {
+        signatureLow = 0;
+        signatureHigh = 0;
+        for (int termId : termIds) {
+            int bit = (int) ((termId * 0x9E3779B97F4A7C15L) >>> 57);
+            if (bit < 64) signatureLow |= 1L << bit;
+            else signatureHigh |= 1L << bit;
+        }
+    }
+
+    /*
+    Get methods
+     */
+
+    public int[] getTermIds() {
+        return termIds;
+    }
+
+    public double[] getWeights() {
+        return weights;
+    }
+
+    public double getNorm() {
+        return norm;
+    }
+
+    /*
+    Set methods
+     */
+
+    public void setTermIds(int[] termIds) {
+        this.termIds = termIds;
+        updateSignature();
+    }
+
+    public void setWeights(double[] weights) {
+        this.weights = weights;
+        updateNorm();
+    }
+}
@@ -0,0 +1,149 @@
+package upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf;
+
+import upc.similarity.compareapi.algorithms.similarity_algorithm.StreamingModelBuild;
+import upc.similarity.compareapi.entity.exception.InternalErrorException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Streaming build of a tf-idf model in two passes. In the first one the tokens of each requirement are translated to term
+ * ids and counted, the document frequencies of the dictionary are updated and the counts are written to a temporary file.
+ * In the second one (see readVectors) the file is read again and the tf-idf vectors are computed with the final frequencies
+ * of the dictionary. The memory used does not depend on the number of requirements, only on the size of the dictionary
+ */
+public class StreamingBuildTfIdf implements StreamingModelBuild {
+
+    private SimilarityAlgorithmTfIdf algorithm;
+    private TermDictionary dictionary;
+    private File file;
+    private DataOutputStream output;
+    private int size;
+
+    StreamingBuildTfIdf(SimilarityAlgorithmTfIdf algorithm, TermDictionary dictionary) throws InternalErrorException {
+        this.algorithm = algorithm;
+        this.dictionary = dictionary;
+        try {
+            this.file = Files.createTempFile("tf_idf_build", ".tmp").toFile();
+            this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        } catch (IOException e) {
+            close();
+            throw new InternalErrorException("Error while creating the temporary file of a streaming build");
+        }
+    }
+
+    @Override
+    public void addRequirement(String requirementId, List<String> tokens) throws InternalErrorException {
+        if (output == null) throw new InternalErrorException("The streaming build has already been read");
+        int[][] tfValues = algorithm.tf(tokens, dictionary);
+        try {
+            byte[] id = requirementId.getBytes(StandardCharsets.UTF_8);
+            output.writeInt(id.length);
+            output.write(id);
+            output.writeInt(tfValues[0].length);
+            for (int termId : tfValues[0]) output.writeInt(termId);
+            for (int frequency : tfValues[1]) output.writeInt(frequency);
+        } catch (IOException e) {
+            throw new InternalErrorException("Error while writing the temporary file of a streaming build");
+        }
+        ++size;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finishes the first pass and starts the second one. No more requirements can be added after calling it
+     * @return a reader of the tf-idf vectors, in the same order as the requirements were added
+     */
+    public VectorsReader readVectors() throws InternalErrorException {
+        try {
+            if (output != null) {
+                output.close();
+                output = null;
+            }
+            return new VectorsReader(new DataInputStream(new BufferedInputStream(new FileInputStream(file))));
+        } catch (IOException e) {
+            throw new InternalErrorException("Error while reading the temporary file of a streaming build");
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (output != null) output.close();
+        } catch (IOException e) {
+            //the file is deleted anyway
+        }
+        output = null;
+        if (file != null && file.exists() && !file.delete()) file.deleteOnExit();
+    }
+
+    /*
+    Get methods
+     */
+
+    public TermDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public class VectorsReader implements AutoCloseable {
+
+        private DataInputStream input;
+        private int read;
+        private double cutOffParameter;
+        private boolean smoothing;
+
+        private String requirementId;
+        private SparseVector vector;
+
+        private VectorsReader(DataInputStream input) {
+            this.input = input;
+            this.cutOffParameter = algorithm.computeCutOffParameter(size);
+            this.smoothing = algorithm.checkIfSmoothing(size);
+        }
+
+        /**
+         * Reads the next requirement
+         * @return false if all the requirements have been read
+         */
+        public boolean next() throws InternalErrorException {
+            if (read == size) return false;
+            try {
+                byte[] id = new byte[input.readInt()];
+                input.readFully(id);
+                int length = input.readInt();
+                int[][] tfValues = new int[2][length];
+                for (int i = 0; i < length; ++i) tfValues[0][i] = input.readInt();
+                for (int i = 0; i < length; ++i) tfValues[1][i] = input.readInt();
+                requirementId = new String(id, StandardCharsets.UTF_8);
+                vector = algorithm.tfIdf(tfValues, dictionary, size, cutOffParameter, smoothing);
+            } catch (IOException e) {
+                throw new InternalErrorException("Error while reading the temporary file of a streaming build");
+            }
+            ++read;
+            return true;
+        }
+
+        public String getRequirementId() {
+            return requirementId;
+        }
+
+        public SparseVector getVector() {
+            return vector;
+        }
+
+        @Override
+        public void close() {
+            try {
+                input.close();
+            } catch (IOException e) {
+                //nothing is written, so the file is still correct
+            }
+        }
+    }
+}
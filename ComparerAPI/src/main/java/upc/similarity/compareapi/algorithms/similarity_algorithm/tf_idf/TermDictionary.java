@@ -0,0 +1,128 @@
+package upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TermDictionary {
+
+    /**
+     * A map with the id of each term of the organization. The ids are dense, they go from 0 to size - 1
+     */
+    private Map<String, Integer> termIds;
+
+    /**
+     * The term of each id, the inverse of termIds
+     */
+    private List<String> terms;
+
+    /**
+     * The number of requirements that contain each term (indexed by term id). It is useful when updating the model
+     * with new requirements or deleting old ones.
+     */
+    private int[] frequencies;
+
+    public TermDictionary() {
+        this.termIds = new HashMap<>();
+        this.terms = new ArrayList<>();
+        this.frequencies = new int[16];
+    }
+
+    public TermDictionary(List<String> terms, int[] frequencies) {
+        this.terms = terms;
+        this.frequencies = frequencies;
+        this.termIds = new HashMap<>();
+        for (int i = 0; i < terms.size(); ++i) termIds.put(terms.get(i), i);
+    }
+
+    /**
+     * Returns the id of the input term
+     * @param term the term to search
+     * @return the id of the term or -1 if the term is not inside the dictionary
+     */
+    public int getId(String term) {
+        Integer id = termIds.get(term);
+        return (id == null) ? -1 : id;
+    }
+
+    /**
+     * Returns the id of the input term, adding it to the dictionary (with frequency 0) if it was not inside
+     * @param term the term to search
+     * @return the id of the term
+     */
+    public int addTerm(String term) {
+        Integer id = termIds.get(term);
+        if (id == null) {
+            id = terms.size();
+            terms.add(term);
+            termIds.put(term, id);
+            if (id >= frequencies.length) frequencies = Arrays.copyOf(frequencies, Math.max(16, frequencies.length * 2));
+        }
+        return id;
+    }
+
+    public String getTerm(int id) {
+        return terms.get(id);
+    }
+
+    public int getFrequency(int id) {
+        return frequencies[id];
+    }
+
+    public void setFrequency(int id, int frequency) {
+        frequencies[id] = frequency;
+    }
+
+    public int size() {
+        return terms.size();
+    }
+
+    /**
+     * Returns a copy of the frequencies of the terms. It is used to recompute the idf values after an update of the model
+     * @return an array with the frequency of each term (indexed by term id)
+     */
+    public int[] cloneFrequencies() {
+        return Arrays.copyOf(frequencies, terms.size());
+    }
+
+    /**
+     * Deletes the terms whose frequency is 0. The ids of the remaining terms are shifted down, so the relative order
+     * between them is maintained
+     * @return an array with the new id of each old term (-1 if the term has been deleted) or null if no term has been deleted
+     */
+    public int[] removeUnusedTerms() {
+        int size = terms.size();
+        boolean unused = false;
+        for (int i = 0; i < size && !unused; ++i) {
+            if (frequencies[i] == 0) unused = true;
+        }
+        if (!unused) return null;
+
+        int[] newIds = new int[size];
+        List<String> newTerms = new ArrayList<>();
+        termIds.clear();
+        for (int i = 0; i < size; ++i) {
+            if (frequencies[i] == 0) newIds[i] = -1;
+            else {
+                int id = newTerms.size();
+                String term = terms.get(i);
+                newIds[i] = id;
+                newTerms.add(term);
+                termIds.put(term, id);
+                frequencies[id] = frequencies[i];
+            }
+        }
+        terms = newTerms;
+        return newIds;
+    }
+
+    /*
+    Get methods
+     */
+
+    public List<String> getTerms() {
+        return terms;
+    }
+}
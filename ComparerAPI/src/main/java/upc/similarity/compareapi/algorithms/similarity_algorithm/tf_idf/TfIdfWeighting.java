@@ -0,0 +1,67 @@
+package upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf;
+
+/**
+ * The parameters and the formulas used to compute the tf-idf values. They are shared between the algorithm, which computes
+ * the values when the model is built or updated, and the lazy model (see SimilarityModelTfIdfLazy), which computes them
+ * every time the corpus changes
+ */
+public class TfIdfWeighting {
+
+    private double cutOffValue;
+    private boolean cutOffDummy;
+    private boolean smoothingActive;
+
+    public TfIdfWeighting(double cutOffValue, boolean cutOffDummy, boolean smoothingActive) {
+        this.cutOffValue = cutOffValue;
+        this.cutOffDummy = cutOffDummy;
+        this.smoothingActive = smoothingActive;
+    }
+
+    /**
+     * Returns the minimum tf-idf value of a term to be kept inside a vector (-1 if all the terms are kept)
+     * @param totalSize the number of requirements of the corpus
+     */
+    public double computeCutOffParameter(long totalSize) {
+        if (cutOffDummy || totalSize < 100) return -1;
+        else return cutOffValue;
+    }
+
+    /**
+     * Returns whether the idf values of a corpus with the input number of requirements are smoothed
+     */
+    public boolean checkIfSmoothing(int requirementsSize) {
+        return (requirementsSize < 100);
+    }
+
+    /**
+     * Computes the idf value of a term
+     * @param size the number of requirements of the corpus
+     * @param frequency the number of requirements that contain the term
+     * @param smoothing whether the value is smoothed (see checkIfSmoothing)
+     */
+    public double idf(int size, int frequency, boolean smoothing) {
+        double value = Math.log(size / (frequency + 1.0));
+        if (value < 0) value = 0;
+        return doSmoothing(smoothing,value);
+    }
+
+    public double doSmoothing(boolean smoothing, double value) {
+        return (smoothing && smoothingActive) ? (value + 0.1) : value;
+    }
+
+    /*
+    Get methods
+     */
+
+    public double getCutOffValue() {
+        return cutOffValue;
+    }
+
+    public boolean isCutOffDummy() {
+        return cutOffDummy;
+    }
+
+    public boolean isSmoothingActive() {
+        return smoothingActive;
+    }
+}
@@ -1,28 +1,15 @@
 package upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf_double;
 
-import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SimilarityModelTfIdf;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SparseVector;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.TermDictionary;
 
 import java.util.*;
 
 import static java.lang.StrictMath.ceil;
-import static java.lang.StrictMath.sqrt;
 
 public class CosineSimilarityTfIdfDouble {
 
-    private class Pair {
-        private String key;
-        private double value;
-        public Pair(String key, double value) {
-            this.key = key;
-            this.value = value;
-        }
-        public double getValue() {
-            return value;
-        }
-        public String getKey() {
-            return key;
-        }
-    }
+    private static final double BOUND_TOLERANCE = 1e-9;
 
     private double topicThreshold;
     private double cutOffTopics;
@@ -36,29 +23,24 @@ public class CosineSimilarityTfIdfDouble {
 
     /**
      * Method that computes the similarity between two documents of the tfidf model
-     * @param modelTfIdf    tfidf model
+     * @param modelTfIdfDouble    tfidf double model
      * @param a id of the first requirement
      * @param b id of the second requirement
      * @return a double between -1 and 1
      */
-    public double compute(SimilarityModelTfIdf modelTfIdf, String a, String b) {
-        Map<String, Map<String, Double>> documents = modelTfIdf.getDocs();
-        Map<String, Double> wordsA = documents.get(a);
-        Map<String, Double> wordsB = documents.get(b);
-
-        Map<String,Double> topicWordsA = new HashMap<>();
-        Map<String,Double> topicWordsB = new HashMap<>();
-        Map<String,Double> lowWordsA = new HashMap<>();
-        Map<String,Double> lowWordsB = new HashMap<>();
-
-        fillTopicsMaps(wordsA,topicWordsA,lowWordsA);
-        fillTopicsMaps(wordsB,topicWordsB,lowWordsB);
+    public double compute(SimilarityModelTfIdfDouble modelTfIdfDouble, String a, String b) {
+        return compute(modelTfIdfDouble.getTopicSplit(a, this), modelTfIdfDouble.getTopicSplit(b, this));
+    }
 
+    /**
+     * Computes the similarity between two requirements already split (see computeTopicSplit)
+     */
+    public double compute(TopicSplitTfIdfDouble splitA, TopicSplitTfIdfDouble splitB) {
         double result;
 
-        double scoreTopics = computeSection(topicWordsA,topicWordsB);
+        double scoreTopics = computeSection(splitA.getTopics(),splitB.getTopics());
         if (scoreTopics > cutOffTopics) {
-            double scoreLow = computeSection(lowWordsA,lowWordsB);
+            double scoreLow = computeSection(splitA.getLow(),splitB.getLow());
             result = scoreTopics*(1-importanceLow) + scoreLow*importanceLow;
         } else {
             result = scoreTopics*(1-importanceLow);
@@ -66,56 +48,124 @@ public class CosineSimilarityTfIdfDouble {
         return result;
     }
 
-    private void fillTopicsMaps(Map<String, Double> words, Map<String,Double> topicWords, Map<String,Double> lowWords) {
-        TreeSet<Pair> treeSet = new TreeSet<>(Comparator.comparing(Pair::getValue).thenComparing(Pair::getKey));
-        for (Map.Entry<String,Double> word: words.entrySet()) {
-            String wordId = word.getKey();
-            double value = word.getValue();
-            treeSet.add(new Pair(wordId,value));
-        }
+    /**
+     * Same as compute but for the pairs that are only needed if their score is not lower than minScore. The topic words
+     * are a part of the whole vectors, so if all the tf-idf values are positive the dot product of the topic words is not
+     * greater than the dot product of the whole vectors. The score of the low words is never greater than 1. These two
+     * bounds are used to skip the pair or its low words section when the score cannot reach minScore (the first one only
+     * if the weights of both requirements are positive)
+     * @param dotProduct the dot product between the whole tf-idf vectors of the two requirements
+     * @param minScore the minimum score needed by the caller
+     * @return the score of the pair or Double.NEGATIVE_INFINITY if it is lower than minScore
+     */
+    public double compute(SimilarityModelTfIdfDouble modelTfIdfDouble, String a, String b, double dotProduct, double minScore) {
+        if (importanceLow < 0 || importanceLow > 1) return compute(modelTfIdfDouble, a, b);
+        TopicSplitTfIdfDouble splitA = modelTfIdfDouble.getTopicSplit(a, this);
+        TopicSplitTfIdfDouble splitB = modelTfIdfDouble.getTopicSplit(b, this);
+        if (!splitA.hasPositiveWeights() || !splitB.hasPositiveWeights()) return compute(splitA, splitB, minScore);
+
+        double normA = splitA.getTopics().getNorm();
+        double normB = splitB.getTopics().getNorm();
+        double boundTopics = (normA == 0 || normB == 0) ? 0 : Math.min(1, dotProduct / (normA * normB));
+        if (!canReach(boundTopics, 1, minScore)) return Double.NEGATIVE_INFINITY;
+
+        return compute(splitA, splitB, minScore);
+    }
 
-        int lastPosTopics = Math.min((int) ceil(topicThreshold),treeSet.size());
-        int i = 0;
-        int index = treeSet.size() - lastPosTopics;
-        for (Pair pair: treeSet) {
-            String wordId = pair.getKey();
-            double value = pair.getValue();
-            if (i >= index) {
-                topicWords.put(wordId,value);
-            } else {
-                lowWords.put(wordId,value);
-            }
-            ++i;
+    /**
+     * Same as compute but the low words section is skipped when the score cannot reach minScore
+     * @return the score of the pair or Double.NEGATIVE_INFINITY if it is lower than minScore
+     */
+    public double compute(TopicSplitTfIdfDouble splitA, TopicSplitTfIdfDouble splitB, double minScore) {
+        if (importanceLow < 0 || importanceLow > 1) return compute(splitA, splitB);
+        double scoreTopics = computeSection(splitA.getTopics(),splitB.getTopics());
+        if (scoreTopics > cutOffTopics) {
+            if (!canReach(scoreTopics, 1, minScore)) return Double.NEGATIVE_INFINITY;
+            double scoreLow = computeSection(splitA.getLow(),splitB.getLow());
+            return scoreTopics*(1-importanceLow) + scoreLow*importanceLow;
+        } else {
+            return scoreTopics*(1-importanceLow);
         }
     }
 
-    private double computeSection(Map<String, Double> wordsA, Map<String, Double> wordsB) {
-        double cosine = 0.0;
-        Set<String> intersection = new HashSet<>(wordsA.keySet());
-        intersection.retainAll(wordsB.keySet());
-        for (String s : intersection) {
-            Double forA = wordsA.get(s);
-            Double forB = wordsB.get(s);
-            cosine += forA * forB;
+    /**
+     * Splits the words of the document in topic words (the ones with the highest tf-idf values) and low words
+     * @param words the tf-idf vector of the document
+     * @param dictionary the dictionary used to break the ties between words with the same value
+     * @return the two parts of the vector, both of them sorted by term id
+     */
+    public TopicSplitTfIdfDouble computeTopicSplit(SparseVector words, TermDictionary dictionary) {
+        int[] termIds = words.getTermIds();
+        double[] values = words.getWeights();
+        Integer[] order = new Integer[termIds.length];
+        for (int i = 0; i < order.length; ++i) order[i] = i;
+        Arrays.sort(order, (i, j) -> {
+            int result = Double.compare(values[i], values[j]);
+            if (result == 0) result = dictionary.getTerm(termIds[i]).compareTo(dictionary.getTerm(termIds[j]));
+            return result;
+        });
+
+        int lastPosTopics = Math.min((int) ceil(topicThreshold),order.length);
+        boolean[] topicWords = new boolean[order.length];
+        for (int i = order.length - lastPosTopics; i < order.length; ++i) {
+            topicWords[order[i]] = true;
         }
-        double normA = norm(wordsA);
-        double normB = norm(wordsB);
-
-        if (normA == 0 || normB == 0) return 0;
-
-        cosine = cosine / (normA * normB);
-        return cosine;
+        return new TopicSplitTfIdfDouble(extractWords(words, topicWords, true, lastPosTopics), extractWords(words, topicWords, false, order.length - lastPosTopics));
     }
 
     /*
     Private methods
      */
 
-    private Double norm(Map<String, Double> wordsB) {
-        double norm=0.0;
-        for (Map.Entry<String,Double> value: wordsB.entrySet()) {
-            norm+=value.getValue()*value.getValue();
+    /**
+     * Checks if a pair whose topic score is not greater than scoreTopics and whose low score is not greater than
+     * scoreLow can have a final score not lower than minScore. The bounds are relaxed with BOUND_TOLERANCE to take
+     * into account the rounding errors of the scores
+     */
+    private boolean canReach(double scoreTopics, double scoreLow, double minScore) {
+        double bound = scoreTopics*(1-importanceLow);
+        if (scoreTopics + BOUND_TOLERANCE > cutOffTopics) bound += scoreLow*importanceLow;
+        return bound + BOUND_TOLERANCE >= minScore;
+    }
+
+    private SparseVector extractWords(SparseVector words, boolean[] topicWords, boolean topics, int size) {
+        int[] termIds = words.getTermIds();
+        double[] values = words.getWeights();
+        int[] resultIds = new int[size];
+        double[] resultValues = new double[size];
+        int pos = 0;
+        for (int i = 0; i < termIds.length; ++i) {
+            if (topicWords[i] == topics) {
+                resultIds[pos] = termIds[i];
+                resultValues[pos] = values[i];
+                ++pos;
+            }
+        }
+        return new SparseVector(resultIds, resultValues);
+    }
+
+    private double computeSection(SparseVector wordsA, SparseVector wordsB) {
+        double normA = wordsA.getNorm();
+        double normB = wordsB.getNorm();
+        if (normA == 0 || normB == 0) return 0;
+        //the topic words are a few terms of each requirement, so most pairs do not have common topic words
+        if (!wordsA.mayShareTerms(wordsB)) return 0;
+
+        int[] idsA = wordsA.getTermIds();
+        int[] idsB = wordsB.getTermIds();
+        double[] valuesA = wordsA.getWeights();
+        double[] valuesB = wordsB.getWeights();
+        double cosine = 0.0;
+        int i = 0;
+        int j = 0;
+        while (i < idsA.length && j < idsB.length) {
+            if (idsA[i] == idsB[j]) {
+                cosine += valuesA[i] * valuesB[j];
+                ++i;
+                ++j;
+            } else if (idsA[i] < idsB[j]) ++i;
+            else ++j;
         }
-        return sqrt(norm);
+        return cosine / (normA * normB);
     }
 }
@@ -1,10 +1,12 @@
 package upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf_double;
 
+import upc.similarity.compareapi.algorithms.preprocess.RequirementsTerms;
 import upc.similarity.compareapi.entity.exception.InternalErrorException;
 import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityAlgorithm;
 import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityModel;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityScoresSink;
 import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SimilarityAlgorithmTfIdf;
-import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SimilarityModelTfIdf;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SimilarityModelTfIdfLazy;
 
 import java.util.List;
 import java.util.Map;
@@ -14,33 +16,110 @@ public class SimilarityAlgorithmTfIdfDouble implements SimilarityAlgorithm {
     private SimilarityAlgorithmTfIdf similarityAlgorithmTfIdf;
     private CosineSimilarityTfIdfDouble cosineSimilarityTfIdfDouble;
 
-    public SimilarityAlgorithmTfIdfDouble(double cutOffValue, boolean cutOffDummy, boolean smoothingActive, double topicThreshold, double cutOffTopics, double importanceLow) {
-        this.similarityAlgorithmTfIdf = new SimilarityAlgorithmTfIdf(cutOffValue,cutOffDummy,smoothingActive);
+    public SimilarityAlgorithmTfIdfDouble(double cutOffValue, boolean cutOffDummy, boolean smoothingActive, boolean lazyIdf, double topicThreshold, double cutOffTopics, double importanceLow) {
+        this.similarityAlgorithmTfIdf = new SimilarityAlgorithmTfIdf(cutOffValue,cutOffDummy,smoothingActive,lazyIdf);
         this.cosineSimilarityTfIdfDouble = new CosineSimilarityTfIdfDouble(topicThreshold,cutOffTopics,importanceLow);
     }
 
     @Override
     public SimilarityModel buildModel(Map<String, List<String>> requirements) throws InternalErrorException {
-        return similarityAlgorithmTfIdf.buildModel(requirements);
+        SimilarityModelTfIdfDouble model = new SimilarityModelTfIdfDouble(similarityAlgorithmTfIdf.buildModel(requirements));
+        updateTopicSplits(model);
+        return model;
+    }
+
+    @Override
+    public SimilarityModel buildModel(RequirementsTerms requirementsTerms) throws InternalErrorException {
+        SimilarityModelTfIdfDouble model = new SimilarityModelTfIdfDouble(similarityAlgorithmTfIdf.buildModel(requirementsTerms));
+        updateTopicSplits(model);
+        return model;
     }
 
     @Override
     public double computeSimilarity(SimilarityModel similarityModel, String requirementIdA, String requirementIdB) throws InternalErrorException {
-        try {
-            SimilarityModelTfIdf modelTfIdf = (SimilarityModelTfIdf) similarityModel;
-            return cosineSimilarityTfIdfDouble.compute(modelTfIdf, requirementIdA, requirementIdB);
-        } catch (ClassCastException e) {
-            throw new InternalErrorException("Error while computing similarity with tf_idf algorithm without a tf_idf model");
+        SimilarityModelTfIdfDouble modelTfIdfDouble = castModel(similarityModel);
+        return cosineSimilarityTfIdfDouble.compute(modelTfIdfDouble, requirementIdA, requirementIdB);
+    }
+
+    @Override
+    public void computeSimilarities(SimilarityModel similarityModel, String requirementId, List<String> candidates, double threshold, SimilarityScoresSink sink) throws InternalErrorException {
+        SimilarityModelTfIdfDouble modelTfIdfDouble = castModel(similarityModel);
+        TopicSplitTfIdfDouble split = modelTfIdfDouble.getTopicSplit(requirementId, cosineSimilarityTfIdfDouble);
+        for (String candidate : candidates) {
+            if (modelTfIdfDouble.containsRequirement(candidate) && !requirementId.equals(candidate)) {
+                TopicSplitTfIdfDouble candidateSplit = modelTfIdfDouble.getTopicSplit(candidate, cosineSimilarityTfIdfDouble);
+                double score = cosineSimilarityTfIdfDouble.compute(split, candidateSplit, Math.max(threshold, sink.getScoreBound()));
+                if (score >= threshold) sink.addScore(requirementId, candidate, score);
+            }
         }
     }
 
+    @Override
+    public void computeProjectSimilarities(SimilarityModel similarityModel, List<String> requirements, double threshold, SimilarityScoresSink sink) throws InternalErrorException {
+        SimilarityModelTfIdfDouble modelTfIdfDouble = castModel(similarityModel);
+        similarityAlgorithmTfIdf.computeProjectSimilarities(modelTfIdfDouble.getModelTfIdf(), requirements, threshold, pairScorer(modelTfIdfDouble), sink);
+    }
+
+    @Override
+    public void computeReqProjectSimilarities(SimilarityModel similarityModel, List<String> requirementsToCompare, List<String> projectRequirements, boolean include, double threshold, SimilarityScoresSink sink) throws InternalErrorException {
+        SimilarityModelTfIdfDouble modelTfIdfDouble = castModel(similarityModel);
+        similarityAlgorithmTfIdf.computeReqProjectSimilarities(modelTfIdfDouble.getModelTfIdf(), requirementsToCompare, projectRequirements, include, threshold, pairScorer(modelTfIdfDouble), sink);
+    }
+
+    @Override
+    public void computeApproximateReqProjectSimilarities(SimilarityModel similarityModel, List<String> requirementsToCompare, List<String> projectRequirements, boolean include, double threshold, SimilarityScoresSink sink) throws InternalErrorException {
+        SimilarityModelTfIdfDouble modelTfIdfDouble = castModel(similarityModel);
+        similarityAlgorithmTfIdf.computeApproximateReqProjectSimilarities(modelTfIdfDouble.getModelTfIdf(), requirementsToCompare, projectRequirements, include, threshold, pairScorer(modelTfIdfDouble), sink);
+    }
+
     @Override
     public void addRequirements(SimilarityModel similarityModel, Map<String, List<String>> requirementsTokens) throws InternalErrorException {
-        similarityAlgorithmTfIdf.addRequirements(similarityModel,requirementsTokens);
+        SimilarityModelTfIdfDouble modelTfIdfDouble = castModel(similarityModel);
+        similarityAlgorithmTfIdf.addRequirements(modelTfIdfDouble.getModelTfIdf(),requirementsTokens);
+        updateTopicSplits(modelTfIdfDouble);
+    }
+
+    @Override
+    public void addRequirements(SimilarityModel similarityModel, RequirementsTerms requirementsTerms) throws InternalErrorException {
+        SimilarityModelTfIdfDouble modelTfIdfDouble = castModel(similarityModel);
+        similarityAlgorithmTfIdf.addRequirements(modelTfIdfDouble.getModelTfIdf(),requirementsTerms);
+        updateTopicSplits(modelTfIdfDouble);
     }
 
     @Override
     public void deleteRequirements(SimilarityModel similarityModel, List<String> requirements) throws InternalErrorException {
-        similarityAlgorithmTfIdf.deleteRequirements(similarityModel,requirements);
+        SimilarityModelTfIdfDouble modelTfIdfDouble = castModel(similarityModel);
+        similarityAlgorithmTfIdf.deleteRequirements(modelTfIdfDouble.getModelTfIdf(),requirements);
+        updateTopicSplits(modelTfIdfDouble);
+    }
+
+
+    /*
+    Private methods
+     */
+
+    private SimilarityModelTfIdfDouble castModel(SimilarityModel similarityModel) throws InternalErrorException {
+        try {
+            return (SimilarityModelTfIdfDouble) similarityModel;
+        } catch (ClassCastException e) {
+            throw new InternalErrorException("Error while computing similarity with tf_idf_double algorithm without a tf_idf_double model");
+        }
+    }
+
+    /**
+     * Two requirements without common terms have score 0, so the candidates of the tf_idf inverted index are valid too. The
+     * dot product of the whole vectors is used to discard the pairs that cannot reach the minimum score
+     */
+    private SimilarityAlgorithmTfIdf.PairScorer pairScorer(SimilarityModelTfIdfDouble modelTfIdfDouble) {
+        return (idA, vectorA, idB, vectorB, dotProduct, minScore) -> cosineSimilarityTfIdfDouble.compute(modelTfIdfDouble, idA, idB, dotProduct, minScore);
+    }
+
+    /**
+     * The tf-idf values of all the requirements change when the model is updated, so all the splits are computed again.
+     * The lazy models only compute the splits of the requirements that are compared, like their tf-idf values
+     */
+    private void updateTopicSplits(SimilarityModelTfIdfDouble modelTfIdfDouble) {
+        modelTfIdfDouble.clearTopicSplits();
+        if (!(modelTfIdfDouble.getModelTfIdf() instanceof SimilarityModelTfIdfLazy)) modelTfIdfDouble.computeTopicSplits(cosineSimilarityTfIdfDouble);
     }
 }
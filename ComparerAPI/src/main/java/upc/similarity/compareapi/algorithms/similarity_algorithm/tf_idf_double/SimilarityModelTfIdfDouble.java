@@ -0,0 +1,86 @@
+package upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf_double;
+
+import upc.similarity.compareapi.algorithms.preprocess.RequirementsTerms;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityModel;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SimilarityModelTfIdf;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SparseVector;
+import upc.similarity.compareapi.entity.exception.InternalErrorException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class SimilarityModelTfIdfDouble implements SimilarityModel {
+
+    /**
+     * The tf-idf model of the organization, it is the only part of the model saved in the database
+     */
+    private SimilarityModelTfIdf modelTfIdf;
+
+    /**
+     * The topic and low words of each requirement (see CosineSimilarityTfIdfDouble). They depend on the tf-idf values, so
+     * they must be discarded every time the tf-idf model changes (see clearTopicSplits). The splits that are not
+     * inside the map are computed the first time they are needed
+     */
+    private Map<String, TopicSplitTfIdfDouble> topicSplits;
+
+    public SimilarityModelTfIdfDouble(SimilarityModelTfIdf modelTfIdf) {
+        this.modelTfIdf = modelTfIdf;
+        this.topicSplits = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public boolean containsRequirement(String requirementId) {
+        return modelTfIdf.containsRequirement(requirementId);
+    }
+
+    @Override
+    public List<String> getRequirementsIds() {
+        return modelTfIdf.getRequirementsIds();
+    }
+
+    @Override
+    public boolean checkIfRequirementIsUpdated(String requirementId, List<String> tokens) {
+        return modelTfIdf.checkIfRequirementIsUpdated(requirementId, tokens);
+    }
+
+    @Override
+    public boolean[] checkIfRequirementsAreUpdated(RequirementsTerms requirementsTerms) throws InternalErrorException {
+        return modelTfIdf.checkIfRequirementsAreUpdated(requirementsTerms);
+    }
+
+    /**
+     * Computes the splits of all the requirements of the model
+     */
+    public void computeTopicSplits(CosineSimilarityTfIdfDouble cosineSimilarity) {
+        for (Map.Entry<String, SparseVector> entry : modelTfIdf.getDocs().entrySet()) {
+            topicSplits.put(entry.getKey(), cosineSimilarity.computeTopicSplit(entry.getValue(), modelTfIdf.getDictionary()));
+        }
+    }
+
+    public void clearTopicSplits() {
+        topicSplits.clear();
+    }
+
+    /**
+     * Returns the split of the input requirement, computing it if it is not saved yet
+     * @param requirementId the id of the requirement, must be inside the model
+     * @param cosineSimilarity the similarity used to split the requirement
+     */
+    public TopicSplitTfIdfDouble getTopicSplit(String requirementId, CosineSimilarityTfIdfDouble cosineSimilarity) {
+        TopicSplitTfIdfDouble split = topicSplits.get(requirementId);
+        if (split == null) {
+            split = cosineSimilarity.computeTopicSplit(modelTfIdf.getDocs().get(requirementId), modelTfIdf.getDictionary());
+            topicSplits.put(requirementId, split);
+        }
+        return split;
+    }
+
+    /*
+    Get methods
+     */
+
+    public SimilarityModelTfIdf getModelTfIdf() {
+        return modelTfIdf;
+    }
+}
@@ -0,0 +1,54 @@
+package upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf_double;
+
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SparseVector;
+
+/**
+ * The words of a requirement split in topic words (the ones with the highest tf-idf values) and low words. Each part is
+ * saved as a sparse vector with its own norm, so the two sections of the score are computed without splitting the
+ * requirements again
+ */
+public class TopicSplitTfIdfDouble {
+
+    private SparseVector topics;
+    private SparseVector low;
+
+    /**
+     * True if all the tf-idf values of the requirement are positive (the values recomputed after an update of the model
+     * can be negative, see SimilarityAlgorithmTfIdf.recomputeIdf)
+     */
+    private boolean positiveWeights;
+
+    public TopicSplitTfIdfDouble(SparseVector topics, SparseVector low) {
+        this.topics = topics;
+        this.low = low;
+        this.positiveWeights = arePositive(topics.getWeights()) && arePositive(low.getWeights());
+    }
+
+    /*
+    Get methods
+     */
+
+    public SparseVector getTopics() {
+        return topics;
+    }
+
+    public SparseVector getLow() {
+        return low;
+    }
+
+    public boolean hasPositiveWeights() {
+        return positiveWeights;
+    }
+
+
+    /*
+    Private methods
+     */
+
+    private boolean arePositive(double[] weights) {
+        for (double weight : weights) {
+            if (weight <= 0) return false;
+        }
+        return true;
+    }
+}
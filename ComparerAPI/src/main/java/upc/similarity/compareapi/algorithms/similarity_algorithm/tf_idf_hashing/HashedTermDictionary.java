@@ -0,0 +1,117 @@
+package upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf_hashing;
+
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.TermDictionary;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A dictionary without terms. The id of each term is its hash inside a fixed space of 2^bits ids, so the dictionary only
+ * saves the number of requirements that contain each id and its size never changes. Different terms can have the same
+ * id (their appearances are added together), the number of bits controls the probability of these collisions.
+ */
+public class HashedTermDictionary extends TermDictionary {
+
+    private int bits;
+
+    /**
+     * The number of requirements that contain each id
+     */
+    private int[] frequencies;
+
+    public HashedTermDictionary(int bits) {
+        this(bits, new int[1 << bits]);
+    }
+
+    public HashedTermDictionary(int bits, int[] frequencies) {
+        this.bits = bits;
+        this.frequencies = frequencies;
+    }
+
+    /**
+     * Computes the id of a term. The hash code of the strings is defined by the language, so the ids do not change
+     * between executions and can be saved in the database. The hash code is spread with a multiplicative hash and its
+     * highest bits are used
+     */
+    public static int hash(String term, int bits) {
+        return (int) ((term.hashCode() * 0x9E3779B97F4A7C15L) >>> (64 - bits));
+    }
+
+    @Override
+    public int getId(String term) {
+        return hash(term, bits);
+    }
+
+    @Override
+    public int addTerm(String term) {
+        return hash(term, bits);
+    }
+
+    /**
+     * The terms are not saved, a placeholder with the id is returned instead
+     */
+    @Override
+    public String getTerm(int id) {
+        return "#" + id;
+    }
+
+    @Override
+    public int getFrequency(int id) {
+        return frequencies[id];
+    }
+
+    @Override
+    public void setFrequency(int id, int frequency) {
+        frequencies[id] = frequency;
+    }
+
+    @Override
+    public int size() {
+        return frequencies.length;
+    }
+
+    @Override
+    public int[] cloneFrequencies() {
+        return Arrays.copyOf(frequencies, frequencies.length);
+    }
+
+    /**
+     * The ids are fixed, so the dictionary is never compacted
+     * @return always null
+     */
+    @Override
+    public int[] removeUnusedTerms() {
+        return null;
+    }
+
+    /*
+    Get methods
+     */
+
+    @Override
+    public List<String> getTerms() {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return getTerm(index);
+            }
+
+            @Override
+            public int size() {
+                return frequencies.length;
+            }
+        };
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    /**
+     * Returns the frequencies array itself (not a copy), it is used to save the model
+     */
+    public int[] getFrequencies() {
+        return frequencies;
+    }
+}
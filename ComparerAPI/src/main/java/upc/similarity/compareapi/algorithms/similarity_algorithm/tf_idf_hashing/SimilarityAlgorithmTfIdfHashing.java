@@ -0,0 +1,24 @@
+package upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf_hashing;
+
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SimilarityAlgorithmTfIdf;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.TermDictionary;
+
+/**
+ * The tf_idf algorithm with hashed terms (feature hashing). The terms are not saved, each one is mapped to one of the
+ * 2^bits ids of a HashedTermDictionary, so the size of the model does not depend on the vocabulary of the organization.
+ * The scores are the same as in the tf_idf algorithm unless two terms of the compared requirements share the same id
+ */
+public class SimilarityAlgorithmTfIdfHashing extends SimilarityAlgorithmTfIdf {
+
+    private int bits;
+
+    public SimilarityAlgorithmTfIdfHashing(double cutOffValue, boolean cutOffDummy, boolean smoothingActive, int bits) {
+        super(cutOffValue, cutOffDummy, smoothingActive);
+        this.bits = bits;
+    }
+
+    @Override
+    protected TermDictionary createDictionary() {
+        return new HashedTermDictionary(bits);
+    }
+}
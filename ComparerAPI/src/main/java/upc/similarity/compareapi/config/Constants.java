@@ -8,12 +8,20 @@ import upc.similarity.compareapi.dao.SQLiteDatabase;
 import upc.similarity.compareapi.dao.algorithm_models_dao.clusters_algorithm.ClustersModelDatabase;
 import upc.similarity.compareapi.dao.algorithm_models_dao.clusters_algorithm.max_graph.ClustersModelDatabaseMaxGraph;
 import upc.similarity.compareapi.dao.algorithm_models_dao.similarity_algorithm.SimilarityModelDatabase;
+import upc.similarity.compareapi.dao.algorithm_models_dao.similarity_algorithm.lsa.SimilarityModelDatabaseLsa;
 import upc.similarity.compareapi.dao.algorithm_models_dao.similarity_algorithm.tf_idf.SimilarityModelDatabaseTfIdf;
+import upc.similarity.compareapi.dao.algorithm_models_dao.similarity_algorithm.tf_idf.WeightsQuantizationTfIdf;
+import upc.similarity.compareapi.dao.algorithm_models_dao.similarity_algorithm.tf_idf_double.SimilarityModelDatabaseTfIdfDouble;
+import upc.similarity.compareapi.dao.algorithm_models_dao.similarity_algorithm.tf_idf_hashing.SimilarityModelDatabaseTfIdfHashing;
 import upc.similarity.compareapi.algorithms.preprocess.PreprocessPipeline;
+import upc.similarity.compareapi.algorithms.preprocess.PreprocessPipelineCharNgrams;
 import upc.similarity.compareapi.algorithms.preprocess.PreprocessPipelineDefault;
 import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityAlgorithm;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityScoresExecutor;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.lsa.SimilarityAlgorithmLsa;
 import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SimilarityAlgorithmTfIdf;
 import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf_double.SimilarityAlgorithmTfIdfDouble;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf_hashing.SimilarityAlgorithmTfIdfHashing;
 import upc.similarity.compareapi.service.RequirementsSimilarity;
 import upc.similarity.compareapi.util.Logger;
 
@@ -34,10 +42,14 @@ public class Constants {
     private ClustersAlgorithm clustersAlgorithm = null;
     private ClustersModelDatabase clustersModelDatabase = null;
     private DatabaseModel databaseModel = null;
+    private SimilarityScoresExecutor similarityScoresExecutor = null;
+    private SimilarityScoresExecutor modelBuildExecutor = null;
 
     private Constants() {
         Logger.getInstance().showInfoMessage("Reading configuration file");
         String databasePathAux = "data/";
+        int scoringParallelismAux = Runtime.getRuntime().availableProcessors();
+        int buildParallelismAux = Runtime.getRuntime().availableProcessors();
         try {
             Path path = Paths.get("../config_files/config.json");
             List<String> lines = Files.readAllLines(path);
@@ -52,8 +64,11 @@ public class Constants {
             databasePathAux = json.getString("database_path");
             int maxDepsForPageAux = json.getInt("max_dependencies_page");
             int maxWaitingTimeAux = json.getInt("max_waiting_time_seconds");
+            scoringParallelismAux = json.optInt("scoring_parallelism", scoringParallelismAux);
+            buildParallelismAux = json.optInt("build_parallelism", buildParallelismAux);
+            int charNgramsAux = json.optInt("char_ngrams", 3);
 
-            selectPreprocessPipeline(preprocessPipelineAux);
+            selectPreprocessPipeline(preprocessPipelineAux, charNgramsAux);
             selectSimilarityAlgorithm(similarityAlgorithmAux);
             selectClustersAlgorithm(clustersAlgorithmAux);
             this.maxDepsForPage = maxDepsForPageAux;
@@ -67,13 +82,18 @@ public class Constants {
             Logger.getInstance().showErrorMessage("Error while loading database class");
         }
         this.requirementsSimilarity = new RequirementsSimilarity(this.similarityAlgorithm);
+        this.similarityScoresExecutor = new SimilarityScoresExecutor(scoringParallelismAux);
+        this.modelBuildExecutor = new SimilarityScoresExecutor(buildParallelismAux);
     }
 
-    private void selectPreprocessPipeline(String algorithmType) {
+    private void selectPreprocessPipeline(String algorithmType, int charNgrams) {
         switch (algorithmType) {
             case "default":
                 this.preprocessPipeline = new PreprocessPipelineDefault();
                 break;
+            case "char_ngrams":
+                this.preprocessPipeline = new PreprocessPipelineCharNgrams(charNgrams);
+                break;
             default:
                 Logger.getInstance().showErrorMessage("The preprocess pipeline specified in the configuration file does not exist.");
                 break;
@@ -85,6 +105,8 @@ public class Constants {
             case "tf_idf":
                 double cutOff = 10;
                 boolean smoothing = true;
+                boolean lazyIdf = false;
+                String weightsFormat = WeightsQuantizationTfIdf.DOUBLE;
                 try {
                     Path path = Paths.get("../config_files/config_tfidf.json");
                     List<String> lines = Files.readAllLines(path);
@@ -93,15 +115,19 @@ public class Constants {
                     JSONObject jsonObject = new JSONObject(file);
                     cutOff = jsonObject.getDouble("cut_off");
                     smoothing = jsonObject.getBoolean("smoothing");
+                    lazyIdf = jsonObject.optBoolean("lazy_idf", false);
+                    weightsFormat = jsonObject.optString("weights_format", WeightsQuantizationTfIdf.DOUBLE);
                 } catch (Exception e) {
                     Logger.getInstance().showErrorMessage("Error while reading tf_idf config file: " + e.getMessage());
                 }
-                this.similarityAlgorithm = new SimilarityAlgorithmTfIdf(cutOff,false,smoothing);
-                this.similarityModelDatabase = new SimilarityModelDatabaseTfIdf();
+                this.similarityAlgorithm = new SimilarityAlgorithmTfIdf(cutOff,false,smoothing,lazyIdf);
+                this.similarityModelDatabase = new SimilarityModelDatabaseTfIdf(checkWeightsFormat(weightsFormat));
                 break;
             case "tf_idf_double":
                 cutOff = 10;
                 smoothing = true;
+                lazyIdf = false;
+                weightsFormat = WeightsQuantizationTfIdf.DOUBLE;
                 double topicThreshold = 5;
                 double cutOffTopics = 0.25;
                 double importanceLow = 0.6;
@@ -116,11 +142,59 @@ public class Constants {
                     topicThreshold = jsonObject.getInt("topic_threshold");
                     cutOffTopics = jsonObject.getDouble("cut_off_topics");
                     importanceLow = jsonObject.getDouble("importance_low");
+                    lazyIdf = jsonObject.optBoolean("lazy_idf", false);
+                    weightsFormat = jsonObject.optString("weights_format", WeightsQuantizationTfIdf.DOUBLE);
                 } catch (Exception e) {
                     Logger.getInstance().showErrorMessage("Error while reading tf_idf config file: " + e.getMessage());
                 }
-                this.similarityAlgorithm = new SimilarityAlgorithmTfIdfDouble(cutOff,false,smoothing,topicThreshold,cutOffTopics,importanceLow);
-                this.similarityModelDatabase = new SimilarityModelDatabaseTfIdf();
+                this.similarityAlgorithm = new SimilarityAlgorithmTfIdfDouble(cutOff,false,smoothing,lazyIdf,topicThreshold,cutOffTopics,importanceLow);
+                this.similarityModelDatabase = new SimilarityModelDatabaseTfIdfDouble(checkWeightsFormat(weightsFormat));
+                break;
+            case "tf_idf_hashing":
+                cutOff = 10;
+                smoothing = true;
+                int hashingBits = 18;
+                try {
+                    Path path = Paths.get("../config_files/config_tfidf_hashing.json");
+                    List<String> lines = Files.readAllLines(path);
+                    String file = "";
+                    for (String line : lines) file = file.concat(line);
+                    JSONObject jsonObject = new JSONObject(file);
+                    cutOff = jsonObject.getDouble("cut_off");
+                    smoothing = jsonObject.getBoolean("smoothing");
+                    hashingBits = jsonObject.getInt("hashing_bits");
+                } catch (Exception e) {
+                    Logger.getInstance().showErrorMessage("Error while reading tf_idf_hashing config file: " + e.getMessage());
+                }
+                if (hashingBits < 1 || hashingBits > 24) {
+                    Logger.getInstance().showErrorMessage("The hashing_bits parameter must be between 1 and 24, the default value 18 is used");
+                    hashingBits = 18;
+                }
+                this.similarityAlgorithm = new SimilarityAlgorithmTfIdfHashing(cutOff,false,smoothing,hashingBits);
+                this.similarityModelDatabase = new SimilarityModelDatabaseTfIdfHashing();
+                break;
+            case "lsa":
+                cutOff = 10;
+                smoothing = true;
+                int dimensions = 100;
+                int oversampling = 10;
+                int powerIterations = 2;
+                try {
+                    Path path = Paths.get("../config_files/config_lsa.json");
+                    List<String> lines = Files.readAllLines(path);
+                    String file = "";
+                    for (String line : lines) file = file.concat(line);
+                    JSONObject jsonObject = new JSONObject(file);
+                    cutOff = jsonObject.getDouble("cut_off");
+                    smoothing = jsonObject.getBoolean("smoothing");
+                    dimensions = jsonObject.getInt("dimensions");
+                    oversampling = jsonObject.getInt("oversampling");
+                    powerIterations = jsonObject.getInt("power_iterations");
+                } catch (Exception e) {
+                    Logger.getInstance().showErrorMessage("Error while reading lsa config file: " + e.getMessage());
+                }
+                this.similarityAlgorithm = new SimilarityAlgorithmLsa(cutOff,false,smoothing,dimensions,oversampling,powerIterations);
+                this.similarityModelDatabase = new SimilarityModelDatabaseLsa();
                 break;
             default:
                 Logger.getInstance().showErrorMessage("The similarity algorithm specified in the configuration file does not exist.");
@@ -128,6 +202,12 @@ public class Constants {
         }
     }
 
+    private String checkWeightsFormat(String weightsFormat) {
+        if (WeightsQuantizationTfIdf.isValid(weightsFormat)) return weightsFormat;
+        Logger.getInstance().showErrorMessage("The weights format specified in the tf_idf config file does not exist, the double format is used");
+        return WeightsQuantizationTfIdf.DOUBLE;
+    }
+
     private void selectClustersAlgorithm(String algorithmType) {
         switch (algorithmType) {
             case "max_graph":
@@ -181,6 +261,14 @@ public class Constants {
         return databaseModel;
     }
 
+    public SimilarityScoresExecutor getSimilarityScoresExecutor() {
+        return similarityScoresExecutor;
+    }
+
+    public SimilarityScoresExecutor getModelBuildExecutor() {
+        return modelBuildExecutor;
+    }
+
 
     /*
     Set operations
@@ -218,6 +306,14 @@ public class Constants {
         this.databaseModel = databaseModel;
     }
 
+    public void setSimilarityScoresExecutor(SimilarityScoresExecutor similarityScoresExecutor) {
+        this.similarityScoresExecutor = similarityScoresExecutor;
+    }
+
+    public void setModelBuildExecutor(SimilarityScoresExecutor modelBuildExecutor) {
+        this.modelBuildExecutor = modelBuildExecutor;
+    }
+
     /*
     Test purpose methods
      */
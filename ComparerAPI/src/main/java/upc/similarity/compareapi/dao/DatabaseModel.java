@@ -1,5 +1,6 @@
 package upc.similarity.compareapi.dao;
 
+import upc.similarity.compareapi.algorithms.similarity_algorithm.StreamingModelBuild;
 import upc.similarity.compareapi.entity.Organization;
 import upc.similarity.compareapi.entity.OrganizationModels;
 import upc.similarity.compareapi.entity.exception.InternalErrorException;
@@ -30,6 +31,13 @@ public interface DatabaseModel {
 
     void saveOrganizationModels(String organizationId, OrganizationModels organizationModels, boolean saveSimilarityModel, boolean saveClustersModel) throws InternalErrorException;
 
+    /**
+     * Saves the models of an organization without clusters whose similarity model has been built with a streaming build
+     * (the similarity model of the input organization models is not used). The representations of the requirements are
+     * written to the database one by one
+     */
+    void saveOrganizationModels(String organizationId, OrganizationModels organizationModels, StreamingModelBuild similarityModelBuild) throws InternalErrorException;
+
 
     /*
     Responses operations
@@ -5,6 +5,7 @@ import upc.similarity.compareapi.dao.algorithm_models_dao.clusters_algorithm.Clu
 import upc.similarity.compareapi.dao.algorithm_models_dao.similarity_algorithm.SimilarityModelDatabase;
 import upc.similarity.compareapi.entity.*;
 import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityModel;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.StreamingModelBuild;
 import upc.similarity.compareapi.util.Logger;
 import upc.similarity.compareapi.entity.exception.InternalErrorException;
 import upc.similarity.compareapi.entity.exception.NotFinishedException;
@@ -149,6 +150,8 @@ public class SQLiteDatabase implements DatabaseModel {
                 conn.setAutoCommit(false);
                 organizationModels = getOrganizationInfo(organization, conn);
                 organizationModels.setSimilarityModel(similarityModelDatabase.getModel(readOnly, conn));
+                organizationModels.setFingerprints(loadFingerprints(conn));
+                organizationModels.setContentHashes(loadContentHashes(conn));
                 if (organizationModels.hasClusters()) organizationModels.setClustersModel(clustersModelDatabase.getModel(conn));
                 conn.commit();
             }
@@ -173,6 +176,22 @@ public class SQLiteDatabase implements DatabaseModel {
         }
     }
 
+    @Override
+    public void saveOrganizationModels(String organization, OrganizationModels organizationModels, StreamingModelBuild similarityModelBuild) throws InternalErrorException {
+        try {
+            insertNewOrganization(organization);
+            try (Connection conn = getConnection(organization)) {
+                conn.setAutoCommit(false);
+                clearOrganizationTables(conn);
+                saveOrganizationInfo(organization, organizationModels, false, false, conn);
+                similarityModelDatabase.saveStreamingModel(similarityModelBuild, conn);
+                conn.commit();
+            }
+        } catch (SQLException sql) {
+            throw treatSQLException(sql.getMessage(),"Error while saving the models of an organization",organization);
+        }
+    }
+
 
     /*
     Public methods
@@ -412,6 +431,8 @@ public class SQLiteDatabase implements DatabaseModel {
             ps.execute();
         }
         saveRequirementsInfo(organizationModels.getReqComponent(),conn);
+        saveFingerprints(organizationModels.getFingerprints(),conn);
+        saveContentHashes(organizationModels.getContentHashes(),conn);
 
         if (saveSimilarityModel) similarityModelDatabase.saveModelInfo(similarityModel,conn);
         if (withClusters && saveClustersModel) clustersModelDatabase.saveModelInfo(clustersModel,conn);
@@ -430,6 +451,28 @@ public class SQLiteDatabase implements DatabaseModel {
         }
     }
 
+    private void saveFingerprints(RequirementFingerprints fingerprints, Connection conn) throws SQLException {
+        String sql = "INSERT INTO requirement_fingerprints(id, fingerprint) VALUES (?,?)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (Map.Entry<String, Long> entry : fingerprints.getFingerprints().entrySet()) {
+                ps.setString(1, entry.getKey());
+                ps.setLong(2, entry.getValue());
+                ps.execute();
+            }
+        }
+    }
+
+    private void saveContentHashes(RequirementContentHashes contentHashes, Connection conn) throws SQLException {
+        String sql = "INSERT INTO requirement_hashes(id, hash) VALUES (?,?)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (Map.Entry<String, Long> entry : contentHashes.getHashes().entrySet()) {
+                ps.setString(1, entry.getKey());
+                ps.setLong(2, entry.getValue());
+                ps.execute();
+            }
+        }
+    }
+
 
     private String buildDbUrl(String organization) {
         String driversName = "jdbc:sqlite:";
@@ -618,6 +661,42 @@ public class SQLiteDatabase implements DatabaseModel {
         return result;
     }
 
+    private RequirementFingerprints loadFingerprints(Connection conn) throws SQLException {
+        Map<String, Long> result = new HashMap<>();
+        //the organizations saved before the fingerprints existed do not have them, see RequirementsSimilarity.computeProjectDuplicates
+        if (existsTable("requirement_fingerprints", conn)) {
+            String sql = "SELECT id, fingerprint FROM requirement_fingerprints";
+            try (Statement stmt  = conn.createStatement();
+                 ResultSet rs    = stmt.executeQuery(sql)){
+                while (rs.next()) result.put(rs.getString("id"), rs.getLong("fingerprint"));
+            }
+        }
+        return new RequirementFingerprints(result);
+    }
+
+    private RequirementContentHashes loadContentHashes(Connection conn) throws SQLException {
+        Map<String, Long> result = new HashMap<>();
+        //the organizations saved before the content hashes existed get them as their requirements are received again
+        if (existsTable("requirement_hashes", conn)) {
+            String sql = "SELECT id, hash FROM requirement_hashes";
+            try (Statement stmt  = conn.createStatement();
+                 ResultSet rs    = stmt.executeQuery(sql)){
+                while (rs.next()) result.put(rs.getString("id"), rs.getLong("hash"));
+            }
+        }
+        return new RequirementContentHashes(result);
+    }
+
+    private boolean existsTable(String table, Connection conn) throws SQLException {
+        String sql = "SELECT name FROM sqlite_master WHERE type = 'table' AND name = ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
     private void updateMaxPages(String organizationId, String responseId, int maxPages, Connection conn) throws SQLException {
         String sql1 = "UPDATE responses SET maxPages = ? WHERE organizationId = ? AND responseID = ?";
 
@@ -694,9 +773,21 @@ public class SQLiteDatabase implements DatabaseModel {
                 + " component varchar \n"
                 + ");";
 
+        String sql3 = "CREATE TABLE requirement_fingerprints (\n"
+                + " id varchar PRIMARY KEY, \n"
+                + " fingerprint integer \n"
+                + ");";
+
+        String sql4 = "CREATE TABLE requirement_hashes (\n"
+                + " id varchar PRIMARY KEY, \n"
+                + " hash integer \n"
+                + ");";
+
         try (Statement stmt = conn.createStatement()) {
             stmt.execute(sql1);
             stmt.execute(sql2);
+            stmt.execute(sql3);
+            stmt.execute(sql4);
         }
 
         similarityModelDatabase.createModelTables(conn);
@@ -707,10 +798,25 @@ public class SQLiteDatabase implements DatabaseModel {
 
         String sql1 = "DELETE FROM info";
         String sql2 = "DELETE FROM requirements_info";
+        //the databases of the organizations created before the fingerprints and the content hashes existed do not have their tables
+        String sql3 = "CREATE TABLE IF NOT EXISTS requirement_fingerprints (\n"
+                + " id varchar PRIMARY KEY, \n"
+                + " fingerprint integer \n"
+                + ");";
+        String sql4 = "DELETE FROM requirement_fingerprints";
+        String sql5 = "CREATE TABLE IF NOT EXISTS requirement_hashes (\n"
+                + " id varchar PRIMARY KEY, \n"
+                + " hash integer \n"
+                + ");";
+        String sql6 = "DELETE FROM requirement_hashes";
 
         try (Statement stmt = conn.createStatement()) {
             stmt.execute(sql1);
             stmt.execute(sql2);
+            stmt.execute(sql3);
+            stmt.execute(sql4);
+            stmt.execute(sql5);
+            stmt.execute(sql6);
         }
 
         similarityModelDatabase.clearModelTables(conn);
@@ -2,6 +2,7 @@ package upc.similarity.compareapi.dao.algorithm_models_dao.similarity_algorithm;
 
 import upc.similarity.compareapi.entity.exception.InternalErrorException;
 import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityModel;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.StreamingModelBuild;
 
 import java.sql.Connection;
 import java.sql.SQLException;
@@ -30,6 +31,17 @@ public interface SimilarityModelDatabase{
      */
     void saveModelInfo(SimilarityModel similarityModel, Connection conn) throws InternalErrorException, SQLException;
 
+    /**
+     * Saves a model built with a streaming build of the same similarity algorithm to the created database tables. The
+     * representations of the requirements are saved one by one, without loading all of them in memory
+     * @param similarityModelBuild the streaming build with all the requirements already added (see StreamingModelBuild)
+     * @param conn the connection used to connect to the database (mandatory to use this one, creating a different one may create concurrency problems)
+     * @throws SQLException when some sql exception is thrown
+     */
+    default void saveStreamingModel(StreamingModelBuild similarityModelBuild, Connection conn) throws InternalErrorException, SQLException {
+        throw new InternalErrorException("The similarity model can not be saved from a streaming build");
+    }
+
     /**
      * Loads the similarity model from the database tables
      * @param readOnly this parameter shows if the method that called this operation is gonna update the model. It is used when there are some data structures
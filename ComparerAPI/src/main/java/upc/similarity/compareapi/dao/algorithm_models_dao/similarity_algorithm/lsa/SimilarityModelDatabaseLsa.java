@@ -0,0 +1,222 @@
+package upc.similarity.compareapi.dao.algorithm_models_dao.similarity_algorithm.lsa;
+
+import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityModel;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.lsa.SimilarityModelLsa;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.TermDictionary;
+import upc.similarity.compareapi.dao.algorithm_models_dao.similarity_algorithm.SimilarityModelDatabase;
+import upc.similarity.compareapi.entity.exception.InternalErrorException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SimilarityModelDatabaseLsa implements SimilarityModelDatabase {
+
+    @Override
+    public void createModelTables(Connection conn) throws SQLException {
+
+        String sql1 = "CREATE TABLE lsa_info (\n"
+                + " dimensions integer, \n"
+                + " corpus_size integer \n"
+                + ");";
+
+        String sql2 = "CREATE TABLE lsa_vectors (\n"
+                + " id varchar PRIMARY KEY, \n"
+                + " fingerprint integer, \n"
+                + " vector blob \n"
+                + ");";
+
+        String sql3 = "CREATE TABLE lsa_terms (\n"
+                + " id integer PRIMARY KEY, \n"
+                + " term text, \n"
+                + " frequency integer, \n"
+                + " projection blob \n"
+                + ");";
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql1);
+            stmt.execute(sql2);
+            stmt.execute(sql3);
+        }
+    }
+
+    @Override
+    public void clearModelTables(Connection conn) throws SQLException {
+
+        String sql1 = "DELETE FROM lsa_info";
+        String sql2 = "DELETE FROM lsa_vectors";
+        String sql3 = "DELETE FROM lsa_terms";
+
+        //the organizations created before the idf values were fixed do not save the size of the corpus
+        if (!existsColumn("lsa_info", "corpus_size", conn)) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER TABLE lsa_info ADD COLUMN corpus_size integer");
+            }
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql1);
+            stmt.execute(sql2);
+            stmt.execute(sql3);
+        }
+    }
+
+    @Override
+    public void saveModelInfo(SimilarityModel similarityModel, Connection conn) throws InternalErrorException, SQLException {
+        try {
+            SimilarityModelLsa similarityModelLsa = (SimilarityModelLsa) similarityModel;
+            saveInfo(similarityModelLsa, conn);
+            saveVectors(similarityModelLsa, conn);
+            saveTerms(similarityModelLsa, conn);
+        } catch (ClassCastException e) {
+            throw new InternalErrorException("A lsa method received a model that is not lsa");
+        }
+    }
+
+    @Override
+    public SimilarityModel getModel(boolean readOnly, Connection conn) throws SQLException {
+        int[] info = loadInfo(conn);
+        int dimensions = info[0];
+        List<String> terms = new ArrayList<>();
+        List<Integer> frequencies = new ArrayList<>();
+        float[] projection = loadTerms(dimensions, terms, frequencies, conn);
+        int[] auxFrequencies = new int[Math.max(16, frequencies.size())];
+        for (int i = 0; i < frequencies.size(); ++i) auxFrequencies[i] = frequencies.get(i);
+        SimilarityModelLsa model = new SimilarityModelLsa(dimensions, new TermDictionary(terms, auxFrequencies), info[1], projection);
+        loadVectors(model, conn);
+        return model;
+    }
+
+    @Override
+    public boolean existsReqInsideModel(String requirement, Connection conn) throws SQLException {
+        String sql = "SELECT id FROM lsa_vectors WHERE id = ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, requirement);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+
+    /*
+    Private methods
+     */
+
+    private void saveInfo(SimilarityModelLsa model, Connection conn) throws SQLException {
+        String sql = "INSERT INTO lsa_info(dimensions, corpus_size) VALUES (?,?)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, model.getDimensions());
+            ps.setInt(2, model.getCorpusSize());
+            ps.execute();
+        }
+    }
+
+    private void saveVectors(SimilarityModelLsa model, Connection conn) throws SQLException {
+        String sql = "INSERT INTO lsa_vectors(id, fingerprint, vector) VALUES (?,?,?)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < model.size(); ++i) {
+                ps.setString(1, model.getId(i));
+                ps.setLong(2, model.getFingerprint(i));
+                ps.setBytes(3, floatsToBytes(model.getVector(i), 0, model.getDimensions()));
+                ps.execute();
+            }
+        }
+    }
+
+    private void saveTerms(SimilarityModelLsa model, Connection conn) throws SQLException {
+        //the terms added after computing the decomposition (only in the models saved before the idf values were fixed) are
+        //saved without projection
+        TermDictionary dictionary = model.getDictionary();
+        float[] projection = model.getProjection();
+        int dimensions = model.getDimensions();
+        String sql = "INSERT INTO lsa_terms(id, term, frequency, projection) VALUES (?,?,?,?)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < dictionary.size(); ++i) {
+                ps.setInt(1, i);
+                ps.setString(2, dictionary.getTerm(i));
+                ps.setInt(3, dictionary.getFrequency(i));
+                if ((i + 1) * dimensions <= projection.length) ps.setBytes(4, floatsToBytes(projection, i * dimensions, dimensions));
+                else ps.setNull(4, Types.BLOB);
+                ps.execute();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of dimensions and the size of the corpus used to compute the decomposition
+     */
+    private int[] loadInfo(Connection conn) throws SQLException {
+        boolean legacyFormat = !existsColumn("lsa_info", "corpus_size", conn);
+        String sql = "SELECT* FROM lsa_info";
+        int[] result = new int[2];
+        try (Statement stmt  = conn.createStatement();
+             ResultSet rs    = stmt.executeQuery(sql)){
+            if (rs.next()) {
+                result[0] = rs.getInt("dimensions");
+                if (!legacyFormat) result[1] = rs.getInt("corpus_size");
+            } else throw new SQLException("Error loading lsa info from the database");
+        }
+        if (legacyFormat) {
+            //the frequencies of the old models were updated with the new requirements (but not with the deleted ones), so
+            //the current number of requirements is the closest value
+            try (Statement stmt  = conn.createStatement();
+                 ResultSet rs    = stmt.executeQuery("SELECT COUNT(*) FROM lsa_vectors")){
+                if (rs.next()) result[1] = rs.getInt(1);
+            }
+        }
+        return result;
+    }
+
+    private boolean existsColumn(String table, String column, Connection conn) throws SQLException {
+        String sql = "PRAGMA table_info(" + table + ")";
+        try (Statement stmt  = conn.createStatement();
+             ResultSet rs    = stmt.executeQuery(sql)){
+            while (rs.next()) {
+                if (rs.getString("name").equals(column)) return true;
+            }
+        }
+        return false;
+    }
+
+    private float[] loadTerms(int dimensions, List<String> terms, List<Integer> frequencies, Connection conn) throws SQLException {
+        List<byte[]> rows = new ArrayList<>();
+        String sql = "SELECT* FROM lsa_terms ORDER BY id";
+        try (Statement stmt  = conn.createStatement();
+             ResultSet rs    = stmt.executeQuery(sql)){
+            while (rs.next()) {
+                terms.add(rs.getString("term"));
+                frequencies.add(rs.getInt("frequency"));
+                byte[] row = rs.getBytes("projection");
+                if (row != null) rows.add(row);
+            }
+        }
+        float[] projection = new float[rows.size() * dimensions];
+        for (int i = 0; i < rows.size(); ++i) bytesToFloats(rows.get(i), projection, i * dimensions);
+        return projection;
+    }
+
+    private void loadVectors(SimilarityModelLsa model, Connection conn) throws SQLException {
+        String sql = "SELECT* FROM lsa_vectors";
+        try (Statement stmt  = conn.createStatement();
+             ResultSet rs    = stmt.executeQuery(sql)){
+            while (rs.next()) {
+                float[] vector = new float[model.getDimensions()];
+                bytesToFloats(rs.getBytes("vector"), vector, 0);
+                model.putRequirement(rs.getString("id"), vector, rs.getLong("fingerprint"));
+            }
+        }
+    }
+
+    private byte[] floatsToBytes(float[] values, int from, int size) {
+        ByteBuffer buffer = ByteBuffer.allocate(size * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = from; i < from + size; ++i) buffer.putFloat(values[i]);
+        return buffer.array();
+    }
+
+    private void bytesToFloats(byte[] bytes, float[] result, int from) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = from; buffer.remaining() >= 4; ++i) result[i] = buffer.getFloat();
+    }
+}
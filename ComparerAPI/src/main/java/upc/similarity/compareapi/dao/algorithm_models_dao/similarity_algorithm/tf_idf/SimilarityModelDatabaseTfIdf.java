@@ -5,20 +5,46 @@ import org.json.JSONObject;
 import upc.similarity.compareapi.dao.algorithm_models_dao.similarity_algorithm.SimilarityModelDatabase;
 import upc.similarity.compareapi.entity.exception.InternalErrorException;
 import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityModel;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.StreamingModelBuild;
 import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SimilarityModelTfIdf;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SimilarityModelTfIdfLazy;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SparseVector;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.StreamingBuildTfIdf;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.TermDictionary;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.TfIdfWeighting;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class SimilarityModelDatabaseTfIdf implements SimilarityModelDatabase {
 
+    private static final String SIGNATURES_INSERT_SQL = "INSERT INTO signatures(id, definition) VALUES (?,?)";
+
+    /**
+     * The format used to save the tf-idf vectors (see WeightsQuantizationTfIdf)
+     */
+    private String weightsFormat;
+
+    public SimilarityModelDatabaseTfIdf() {
+        this(WeightsQuantizationTfIdf.DOUBLE);
+    }
+
+    public SimilarityModelDatabaseTfIdf(String weightsFormat) {
+        this.weightsFormat = weightsFormat;
+    }
+
     @Override
     public void createModelTables(Connection conn) throws SQLException {
 
         String sql1 = "CREATE TABLE docs (\n"
                 + " id varchar PRIMARY KEY, \n"
-                + " definition text \n"
+                + " definition text, \n"
+                + " norm double \n"
                 + ");";
 
         String sql2 = "CREATE TABLE corpus (\n"
@@ -29,6 +55,9 @@ public class SimilarityModelDatabaseTfIdf implements SimilarityModelDatabase {
             stmt.execute(sql1);
             stmt.execute(sql2);
         }
+        createSignaturesTable(conn);
+        createLazyTables(conn);
+        createQuantizedTable(conn);
     }
 
     @Override
@@ -36,30 +65,83 @@ public class SimilarityModelDatabaseTfIdf implements SimilarityModelDatabase {
 
         String sql1 = "DELETE FROM docs";
         String sql2 = "DELETE FROM corpus";
+        String sql3 = "DELETE FROM signatures";
+        String sql4 = "DELETE FROM tf_idf_info";
+        String sql5 = "DELETE FROM quantized_docs";
 
+        //the organizations created before the term dictionary save the docs with the words as keys and without the norms,
+        //the rows are deleted below and saved again with the new format
+        if (!existsColumn("docs", "norm", conn)) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER TABLE docs ADD COLUMN norm double");
+            }
+        }
+        //the organizations created before the approximate methods do not have the signatures table
+        createSignaturesTable(conn);
+        createLazyTables(conn);
+        createQuantizedTable(conn);
         try (Statement stmt = conn.createStatement()) {
             stmt.execute(sql1);
             stmt.execute(sql2);
+            stmt.execute(sql3);
+            stmt.execute(sql4);
+            stmt.execute(sql5);
         }
+        //the tf_docs table is not cleared because the lazy models only save the requirements modified since the last save
     }
 
     @Override
     public void saveModelInfo(SimilarityModel similarityModel, Connection conn) throws InternalErrorException, SQLException {
+        if (similarityModel instanceof SimilarityModelTfIdfLazy) {
+            saveLazyModel((SimilarityModelTfIdfLazy) similarityModel, conn);
+            return;
+        }
         try {
             SimilarityModelTfIdf similarityModelTfIdf = (SimilarityModelTfIdf) similarityModel;
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("DELETE FROM tf_docs");
+            }
             saveDocs(similarityModelTfIdf.getDocs(), conn);
-            saveCorpusFrequency(similarityModelTfIdf.getCorpusFrequency(), conn);
+            saveDictionary(similarityModelTfIdf.getDictionary(), conn);
+            //the signatures are only saved if they have been computed for an approximate comparison
+            if (similarityModelTfIdf.hasSignatures()) saveSignatures(similarityModelTfIdf.getSignatures(), conn);
         } catch (ClassCastException e) {
             throw new InternalErrorException("A tfIdf method received a model that is not tfIdf");
         }
     }
 
+    @Override
+    public void saveStreamingModel(StreamingModelBuild similarityModelBuild, Connection conn) throws InternalErrorException, SQLException {
+        try {
+            StreamingBuildTfIdf build = (StreamingBuildTfIdf) similarityModelBuild;
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("DELETE FROM tf_docs");
+            }
+            try (StreamingBuildTfIdf.VectorsReader reader = build.readVectors();
+                 PreparedStatement docsStatement = conn.prepareStatement(docsInsertSql())) {
+                while (reader.next()) insertDoc(docsStatement, reader.getRequirementId(), reader.getVector());
+            }
+            saveDictionary(build.getDictionary(), conn);
+        } catch (ClassCastException e) {
+            throw new InternalErrorException("A tfIdf method received a streaming build that is not tfIdf");
+        }
+    }
+
     @Override
     public SimilarityModel getModel(boolean readOnly, Connection conn) throws SQLException {
-        Map<String,Map<String,Double>> docs = loadDocs(conn);
-        Map<String,Integer> corpusFrequency = null;
-        if (!readOnly) corpusFrequency = loadCorpusFrequency(conn);
-        return new SimilarityModelTfIdf(docs,corpusFrequency);
+        TfIdfWeighting weighting = loadWeighting(conn);
+        if (weighting != null) {
+            SimilarityModelTfIdfLazy model = new SimilarityModelTfIdfLazy(loadFrequencies(conn), loadDictionary(conn), weighting);
+            model.markAsSaved();
+            return model;
+        }
+        //the dictionary is always loaded because it is needed to translate the word ids of the docs
+        TermDictionary dictionary = loadDictionary(conn);
+        Map<String,SparseVector> docs = loadDocs(dictionary, conn);
+        //the signatures that are not saved (e.g. organizations created before the approximate methods) are computed again
+        //the first time they are requested
+        Map<String,long[]> signatures = loadSignatures(conn);
+        return new SimilarityModelTfIdf(docs,dictionary,signatures);
     }
 
     @Override
@@ -68,9 +150,21 @@ public class SimilarityModelDatabaseTfIdf implements SimilarityModelDatabase {
         try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, requirement);
             try (ResultSet rs = ps.executeQuery()) {
-                return rs.next();
+                if (rs.next()) return true;
             }
         }
+        for (String table : new String[]{"tf_docs", "quantized_docs"}) {
+            if (existsTable(table, conn)) {
+                sql = "SELECT id FROM " + table + " WHERE id = ?";
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    ps.setString(1, requirement);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.next()) return true;
+                    }
+                }
+            }
+        }
+        return false;
     }
 
 
@@ -78,97 +172,332 @@ public class SimilarityModelDatabaseTfIdf implements SimilarityModelDatabase {
     Private methods
      */
 
-    private void saveDocs(Map<String, Map<String, Double>> docs, Connection conn) throws SQLException {
-        for (Map.Entry<String, Map<String, Double>> entry : docs.entrySet()) {
-            String key = entry.getKey();
-            Map<String, Double> words = entry.getValue();
-            String sql = "INSERT INTO docs(id, definition) VALUES (?,?)";
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setString(1, key);
-                ps.setString(2, wordsConversionToJson(words).toString());
-                ps.execute();
-            }
+    private void saveDocs(Map<String, SparseVector> docs, Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(docsInsertSql())) {
+            for (Map.Entry<String, SparseVector> entry : docs.entrySet()) insertDoc(ps, entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * The vectors are saved in the docs table with the double format and in the quantized_docs table with the others
+     */
+    private String docsInsertSql() {
+        if (weightsFormat.equals(WeightsQuantizationTfIdf.DOUBLE)) return "INSERT INTO docs(id, definition, norm) VALUES (?,?,?)";
+        else return "INSERT INTO quantized_docs(id, format, definition) VALUES (?,?,?)";
+    }
+
+    private void insertDoc(PreparedStatement ps, String id, SparseVector words) throws SQLException {
+        ps.setString(1, id);
+        if (weightsFormat.equals(WeightsQuantizationTfIdf.DOUBLE)) {
+            ps.setString(2, wordsConversionToJson(words).toString());
+            ps.setDouble(3, words.getNorm());
+        } else {
+            ps.setString(2, weightsFormat);
+            ps.setBytes(3, WeightsQuantizationTfIdf.encode(words, weightsFormat));
         }
+        ps.execute();
     }
 
-    private JSONArray wordsConversionToJson(Map<String, Double> map) {
+    /**
+     * The table of the vectors saved with a binary format. Each row saves its format, so the models can be loaded after
+     * changing the format of the configuration file
+     */
+    private void createQuantizedTable(Connection conn) throws SQLException {
+        String sql = "CREATE TABLE IF NOT EXISTS quantized_docs (\n"
+                + " id varchar PRIMARY KEY, \n"
+                + " format varchar, \n"
+                + " definition blob \n"
+                + ");";
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private JSONArray wordsConversionToJson(SparseVector words) {
         JSONArray result = new JSONArray();
-        for (Map.Entry<String, Double> entry : map.entrySet()) {
+        int[] termIds = words.getTermIds();
+        double[] weights = words.getWeights();
+        for (int i = 0; i < termIds.length; ++i) {
             JSONObject aux = new JSONObject();
-            aux.put("id", entry.getKey());
-            aux.put("value", entry.getValue());
+            aux.put("id", termIds[i]);
+            aux.put("value", weights[i]);
             result.put(aux);
         }
         return result;
     }
 
-    private void saveCorpusFrequency(Map<String, Integer> corpusFrequency, Connection conn) throws SQLException {
+    private void saveDictionary(TermDictionary dictionary, Connection conn) throws SQLException {
         String sql = "INSERT INTO corpus(definition) VALUES (?)";
         try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1,corpusFrequencyToJson(corpusFrequency));
+            ps.setString(1,dictionaryToJson(dictionary));
             ps.execute();
         }
     }
 
-    private String corpusFrequencyToJson(Map<String, Integer> corpusFrequency) {
+    private String dictionaryToJson(TermDictionary dictionary) {
+        //the position of each word inside the array is its id
         JSONArray result = new JSONArray();
-        for (Map.Entry<String, Integer> entry : corpusFrequency.entrySet()) {
+        for (int i = 0; i < dictionary.size(); ++i) {
             JSONObject aux = new JSONObject();
-            aux.put("id", entry.getKey());
-            aux.put("value", entry.getValue());
+            aux.put("id", dictionary.getTerm(i));
+            aux.put("value", dictionary.getFrequency(i));
             result.put(aux);
         }
         return result.toString();
     }
 
-    private Map<String, Map<String, Double>> loadDocs(Connection conn) throws SQLException {
-        Map<String, Map<String, Double>> result = new HashMap<>();
+    /**
+     * The tables of the lazy models (see SimilarityModelTfIdfLazy). The tf_idf_info table only has a row when the saved
+     * model is lazy
+     */
+    private void createLazyTables(Connection conn) throws SQLException {
+        String sql1 = "CREATE TABLE IF NOT EXISTS tf_docs (\n"
+                + " id varchar PRIMARY KEY, \n"
+                + " definition text \n"
+                + ");";
+
+        String sql2 = "CREATE TABLE IF NOT EXISTS tf_idf_info (\n"
+                + " cut_off double, \n"
+                + " cut_off_dummy integer, \n"
+                + " smoothing integer \n"
+                + ");";
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql1);
+            stmt.execute(sql2);
+        }
+    }
+
+    /**
+     * Only the requirements modified since the last save are written, unless all of them have changed (e.g. a new model or
+     * a compacted dictionary). The signatures are not saved because the lazy models compute them on demand
+     */
+    private void saveLazyModel(SimilarityModelTfIdfLazy model, Connection conn) throws SQLException {
+        Map<String, SparseVector> frequencies = model.getFrequencies();
+        if (model.isFullWrite()) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("DELETE FROM tf_docs");
+            }
+            saveFrequencies(frequencies, frequencies.keySet(), conn);
+        } else {
+            String sql = "DELETE FROM tf_docs WHERE id = ?";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                for (String id : model.getDeletedRequirements()) {
+                    ps.setString(1, id);
+                    ps.execute();
+                }
+            }
+            saveFrequencies(frequencies, model.getModifiedRequirements(), conn);
+        }
+        saveDictionary(model.getDictionary(), conn);
+
+        TfIdfWeighting weighting = model.getWeighting();
+        String sql = "INSERT INTO tf_idf_info(cut_off, cut_off_dummy, smoothing) VALUES (?,?,?)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setDouble(1, weighting.getCutOffValue());
+            ps.setInt(2, weighting.isCutOffDummy() ? 1 : 0);
+            ps.setInt(3, weighting.isSmoothingActive() ? 1 : 0);
+            ps.execute();
+        }
+        model.markAsSaved();
+    }
+
+    private void saveFrequencies(Map<String, SparseVector> frequencies, Collection<String> ids, Connection conn) throws SQLException {
+        String sql = "INSERT OR REPLACE INTO tf_docs(id, definition) VALUES (?,?)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (String id : ids) {
+                ps.setString(1, id);
+                ps.setString(2, wordsConversionToJson(frequencies.get(id)).toString());
+                ps.execute();
+            }
+        }
+    }
+
+    private TfIdfWeighting loadWeighting(Connection conn) throws SQLException {
+        if (!existsTable("tf_idf_info", conn)) return null;
+        String sql = "SELECT* FROM tf_idf_info";
+        try (Statement stmt  = conn.createStatement();
+             ResultSet rs    = stmt.executeQuery(sql)){
+            if (rs.next()) return new TfIdfWeighting(rs.getDouble("cut_off"), rs.getInt("cut_off_dummy") == 1, rs.getInt("smoothing") == 1);
+            else return null;
+        }
+    }
+
+    private Map<String, SparseVector> loadFrequencies(Connection conn) throws SQLException {
+        Map<String, SparseVector> result = new HashMap<>();
+        String sql = "SELECT* FROM tf_docs";
+        try (Statement stmt  = conn.createStatement();
+             ResultSet rs    = stmt.executeQuery(sql)){
+            while (rs.next()) {
+                JSONArray json = new JSONArray(rs.getString("definition"));
+                int[] termIds = new int[json.length()];
+                double[] weights = new double[json.length()];
+                for (int i = 0; i < json.length(); ++i) {
+                    JSONObject aux = json.getJSONObject(i);
+                    termIds[i] = aux.getInt("id");
+                    weights[i] = aux.getDouble("value");
+                }
+                result.put(rs.getString("id"), new SparseVector(termIds, weights));
+            }
+        }
+        return result;
+    }
+
+    private void createSignaturesTable(Connection conn) throws SQLException {
+        String sql = "CREATE TABLE IF NOT EXISTS signatures (\n"
+                + " id varchar PRIMARY KEY, \n"
+                + " definition text \n"
+                + ");";
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private void saveSignatures(Map<String, long[]> signatures, Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(SIGNATURES_INSERT_SQL)) {
+            for (Map.Entry<String, long[]> entry : signatures.entrySet()) insertSignature(ps, entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void insertSignature(PreparedStatement ps, String id, long[] signature) throws SQLException {
+        ps.setString(1, id);
+        ps.setString(2, signatureToString(signature));
+        ps.execute();
+    }
+
+    private String signatureToString(long[] signature) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < signature.length; ++i) {
+            if (i > 0) result.append(',');
+            result.append(Long.toHexString(signature[i]));
+        }
+        return result.toString();
+    }
+
+    private Map<String, long[]> loadSignatures(Connection conn) throws SQLException {
+        Map<String, long[]> result = new HashMap<>();
+        if (!existsTable("signatures", conn)) return result;
+        String sql = "SELECT* FROM signatures";
+        try (Statement stmt  = conn.createStatement();
+             ResultSet rs    = stmt.executeQuery(sql)){
+            while (rs.next()) {
+                String[] values = rs.getString("definition").split(",");
+                long[] signature = new long[values.length];
+                for (int i = 0; i < values.length; ++i) signature[i] = Long.parseUnsignedLong(values[i], 16);
+                result.put(rs.getString("id"), signature);
+            }
+        }
+        return result;
+    }
+
+    private boolean existsTable(String table, Connection conn) throws SQLException {
+        String sql = "SELECT name FROM sqlite_master WHERE type = 'table' AND name = ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private boolean existsColumn(String table, String column, Connection conn) throws SQLException {
+        String sql = "PRAGMA table_info(" + table + ")";
+        try (Statement stmt  = conn.createStatement();
+             ResultSet rs    = stmt.executeQuery(sql)){
+            while (rs.next()) {
+                if (rs.getString("name").equals(column)) return true;
+            }
+        }
+        return false;
+    }
+
+    private Map<String, SparseVector> loadDocs(TermDictionary dictionary, Connection conn) throws SQLException {
+        Map<String, SparseVector> result = new HashMap<>();
+        //the docs saved before the term dictionary do not have the norm column
+        boolean legacyFormat = !existsColumn("docs", "norm", conn);
         String sql = "SELECT* FROM docs";
         try (Statement stmt  = conn.createStatement();
              ResultSet rs    = stmt.executeQuery(sql)){
             while (rs.next()) {
                 String key = rs.getString("id");
                 String definition = rs.getString("definition");
-                result.put(key,docsConversionToMap(definition));
+                if (legacyFormat) result.put(key,legacyDocsConversionToVector(definition,dictionary));
+                else {
+                    double norm = rs.getDouble("norm");
+                    result.put(key,docsConversionToVector(definition,norm));
+                }
+            }
+        }
+        if (existsTable("quantized_docs", conn)) {
+            sql = "SELECT* FROM quantized_docs";
+            try (Statement stmt  = conn.createStatement();
+                 ResultSet rs    = stmt.executeQuery(sql)){
+                while (rs.next()) {
+                    result.put(rs.getString("id"), WeightsQuantizationTfIdf.decode(rs.getBytes("definition"), rs.getString("format")));
+                }
             }
         }
         return result;
     }
 
-    private Map<String, Double> docsConversionToMap(String rawJson) {
+    private SparseVector docsConversionToVector(String rawJson, double norm) {
         JSONArray json = new JSONArray(rawJson);
-        Map<String, Double> result = new HashMap<>();
+        int[] termIds = new int[json.length()];
+        double[] weights = new double[json.length()];
         for (int i = 0; i < json.length(); ++i) {
             JSONObject aux = json.getJSONObject(i);
-            String id = aux.getString("id");
-            Double value = aux.getDouble("value");
-            result.put(id,value);
+            termIds[i] = aux.getInt("id");
+            weights[i] = aux.getDouble("value");
         }
-        return result;
+        return new SparseVector(termIds,weights,norm);
     }
 
-    private Map<String, Integer> loadCorpusFrequency(Connection conn) throws SQLException {
-        Map<String, Integer> result;
+    /**
+     * Converts a doc saved with the words as keys (the format used before the term dictionary). The old corpus is saved
+     * as an array of words, so it is loaded as a dictionary where the id of each word is its position. The words that are
+     * not inside the corpus are added to the dictionary with frequency 0
+     */
+    private SparseVector legacyDocsConversionToVector(String rawJson, TermDictionary dictionary) {
+        JSONArray json = new JSONArray(rawJson);
+        Map<Integer, Double> words = new HashMap<>();
+        for (int i = 0; i < json.length(); ++i) {
+            JSONObject aux = json.getJSONObject(i);
+            String word = aux.getString("id");
+            words.put(dictionary.addTerm(word), aux.getDouble("value"));
+        }
+        int[] termIds = new int[words.size()];
+        int size = 0;
+        for (int termId : words.keySet()) termIds[size++] = termId;
+        Arrays.sort(termIds);
+        double[] weights = new double[termIds.length];
+        for (int i = 0; i < termIds.length; ++i) weights[i] = words.get(termIds[i]);
+        return new SparseVector(termIds,weights);
+    }
+
+    private TermDictionary loadDictionary(Connection conn) throws SQLException {
+        TermDictionary result;
         String sql = "SELECT* FROM corpus";
         try (Statement stmt  = conn.createStatement();
              ResultSet rs    = stmt.executeQuery(sql)){
             if (rs.next()) {
                 String corpus = rs.getString("definition");
-                result = corpusToMap(corpus);
+                result = corpusToDictionary(corpus);
             } else throw new SQLException("Error loading corpus from the database");
         }
         return result;
     }
 
-    private Map<String, Integer> corpusToMap(String corpus) {
-        Map<String, Integer> result = new HashMap<>();
+    private TermDictionary corpusToDictionary(String corpus) {
         JSONArray json = new JSONArray(corpus);
+        List<String> terms = new ArrayList<>(json.length());
+        int[] frequencies = new int[json.length()];
         for (int i = 0; i < json.length(); ++i) {
             JSONObject aux = json.getJSONObject(i);
-            String id = aux.getString("id");
-            Integer value = aux.getInt("value");
-            result.put(id, value);
+            terms.add(aux.getString("id"));
+            frequencies[i] = aux.getInt("value");
         }
-        return result;
+        return new TermDictionary(terms, frequencies);
     }
 }
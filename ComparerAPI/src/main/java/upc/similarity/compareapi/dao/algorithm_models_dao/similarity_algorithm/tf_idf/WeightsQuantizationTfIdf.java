@@ -0,0 +1,174 @@
+package upc.similarity.compareapi.dao.algorithm_models_dao.similarity_algorithm.tf_idf;
+
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SparseVector;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Binary formats used to save the tf-idf vectors with less precision. The ids of the terms are saved as the differences
+ * between consecutive ids (they are sorted) with a variable number of bytes, followed by the weights:
+ * - float32: 4 bytes per weight (relative error lower than 6e-8)
+ * - float16: 2 bytes per weight, IEEE half precision (relative error lower than 5e-4)
+ * - int8: 1 byte per weight, scaled by the highest weight of the vector, which is saved as a float (the error is lower
+ * than 0.002 times the highest weight). The vectors with negative weights are saved as signed bytes scaled by the highest
+ * absolute weight, and their scale is saved with a negative sign (the error is lower than 0.004 times the highest
+ * absolute weight)
+ * The vectors are converted back to doubles when they are loaded, so the similarity scores are computed as usual, and
+ * their norms are computed again with the converted weights. The formats only reduce the size of the saved models, the
+ * loaded models use the same memory as with the double format.
+ */
+public class WeightsQuantizationTfIdf {
+
+    /**
+     * The default format, the vectors are saved as json text with the exact weights
+     */
+    public static final String DOUBLE = "double";
+    public static final String FLOAT32 = "float32";
+    public static final String FLOAT16 = "float16";
+    public static final String INT8 = "int8";
+
+    private WeightsQuantizationTfIdf() {}
+
+    public static boolean isValid(String format) {
+        return DOUBLE.equals(format) || FLOAT32.equals(format) || FLOAT16.equals(format) || INT8.equals(format);
+    }
+
+    /**
+     * Converts a vector to one of the binary formats (all except DOUBLE)
+     */
+    public static byte[] encode(SparseVector vector, String format) {
+        int[] termIds = vector.getTermIds();
+        double[] weights = vector.getWeights();
+        ByteArrayOutputStream result = new ByteArrayOutputStream(termIds.length * 4 + 8);
+        writeVarInt(result, termIds.length);
+        int previous = 0;
+        for (int termId : termIds) {
+            writeVarInt(result, termId - previous);
+            previous = termId;
+        }
+        ByteBuffer buffer;
+        switch (format) {
+            case FLOAT32:
+                buffer = ByteBuffer.allocate(weights.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+                for (double weight : weights) buffer.putFloat((float) weight);
+                break;
+            case FLOAT16:
+                buffer = ByteBuffer.allocate(weights.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+                for (double weight : weights) buffer.putShort(toHalf(weight));
+                break;
+            case INT8:
+                double max = 0;
+                boolean signed = false;
+                for (double weight : weights) {
+                    max = Math.max(max, Math.abs(weight));
+                    if (weight < 0) signed = true;
+                }
+                int maxValue = signed ? 127 : 255;
+                float scale = (float) (max / maxValue);
+                buffer = ByteBuffer.allocate(4 + weights.length).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putFloat(signed ? -scale : scale);
+                for (double weight : weights) {
+                    long value = (scale == 0) ? 0 : Math.round(weight / scale);
+                    buffer.put((byte) Math.max(-maxValue, Math.min(maxValue, value)));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("The weights format " + format + " is not a binary format");
+        }
+        result.write(buffer.array(), 0, buffer.capacity());
+        return result.toByteArray();
+    }
+
+    /**
+     * Converts back a vector saved with encode
+     */
+    public static SparseVector decode(byte[] bytes, String format) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        int size = readVarInt(buffer);
+        int[] termIds = new int[size];
+        int previous = 0;
+        for (int i = 0; i < size; ++i) {
+            previous += readVarInt(buffer);
+            termIds[i] = previous;
+        }
+        double[] weights = new double[size];
+        switch (format) {
+            case FLOAT32:
+                for (int i = 0; i < size; ++i) weights[i] = buffer.getFloat();
+                break;
+            case FLOAT16:
+                for (int i = 0; i < size; ++i) weights[i] = fromHalf(buffer.getShort());
+                break;
+            case INT8:
+                float scale = buffer.getFloat();
+                if (scale < 0) {
+                    for (int i = 0; i < size; ++i) weights[i] = buffer.get() * (double) -scale;
+                } else {
+                    for (int i = 0; i < size; ++i) weights[i] = (buffer.get() & 0xff) * (double) scale;
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("The weights format " + format + " is not a binary format");
+        }
+        return new SparseVector(termIds, weights);
+    }
+
+
+    /*
+    Private methods
+     */
+
+    private static void writeVarInt(ByteArrayOutputStream stream, int value) {
+        while ((value & ~0x7F) != 0) {
+            stream.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        stream.write(value);
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int result = 0;
+        int shift = 0;
+        byte value;
+        do {
+            value = buffer.get();
+            result |= (value & 0x7F) << shift;
+            shift += 7;
+        } while ((value & 0x80) != 0);
+        return result;
+    }
+
+    /**
+     * Rounds the value to the nearest half precision number (the values out of range are converted to infinity)
+     */
+    private static short toHalf(double value) {
+        int sign = (value < 0 || (value == 0 && 1 / value < 0)) ? 0x8000 : 0;
+        double abs = Math.abs(value);
+        if (Double.isNaN(value)) return (short) 0x7E00;
+        if (abs >= 65520) return (short) (sign | 0x7C00);
+        if (abs < 0x1p-14) {
+            //subnormal numbers, the rounding can give the lowest normal number (0x0400) which is also correct
+            return (short) (sign | (int) Math.round(abs * 0x1p24));
+        }
+        int exponent = Math.getExponent(abs);
+        long mantissa = Math.round(Math.scalb(abs, 10 - exponent)) - 1024;
+        if (mantissa == 1024) {
+            mantissa = 0;
+            ++exponent;
+        }
+        return (short) (sign | ((exponent + 15) << 10) | (int) mantissa);
+    }
+
+    private static double fromHalf(short half) {
+        int bits = half & 0xFFFF;
+        int exponent = (bits >>> 10) & 0x1F;
+        int mantissa = bits & 0x3FF;
+        double result;
+        if (exponent == 0) result = Math.scalb((double) mantissa, -24);
+        else if (exponent == 31) result = (mantissa == 0) ? Double.POSITIVE_INFINITY : Double.NaN;
+        else result = Math.scalb((double) (mantissa | 0x400), exponent - 25);
+        return ((bits & 0x8000) != 0) ? -result : result;
+    }
+}
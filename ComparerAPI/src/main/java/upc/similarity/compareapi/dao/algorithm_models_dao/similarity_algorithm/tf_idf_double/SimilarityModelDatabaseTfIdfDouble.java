@@ -0,0 +1,53 @@
+package upc.similarity.compareapi.dao.algorithm_models_dao.similarity_algorithm.tf_idf_double;
+
+import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityModel;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SimilarityModelTfIdf;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf_double.SimilarityModelTfIdfDouble;
+import upc.similarity.compareapi.dao.algorithm_models_dao.similarity_algorithm.SimilarityModelDatabase;
+import upc.similarity.compareapi.dao.algorithm_models_dao.similarity_algorithm.tf_idf.SimilarityModelDatabaseTfIdf;
+import upc.similarity.compareapi.entity.exception.InternalErrorException;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * The tf_idf_double models are saved as tf_idf models, the topic splits are computed again when they are needed
+ */
+public class SimilarityModelDatabaseTfIdfDouble implements SimilarityModelDatabase {
+
+    private SimilarityModelDatabaseTfIdf similarityModelDatabaseTfIdf;
+
+    public SimilarityModelDatabaseTfIdfDouble(String weightsFormat) {
+        this.similarityModelDatabaseTfIdf = new SimilarityModelDatabaseTfIdf(weightsFormat);
+    }
+
+    @Override
+    public void createModelTables(Connection conn) throws SQLException {
+        similarityModelDatabaseTfIdf.createModelTables(conn);
+    }
+
+    @Override
+    public void clearModelTables(Connection conn) throws SQLException {
+        similarityModelDatabaseTfIdf.clearModelTables(conn);
+    }
+
+    @Override
+    public void saveModelInfo(SimilarityModel similarityModel, Connection conn) throws InternalErrorException, SQLException {
+        try {
+            SimilarityModelTfIdfDouble similarityModelTfIdfDouble = (SimilarityModelTfIdfDouble) similarityModel;
+            similarityModelDatabaseTfIdf.saveModelInfo(similarityModelTfIdfDouble.getModelTfIdf(), conn);
+        } catch (ClassCastException e) {
+            throw new InternalErrorException("A tfIdfDouble method received a model that is not tfIdfDouble");
+        }
+    }
+
+    @Override
+    public SimilarityModel getModel(boolean readOnly, Connection conn) throws SQLException {
+        return new SimilarityModelTfIdfDouble((SimilarityModelTfIdf) similarityModelDatabaseTfIdf.getModel(readOnly, conn));
+    }
+
+    @Override
+    public boolean existsReqInsideModel(String requirement, Connection conn) throws SQLException {
+        return similarityModelDatabaseTfIdf.existsReqInsideModel(requirement, conn);
+    }
+}
@@ -0,0 +1,192 @@
+package upc.similarity.compareapi.dao.algorithm_models_dao.similarity_algorithm.tf_idf_hashing;
+
+import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityModel;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.StreamingModelBuild;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SimilarityModelTfIdf;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SparseVector;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.StreamingBuildTfIdf;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf_hashing.HashedTermDictionary;
+import upc.similarity.compareapi.dao.algorithm_models_dao.similarity_algorithm.SimilarityModelDatabase;
+import upc.similarity.compareapi.entity.exception.InternalErrorException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.sql.*;
+import java.util.HashMap;
+import java.util.Map;
+
+public class SimilarityModelDatabaseTfIdfHashing implements SimilarityModelDatabase {
+
+    private static final String DOCS_INSERT_SQL = "INSERT INTO hashing_docs(id, vector, signature) VALUES (?,?,?)";
+
+    @Override
+    public void createModelTables(Connection conn) throws SQLException {
+
+        String sql1 = "CREATE TABLE hashing_info (\n"
+                + " bits integer, \n"
+                + " frequencies blob \n"
+                + ");";
+
+        String sql2 = "CREATE TABLE hashing_docs (\n"
+                + " id varchar PRIMARY KEY, \n"
+                + " vector blob, \n"
+                + " signature blob \n"
+                + ");";
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql1);
+            stmt.execute(sql2);
+        }
+    }
+
+    @Override
+    public void clearModelTables(Connection conn) throws SQLException {
+
+        String sql1 = "DELETE FROM hashing_info";
+        String sql2 = "DELETE FROM hashing_docs";
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql1);
+            stmt.execute(sql2);
+        }
+    }
+
+    @Override
+    public void saveModelInfo(SimilarityModel similarityModel, Connection conn) throws InternalErrorException, SQLException {
+        try {
+            SimilarityModelTfIdf similarityModelTfIdf = (SimilarityModelTfIdf) similarityModel;
+            saveInfo((HashedTermDictionary) similarityModelTfIdf.getDictionary(), conn);
+            //the signatures are only saved if they have been computed for an approximate comparison
+            Map<String, long[]> signatures = similarityModelTfIdf.hasSignatures() ? similarityModelTfIdf.getSignatures() : new HashMap<>();
+            saveDocs(similarityModelTfIdf.getDocs(), signatures, conn);
+        } catch (ClassCastException e) {
+            throw new InternalErrorException("A tf_idf_hashing method received a model that is not tf_idf_hashing");
+        }
+    }
+
+    @Override
+    public void saveStreamingModel(StreamingModelBuild similarityModelBuild, Connection conn) throws InternalErrorException, SQLException {
+        try {
+            StreamingBuildTfIdf build = (StreamingBuildTfIdf) similarityModelBuild;
+            saveInfo((HashedTermDictionary) build.getDictionary(), conn);
+            try (StreamingBuildTfIdf.VectorsReader reader = build.readVectors();
+                 PreparedStatement ps = conn.prepareStatement(DOCS_INSERT_SQL)) {
+                while (reader.next()) insertDoc(ps, reader.getRequirementId(), reader.getVector(), null);
+            }
+        } catch (ClassCastException e) {
+            throw new InternalErrorException("A tf_idf_hashing method received a streaming build that is not tf_idf_hashing");
+        }
+    }
+
+    @Override
+    public SimilarityModel getModel(boolean readOnly, Connection conn) throws SQLException {
+        HashedTermDictionary dictionary = loadInfo(conn);
+        Map<String, SparseVector> docs = new HashMap<>();
+        Map<String, long[]> signatures = new HashMap<>();
+        loadDocs(docs, signatures, conn);
+        return new SimilarityModelTfIdf(docs, dictionary, signatures);
+    }
+
+    @Override
+    public boolean existsReqInsideModel(String requirement, Connection conn) throws SQLException {
+        String sql = "SELECT id FROM hashing_docs WHERE id = ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, requirement);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+
+    /*
+    Private methods
+     */
+
+    private void saveInfo(HashedTermDictionary dictionary, Connection conn) throws SQLException {
+        int[] frequencies = dictionary.getFrequencies();
+        ByteBuffer buffer = ByteBuffer.allocate(frequencies.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (int frequency : frequencies) buffer.putInt(frequency);
+        String sql = "INSERT INTO hashing_info(bits, frequencies) VALUES (?,?)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, dictionary.getBits());
+            ps.setBytes(2, buffer.array());
+            ps.execute();
+        }
+    }
+
+    private void saveDocs(Map<String, SparseVector> docs, Map<String, long[]> signatures, Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(DOCS_INSERT_SQL)) {
+            for (Map.Entry<String, SparseVector> entry : docs.entrySet()) insertDoc(ps, entry.getKey(), entry.getValue(), signatures.get(entry.getKey()));
+        }
+    }
+
+    private void insertDoc(PreparedStatement ps, String id, SparseVector vector, long[] signature) throws SQLException {
+        ps.setString(1, id);
+        ps.setBytes(2, vectorToBytes(vector));
+        ps.setBytes(3, signatureToBytes(signature));
+        ps.execute();
+    }
+
+    private HashedTermDictionary loadInfo(Connection conn) throws SQLException {
+        String sql = "SELECT* FROM hashing_info";
+        try (Statement stmt  = conn.createStatement();
+             ResultSet rs    = stmt.executeQuery(sql)){
+            if (rs.next()) {
+                ByteBuffer buffer = ByteBuffer.wrap(rs.getBytes("frequencies")).order(ByteOrder.LITTLE_ENDIAN);
+                int[] frequencies = new int[buffer.remaining() / 4];
+                buffer.asIntBuffer().get(frequencies);
+                return new HashedTermDictionary(rs.getInt("bits"), frequencies);
+            } else throw new SQLException("Error loading tf_idf_hashing info from the database");
+        }
+    }
+
+    private void loadDocs(Map<String, SparseVector> docs, Map<String, long[]> signatures, Connection conn) throws SQLException {
+        String sql = "SELECT* FROM hashing_docs";
+        try (Statement stmt  = conn.createStatement();
+             ResultSet rs    = stmt.executeQuery(sql)){
+            while (rs.next()) {
+                String id = rs.getString("id");
+                docs.put(id, bytesToVector(rs.getBytes("vector")));
+                byte[] signature = rs.getBytes("signature");
+                if (signature != null) signatures.put(id, bytesToSignature(signature));
+            }
+        }
+    }
+
+    /**
+     * The ids of the terms followed by their weights
+     */
+    private byte[] vectorToBytes(SparseVector vector) {
+        int[] termIds = vector.getTermIds();
+        double[] weights = vector.getWeights();
+        ByteBuffer buffer = ByteBuffer.allocate(termIds.length * 12).order(ByteOrder.LITTLE_ENDIAN);
+        for (int termId : termIds) buffer.putInt(termId);
+        for (double weight : weights) buffer.putDouble(weight);
+        return buffer.array();
+    }
+
+    private SparseVector bytesToVector(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        int size = bytes.length / 12;
+        int[] termIds = new int[size];
+        double[] weights = new double[size];
+        for (int i = 0; i < size; ++i) termIds[i] = buffer.getInt();
+        for (int i = 0; i < size; ++i) weights[i] = buffer.getDouble();
+        return new SparseVector(termIds, weights);
+    }
+
+    private byte[] signatureToBytes(long[] signature) {
+        if (signature == null) return null;
+        ByteBuffer buffer = ByteBuffer.allocate(signature.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+        for (long value : signature) buffer.putLong(value);
+        return buffer.array();
+    }
+
+    private long[] bytesToSignature(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        long[] result = new long[bytes.length / 8];
+        for (int i = 0; i < result.length; ++i) result[i] = buffer.getLong();
+        return result;
+    }
+}
@@ -0,0 +1,33 @@
+package upc.similarity.compareapi.entity;
+
+/**
+ * The 64 bits FNV-1a hash used by the fingerprints and the content hashes of the requirements. The hash code of the
+ * characters is defined by the language, so the hashes do not change between executions and can be saved in the database
+ */
+final class FnvHash {
+
+    static final long OFFSET = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private FnvHash() {}
+
+    /**
+     * Adds one byte to the hash
+     */
+    static long hashByte(long result, int value) {
+        return (result ^ value) * PRIME;
+    }
+
+    /**
+     * Adds the two bytes of each character of the string to the hash, followed by a separator byte, so the strings "ab" "c"
+     * and "a" "bc" do not have the same hash
+     */
+    static long hashString(long result, String value) {
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            result = hashByte(result, c & 0xff);
+            result = hashByte(result, c >>> 8);
+        }
+        return hashByte(result, 0xff);
+    }
+}
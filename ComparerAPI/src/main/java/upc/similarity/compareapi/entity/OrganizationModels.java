@@ -33,14 +33,31 @@ public class OrganizationModels {
      */
     private Map<String, String> reqComponent;
 
+    /**
+     * The fingerprint of the preprocessed tokens of each requirement in the model, used to find the duplicated requirements
+     * without comparing all the pairs
+     */
+    private RequirementFingerprints fingerprints;
+
+    /**
+     * The hash of the content of each requirement in the model, used to skip the preprocessing of the requirements that
+     * are received again without changes
+     */
+    private RequirementContentHashes contentHashes;
+
     private SimilarityModel similarityModel;
     private ClustersModel clustersModel;
 
-    public OrganizationModels() {}
+    public OrganizationModels() {
+        this.fingerprints = new RequirementFingerprints();
+        this.contentHashes = new RequirementContentHashes();
+    }
 
-    public OrganizationModels(SimilarityModel similarityModel, Map<String, String> reqComponent) {
+    public OrganizationModels(SimilarityModel similarityModel, Map<String, String> reqComponent, RequirementFingerprints fingerprints, RequirementContentHashes contentHashes) {
         this.similarityModel = similarityModel;
         this.reqComponent = reqComponent;
+        this.fingerprints = fingerprints;
+        this.contentHashes = contentHashes;
     }
 
     public OrganizationModels(OrganizationModels organizationModels, double threshold, boolean compare, boolean useComponent, boolean withClusters) {
@@ -49,6 +66,8 @@ public class OrganizationModels {
         this.useComponent = useComponent;
         this.withClusters = withClusters;
         this.reqComponent = organizationModels.getReqComponent();
+        this.fingerprints = organizationModels.getFingerprints();
+        this.contentHashes = organizationModels.getContentHashes();
         this.similarityModel = organizationModels.getSimilarityModel();
     }
 
@@ -58,6 +77,8 @@ public class OrganizationModels {
         this.useComponent = useComponent;
         this.withClusters = withClusters;
         this.reqComponent = organizationModels.getReqComponent();
+        this.fingerprints = organizationModels.getFingerprints();
+        this.contentHashes = organizationModels.getContentHashes();
         this.similarityModel = organizationModels.getSimilarityModel();
         this.clustersModel = clustersModel;
     }
@@ -86,6 +107,14 @@ public class OrganizationModels {
         return reqComponent;
     }
 
+    public RequirementFingerprints getFingerprints() {
+        return fingerprints;
+    }
+
+    public RequirementContentHashes getContentHashes() {
+        return contentHashes;
+    }
+
     public SimilarityModel getSimilarityModel() {
         return similarityModel;
     }
@@ -118,6 +147,14 @@ public class OrganizationModels {
         this.reqComponent = reqComponent;
     }
 
+    public void setFingerprints(RequirementFingerprints fingerprints) {
+        this.fingerprints = fingerprints;
+    }
+
+    public void setContentHashes(RequirementContentHashes contentHashes) {
+        this.contentHashes = contentHashes;
+    }
+
     public void setSimilarityModel(SimilarityModel similarityModel) {
         this.similarityModel = similarityModel;
     }
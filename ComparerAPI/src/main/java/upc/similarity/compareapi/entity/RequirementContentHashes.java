@@ -0,0 +1,80 @@
+package upc.similarity.compareapi.entity;
+
+import java.util.*;
+
+/**
+ * Saves a hash of the content of each requirement of an organization, i.e. the input of the preprocess pipeline (the name,
+ * and the text if the organization compares it). A requirement received again with the same hash has the same preprocessed
+ * tokens as the one inside the model, so it is not updated and it does not need to be preprocessed again. A requirement with
+ * a different hash may still have the same tokens (e.g. only the punctuation changed), so it must be checked with the model
+ */
+public class RequirementContentHashes {
+
+    private Map<String, Long> hashes;
+
+    public RequirementContentHashes() {
+        this.hashes = new HashMap<>();
+    }
+
+    public RequirementContentHashes(Map<String, Long> hashes) {
+        this.hashes = hashes;
+    }
+
+    /**
+     * Computes the 64 bits FNV-1a hash of the content of a requirement. The text is only used if compare is true, as the
+     * preprocess pipeline does. The null fields and the empty ones do not have the same hash
+     * @param compare true if the organization uses the name and the text, false if it only uses the name
+     */
+    public static long contentHash(Requirement requirement, boolean compare) {
+        long result = FnvHash.hashByte(FnvHash.OFFSET, compare ? 1 : 0);
+        result = hash(result, requirement.getName());
+        if (compare) result = hash(result, requirement.getText());
+        return result;
+    }
+
+    /**
+     * Checks if the requirement has the same content as the last time its hash was saved
+     * @return true if the hash is equal to the saved one, false if it is different or there is not any saved hash
+     */
+    public boolean isUnchanged(Requirement requirement, boolean compare) {
+        Long hash = hashes.get(requirement.getId());
+        return hash != null && hash == contentHash(requirement, compare);
+    }
+
+    /**
+     * Saves the hash of the input requirement, the previous hash of the same requirement is replaced
+     */
+    public void put(Requirement requirement, boolean compare) {
+        hashes.put(requirement.getId(), contentHash(requirement, compare));
+    }
+
+    public void addAll(List<Requirement> requirements, boolean compare) {
+        for (Requirement requirement : requirements) put(requirement, compare);
+    }
+
+    public void removeAll(Collection<String> requirementIds) {
+        hashes.keySet().removeAll(requirementIds);
+    }
+
+    public int size() {
+        return hashes.size();
+    }
+
+    /*
+    Get methods
+     */
+
+    public Map<String, Long> getHashes() {
+        return Collections.unmodifiableMap(hashes);
+    }
+
+    /*
+    Private methods
+     */
+
+    private static long hash(long result, String field) {
+        //the null fields are hashed as a byte that is not used by the separator of the strings
+        if (field == null) return FnvHash.hashByte(result, 0xfe);
+        return FnvHash.hashString(result, field);
+    }
+}
@@ -0,0 +1,105 @@
+package upc.similarity.compareapi.entity;
+
+import upc.similarity.compareapi.algorithms.preprocess.RequirementsTerms;
+
+import java.util.*;
+
+/**
+ * Saves a fingerprint of the preprocessed tokens of each requirement of an organization. The fingerprint does not depend on
+ * the order of the tokens but it does depend on the number of appearances of each one, so two requirements with the same
+ * fingerprint are equal after the preprocessing and they are the only pairs scored by the duplicates mode. The requirements
+ * without tokens have the fingerprint EMPTY, they are not duplicates of any requirement. The requirements saved before the
+ * fingerprints existed do not have a fingerprint
+ */
+public class RequirementFingerprints {
+
+    /**
+     * The fingerprint of the requirements without tokens
+     */
+    public static final long EMPTY = 0;
+
+    private Map<String, Long> fingerprints;
+
+    public RequirementFingerprints() {
+        this.fingerprints = new HashMap<>();
+    }
+
+    public RequirementFingerprints(Map<String, Long> fingerprints) {
+        this.fingerprints = fingerprints;
+    }
+
+    /**
+     * Computes the fingerprint of a list of tokens with the 64 bits FNV-1a hash of the sorted tokens (see FnvHash)
+     */
+    public static long fingerprint(List<String> tokens) {
+        List<String> sortedTokens = new ArrayList<>(tokens);
+        Collections.sort(sortedTokens);
+        long result = FnvHash.OFFSET;
+        for (String token : sortedTokens) result = FnvHash.hashString(result, token);
+        return result;
+    }
+
+    /**
+     * Computes the fingerprint of a requirement represented by term ids, it is the same as the fingerprint of its tokens
+     * @param terms the term of each id
+     * @param termIds the ids of the terms of the requirement
+     * @param frequencies the number of appearances of each term of the requirement
+     */
+    public static long fingerprint(List<String> terms, int[] termIds, int[] frequencies) {
+        Integer[] order = new Integer[termIds.length];
+        for (int i = 0; i < order.length; ++i) order[i] = i;
+        Arrays.sort(order, (a, b) -> terms.get(termIds[a]).compareTo(terms.get(termIds[b])));
+        long result = FnvHash.OFFSET;
+        for (int position : order) {
+            String term = terms.get(termIds[position]);
+            for (int i = 0; i < frequencies[position]; ++i) result = FnvHash.hashString(result, term);
+        }
+        return result;
+    }
+
+    /**
+     * Computes the fingerprints of the input requirements, the previous fingerprints of the same requirements are replaced
+     * @param requirementsTokens a map with each requirement id as key and the preprocessed tokens as value
+     */
+    public void addAll(Map<String, List<String>> requirementsTokens) {
+        for (Map.Entry<String, List<String>> entry : requirementsTokens.entrySet()) {
+            List<String> tokens = entry.getValue();
+            fingerprints.put(entry.getKey(), tokens.isEmpty() ? EMPTY : fingerprint(tokens));
+        }
+    }
+
+    /**
+     * Same as addAll with the tokens, but with the requirements represented by term ids
+     */
+    public void addAll(RequirementsTerms requirementsTerms) {
+        List<String> terms = requirementsTerms.getTerms();
+        for (int i = 0; i < requirementsTerms.size(); ++i) {
+            String id = requirementsTerms.getRequirementIds().get(i);
+            int[] termIds = requirementsTerms.getTermIds(i);
+            fingerprints.put(id, (termIds.length == 0) ? EMPTY : fingerprint(terms, termIds, requirementsTerms.getFrequencies(i)));
+        }
+    }
+
+    public void removeAll(Collection<String> requirementIds) {
+        fingerprints.keySet().removeAll(requirementIds);
+    }
+
+    /**
+     * Returns the fingerprint of the requirement or null if it does not have one
+     */
+    public Long get(String requirementId) {
+        return fingerprints.get(requirementId);
+    }
+
+    public int size() {
+        return fingerprints.size();
+    }
+
+    /*
+    Get methods
+     */
+
+    public Map<String, Long> getFingerprints() {
+        return Collections.unmodifiableMap(fingerprints);
+    }
+}
@@ -3,8 +3,10 @@ package upc.similarity.compareapi.entity.auxiliary;
 import upc.similarity.compareapi.config.Constants;
 import upc.similarity.compareapi.entity.OrganizationModels;
 import upc.similarity.compareapi.entity.Requirement;
+import upc.similarity.compareapi.entity.RequirementContentHashes;
 import upc.similarity.compareapi.entity.exception.InternalErrorException;
 import upc.similarity.compareapi.algorithms.preprocess.PreprocessPipeline;
+import upc.similarity.compareapi.algorithms.preprocess.RequirementsTerms;
 
 import java.util.*;
 
@@ -65,17 +67,21 @@ public class FilteredRequirements {
 
     private void splitRequirements(Collection<Requirement> requirements, OrganizationModels organizationModels) throws InternalErrorException {
         reqDepsToRemove = new HashMap<>();
-        PreprocessPipeline preprocessPipeline = Constants.getInstance().getPreprocessPipeline();
+        List<Requirement> modelRequirements = new ArrayList<>();
+        for (Requirement requirement: requirements) {
+            if (!isDeleted(requirement) && organizationModels != null && organizationModels.getSimilarityModel().containsRequirement(requirement.getId()))
+                modelRequirements.add(requirement);
+        }
+        Set<String> updatedIds = findUpdatedRequirements(modelRequirements, organizationModels, Constants.getInstance().getPreprocessPipeline());
         for (Requirement requirement: requirements) {
             String id = requirement.getId();
-            String status = requirement.getStatus();
             long time = requirement.getTime();
-            if (status != null && status.equals("deleted")) {
+            if (isDeleted(requirement)) {
                 deletedRequirements.add(requirement);
                 reqDepsToRemove.put(id,new Pair<>("all",time));
             }
             else if (organizationModels != null && organizationModels.getSimilarityModel().containsRequirement(id)) {
-                if (requirementUpdated(requirement, preprocessPipeline, organizationModels)) {
+                if (updatedIds.contains(id)) {
                     updatedRequirements.add(requirement);
                     reqDepsToRemove.put(id,new Pair<>("before",time));
                 }
@@ -86,10 +92,38 @@ public class FilteredRequirements {
         }
     }
 
-    private boolean requirementUpdated(Requirement requirement, PreprocessPipeline preprocessPipeline, OrganizationModels organizationModels) throws InternalErrorException {
-        List<Requirement> requirements = new ArrayList<>();
-        requirements.add(requirement);
-        Map<String, List<String>> preprocessedRequirement = preprocessPipeline.preprocessRequirements(organizationModels.isCompare(),requirements);
-        return organizationModels.getSimilarityModel().checkIfRequirementIsUpdated(requirement.getId(),preprocessedRequirement.get(requirement.getId()));
+    private boolean isDeleted(Requirement requirement) {
+        String status = requirement.getStatus();
+        return status != null && status.equals("deleted");
+    }
+
+    /**
+     * Finds which requirements of the model have been updated. The requirements with the same content hash as the saved one
+     * are not preprocessed (see RequirementContentHashes). The rest are preprocessed together in one pass of the pipeline
+     * and checked against the model in one batch (see SimilarityModel.checkIfRequirementsAreUpdated). If a requirement has
+     * a different content but the same tokens, its hash is replaced
+     * @param requirements the requirements to check, all of them must be inside the model and their ids must not be repeated
+     * @param organizationModels the models of the organization, or null if it does not have a model yet
+     * @return the ids of the updated requirements
+     */
+    public static Set<String> findUpdatedRequirements(List<Requirement> requirements, OrganizationModels organizationModels, PreprocessPipeline preprocessPipeline) throws InternalErrorException {
+        Set<String> result = new HashSet<>();
+        //the organizations without a model (e.g. the ones built by BuildClusters) do not have requirements to update
+        if (organizationModels == null || requirements.isEmpty()) return result;
+        boolean compare = organizationModels.isCompare();
+        RequirementContentHashes contentHashes = organizationModels.getContentHashes();
+        List<Requirement> changedRequirements = new ArrayList<>();
+        for (Requirement requirement: requirements) {
+            if (!contentHashes.isUnchanged(requirement, compare)) changedRequirements.add(requirement);
+        }
+        if (changedRequirements.isEmpty()) return result;
+        RequirementsTerms requirementsTerms = RequirementsTerms.preprocessRequirements(preprocessPipeline, compare, changedRequirements);
+        boolean[] updated = organizationModels.getSimilarityModel().checkIfRequirementsAreUpdated(requirementsTerms);
+        for (int i = 0; i < updated.length; ++i) {
+            Requirement requirement = changedRequirements.get(i);
+            if (updated[i]) result.add(requirement.getId());
+            else contentHashes.put(requirement, compare);
+        }
+        return result;
     }
 }
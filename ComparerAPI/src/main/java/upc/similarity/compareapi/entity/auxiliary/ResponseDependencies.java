@@ -2,12 +2,13 @@ package upc.similarity.compareapi.entity.auxiliary;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityScoresSink;
 import upc.similarity.compareapi.dao.DatabaseModel;
 import upc.similarity.compareapi.entity.Dependency;
 import upc.similarity.compareapi.entity.exception.InternalErrorException;
 import upc.similarity.compareapi.entity.exception.NotFoundException;
 
-public abstract class ResponseDependencies {
+public abstract class ResponseDependencies implements SimilarityScoresSink {
 
     protected String organization;
     protected String responseId;
@@ -22,6 +23,11 @@ public abstract class ResponseDependencies {
 
     public abstract void finish() throws InternalErrorException;
 
+    @Override
+    public void addScore(String requirementIdA, String requirementIdB, double score) throws InternalErrorException {
+        addDependency(new Dependency(score, requirementIdA, requirementIdB));
+    }
+
     protected void generateResponsePage(String organizationId, String responseId, JSONArray array, String arrayName, DatabaseModel databaseModel) throws InternalErrorException {
         try {
             JSONObject json = new JSONObject();
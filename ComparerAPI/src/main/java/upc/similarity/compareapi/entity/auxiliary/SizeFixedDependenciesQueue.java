@@ -5,7 +5,9 @@ import upc.similarity.compareapi.config.Constants;
 import upc.similarity.compareapi.entity.Dependency;
 import upc.similarity.compareapi.entity.exception.InternalErrorException;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
 import java.util.TreeSet;
 
 public class SizeFixedDependenciesQueue extends ResponseDependencies {
@@ -23,14 +25,32 @@ public class SizeFixedDependenciesQueue extends ResponseDependencies {
         if (queue.size() < maxSize) {
             queue.add(elem);
         } else {
-            Dependency last = queue.last();
-            if (last.getDependencyScore() < elem.getDependencyScore()) {
-                queue.pollLast();
-                queue.add(elem);
-            }
+            //the last one is only removed if the new dependency was not already inside the queue (e.g. a repeated id in
+            //the request), otherwise the queue would shrink and its score bound would drop
+            if (queue.last().getDependencyScore() < elem.getDependencyScore() && queue.add(elem)) queue.pollLast();
         }
     }
 
+    /**
+     * When the queue is full, a new dependency is only added if its score is greater than the score of the last one
+     */
+    @Override
+    public double getScoreBound() {
+        return (queue.size() < maxSize) ? Double.NEGATIVE_INFINITY : queue.last().getDependencyScore();
+    }
+
+    @Override
+    public int getMaxScores() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the dependencies of the queue in the order used by the comparator
+     */
+    public List<Dependency> getDependencies() {
+        return new ArrayList<>(queue);
+    }
+
     public void finish() throws InternalErrorException {
         JSONArray dependencies = new JSONArray();
         for (Dependency dependency: queue) {
@@ -24,19 +24,21 @@ public interface CompareService {
 
     void buildModelAndCompute(String responseId, boolean compare, boolean useComponent, String organization, double threshold, List<Requirement> requirements, int maxNumDeps) throws ComponentException;
 
+    void buildModelStreaming(String responseId, boolean compare, boolean useComponent, String organization, MultipartFile file) throws ComponentException;
+
     void addRequirements(String responseId, String organization, List<Requirement> requirements) throws ComponentException;
 
     void deleteRequirements(String responseId, String organization, List<Requirement> requirements) throws ComponentException;
 
     Dependency simReqReq(String organization, String req1, String req2) throws ComponentException;
 
-    void simReqOrganization(String responseId, String organization, double threshold, List<String> requirements, int maxNumDeps) throws ComponentException;
+    void simReqOrganization(String responseId, String organization, double threshold, List<String> requirements, int maxNumDeps, boolean approximate, boolean duplicates) throws ComponentException;
 
-    void simNewReqOrganization(String responseId, String organization, double threshold, List<Requirement> requirements, int maxNumDeps) throws ComponentException;
+    void simNewReqOrganization(String responseId, String organization, double threshold, List<Requirement> requirements, int maxNumDeps, boolean approximate) throws ComponentException;
 
     void simReqProject(String responseId, String organization, double threshold, ReqProject projectRequirements, int maxNumDeps) throws ComponentException;
 
-    void simProject(String responseId, String organization, double threshold, List<String> projectRequirements, int maxNumDeps) throws ComponentException;
+    void simProject(String responseId, String organization, double threshold, List<String> projectRequirements, int maxNumDeps, boolean duplicates) throws ComponentException;
 
     void simProjectProject(String responseId, String organization, double threshold, ProjectProject projects, int maxNumDeps) throws ComponentException;
 
@@ -1,6 +1,8 @@
 package upc.similarity.compareapi.service;
 
 import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.stereotype.Service;
@@ -10,7 +12,9 @@ import upc.similarity.compareapi.algorithms.clusters_algorithm.ClustersModel;
 import upc.similarity.compareapi.config.Constants;
 import upc.similarity.compareapi.dao.DatabaseModel;
 import upc.similarity.compareapi.algorithms.preprocess.PreprocessPipeline;
+import upc.similarity.compareapi.algorithms.preprocess.RequirementsTerms;
 import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityModel;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.StreamingModelBuild;
 import upc.similarity.compareapi.util.Logger;
 import upc.similarity.compareapi.entity.*;
 import upc.similarity.compareapi.entity.auxiliary.*;
@@ -39,6 +43,15 @@ public class CompareServiceImpl implements CompareService {
     private DatabaseModel databaseOperations = Constants.getInstance().getDatabaseModel();
     private String syncErrorMessage = "Synchronization error";
 
+    /**
+     * The number of requirements read from the input file before preprocessing them in the streaming methods
+     */
+    private static final int STREAMING_BATCH_SIZE = 1000;
+
+    private interface RequirementsConsumer {
+        void accept(List<Requirement> requirements) throws InternalErrorException;
+    }
+
     private static final String FORBIDDEN_ERROR_MESSAGE = "The organization already has a model created. Please use the method called DeleteOrganizationData to delete the organization's model";
 
 
@@ -161,6 +174,55 @@ public class CompareServiceImpl implements CompareService {
         logger.showInfoMessage("BuildModelAndCompute: Finish computing " + organization + " " + responseId);
     }
 
+    /**
+     * Same as buildModel, but the requirements are read from the file in batches and the model is saved without keeping
+     * all the requirements in memory (see StreamingModelBuild). If the similarity algorithm does not support it, the model
+     * is built in memory as buildModel does
+     */
+    @Override
+    public void buildModelStreaming(String responseId, boolean compare, boolean useComponent, String organization, MultipartFile file) throws ComponentException {
+        logger.showInfoMessage("BuildModelStreaming: Start computing " + organization + " " + responseId);
+        try {
+            databaseOperations.saveResponse(organization,responseId,"BuildModelStreaming");
+            if (databaseOperations.existsOrganization(organization)) throw new ForbiddenException(FORBIDDEN_ERROR_MESSAGE);
+            try (StreamingModelBuild similarityModelBuild = requirementsSimilarity.createStreamingBuild()) {
+                OrganizationModels organizationModels;
+                if (similarityModelBuild == null) {
+                    List<Requirement> requirements = new ArrayList<>();
+                    parseMultipartFileToRequirements(file, requirements::addAll);
+                    organizationModels = generateModel(compare, useComponent, deleteDuplicates(requirements));
+                    organizationModels = new OrganizationModels(organizationModels,0,compare,useComponent,false);
+                } else {
+                    organizationModels = new OrganizationModels(new OrganizationModels(null,new HashMap<>(),new RequirementFingerprints(),new RequirementContentHashes()),0,compare,useComponent,false);
+                    OrganizationModels finalOrganizationModels = organizationModels;
+                    HashSet<String> ids = new HashSet<>();
+                    parseMultipartFileToRequirements(file, batch -> {
+                        //the repeated requirements are skipped, as in deleteDuplicates
+                        List<Requirement> requirements = new ArrayList<>();
+                        for (Requirement requirement : batch) {
+                            String id = requirement.getId();
+                            if (id != null && ids.add(id)) requirements.add(requirement);
+                        }
+                        requirementsSimilarity.addRequirements(finalOrganizationModels, similarityModelBuild, preprocessPipeline.preprocessRequirements(compare,requirements), requirements);
+                    });
+                }
+                getAccessToUpdate(organization);
+                try {
+                    if (similarityModelBuild == null) databaseOperations.saveOrganizationModels(organization, organizationModels, true, false);
+                    else databaseOperations.saveOrganizationModels(organization, organizationModels, similarityModelBuild);
+                } finally {
+                    releaseAccessToUpdate(organization);
+                }
+            }
+            generateEmptyResponse(organization, responseId);
+        } catch (ComponentException e) {
+            throw treatComponentException(organization,responseId,true,e);
+        } catch (Exception e) {
+            throw treatUnexpectedException(organization,responseId,true,e);
+        }
+        logger.showInfoMessage("BuildModelStreaming: Finish computing " + organization + " " + responseId);
+    }
+
     @Override
     public void addRequirements(String responseId, String organization, List<Requirement> requirements) throws ComponentException {
         logger.showInfoMessage("AddRequirements: Start computing " + organization + " " + responseId);
@@ -172,12 +234,15 @@ public class CompareServiceImpl implements CompareService {
                 if (organizationModels.hasClusters()) throw new BadRequestException("The model has clusters. Use the similarity with clusters methods instead.");
                 SimilarityModel similarityModel = organizationModels.getSimilarityModel();
                 List<Requirement> notDuplicatedRequirements = deleteDuplicates(requirements);
+                List<Requirement> modelRequirements = new ArrayList<>();
+                for (Requirement requirement : notDuplicatedRequirements) {
+                    if (similarityModel.containsRequirement(requirement.getId())) modelRequirements.add(requirement);
+                }
+                Set<String> updatedRequirements = FilteredRequirements.findUpdatedRequirements(modelRequirements, organizationModels, preprocessPipeline);
                 List<Requirement> requirementsToAddOrUpdate = new ArrayList<>();
                 for (Requirement requirement : notDuplicatedRequirements) {
-                    if (similarityModel.containsRequirement(requirement.getId())) {
-                        if (requirementUpdated(requirement, organizationModels))
-                            requirementsToAddOrUpdate.add(requirement);
-                    } else requirementsToAddOrUpdate.add(requirement);
+                    if (!similarityModel.containsRequirement(requirement.getId()) || updatedRequirements.contains(requirement.getId()))
+                        requirementsToAddOrUpdate.add(requirement);
                 }
                 addRequirementsToModel(organizationModels, requirementsToAddOrUpdate);
                 databaseOperations.saveOrganizationModels(organization, organizationModels, true, false);
@@ -235,12 +300,12 @@ public class CompareServiceImpl implements CompareService {
     }
 
     @Override
-    public void simReqOrganization(String responseId, String organization, double threshold, List<String> requirements, int maxNumDeps) throws ComponentException {
+    public void simReqOrganization(String responseId, String organization, double threshold, List<String> requirements, int maxNumDeps, boolean approximate, boolean duplicates) throws ComponentException {
         logger.showInfoMessage("SimReqOrganization: Start computing " + organization + " " + responseId);
         try {
             databaseOperations.saveResponse(organization, responseId, "SimReqOrganization");
             OrganizationModels organizationModels = databaseOperations.getOrganizationModels(organization, true);
-            SimilarityModel similarityModel = organizationModels.getSimilarityModel();
+            List<String> modelRequirements = organizationModels.getSimilarityModel().getRequirementsIds();
 
             HashSet<String> repeatedHash = new HashSet<>();
             List<String> projectRequirements = new ArrayList<>();
@@ -250,12 +315,12 @@ public class CompareServiceImpl implements CompareService {
                 repeatedHash.add(requirement);
             }
 
-            List<String> modelRequirements = similarityModel.getRequirementsIds();
             for (String requirement : modelRequirements) {
                 if (!repeatedHash.contains(requirement)) projectRequirements.add(requirement);
             }
 
-            reqProject(requirementsToCompare, projectRequirements, organizationModels, threshold, organization, responseId, true, maxNumDeps);
+            if (duplicates) reqProjectDuplicates(requirementsToCompare, projectRequirements, organizationModels, threshold, organization, responseId, maxNumDeps);
+            else reqProject(requirementsToCompare, projectRequirements, organizationModels, threshold, organization, responseId, true, maxNumDeps, approximate);
             databaseOperations.finishComputation(organization, responseId);
         } catch (ComponentException e) {
             throw treatComponentException(organization,responseId,true,e);
@@ -266,7 +331,7 @@ public class CompareServiceImpl implements CompareService {
     }
 
     @Override
-    public void simNewReqOrganization(String responseId, String organization, double threshold, List<Requirement> requirements, int maxNumDeps) throws ComponentException {
+    public void simNewReqOrganization(String responseId, String organization, double threshold, List<Requirement> requirements, int maxNumDeps, boolean approximate) throws ComponentException {
         logger.showInfoMessage("SimReqOrganization: Start computing " + organization + " " + responseId);
         try {
             databaseOperations.saveResponse(organization, responseId, "SimReqOrganization");
@@ -291,7 +356,7 @@ public class CompareServiceImpl implements CompareService {
                     if (!repeatedHash.contains(requirement)) projectRequirements.add(requirement);
                 }
 
-                reqProject(requirementsToCompare, projectRequirements, organizationModels, threshold, organization, responseId, true, maxNumDeps);
+                reqProject(requirementsToCompare, projectRequirements, organizationModels, threshold, organization, responseId, true, maxNumDeps, approximate);
                 databaseOperations.saveOrganizationModels(organization, organizationModels, true, false);
             } finally {
                 releaseAccessToUpdate(organization);
@@ -317,7 +382,7 @@ public class CompareServiceImpl implements CompareService {
                 if (projectRequirements.getProjectReqs().contains(req)) throw new BadRequestException("The requirement with id " + req + " is already inside the project");
             }
 
-            reqProject(projectRequirements.getReqsToCompare(), projectRequirements.getProjectReqs(), organizationModels, threshold, organization, responseId, true, maxNumDeps);
+            reqProject(projectRequirements.getReqsToCompare(), projectRequirements.getProjectReqs(), organizationModels, threshold, organization, responseId, true, maxNumDeps, false);
             databaseOperations.finishComputation(organization, responseId);
         } catch (ComponentException e) {
             throw treatComponentException(organization,responseId,true,e);
@@ -328,12 +393,13 @@ public class CompareServiceImpl implements CompareService {
     }
 
     @Override
-    public void simProject(String responseId, String organization, double threshold, List<String> projectRequirements, int maxNumDeps) throws ComponentException {
+    public void simProject(String responseId, String organization, double threshold, List<String> projectRequirements, int maxNumDeps, boolean duplicates) throws ComponentException {
         logger.showInfoMessage("SimProject: Start computing " + organization + " " + responseId);
         try {
             databaseOperations.saveResponse(organization, responseId, "SimProject");
             OrganizationModels organizationModels = databaseOperations.getOrganizationModels(organization, true);
-            project(projectRequirements, organizationModels, threshold, responseId, organization, maxNumDeps);
+            if (duplicates) projectDuplicates(projectRequirements, organizationModels, threshold, responseId, organization, maxNumDeps);
+            else project(projectRequirements, organizationModels, threshold, responseId, organization, maxNumDeps);
             databaseOperations.finishComputation(organization, responseId);
         } catch (ComponentException e) {
             throw treatComponentException(organization,responseId,true,e);
@@ -351,7 +417,7 @@ public class CompareServiceImpl implements CompareService {
             List<String> project1NotRepeated = deleteListDuplicates(projects.getFirstProjectRequirements());
             List<String> project2NotRepeated = deleteListDuplicates(projects.getSecondProjectRequirements());
             OrganizationModels organizationModels = databaseOperations.getOrganizationModels(organization, true);
-            reqProject(project1NotRepeated, project2NotRepeated, organizationModels, threshold, organization, responseId, false, maxNumDeps);
+            reqProject(project1NotRepeated, project2NotRepeated, organizationModels, threshold, organization, responseId, false, maxNumDeps, false);
             databaseOperations.finishComputation(organization, responseId);
         } catch (ComponentException e) {
             throw treatComponentException(organization,responseId,true,e);
@@ -422,7 +488,7 @@ public class CompareServiceImpl implements CompareService {
             }
 
             ResponseDependencies responseDependencies = new DiskDependencies(organization,responseId);
-            HashSet<String> repeated = new HashSet<>();
+            Map<String, Set<String>> repeated = new HashMap<>();
             for (Requirement requirement : filteredRequirements.getAllRequirements()) {
                 String id = requirement.getId();
                 List<Dependency> dependencies = clustersAlgorithm.getReqAcceptedDependencies(organization, id);
@@ -433,11 +499,7 @@ public class CompareServiceImpl implements CompareService {
                 dependencies.addAll(proposedDependencies.subList(0, highIndex));
                 for (Dependency dependency : dependencies) {
                     Dependency aux = new Dependency(dependency.getDependencyScore(), id, dependency.getToid(), dependency.getStatus());
-                    if (!repeated.contains(aux.getFromid() + aux.getToid())) {
-                        responseDependencies.addDependency(aux);
-                        repeated.add(aux.getFromid() + aux.getToid());
-                        repeated.add(aux.getToid() + aux.getFromid());
-                    }
+                    if (addPair(repeated, aux.getFromid(), aux.getToid())) responseDependencies.addDependency(aux);
                 }
             }
             responseDependencies.finish();
@@ -456,7 +518,7 @@ public class CompareServiceImpl implements CompareService {
         try {
             List<Dependency> result = new ArrayList<>();
             if (!databaseOperations.existsOrganization(organization)) throw new NotFoundException("The organization with id " + organization + " does not exist");
-            HashSet<String> repeated = new HashSet<>();
+            Map<String, Set<String>> repeated = new HashMap<>();
 
             for (String id : requirements) {
                 if (!databaseOperations.existReqInOrganizationModel(organization, id)) throw new NotFoundException("The requirement with id " + id + " is not inside the organization's model");
@@ -468,11 +530,7 @@ public class CompareServiceImpl implements CompareService {
                 dependencies.addAll(proposedDependencies.subList(0, highIndex));
                 for (Dependency dependency : dependencies) {
                     Dependency aux = new Dependency(dependency.getDependencyScore(), id, dependency.getToid(), dependency.getStatus());
-                    if (!repeated.contains(aux.getFromid() + aux.getToid())) {
-                        result.add(aux);
-                        repeated.add(aux.getFromid() + aux.getToid());
-                        repeated.add(aux.getToid() + aux.getFromid());
-                    }
+                    if (addPair(repeated, aux.getFromid(), aux.getToid())) result.add(aux);
                 }
             }
             logger.showInfoMessage("SimReqClusters: Finish computing");
@@ -634,68 +692,84 @@ public class CompareServiceImpl implements CompareService {
         }
     }
 
+    /**
+     * Reads the requirements of a json file without loading all of them in memory. The file can contain an array of
+     * requirements (as the body of BuildModel) or an object with a requirements array (as the files of BuildClusters,
+     * the other attributes are skipped). The requirements are passed to the consumer in batches, in the same order as
+     * they appear in the file
+     */
+    private void parseMultipartFileToRequirements(MultipartFile file, RequirementsConsumer consumer) throws BadRequestException, InternalErrorException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        try(InputStream inputStream = new BufferedInputStream(file.getInputStream());
+            JsonParser parser = objectMapper.getFactory().createParser(inputStream)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT) {
+                token = parser.nextToken();
+                while (token == JsonToken.FIELD_NAME && !parser.getCurrentName().equals("requirements")) {
+                    parser.nextToken();
+                    parser.skipChildren();
+                    token = parser.nextToken();
+                }
+                if (token == JsonToken.FIELD_NAME) token = parser.nextToken();
+            }
+            if (token != JsonToken.START_ARRAY) throw new BadRequestException("The input json file does not contain an array of requirements");
+            List<Requirement> batch = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                batch.add(objectMapper.readValue(parser, Requirement.class));
+                if (batch.size() == STREAMING_BATCH_SIZE) {
+                    consumer.accept(batch);
+                    batch = new ArrayList<>();
+                }
+            }
+            if (parser.getCurrentToken() != JsonToken.END_ARRAY) throw new BadRequestException("The input json file is not well build");
+            if (!batch.isEmpty()) consumer.accept(batch);
+        } catch (JsonParseException | JsonMappingException e) {
+            logger.showInfoMessage(e.getMessage());
+            throw new BadRequestException("The input json file is not well build");
+        } catch (IOException e) {
+            logger.showErrorMessage(e.getMessage());
+            throw new InternalErrorException("Error while converting input json file");
+        }
+    }
+
     private List<String> deleteListDuplicates(List<String> inputList) {
         HashSet<String> notRepeated = new HashSet<>(inputList);
         return new ArrayList<>(notRepeated);
     }
 
-    private boolean requirementUpdated(Requirement requirement, OrganizationModels organizationModels) throws InternalErrorException {
-        List<Requirement> requirements = new ArrayList<>();
-        requirements.add(requirement);
-        Map<String, List<String>> preprocessedRequirement = preprocessPipeline.preprocessRequirements(organizationModels.isCompare(),requirements);
-        return organizationModels.getSimilarityModel().checkIfRequirementIsUpdated(requirement.getId(),preprocessedRequirement.get(requirement.getId()));
-    }
+    private void reqProject(List<String> reqsToCompare, List<String> projectRequirements, OrganizationModels organizationModels, double threshold, String organization, String responseId, boolean include, int maxNumDeps, boolean approximate) throws InternalErrorException {
+        ResponseDependencies responseDependencies = createResponseDependencies(organization, responseId, maxNumDeps);
 
-    private void reqProject(List<String> reqsToCompare, List<String> projectRequirements, OrganizationModels organizationModels, double threshold, String organization, String responseId, boolean include, int maxNumDeps) throws InternalErrorException {
-        SimilarityModel similarityModel = organizationModels.getSimilarityModel();
-        boolean memoryDeps = maxNumDeps > 0;
-        ResponseDependencies responseDependencies;
-        if (memoryDeps) responseDependencies = new SizeFixedDependenciesQueue(organization,responseId,maxNumDeps,Comparator.comparing(Dependency::getDependencyScore).thenComparing(Dependency::getToid).thenComparing(Dependency::getFromid).reversed());
-        else responseDependencies = new DiskDependencies(organization,responseId);
-
-        for (String req1: reqsToCompare) {
-            if (similarityModel.containsRequirement(req1)) {
-                for (String req2 : projectRequirements) {
-                    if (!req1.equals(req2) && similarityModel.containsRequirement(req2)) {
-                        double score = requirementsSimilarity.computeSimilarity(organizationModels,req1,req2);
-                        if (score >= threshold) {
-                            Dependency dependency = new Dependency(score, req1, req2);
-                            responseDependencies.addDependency(dependency);
-                        }
-                    }
-                }
-                if (include) projectRequirements.add(req1);
-            }
-        }
+        if (approximate) requirementsSimilarity.computeApproximateReqProjectSimilarities(organizationModels, reqsToCompare, projectRequirements, include, threshold, responseDependencies);
+        else requirementsSimilarity.computeReqProjectSimilarities(organizationModels, reqsToCompare, projectRequirements, include, threshold, responseDependencies);
         responseDependencies.finish();
     }
 
 
     private void project(List<String> projectRequirements, OrganizationModels organizationModels, double threshold, String responseId, String organization, int maxNumDeps) throws InternalErrorException {
-        SimilarityModel similarityModel = organizationModels.getSimilarityModel();
-        boolean memoryDeps = maxNumDeps > 0;
-        ResponseDependencies responseDependencies;
-        if (memoryDeps) responseDependencies = new SizeFixedDependenciesQueue(organization,responseId,maxNumDeps,Comparator.comparing(Dependency::getDependencyScore).thenComparing(Dependency::getToid).thenComparing(Dependency::getFromid).reversed());
-        else responseDependencies = new DiskDependencies(organization,responseId);
-
-        for (int i = 0; i < projectRequirements.size(); ++i) {
-            String req1 = projectRequirements.get(i);
-            if (similarityModel.containsRequirement(req1)) {
-                for (int j = i + 1; j < projectRequirements.size(); ++j) {
-                    String req2 = projectRequirements.get(j);
-                    if (!req2.equals(req1) && similarityModel.containsRequirement(req2)) {
-                        double score = requirementsSimilarity.computeSimilarity(organizationModels,req1,req2);
-                        if (score >= threshold) {
-                            Dependency dependency = new Dependency(score, req1, req2);
-                            responseDependencies.addDependency(dependency);
-                        }
-                    }
-                }
-            }
-        }
+        ResponseDependencies responseDependencies = createResponseDependencies(organization, responseId, maxNumDeps);
+
+        requirementsSimilarity.computeProjectSimilarities(organizationModels, projectRequirements, threshold, responseDependencies);
+        responseDependencies.finish();
+    }
+
+    private void reqProjectDuplicates(List<String> reqsToCompare, List<String> projectRequirements, OrganizationModels organizationModels, double threshold, String organization, String responseId, int maxNumDeps) throws InternalErrorException {
+        ResponseDependencies responseDependencies = createResponseDependencies(organization, responseId, maxNumDeps);
+        requirementsSimilarity.computeReqProjectDuplicates(organizationModels, reqsToCompare, projectRequirements, true, threshold, responseDependencies);
         responseDependencies.finish();
     }
 
+    private void projectDuplicates(List<String> projectRequirements, OrganizationModels organizationModels, double threshold, String responseId, String organization, int maxNumDeps) throws InternalErrorException {
+        ResponseDependencies responseDependencies = createResponseDependencies(organization, responseId, maxNumDeps);
+        requirementsSimilarity.computeProjectDuplicates(organizationModels, projectRequirements, threshold, responseDependencies);
+        responseDependencies.finish();
+    }
+
+    private ResponseDependencies createResponseDependencies(String organization, String responseId, int maxNumDeps) {
+        if (maxNumDeps > 0) return new SizeFixedDependenciesQueue(organization,responseId,maxNumDeps,Comparator.comparing(Dependency::getDependencyScore).thenComparing(Dependency::getToid).thenComparing(Dependency::getFromid).reversed());
+        else return new DiskDependencies(organization,responseId);
+    }
+
     private List<Requirement> deleteDuplicates(List<Requirement> requirements) {
         HashSet<String> ids = new HashSet<>();
         List<Requirement> result = new ArrayList<>();
@@ -709,13 +783,20 @@ public class CompareServiceImpl implements CompareService {
         return result;
     }
 
+    private boolean addPair(Map<String, Set<String>> pairs, String requirementA, String requirementB) {
+        //each pair is saved in both directions, so it is only added once independently of its order
+        if (!pairs.computeIfAbsent(requirementA, k -> new HashSet<>()).add(requirementB)) return false;
+        pairs.computeIfAbsent(requirementB, k -> new HashSet<>()).add(requirementA);
+        return true;
+    }
+
     private OrganizationModels generateModel(boolean compare, boolean useComponent, List<Requirement> requirements) throws InternalErrorException {
-        return requirementsSimilarity.buildModel(preprocessPipeline.preprocessRequirements(compare,requirements),requirements,useComponent);
+        return requirementsSimilarity.buildModel(RequirementsTerms.preprocessRequirements(preprocessPipeline,compare,requirements),requirements,compare,useComponent);
     }
 
     private void addRequirementsToModel(OrganizationModels organizationModels, List<Requirement> requirements) throws InternalErrorException {
         deleteRequirementsFromModel(organizationModels,requirements);
-        requirementsSimilarity.addRequirements(organizationModels,preprocessPipeline.preprocessRequirements(organizationModels.isCompare(),requirements),requirements);
+        requirementsSimilarity.addRequirements(organizationModels,RequirementsTerms.preprocessRequirements(preprocessPipeline,organizationModels.isCompare(),requirements),requirements);
     }
 
     private void deleteRequirementsFromModel(OrganizationModels organizationModels, List<Requirement> requirements) throws InternalErrorException {
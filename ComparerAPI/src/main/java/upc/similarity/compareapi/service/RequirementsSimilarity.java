@@ -1,25 +1,33 @@
 package upc.similarity.compareapi.service;
 
+import upc.similarity.compareapi.algorithms.preprocess.RequirementsTerms;
 import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityAlgorithm;
 import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityModel;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityScoresSink;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.StreamingModelBuild;
 import upc.similarity.compareapi.entity.OrganizationModels;
 import upc.similarity.compareapi.entity.Requirement;
+import upc.similarity.compareapi.entity.RequirementContentHashes;
+import upc.similarity.compareapi.entity.RequirementFingerprints;
 import upc.similarity.compareapi.entity.exception.InternalErrorException;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 public class RequirementsSimilarity {
 
+    /**
+     * The factor applied to the scores of the requirements with different components
+     */
+    private static final double COMPONENT_FACTOR = 0.33;
+
     private SimilarityAlgorithm similarityAlgorithm;
 
     public RequirementsSimilarity(SimilarityAlgorithm similarityAlgorithm) {
         this.similarityAlgorithm = similarityAlgorithm;
     }
 
-    public OrganizationModels buildModel(Map<String, List<String>> requirementsTokens, List<Requirement> requirementsInfo, boolean useComponent) throws InternalErrorException {
-        SimilarityModel similarityModel = similarityAlgorithm.buildModel(requirementsTokens);
+    public OrganizationModels buildModel(RequirementsTerms requirementsTerms, List<Requirement> requirementsInfo, boolean compare, boolean useComponent) throws InternalErrorException {
+        SimilarityModel similarityModel = similarityAlgorithm.buildModel(requirementsTerms);
 
         //Computes each requirement component
         Map<String,String> reqComponent = new HashMap<>();
@@ -29,22 +37,123 @@ public class RequirementsSimilarity {
             }
         }
 
-        return new OrganizationModels(similarityModel,reqComponent);
+        RequirementFingerprints fingerprints = new RequirementFingerprints();
+        fingerprints.addAll(requirementsTerms);
+
+        RequirementContentHashes contentHashes = new RequirementContentHashes();
+        contentHashes.addAll(requirementsInfo, compare);
+
+        return new OrganizationModels(similarityModel,reqComponent,fingerprints,contentHashes);
+    }
+
+    public StreamingModelBuild createStreamingBuild() throws InternalErrorException {
+        return similarityAlgorithm.createStreamingBuild();
+    }
+
+    /**
+     * Adds the input requirements to the streaming build of a new model (see StreamingModelBuild). The rest of the
+     * organization models (the components, the fingerprints and the content hashes of the requirements) are
+     * kept in memory
+     * @param organizationModels the models of the new organization, without a similarity model
+     * @param requirementsTokens a map with each requirement id as key and the preprocessed tokens as value
+     * @param requirementsInfo the requirements to add, in order. They are not inside the build
+     */
+    public void addRequirements(OrganizationModels organizationModels, StreamingModelBuild similarityModelBuild, Map<String, List<String>> requirementsTokens, List<Requirement> requirementsInfo) throws InternalErrorException {
+        for (Requirement requirement : requirementsInfo) {
+            String id = requirement.getId();
+            similarityModelBuild.addRequirement(id, requirementsTokens.get(id));
+            if (organizationModels.isUseComponent()) organizationModels.getReqComponent().put(id, requirement.getComponent());
+        }
+        organizationModels.getFingerprints().addAll(requirementsTokens);
+        organizationModels.getContentHashes().addAll(requirementsInfo, organizationModels.isCompare());
     }
 
     public double computeSimilarity(OrganizationModels organizationModels, String requirementIdA, String requirementIdB) throws InternalErrorException {
         double score = similarityAlgorithm.computeSimilarity(organizationModels.getSimilarityModel(),requirementIdA,requirementIdB);
-        if (organizationModels.isUseComponent()) {
-            Map<String,String> reqComponent = organizationModels.getReqComponent();
-            String componentA = reqComponent.get(requirementIdA);
-            String componentB = reqComponent.get(requirementIdB);
-            if (componentA != null && componentB != null && !componentA.equals(componentB)) score *= 0.33;
+        return applyComponent(organizationModels,requirementIdA,requirementIdB,score);
+    }
+
+    public void computeSimilarities(OrganizationModels organizationModels, String requirementId, List<String> candidates, double threshold, SimilarityScoresSink sink) throws InternalErrorException {
+        similarityAlgorithm.computeSimilarities(organizationModels.getSimilarityModel(),requirementId,candidates,rawThreshold(organizationModels,threshold),componentSink(organizationModels,threshold,sink));
+    }
+
+    public void computeProjectSimilarities(OrganizationModels organizationModels, List<String> requirements, double threshold, SimilarityScoresSink sink) throws InternalErrorException {
+        similarityAlgorithm.computeProjectSimilarities(organizationModels.getSimilarityModel(),requirements,rawThreshold(organizationModels,threshold),componentSink(organizationModels,threshold,sink));
+    }
+
+    public void computeReqProjectSimilarities(OrganizationModels organizationModels, List<String> requirementsToCompare, List<String> projectRequirements, boolean include, double threshold, SimilarityScoresSink sink) throws InternalErrorException {
+        similarityAlgorithm.computeReqProjectSimilarities(organizationModels.getSimilarityModel(),requirementsToCompare,projectRequirements,include,rawThreshold(organizationModels,threshold),componentSink(organizationModels,threshold,sink));
+    }
+
+    public void computeApproximateReqProjectSimilarities(OrganizationModels organizationModels, List<String> requirementsToCompare, List<String> projectRequirements, boolean include, double threshold, SimilarityScoresSink sink) throws InternalErrorException {
+        similarityAlgorithm.computeApproximateReqProjectSimilarities(organizationModels.getSimilarityModel(),requirementsToCompare,projectRequirements,include,rawThreshold(organizationModels,threshold),componentSink(organizationModels,threshold,sink));
+    }
+
+    /**
+     * Finds the pairs of requirements of the input list with the same fingerprint, each pair only once. Only these pairs
+     * are scored with the similarity model; their score is not always 1 (e.g. the LSA scores or the requirements whose
+     * tf-idf vectors are emptied by the cutoff parameter), so it is computed in the same way as in computeSimilarity. The
+     * requirements without tokens, the ones outside the similarity model and the repeated ids are skipped. The
+     * requirements saved before the fingerprints existed do not have one until they are updated, so they are compared
+     * with all the other requirements of the list as in computeProjectSimilarities
+     */
+    public void computeProjectDuplicates(OrganizationModels organizationModels, List<String> requirements, double threshold, SimilarityScoresSink sink) throws InternalErrorException {
+        SimilarityScoresSink finalSink = componentSink(organizationModels,threshold,sink);
+        Map<Long, List<String>> buckets = new HashMap<>();
+        Set<String> visited = new LinkedHashSet<>();
+        List<String> withoutFingerprint = new ArrayList<>();
+        for (String requirement : requirements) {
+            if (!organizationModels.getSimilarityModel().containsRequirement(requirement) || !visited.add(requirement)) continue;
+            Long fingerprint = organizationModels.getFingerprints().get(requirement);
+            if (fingerprint == null) withoutFingerprint.add(requirement);
+            else if (fingerprint != RequirementFingerprints.EMPTY) {
+                List<String> bucket = buckets.computeIfAbsent(fingerprint, k -> new ArrayList<>());
+                for (String previous : bucket) addDuplicateScore(organizationModels, previous, requirement, finalSink);
+                bucket.add(requirement);
+            }
+        }
+        //each pair with a requirement without fingerprint is scored once
+        visited.removeAll(withoutFingerprint);
+        List<String> candidates = new ArrayList<>(visited);
+        for (String requirement : withoutFingerprint) {
+            similarityAlgorithm.computeSimilarities(organizationModels.getSimilarityModel(),requirement,candidates,rawThreshold(organizationModels,threshold),finalSink);
+            candidates.add(requirement);
         }
-        return score;
     }
 
-    public void addRequirements(OrganizationModels organizationModels, Map<String, List<String>> requirementsTokens, List<Requirement> requirementsInfo) throws InternalErrorException {
-        similarityAlgorithm.addRequirements(organizationModels.getSimilarityModel(),requirementsTokens);
+    /**
+     * Finds the pairs formed by one requirement of the first list and one requirement of the second list with the same
+     * fingerprint, in the same way as computeProjectDuplicates
+     * @param include if true, each requirement to compare is added to the project after being compared
+     */
+    public void computeReqProjectDuplicates(OrganizationModels organizationModels, List<String> requirementsToCompare, List<String> projectRequirements, boolean include, double threshold, SimilarityScoresSink sink) throws InternalErrorException {
+        SimilarityScoresSink finalSink = componentSink(organizationModels,threshold,sink);
+        Map<Long, Set<String>> buckets = new HashMap<>();
+        Set<String> project = new LinkedHashSet<>();
+        Set<String> projectWithoutFingerprint = new LinkedHashSet<>();
+        for (String requirement : projectRequirements) addToProject(organizationModels, requirement, buckets, project, projectWithoutFingerprint);
+        for (String requirement : requirementsToCompare) {
+            if (!organizationModels.getSimilarityModel().containsRequirement(requirement)) continue;
+            Long fingerprint = organizationModels.getFingerprints().get(requirement);
+            if (fingerprint == null) {
+                similarityAlgorithm.computeSimilarities(organizationModels.getSimilarityModel(),requirement,new ArrayList<>(project),rawThreshold(organizationModels,threshold),finalSink);
+            } else {
+                Set<String> bucket = (fingerprint != RequirementFingerprints.EMPTY) ? buckets.get(fingerprint) : null;
+                if (bucket != null) {
+                    for (String projectRequirement : bucket) {
+                        if (!projectRequirement.equals(requirement)) addDuplicateScore(organizationModels, requirement, projectRequirement, finalSink);
+                    }
+                }
+                if (!projectWithoutFingerprint.isEmpty()) similarityAlgorithm.computeSimilarities(organizationModels.getSimilarityModel(),requirement,new ArrayList<>(projectWithoutFingerprint),rawThreshold(organizationModels,threshold),finalSink);
+            }
+            if (include) addToProject(organizationModels, requirement, buckets, project, projectWithoutFingerprint);
+        }
+    }
+
+    public void addRequirements(OrganizationModels organizationModels, RequirementsTerms requirementsTerms, List<Requirement> requirementsInfo) throws InternalErrorException {
+        similarityAlgorithm.addRequirements(organizationModels.getSimilarityModel(),requirementsTerms);
+        organizationModels.getFingerprints().addAll(requirementsTerms);
+        organizationModels.getContentHashes().addAll(requirementsInfo, organizationModels.isCompare());
 
         //Computes reqComponent map for the new requirements
         if (organizationModels.isUseComponent()) {
@@ -57,8 +166,67 @@ public class RequirementsSimilarity {
 
     public void deleteRequirements(OrganizationModels organizationModels, List<String> requirements) throws InternalErrorException {
         similarityAlgorithm.deleteRequirements(organizationModels.getSimilarityModel(),requirements);
+        organizationModels.getFingerprints().removeAll(requirements);
+        organizationModels.getContentHashes().removeAll(requirements);
 
         //Updates reqComponent structure
         if (organizationModels.isUseComponent()) organizationModels.getReqComponent().keySet().removeAll(requirements);
     }
+
+    /*
+    Private methods
+     */
+
+    private double applyComponent(OrganizationModels organizationModels, String requirementIdA, String requirementIdB, double score) {
+        if (organizationModels.isUseComponent()) {
+            Map<String,String> reqComponent = organizationModels.getReqComponent();
+            String componentA = reqComponent.get(requirementIdA);
+            String componentB = reqComponent.get(requirementIdB);
+            if (componentA != null && componentB != null && !componentA.equals(componentB)) score *= COMPONENT_FACTOR;
+        }
+        return score;
+    }
+
+    private void addToProject(OrganizationModels organizationModels, String requirement, Map<Long, Set<String>> buckets, Set<String> project, Set<String> projectWithoutFingerprint) {
+        if (!organizationModels.getSimilarityModel().containsRequirement(requirement)) return;
+        project.add(requirement);
+        Long fingerprint = organizationModels.getFingerprints().get(requirement);
+        if (fingerprint == null) projectWithoutFingerprint.add(requirement);
+        else if (fingerprint != RequirementFingerprints.EMPTY) buckets.computeIfAbsent(fingerprint, k -> new LinkedHashSet<>()).add(requirement);
+    }
+
+    private void addDuplicateScore(OrganizationModels organizationModels, String requirementIdA, String requirementIdB, SimilarityScoresSink sink) throws InternalErrorException {
+        sink.addScore(requirementIdA, requirementIdB, similarityAlgorithm.computeSimilarity(organizationModels.getSimilarityModel(), requirementIdA, requirementIdB));
+    }
+
+    /**
+     * Returns the threshold used by the algorithms, which filter the pairs before the component factor is applied. The
+     * factor lowers the positive scores but raises the negative ones (e.g. the LSA scores), so a negative threshold is
+     * divided by the factor to keep the pairs whose final score can reach it. The sink applies the real threshold
+     */
+    private double rawThreshold(OrganizationModels organizationModels, double threshold) {
+        return (organizationModels.isUseComponent() && threshold < 0) ? threshold / COMPONENT_FACTOR : threshold;
+    }
+
+    private SimilarityScoresSink componentSink(OrganizationModels organizationModels, double threshold, SimilarityScoresSink sink) {
+        return new SimilarityScoresSink() {
+            @Override
+            public void addScore(String requirementIdA, String requirementIdB, double score) throws InternalErrorException {
+                double finalScore = applyComponent(organizationModels,requirementIdA,requirementIdB,score);
+                if (finalScore >= threshold) sink.addScore(requirementIdA,requirementIdB,finalScore);
+            }
+
+            @Override
+            public double getScoreBound() {
+                //the bound is used before applying the component factor, in the same way as the threshold
+                return rawThreshold(organizationModels, sink.getScoreBound());
+            }
+
+            @Override
+            public int getMaxScores() {
+                //the component factor can change the order of the scores, so the sink can not be treated as a top-k one
+                return organizationModels.isUseComponent() ? 0 : sink.getMaxScores();
+            }
+        };
+    }
 }
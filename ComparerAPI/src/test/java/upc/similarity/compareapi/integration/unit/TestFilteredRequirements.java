@@ -0,0 +1,45 @@
+package upc.similarity.compareapi.integration.unit;
+
+import org.junit.Test;
+import upc.similarity.compareapi.entity.Requirement;
+import upc.similarity.compareapi.entity.auxiliary.FilteredRequirements;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * The clusters of a new organization (BuildClusters and BuildClustersAndCompute) are built without organization models,
+ * so all the requirements that are not deleted must be considered new ones
+ */
+public class TestFilteredRequirements {
+
+    @Test
+    public void splitWithoutOrganizationModels() throws Exception {
+        List<Requirement> requirements = new ArrayList<>();
+        requirements.add(new Requirement("R1", "first requirement", "text", 1, 0, null, null));
+        requirements.add(new Requirement("R2", "second requirement", "text", 1, 0, "deleted", null));
+        requirements.add(new Requirement("R3", "third requirement", "text", 1, 0, "open", null));
+        //the repeated requirement with the highest time is kept
+        requirements.add(new Requirement("R1", "first requirement updated", "text", 2, 0, null, null));
+
+        FilteredRequirements filteredRequirements = new FilteredRequirements(requirements, null, true);
+
+        assertEquals(3, filteredRequirements.getAllRequirements().size());
+        assertEquals(new HashSet<>(Arrays.asList("R1", "R3")), ids(filteredRequirements.getNewRequirements()));
+        assertEquals(new HashSet<>(Collections.singletonList("R2")), ids(filteredRequirements.getDeletedRequirements()));
+        assertTrue(filteredRequirements.getUpdatedRequirements().isEmpty());
+        assertEquals("before", filteredRequirements.getReqDepsToRemove().get("R1").getKey());
+        assertEquals("all", filteredRequirements.getReqDepsToRemove().get("R2").getKey());
+    }
+
+    /*
+    Private methods
+     */
+
+    private Set<String> ids(List<Requirement> requirements) {
+        Set<String> result = new HashSet<>();
+        for (Requirement requirement : requirements) result.add(requirement.getId());
+        return result;
+    }
+}
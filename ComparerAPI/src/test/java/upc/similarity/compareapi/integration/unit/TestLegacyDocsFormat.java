@@ -0,0 +1,83 @@
+package upc.similarity.compareapi.integration.unit;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SimilarityModelTfIdf;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SparseVector;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.TermDictionary;
+import upc.similarity.compareapi.dao.algorithm_models_dao.similarity_algorithm.tf_idf.SimilarityModelDatabaseTfIdf;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * The organizations saved before the term dictionary have the docs with the words as keys and without the norms
+ */
+public class TestLegacyDocsFormat {
+
+    private static String path = "../testing/integration/test_database/legacy_docs.db";
+
+    @AfterClass
+    public static void deleteTestDB() {
+        File file = new File(path);
+        boolean result = file.delete();
+    }
+
+    @Test
+    public void loadAndSaveLegacyDocs() throws Exception {
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + path)) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE docs (id varchar PRIMARY KEY, definition text)");
+                stmt.execute("CREATE TABLE corpus (definition text)");
+                stmt.execute("INSERT INTO docs(id, definition) VALUES ('R1','[{\"id\":\"pdf\",\"value\":1.5},{\"id\":\"export\",\"value\":0.5}]')");
+                stmt.execute("INSERT INTO docs(id, definition) VALUES ('R2','[{\"id\":\"report\",\"value\":2.0}]')");
+                stmt.execute("INSERT INTO docs(id, definition) VALUES ('R3','[]')");
+                stmt.execute("INSERT INTO corpus(definition) VALUES ('[{\"id\":\"export\",\"value\":2},{\"id\":\"pdf\",\"value\":1},{\"id\":\"button\",\"value\":1}]')");
+            }
+            SimilarityModelDatabaseTfIdf database = new SimilarityModelDatabaseTfIdf();
+            SimilarityModelTfIdf model = (SimilarityModelTfIdf) database.getModel(false, conn);
+            checkLegacyModel(model);
+
+            //the tables are migrated when the model is saved again
+            database.clearModelTables(conn);
+            database.saveModelInfo(model, conn);
+            checkLegacyModel((SimilarityModelTfIdf) database.getModel(false, conn));
+        }
+    }
+
+    private void checkLegacyModel(SimilarityModelTfIdf model) {
+        TermDictionary dictionary = model.getDictionary();
+        assertEquals(2, dictionary.getFrequency(dictionary.getId("export")));
+        assertEquals(1, dictionary.getFrequency(dictionary.getId("pdf")));
+        assertEquals(3, model.getDocs().size());
+
+        Map<String, Double> words = words(model.getDocs().get("R1"), dictionary);
+        assertEquals(2, words.size());
+        assertEquals(1.5, words.get("pdf"), 0);
+        assertEquals(0.5, words.get("export"), 0);
+        assertEquals(Math.sqrt(1.5 * 1.5 + 0.5 * 0.5), model.getDocs().get("R1").getNorm(), 1e-12);
+
+        //the words that are not inside the corpus are added to the dictionary
+        words = words(model.getDocs().get("R2"), dictionary);
+        assertEquals(1, words.size());
+        assertEquals(2.0, words.get("report"), 0);
+
+        assertEquals(0, model.getDocs().get("R3").size());
+    }
+
+    private Map<String, Double> words(SparseVector vector, TermDictionary dictionary) {
+        Map<String, Double> result = new HashMap<>();
+        int[] termIds = vector.getTermIds();
+        for (int i = 0; i < termIds.length; ++i) {
+            if (i > 0) assertTrue(termIds[i-1] < termIds[i]);
+            result.put(dictionary.getTerm(termIds[i]), vector.getWeights()[i]);
+        }
+        return result;
+    }
+}
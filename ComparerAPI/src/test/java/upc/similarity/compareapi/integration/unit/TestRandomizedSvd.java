@@ -0,0 +1,117 @@
+package upc.similarity.compareapi.integration.unit;
+
+import org.junit.Test;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.lsa.RandomizedSvd;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SparseVector;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TestRandomizedSvd {
+
+    private static final double SQRT_HALF = Math.sqrt(0.5);
+
+    /**
+     * A = U * S * V^T with U = I, S = diag(5, 3, 1), v1 = (1, 1, 0, 0) / sqrt(2), v2 = (1, -1, 0, 0) / sqrt(2) and
+     * v3 = (0, 0, 1, 0)
+     */
+    private List<SparseVector> knownMatrix() {
+        List<SparseVector> rows = new ArrayList<>();
+        rows.add(new SparseVector(new int[]{0, 1}, new double[]{5 * SQRT_HALF, 5 * SQRT_HALF}));
+        rows.add(new SparseVector(new int[]{0, 1}, new double[]{3 * SQRT_HALF, -3 * SQRT_HALF}));
+        rows.add(new SparseVector(new int[]{2}, new double[]{1}));
+        return rows;
+    }
+
+    @Test
+    public void knownDecomposition() {
+        double[][] expected = {{SQRT_HALF, SQRT_HALF, 0, 0}, {SQRT_HALF, -SQRT_HALF, 0, 0}, {0, 0, 1, 0}};
+        double[] singularValues = {5, 3, 1};
+        for (int dimensions = 1; dimensions <= 3; ++dimensions) {
+            float[] projection = RandomizedSvd.computeProjection(knownMatrix(), 4, dimensions, 2, 1, 42);
+            for (int c = 0; c < dimensions; ++c) {
+                //the singular vectors are unique up to the sign
+                double[] column = column(projection, 4, dimensions, c);
+                assertEquals(1, Math.abs(dot(column, expected[c])), 1e-5);
+                //the projection of the row c is its singular value in the dimension c and 0 in the others
+                double[] projectedRow = project(knownMatrix().get(c), projection, dimensions);
+                for (int d = 0; d < dimensions; ++d) assertEquals((d == c) ? singularValues[c] : 0, Math.abs(projectedRow[d]), 1e-5);
+            }
+        }
+    }
+
+    @Test
+    public void missingDimensionsAreZero() {
+        //rank 3, so the dimensions 3 and 4 do not exist
+        float[] projection = RandomizedSvd.computeProjection(knownMatrix(), 4, 5, 2, 1, 42);
+        for (int c = 3; c < 5; ++c) {
+            for (double value : column(projection, 4, 5, c)) assertEquals(0, value, 0);
+        }
+        assertEquals(0, RandomizedSvd.computeProjection(new ArrayList<>(), 4, 2, 2, 1, 42)[0], 0);
+    }
+
+    @Test
+    public void orthonormalColumnsAndExactLowRankReconstruction() {
+        //random matrix of rank 4 (50 rows x 30 terms)
+        Random random = new Random(8);
+        int rank = 4;
+        int numberTerms = 30;
+        double[][] left = new double[50][rank];
+        double[][] right = new double[rank][numberTerms];
+        for (double[] row : left) for (int i = 0; i < rank; ++i) row[i] = random.nextGaussian();
+        for (double[] row : right) for (int i = 0; i < numberTerms; ++i) row[i] = random.nextGaussian();
+        List<SparseVector> rows = new ArrayList<>();
+        for (double[] row : left) {
+            int[] termIds = new int[numberTerms];
+            double[] weights = new double[numberTerms];
+            for (int t = 0; t < numberTerms; ++t) {
+                termIds[t] = t;
+                for (int i = 0; i < rank; ++i) weights[t] += row[i] * right[i][t];
+            }
+            rows.add(new SparseVector(termIds, weights));
+        }
+
+        float[] projection = RandomizedSvd.computeProjection(rows, numberTerms, rank, 5, 2, 7);
+        for (int a = 0; a < rank; ++a) {
+            for (int b = 0; b < rank; ++b) {
+                assertEquals((a == b) ? 1 : 0, dot(column(projection, numberTerms, rank, a), column(projection, numberTerms, rank, b)), 1e-5);
+            }
+        }
+        //the rows are inside the space of the columns, so A * V * V^T = A
+        for (SparseVector row : rows) {
+            double[] projectedRow = project(row, projection, rank);
+            for (int t = 0; t < numberTerms; ++t) {
+                double value = 0;
+                for (int c = 0; c < rank; ++c) value += projectedRow[c] * projection[t * rank + c];
+                assertEquals(row.getWeights()[t], value, 1e-4 * Math.max(1, row.getNorm()));
+            }
+        }
+        //the same seed always returns the same projection
+        assertTrue(Arrays.equals(projection, RandomizedSvd.computeProjection(rows, numberTerms, rank, 5, 2, 7)));
+    }
+
+    /*
+    Private methods
+     */
+
+    private double[] column(float[] projection, int numberTerms, int dimensions, int column) {
+        double[] result = new double[numberTerms];
+        for (int t = 0; t < numberTerms; ++t) result[t] = projection[t * dimensions + column];
+        return result;
+    }
+
+    private double[] project(SparseVector row, float[] projection, int dimensions) {
+        double[] result = new double[dimensions];
+        for (int i = 0; i < row.size(); ++i) {
+            for (int c = 0; c < dimensions; ++c) result[c] += row.getWeights()[i] * projection[row.getTermIds()[i] * dimensions + c];
+        }
+        return result;
+    }
+
+    private double dot(double[] a, double[] b) {
+        double result = 0;
+        for (int i = 0; i < a.length; ++i) result += a[i] * b[i];
+        return result;
+    }
+}
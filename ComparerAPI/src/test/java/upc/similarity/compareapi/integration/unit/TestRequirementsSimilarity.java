@@ -0,0 +1,199 @@
+package upc.similarity.compareapi.integration.unit;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityAlgorithm;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityModel;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityScoresExecutor;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.lsa.SimilarityAlgorithmLsa;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SimilarityAlgorithmTfIdf;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf_double.SimilarityAlgorithmTfIdfDouble;
+import upc.similarity.compareapi.config.Constants;
+import upc.similarity.compareapi.entity.OrganizationModels;
+import upc.similarity.compareapi.entity.RequirementContentHashes;
+import upc.similarity.compareapi.entity.RequirementFingerprints;
+import upc.similarity.compareapi.service.RequirementsSimilarity;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * The pairs returned by RequirementsSimilarity must be the ones whose score, after applying the component factor, is
+ * greater or equal than the threshold (as comparing all the pairs with computeSimilarity)
+ */
+public class TestRequirementsSimilarity {
+
+    private static SimilarityScoresExecutor oldExecutor;
+
+    @BeforeClass
+    public static void saveExecutor() {
+        oldExecutor = Constants.getInstance().getSimilarityScoresExecutor();
+    }
+
+    @AfterClass
+    public static void restoreExecutor() {
+        Constants.getInstance().setSimilarityScoresExecutor(oldExecutor);
+    }
+
+    @Test
+    public void componentFactorWithNegativeScores() throws Exception {
+        Random random = new Random(9);
+        Map<String, List<String>> corpus = generateCorpus(random, 150);
+        Map<String, String> components = new HashMap<>();
+        for (String id : corpus.keySet()) components.put(id, "C" + random.nextInt(3));
+        List<String> ids = new ArrayList<>(corpus.keySet());
+
+        SimilarityAlgorithm[] algorithms = {new SimilarityAlgorithmLsa(-1, false, true, 5, 5, 1), new SimilarityAlgorithmTfIdf(-1, false, true)};
+        for (SimilarityAlgorithm algorithm : algorithms) {
+            RequirementsSimilarity requirementsSimilarity = new RequirementsSimilarity(algorithm);
+            SimilarityModel model = algorithm.buildModel(corpus);
+            OrganizationModels organizationModels = new OrganizationModels(new OrganizationModels(model, components, new RequirementFingerprints(), new RequirementContentHashes()), 0, true, true, false);
+            for (double threshold : new double[]{-0.5, -0.05, 0, 0.3}) {
+                List<String> expected = new ArrayList<>();
+                for (int i = 0; i < ids.size(); ++i) {
+                    for (int j = i + 1; j < ids.size(); ++j) {
+                        double score = requirementsSimilarity.computeSimilarity(organizationModels, ids.get(i), ids.get(j));
+                        if (score >= threshold) expected.add(ids.get(i) + "-" + ids.get(j) + ":" + score);
+                    }
+                }
+                for (int parallelism : new int[]{1, 4}) {
+                    Constants.getInstance().setSimilarityScoresExecutor(new SimilarityScoresExecutor(parallelism));
+                    List<String> result = new ArrayList<>();
+                    requirementsSimilarity.computeProjectSimilarities(organizationModels, ids, threshold, (a, b, score) -> result.add(a + "-" + b + ":" + score));
+                    assertEquals(algorithm.getClass().getSimpleName() + " threshold " + threshold, expected.size(), result.size());
+                    assertEquals(new HashSet<>(expected), new HashSet<>(result));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void duplicatesWithRealScores() throws Exception {
+        Random random = new Random(17);
+        Map<String, List<String>> corpus = generateCorpus(random, 60);
+        List<String> originals = new ArrayList<>(corpus.keySet());
+        for (int i = 0; i < 40; ++i) {
+            List<String> tokens = new ArrayList<>(corpus.get(originals.get(random.nextInt(originals.size()))));
+            Collections.shuffle(tokens, random);
+            corpus.put("D" + i, tokens);
+        }
+        Map<String, String> components = new HashMap<>();
+        for (String id : corpus.keySet()) components.put(id, "C" + random.nextInt(3));
+        List<String> ids = new ArrayList<>(corpus.keySet());
+        RequirementFingerprints fingerprints = new RequirementFingerprints();
+        fingerprints.addAll(corpus);
+
+        //the lsa scores, the tf_idf_double scores of the requirements with few terms and the tf-idf vectors emptied by the cutoff are not 1
+        SimilarityAlgorithm[] algorithms = {new SimilarityAlgorithmLsa(-1, false, true, 5, 5, 1), new SimilarityAlgorithmTfIdf(1.5, false, true), new SimilarityAlgorithmTfIdfDouble(-1, false, true, false, 20, 0.1, 0.3)};
+        for (SimilarityAlgorithm algorithm : algorithms) {
+            RequirementsSimilarity requirementsSimilarity = new RequirementsSimilarity(algorithm);
+            SimilarityModel model = algorithm.buildModel(corpus);
+            OrganizationModels organizationModels = new OrganizationModels(new OrganizationModels(model, components, fingerprints, new RequirementContentHashes()), 0, true, true, false);
+            for (double threshold : new double[]{-1, 0.5, 0.99}) {
+                List<String> expected = new ArrayList<>();
+                for (int i = 0; i < ids.size(); ++i) {
+                    for (int j = i + 1; j < ids.size(); ++j) {
+                        if (!sorted(corpus.get(ids.get(i))).equals(sorted(corpus.get(ids.get(j))))) continue;
+                        double score = requirementsSimilarity.computeSimilarity(organizationModels, ids.get(i), ids.get(j));
+                        if (score >= threshold) expected.add(ids.get(i) + "-" + ids.get(j) + ":" + score);
+                    }
+                }
+                List<String> result = new ArrayList<>();
+                requirementsSimilarity.computeProjectDuplicates(organizationModels, ids, threshold, (a, b, score) -> result.add(a + "-" + b + ":" + score));
+                assertEquals(algorithm.getClass().getSimpleName() + " threshold " + threshold, new HashSet<>(expected), new HashSet<>(result));
+                assertEquals(expected.size(), result.size());
+            }
+        }
+    }
+
+    @Test
+    public void duplicatesWithoutFingerprints() throws Exception {
+        Random random = new Random(23);
+        Map<String, List<String>> corpus = generateCorpus(random, 50);
+        List<String> originals = new ArrayList<>(corpus.keySet());
+        for (int i = 0; i < 30; ++i) {
+            List<String> tokens = new ArrayList<>(corpus.get(originals.get(random.nextInt(originals.size()))));
+            Collections.shuffle(tokens, random);
+            corpus.put("D" + i, tokens);
+        }
+        List<String> ids = new ArrayList<>(corpus.keySet());
+        List<String> queries = ids.subList(0, 40);
+        //the models saved before the fingerprints existed do not have any, the updated requirements of these models have one
+        Map<String, List<String>> updated = new HashMap<>();
+        for (int i = 0; i < ids.size(); i += 2) updated.put(ids.get(i), corpus.get(ids.get(i)));
+        RequirementFingerprints[] allFingerprints = {new RequirementFingerprints(), new RequirementFingerprints()};
+        allFingerprints[1].addAll(updated);
+
+        SimilarityAlgorithm[] algorithms = {new SimilarityAlgorithmLsa(-1, false, true, 5, 5, 1), new SimilarityAlgorithmTfIdf(-1, false, true)};
+        for (SimilarityAlgorithm algorithm : algorithms) {
+            RequirementsSimilarity requirementsSimilarity = new RequirementsSimilarity(algorithm);
+            SimilarityModel model = algorithm.buildModel(corpus);
+            for (RequirementFingerprints fingerprints : allFingerprints) {
+                OrganizationModels organizationModels = new OrganizationModels(new OrganizationModels(model, new HashMap<>(), fingerprints, new RequirementContentHashes()), 0, true, false, false);
+                for (double threshold : new double[]{-1, 0.5, 0.99}) {
+                    String message = algorithm.getClass().getSimpleName() + " " + fingerprints.size() + " fingerprints threshold " + threshold;
+                    Map<String, Double> expected = new HashMap<>();
+                    Map<String, Double> expectedQueries = new HashMap<>();
+                    Map<String, Double> expectedInclude = new HashMap<>();
+                    for (int i = 0; i < ids.size(); ++i) {
+                        for (int j = i + 1; j < ids.size(); ++j) {
+                            String idA = ids.get(i);
+                            String idB = ids.get(j);
+                            //the pairs with a requirement without fingerprint are scored as in the similarities mode
+                            boolean candidate = fingerprints.get(idA) == null || fingerprints.get(idB) == null || sorted(corpus.get(idA)).equals(sorted(corpus.get(idB)));
+                            double score = requirementsSimilarity.computeSimilarity(organizationModels, idA, idB);
+                            if (candidate && score >= threshold) {
+                                expected.put(pairKey(idA, idB), score);
+                                if (i < queries.size()) expectedInclude.put(pairKey(idA, idB), score);
+                                if (i < queries.size() && j >= queries.size()) expectedQueries.put(pairKey(idA, idB), score);
+                            }
+                        }
+                    }
+                    Map<String, Double> result = new HashMap<>();
+                    requirementsSimilarity.computeProjectDuplicates(organizationModels, ids, threshold, (a, b, score) -> assertNull(message, result.put(pairKey(a, b), score)));
+                    assertScoresEqual(message, expected, result);
+
+                    Map<String, Double> resultQueries = new HashMap<>();
+                    requirementsSimilarity.computeReqProjectDuplicates(organizationModels, queries, ids.subList(queries.size(), ids.size()), false, threshold, (a, b, score) -> assertNull(message, resultQueries.put(pairKey(a, b), score)));
+                    assertScoresEqual(message, expectedQueries, resultQueries);
+
+                    Map<String, Double> resultInclude = new HashMap<>();
+                    requirementsSimilarity.computeReqProjectDuplicates(organizationModels, queries, ids.subList(queries.size(), ids.size()), true, threshold, (a, b, score) -> assertNull(message, resultInclude.put(pairKey(a, b), score)));
+                    assertScoresEqual(message, expectedInclude, resultInclude);
+                }
+            }
+        }
+    }
+
+    /*
+    Private methods
+     */
+
+    private String pairKey(String idA, String idB) {
+        return (idA.compareTo(idB) < 0) ? idA + "-" + idB : idB + "-" + idA;
+    }
+
+    private void assertScoresEqual(String message, Map<String, Double> expected, Map<String, Double> result) {
+        assertEquals(message, expected.keySet(), result.keySet());
+        for (Map.Entry<String, Double> entry : expected.entrySet()) assertEquals(message, entry.getValue(), result.get(entry.getKey()), 1e-9);
+    }
+
+    private List<String> sorted(List<String> tokens) {
+        List<String> result = new ArrayList<>(tokens);
+        Collections.sort(result);
+        return result;
+    }
+
+    private Map<String, List<String>> generateCorpus(Random random, int size) {
+        Map<String, List<String>> result = new LinkedHashMap<>();
+        for (int i = 0; i < size; ++i) {
+            List<String> tokens = new ArrayList<>();
+            int length = 1 + random.nextInt(10);
+            for (int j = 0; j < length; ++j) tokens.add("w" + random.nextInt(40));
+            result.put("R" + i, tokens);
+        }
+        return result;
+    }
+}
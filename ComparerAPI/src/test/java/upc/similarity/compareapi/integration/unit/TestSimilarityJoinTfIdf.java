@@ -0,0 +1,331 @@
+package upc.similarity.compareapi.integration.unit;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityScoresExecutor;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityScoresSink;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.CosineSimilarityTfIdf;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SimilarityAlgorithmTfIdf;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SimilarityModelTfIdf;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SparseVector;
+import upc.similarity.compareapi.config.Constants;
+import upc.similarity.compareapi.entity.Dependency;
+import upc.similarity.compareapi.entity.auxiliary.SizeFixedDependenciesQueue;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * The pairs returned by the similarity join (prefix filtering, MaxScore and the blocked queries) must be the same, and in
+ * the same order, as the ones returned by comparing all the pairs with the exact cosine
+ */
+public class TestSimilarityJoinTfIdf {
+
+    private static SimilarityScoresExecutor oldExecutor;
+    private static CosineSimilarityTfIdf cosine = CosineSimilarityTfIdf.getInstance();
+
+    @BeforeClass
+    public static void saveExecutor() {
+        oldExecutor = Constants.getInstance().getSimilarityScoresExecutor();
+    }
+
+    @AfterClass
+    public static void restoreExecutor() {
+        Constants.getInstance().setSimilarityScoresExecutor(oldExecutor);
+    }
+
+    @Test
+    public void projectSimilaritiesEqualBruteForce() throws Exception {
+        for (long seed = 0; seed < 5; ++seed) {
+            SimilarityAlgorithmTfIdf algorithm = new SimilarityAlgorithmTfIdf(-1, false, true);
+            Map<String, List<String>> corpus = generateCorpus(new Random(seed), 300);
+            SimilarityModelTfIdf model = (SimilarityModelTfIdf) algorithm.buildModel(corpus);
+            List<String> ids = new ArrayList<>(corpus.keySet());
+            for (double threshold : thresholds(model, ids)) {
+                List<String> expected = bruteForce(model, ids, ids, true, threshold);
+                for (int parallelism : new int[]{1, 4}) {
+                    Constants.getInstance().setSimilarityScoresExecutor(new SimilarityScoresExecutor(parallelism));
+                    List<String> result = new ArrayList<>();
+                    algorithm.computeProjectSimilarities(model, ids, threshold, (a, b, score) -> result.add(pair(a, b, score)));
+                    assertEquals("seed " + seed + " threshold " + threshold, expected, result);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void reqProjectSimilaritiesEqualBruteForce() throws Exception {
+        for (long seed = 0; seed < 5; ++seed) {
+            SimilarityAlgorithmTfIdf algorithm = new SimilarityAlgorithmTfIdf(-1, false, true);
+            Map<String, List<String>> corpus = generateCorpus(new Random(seed), 300);
+            SimilarityModelTfIdf model = (SimilarityModelTfIdf) algorithm.buildModel(corpus);
+            List<String> ids = new ArrayList<>(corpus.keySet());
+            //more queries than the size of the blocks of InvertedIndexTfIdf
+            List<String> queries = ids.subList(0, 70);
+            List<String> project = ids.subList(70, ids.size());
+            for (double threshold : thresholds(model, ids)) {
+                for (boolean include : new boolean[]{true, false}) {
+                    List<String> expected = bruteForce(model, queries, project, include, threshold);
+                    for (int parallelism : new int[]{1, 4}) {
+                        Constants.getInstance().setSimilarityScoresExecutor(new SimilarityScoresExecutor(parallelism));
+                        List<String> result = new ArrayList<>();
+                        algorithm.computeReqProjectSimilarities(model, queries, project, include, threshold, (a, b, score) -> result.add(pair(a, b, score)));
+                        assertEquals("seed " + seed + " threshold " + threshold + " include " + include, expected, result);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void topKEqualBruteForce() throws Exception {
+        for (long seed = 0; seed < 3; ++seed) {
+            SimilarityAlgorithmTfIdf algorithm = new SimilarityAlgorithmTfIdf(-1, false, true);
+            Map<String, List<String>> corpus = generateCorpus(new Random(seed), 300);
+            SimilarityModelTfIdf model = (SimilarityModelTfIdf) algorithm.buildModel(corpus);
+            List<String> ids = new ArrayList<>(corpus.keySet());
+            List<String> queries = ids.subList(0, 40);
+            List<String> project = ids.subList(40, ids.size());
+            for (double threshold : new double[]{0, 0.1, 0.5}) {
+                for (int maxSize : new int[]{1, 10, 100}) {
+                    SizeFixedDependenciesQueue expectedProject = createQueue(maxSize);
+                    addPairs(expectedProject, bruteForce(model, ids, ids, true, threshold));
+                    SizeFixedDependenciesQueue expectedReqProject = createQueue(maxSize);
+                    addPairs(expectedReqProject, bruteForce(model, queries, project, false, threshold));
+                    for (int parallelism : new int[]{1, 4}) {
+                        Constants.getInstance().setSimilarityScoresExecutor(new SimilarityScoresExecutor(parallelism));
+                        SizeFixedDependenciesQueue result = createQueue(maxSize);
+                        algorithm.computeProjectSimilarities(model, ids, threshold, result);
+                        assertEquals(dependencies(expectedProject), dependencies(result));
+                        result = createQueue(maxSize);
+                        algorithm.computeReqProjectSimilarities(model, queries, project, false, threshold, result);
+                        assertEquals(dependencies(expectedReqProject), dependencies(result));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void similaritiesAfterDeletingAndAdding() throws Exception {
+        for (long seed = 0; seed < 3; ++seed) {
+            Random random = new Random(seed);
+            SimilarityAlgorithmTfIdf algorithm = new SimilarityAlgorithmTfIdf(-1, false, true);
+            Map<String, List<String>> corpus = generateCorpus(random, 300);
+            SimilarityModelTfIdf model = (SimilarityModelTfIdf) algorithm.buildModel(corpus);
+            List<String> ids = new ArrayList<>(corpus.keySet());
+
+            //deletes the requirements with the rarest terms, so the dictionary is compacted and the term ids change
+            int oldDictionarySize = model.getDictionary().size();
+            List<String> deleted = new ArrayList<>();
+            for (String id : ids) {
+                for (String token : corpus.get(id)) {
+                    if (Integer.parseInt(token.substring(1)) >= 60) {
+                        deleted.add(id);
+                        break;
+                    }
+                }
+            }
+            algorithm.deleteRequirements(model, deleted);
+            assertTrue(model.getDictionary().size() < oldDictionarySize);
+            ids.removeAll(deleted);
+
+            Map<String, List<String>> newRequirements = new LinkedHashMap<>();
+            for (Map.Entry<String, List<String>> entry : generateCorpus(random, 100).entrySet()) newRequirements.put("N" + entry.getKey(), entry.getValue());
+            algorithm.addRequirements(model, newRequirements);
+            ids.addAll(newRequirements.keySet());
+
+            for (double threshold : new double[]{0, 0.2, 0.5}) {
+                List<String> expected = bruteForce(model, ids, ids, true, threshold);
+                List<String> result = new ArrayList<>();
+                algorithm.computeProjectSimilarities(model, ids, threshold, (a, b, score) -> result.add(pair(a, b, score)));
+                assertEquals("seed " + seed + " threshold " + threshold, expected, result);
+            }
+            for (int i = 0; i < ids.size(); i += 7) {
+                for (int j = i + 1; j < ids.size(); j += 3) {
+                    SparseVector vectorA = copy(model.getDocs().get(ids.get(i)));
+                    SparseVector vectorB = copy(model.getDocs().get(ids.get(j)));
+                    assertEquals(cosine.compute(vectorA, vectorB, cosine.dotProduct(vectorA, vectorB)), cosine.compute(model, ids.get(i), ids.get(j)), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void similaritiesAfterIncrementalUpdate() throws Exception {
+        for (long seed = 0; seed < 3; ++seed) {
+            Random random = new Random(seed);
+            SimilarityAlgorithmTfIdf algorithm = new SimilarityAlgorithmTfIdf(-1, false, true);
+            //a common term that most of the requirements contain, its idf value is close to 0
+            Map<String, List<String>> corpus = generateCorpus(random, 300);
+            List<String> ids = new ArrayList<>(corpus.keySet());
+            List<String> deleted = new ArrayList<>();
+            for (int i = 0; i < ids.size(); ++i) {
+                if (i % 3 != 0) corpus.get(ids.get(i)).add("common");
+                else deleted.add(ids.get(i));
+            }
+            SimilarityModelTfIdf model = (SimilarityModelTfIdf) algorithm.buildModel(corpus);
+
+            //after deleting requirements without the common term its idf value is recomputed with a lower size than its frequency
+            algorithm.deleteRequirements(model, deleted);
+            ids.removeAll(deleted);
+            assertNonNegativeWeights(model);
+            assertJoinEqualsBruteForce(algorithm, model, ids, "seed " + seed + " after deleting");
+            Map<String, List<String>> newRequirements = new LinkedHashMap<>();
+            for (Map.Entry<String, List<String>> entry : generateCorpus(random, 30).entrySet()) {
+                entry.getValue().add("common");
+                newRequirements.put("N" + entry.getKey(), entry.getValue());
+            }
+            algorithm.addRequirements(model, newRequirements);
+            ids.addAll(newRequirements.keySet());
+
+            assertNonNegativeWeights(model);
+            assertJoinEqualsBruteForce(algorithm, model, ids, "seed " + seed + " after adding");
+        }
+    }
+
+    @Test
+    public void similaritiesWithNegativeWeights() throws Exception {
+        for (long seed = 0; seed < 3; ++seed) {
+            Random random = new Random(seed);
+            SimilarityAlgorithmTfIdf algorithm = new SimilarityAlgorithmTfIdf(-1, false, true);
+            Map<String, List<String>> corpus = generateCorpus(random, 300);
+            SimilarityModelTfIdf model = (SimilarityModelTfIdf) algorithm.buildModel(corpus);
+            List<String> ids = new ArrayList<>(corpus.keySet());
+
+            //the models saved before the idf values were clamped can have negative weights
+            for (SparseVector vector : model.getDocs().values()) {
+                double[] weights = vector.getWeights();
+                for (int i = 0; i < weights.length; ++i) {
+                    if (random.nextInt(4) == 0) weights[i] = -weights[i];
+                }
+                vector.updateNorm();
+            }
+            assertJoinEqualsBruteForce(algorithm, model, ids, "seed " + seed);
+        }
+    }
+
+    /*
+    Private methods
+     */
+
+    private void assertNonNegativeWeights(SimilarityModelTfIdf model) {
+        for (SparseVector vector : model.getDocs().values()) {
+            for (double weight : vector.getWeights()) assertTrue(weight >= 0);
+        }
+    }
+
+    private void assertJoinEqualsBruteForce(SimilarityAlgorithmTfIdf algorithm, SimilarityModelTfIdf model, List<String> ids, String message) throws Exception {
+        List<String> queries = ids.subList(0, 40);
+        List<String> project = ids.subList(40, ids.size());
+        for (double threshold : new double[]{-0.5, 0, 0.05, 0.2, 0.5}) {
+            List<String> expected = bruteForce(model, ids, ids, true, threshold);
+            List<String> result = new ArrayList<>();
+            algorithm.computeProjectSimilarities(model, ids, threshold, (a, b, score) -> result.add(pair(a, b, score)));
+            assertEquals(message + " threshold " + threshold, expected, result);
+            for (boolean include : new boolean[]{true, false}) {
+                expected = bruteForce(model, queries, project, include, threshold);
+                List<String> reqProjectResult = new ArrayList<>();
+                algorithm.computeReqProjectSimilarities(model, queries, project, include, threshold, (a, b, score) -> reqProjectResult.add(pair(a, b, score)));
+                assertEquals(message + " threshold " + threshold + " include " + include, expected, reqProjectResult);
+            }
+        }
+    }
+
+    /**
+     * Requirements with words of a small vocabulary with a skewed distribution, so there are frequent and rare terms.
+     * Some requirements are repeated (score 1) and some are empty (norm 0)
+     */
+    private Map<String, List<String>> generateCorpus(Random random, int size) {
+        Map<String, List<String>> result = new LinkedHashMap<>();
+        List<List<String>> previous = new ArrayList<>();
+        for (int i = 0; i < size; ++i) {
+            List<String> tokens = new ArrayList<>();
+            int option = random.nextInt(20);
+            if (option == 0 && !previous.isEmpty()) tokens.addAll(previous.get(random.nextInt(previous.size())));
+            else if (option != 1) {
+                int length = 1 + random.nextInt(12);
+                for (int j = 0; j < length; ++j) {
+                    double value = random.nextDouble();
+                    tokens.add("w" + (int) (value * value * 80));
+                }
+            }
+            previous.add(tokens);
+            result.put("R" + i, tokens);
+        }
+        return result;
+    }
+
+    /**
+     * The fixed thresholds and some scores of the corpus, so there are pairs with a score equal to the threshold
+     */
+    private List<Double> thresholds(SimilarityModelTfIdf model, List<String> ids) {
+        List<Double> scores = new ArrayList<>();
+        for (String a : ids) {
+            for (String b : ids) {
+                if (!a.equals(b)) scores.add(cosine.compute(model, a, b));
+            }
+        }
+        Collections.sort(scores);
+        List<Double> result = new ArrayList<>(Arrays.asList(-1.0, 0.0, 0.2, 0.5, 0.9, 1.0));
+        for (double quantile : new double[]{0.5, 0.9, 0.99, 0.999}) result.add(scores.get((int) (quantile * (scores.size() - 1))));
+        return result;
+    }
+
+    /**
+     * Compares each query with the requirements of the project (and with the previous queries if include is true), or
+     * each requirement with the next ones when the queries are the project
+     */
+    private List<String> bruteForce(SimilarityModelTfIdf model, List<String> queries, List<String> project, boolean include, double threshold) {
+        Map<String, SparseVector> docs = model.getDocs();
+        List<String> result = new ArrayList<>();
+        boolean sameProject = queries == project;
+        for (int i = 0; i < queries.size(); ++i) {
+            List<String> candidates = new ArrayList<>();
+            if (sameProject) candidates.addAll(project.subList(i + 1, project.size()));
+            else {
+                candidates.addAll(project);
+                if (include) candidates.addAll(queries.subList(0, i));
+            }
+            SparseVector vector = copy(docs.get(queries.get(i)));
+            for (String candidate : candidates) {
+                if (queries.get(i).equals(candidate)) continue;
+                SparseVector candidateVector = copy(docs.get(candidate));
+                double score = cosine.compute(vector, candidateVector, cosine.dotProduct(vector, candidateVector));
+                if (score >= threshold) result.add(pair(queries.get(i), candidate, score));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A copy of the vector with its signature computed from scratch, so the brute force does not depend on the signatures
+     * kept by the model
+     */
+    private SparseVector copy(SparseVector vector) {
+        return new SparseVector(vector.getTermIds().clone(), vector.getWeights().clone(), vector.getNorm());
+    }
+
+    private String pair(String a, String b, double score) {
+        return a + "-" + b + ":" + score;
+    }
+
+    private SizeFixedDependenciesQueue createQueue(int maxSize) {
+        return new SizeFixedDependenciesQueue("UPC", "0", maxSize, Comparator.comparing(Dependency::getDependencyScore).thenComparing(Dependency::getToid).thenComparing(Dependency::getFromid).reversed());
+    }
+
+    private void addPairs(SimilarityScoresSink sink, List<String> pairs) throws Exception {
+        for (String pair : pairs) {
+            String[] parts = pair.split("[-:]");
+            sink.addScore(parts[0], parts[1], Double.parseDouble(pair.substring(pair.indexOf(':') + 1)));
+        }
+    }
+
+    private List<String> dependencies(SizeFixedDependenciesQueue queue) {
+        List<String> result = new ArrayList<>();
+        for (Dependency dependency : queue.getDependencies()) result.add(pair(dependency.getFromid(), dependency.getToid(), dependency.getDependencyScore()));
+        return result;
+    }
+}
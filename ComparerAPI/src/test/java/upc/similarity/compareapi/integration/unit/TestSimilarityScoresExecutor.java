@@ -0,0 +1,124 @@
+package upc.similarity.compareapi.integration.unit;
+
+import org.junit.Test;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityScoresExecutor;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.SimilarityScoresSink;
+import upc.similarity.compareapi.entity.Dependency;
+import upc.similarity.compareapi.entity.auxiliary.SizeFixedDependenciesQueue;
+import upc.similarity.compareapi.entity.exception.InternalErrorException;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * The results of the blocks must be consumed in the same order as a sequential execution, whatever the parallelism
+ */
+public class TestSimilarityScoresExecutor {
+
+    private static final int[] PARALLELISM = {1, 2, 3, 4, 8};
+
+    @Test
+    public void blocksAreConsumedInOrder() throws Exception {
+        Random random = new Random(1);
+        for (long[] costs : costsCases(random)) {
+            for (int parallelism : PARALLELISM) {
+                SimilarityScoresExecutor executor = new SimilarityScoresExecutor(parallelism);
+                List<Integer> result = new ArrayList<>();
+                executor.execute(costs, (from, to) -> () -> {
+                    List<Integer> block = new ArrayList<>();
+                    for (int i = from; i < to; ++i) block.add(i);
+                    return block;
+                }, result::addAll);
+                assertEquals(costs.length, result.size());
+                for (int i = 0; i < costs.length; ++i) assertEquals(i, (int) result.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void scoresAreSentInSequentialOrder() throws Exception {
+        Random random = new Random(2);
+        for (long[] costs : costsCases(random)) {
+            List<String> expected = new ArrayList<>();
+            computeScores(costs.length, 0, costs.length, (a, b, score) -> expected.add(a + b + score));
+            for (int parallelism : PARALLELISM) {
+                List<String> result = new ArrayList<>();
+                new SimilarityScoresExecutor(parallelism).executeScores(costs, (from, to, sink) -> computeScores(costs.length, from, to, sink),
+                        (a, b, score) -> result.add(a + b + score));
+                assertEquals(expected, result);
+            }
+        }
+    }
+
+    @Test
+    public void topKScoresDoNotDependOnParallelism() throws Exception {
+        Random random = new Random(3);
+        for (long[] costs : costsCases(random)) {
+            for (int maxSize : new int[]{1, 5, 50}) {
+                SizeFixedDependenciesQueue expected = createQueue(maxSize);
+                computeScores(costs.length, 0, costs.length, expected);
+                for (int parallelism : PARALLELISM) {
+                    SizeFixedDependenciesQueue result = createQueue(maxSize);
+                    new SimilarityScoresExecutor(parallelism).executeScores(costs, (from, to, sink) -> computeScores(costs.length, from, to, sink), result);
+                    assertEquals(ids(expected), ids(result));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void blockErrorsAreThrown() {
+        long[] costs = new long[1000];
+        Arrays.fill(costs, 1L << 12);
+        for (int parallelism : PARALLELISM) {
+            try {
+                new SimilarityScoresExecutor(parallelism).execute(costs, (from, to) -> () -> {
+                    if (from <= 500 && 500 < to) throw new InternalErrorException("Error in block");
+                    return null;
+                }, result -> {});
+                fail("The error of the block was not thrown");
+            } catch (InternalErrorException e) {
+                assertEquals("Error in block", e.getMessage());
+            }
+        }
+    }
+
+    /*
+    Private methods
+     */
+
+    private List<long[]> costsCases(Random random) {
+        List<long[]> result = new ArrayList<>();
+        result.add(new long[0]);
+        result.add(new long[]{5});
+        //decreasing costs, as in the project comparisons
+        long[] costs = new long[2000];
+        for (int i = 0; i < costs.length; ++i) costs[i] = costs.length - i - 1L;
+        result.add(costs);
+        //random costs, with zeros and very expensive queries
+        costs = new long[3000];
+        for (int i = 0; i < costs.length; ++i) costs[i] = (random.nextInt(10) == 0) ? 0 : random.nextInt(1 << 10) + ((random.nextInt(100) == 0) ? (1L << 20) : 0);
+        result.add(costs);
+        return result;
+    }
+
+    /**
+     * Deterministic scores with a lot of ties, so the order in which they are received matters for the top-k queues
+     */
+    private void computeScores(int size, int from, int to, SimilarityScoresSink sink) throws InternalErrorException {
+        for (int i = from; i < to; ++i) {
+            for (int j = 0; j < 3; ++j) sink.addScore("R" + i, "R" + ((i * 7 + j) % Math.max(1, size)), ((i * 31 + j * 17) % 97) / 96.0);
+        }
+    }
+
+    private SizeFixedDependenciesQueue createQueue(int maxSize) {
+        return new SizeFixedDependenciesQueue("UPC", "0", maxSize, Comparator.comparing(Dependency::getDependencyScore).thenComparing(Dependency::getToid).thenComparing(Dependency::getFromid).reversed());
+    }
+
+    private List<String> ids(SizeFixedDependenciesQueue queue) {
+        List<String> result = new ArrayList<>();
+        for (Dependency dependency : queue.getDependencies()) result.add(dependency.getFromid() + dependency.getToid() + dependency.getDependencyScore());
+        return result;
+    }
+}
@@ -0,0 +1,118 @@
+package upc.similarity.compareapi.integration.unit;
+
+import org.junit.Test;
+import upc.similarity.compareapi.entity.Dependency;
+import upc.similarity.compareapi.entity.auxiliary.SizeFixedDependenciesQueue;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TestSizeFixedDependenciesQueue {
+
+    @Test
+    public void keepsTheHighestScores() {
+        SizeFixedDependenciesQueue queue = createQueue(3);
+        queue.addDependency(new Dependency(0.2, "A", "B"));
+        queue.addDependency(new Dependency(0.9, "A", "C"));
+        queue.addDependency(new Dependency(0.5, "A", "D"));
+        queue.addDependency(new Dependency(0.7, "A", "E"));
+        queue.addDependency(new Dependency(0.1, "A", "F"));
+        assertEquals(Arrays.asList("A-C:0.9", "A-E:0.7", "A-D:0.5"), dependencies(queue));
+    }
+
+    @Test
+    public void scoreBound() {
+        SizeFixedDependenciesQueue queue = createQueue(2);
+        assertEquals(Double.NEGATIVE_INFINITY, queue.getScoreBound(), 0);
+        queue.addDependency(new Dependency(0.4, "A", "B"));
+        assertEquals(Double.NEGATIVE_INFINITY, queue.getScoreBound(), 0);
+        queue.addDependency(new Dependency(0.6, "A", "C"));
+        assertEquals(0.4, queue.getScoreBound(), 0);
+        queue.addDependency(new Dependency(0.8, "A", "D"));
+        assertEquals(0.6, queue.getScoreBound(), 0);
+        assertEquals(2, queue.getMaxScores());
+    }
+
+    @Test
+    public void tiesWithTheLastScoreAreNotAdded() {
+        SizeFixedDependenciesQueue queue = createQueue(2);
+        queue.addDependency(new Dependency(0.8, "A", "B"));
+        queue.addDependency(new Dependency(0.5, "A", "C"));
+        //the same score as the last one, it is ignored even if the comparator places it before the last one
+        queue.addDependency(new Dependency(0.5, "A", "Z"));
+        assertEquals(Arrays.asList("A-B:0.8", "A-C:0.5"), dependencies(queue));
+    }
+
+    @Test
+    public void repeatedDependencyDoesNotShrinkTheQueue() {
+        SizeFixedDependenciesQueue queue = createQueue(3);
+        queue.addDependency(new Dependency(0.9, "A", "B"));
+        queue.addDependency(new Dependency(0.6, "A", "C"));
+        queue.addDependency(new Dependency(0.3, "A", "D"));
+        //an equal dependency is already inside the queue, so the last one must not be removed
+        queue.addDependency(new Dependency(0.9, "A", "B"));
+        queue.addDependency(new Dependency(0.6, "A", "C"));
+        assertEquals(Arrays.asList("A-B:0.9", "A-C:0.6", "A-D:0.3"), dependencies(queue));
+        assertEquals(0.3, queue.getScoreBound(), 0);
+    }
+
+    @Test
+    public void scoreBoundNeverDrops() {
+        //the pairs skipped by the join and the blocks are the ones below the bound, so it cannot drop with repeated pairs
+        Random random = new Random(11);
+        SizeFixedDependenciesQueue queue = createQueue(5);
+        double bound = queue.getScoreBound();
+        for (int i = 0; i < 2000; ++i) {
+            String to = "R" + random.nextInt(15);
+            queue.addDependency(new Dependency((Math.abs(to.hashCode()) % 30) / 29.0, "R", to));
+            assertTrue(queue.getScoreBound() >= bound);
+            bound = queue.getScoreBound();
+        }
+        assertEquals(5, queue.getDependencies().size());
+    }
+
+    @Test
+    public void sameResultAsSortingAllTheDependencies() {
+        Random random = new Random(4);
+        for (int maxSize : new int[]{1, 7, 40}) {
+            SizeFixedDependenciesQueue queue = createQueue(maxSize);
+            Map<String, Dependency> all = new HashMap<>();
+            for (int i = 0; i < 1000; ++i) {
+                //some pairs are received more than once with the same score
+                String from = "R" + random.nextInt(20);
+                String to = "R" + random.nextInt(20);
+                double score = (Math.abs((from + to).hashCode()) % 50) / 49.0;
+                Dependency dependency = new Dependency(score, from, to);
+                queue.addDependency(dependency);
+                all.put(from + "-" + to, dependency);
+            }
+            List<Dependency> sorted = new ArrayList<>(all.values());
+            sorted.sort(comparator());
+            //the dependencies with the same score as the k-th one can be any of them, only the scores are compared
+            List<Double> expected = new ArrayList<>();
+            for (Dependency dependency : sorted.subList(0, maxSize)) expected.add(dependency.getDependencyScore());
+            List<Double> result = new ArrayList<>();
+            for (Dependency dependency : queue.getDependencies()) result.add(dependency.getDependencyScore());
+            assertEquals(expected, result);
+        }
+    }
+
+    /*
+    Private methods
+     */
+
+    private Comparator<Dependency> comparator() {
+        return Comparator.comparing(Dependency::getDependencyScore).thenComparing(Dependency::getToid).thenComparing(Dependency::getFromid).reversed();
+    }
+
+    private SizeFixedDependenciesQueue createQueue(int maxSize) {
+        return new SizeFixedDependenciesQueue("UPC", "0", maxSize, comparator());
+    }
+
+    private List<String> dependencies(SizeFixedDependenciesQueue queue) {
+        List<String> result = new ArrayList<>();
+        for (Dependency dependency : queue.getDependencies()) result.add(dependency.getFromid() + "-" + dependency.getToid() + ":" + dependency.getDependencyScore());
+        return result;
+    }
+}
@@ -0,0 +1,180 @@
+package upc.similarity.compareapi.integration.unit;
+
+import org.junit.Test;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SimilarityAlgorithmTfIdf;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SimilarityModelTfIdf;
+import upc.similarity.compareapi.algorithms.similarity_algorithm.tf_idf.SparseVector;
+import upc.similarity.compareapi.dao.algorithm_models_dao.similarity_algorithm.tf_idf.WeightsQuantizationTfIdf;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * The vectors converted back must have the same term ids and weights inside the error bounds of each format
+ */
+public class TestWeightsQuantizationTfIdf {
+
+    @Test
+    public void float32RoundTrip() {
+        Random random = new Random(5);
+        for (int i = 0; i < 200; ++i) {
+            SparseVector vector = randomVector(random);
+            SparseVector result = roundTrip(vector, WeightsQuantizationTfIdf.FLOAT32);
+            for (int j = 0; j < vector.size(); ++j) assertEquals(vector.getWeights()[j], result.getWeights()[j], vector.getWeights()[j] * 6e-8);
+        }
+    }
+
+    @Test
+    public void float16RoundTrip() {
+        Random random = new Random(6);
+        for (int i = 0; i < 200; ++i) {
+            SparseVector vector = randomVector(random);
+            SparseVector result = roundTrip(vector, WeightsQuantizationTfIdf.FLOAT16);
+            for (int j = 0; j < vector.size(); ++j) assertEquals(vector.getWeights()[j], result.getWeights()[j], vector.getWeights()[j] * 5e-4);
+        }
+    }
+
+    @Test
+    public void float16SpecialValues() {
+        double[] weights = {0, 1e-7, 6.1e-5, 1, 2048, 65504, 70000};
+        SparseVector result = roundTrip(new SparseVector(new int[]{0, 1, 2, 3, 4, 5, 6}, weights), WeightsQuantizationTfIdf.FLOAT16);
+        assertEquals(0, result.getWeights()[0], 0);
+        //subnormal numbers, the absolute error is lower than half of the lowest subnormal number
+        assertEquals(1e-7, result.getWeights()[1], 0x1p-25);
+        assertEquals(6.1e-5, result.getWeights()[2], 0x1p-25);
+        assertEquals(1, result.getWeights()[3], 0);
+        assertEquals(2048, result.getWeights()[4], 0);
+        assertEquals(65504, result.getWeights()[5], 0);
+        assertEquals(Double.POSITIVE_INFINITY, result.getWeights()[6], 0);
+    }
+
+    @Test
+    public void int8RoundTrip() {
+        Random random = new Random(7);
+        for (int i = 0; i < 200; ++i) {
+            SparseVector vector = randomVector(random);
+            double max = 0;
+            for (double weight : vector.getWeights()) max = Math.max(max, weight);
+            SparseVector result = roundTrip(vector, WeightsQuantizationTfIdf.INT8);
+            for (int j = 0; j < vector.size(); ++j) assertEquals(vector.getWeights()[j], result.getWeights()[j], max * 0.002);
+        }
+    }
+
+    @Test
+    public void int8NegativeWeights() {
+        Random random = new Random(8);
+        for (int i = 0; i < 200; ++i) {
+            SparseVector vector = randomVector(random);
+            double[] weights = vector.getWeights();
+            for (int j = 0; j < weights.length; ++j) {
+                if (random.nextBoolean()) weights[j] = -weights[j];
+            }
+            double max = 0;
+            for (double weight : weights) max = Math.max(max, Math.abs(weight));
+            SparseVector result = roundTrip(new SparseVector(vector.getTermIds(), weights), WeightsQuantizationTfIdf.INT8);
+            for (int j = 0; j < weights.length; ++j) assertEquals(weights[j], result.getWeights()[j], max * 0.004);
+        }
+        SparseVector result = roundTrip(new SparseVector(new int[]{0, 1, 2}, new double[]{-2, 1, 0}), WeightsQuantizationTfIdf.INT8);
+        assertArrayEquals(new double[]{-2, 1, 0}, result.getWeights(), 2 * 0.004);
+    }
+
+    @Test
+    public void emptyAndZeroVectors() {
+        for (String format : new String[]{WeightsQuantizationTfIdf.FLOAT32, WeightsQuantizationTfIdf.FLOAT16, WeightsQuantizationTfIdf.INT8}) {
+            SparseVector result = roundTrip(new SparseVector(new int[0], new double[0]), format);
+            assertEquals(0, result.size());
+            result = roundTrip(new SparseVector(new int[]{3, 7}, new double[]{0, 0}), format);
+            assertArrayEquals(new double[]{0, 0}, result.getWeights(), 0);
+            assertEquals(0, result.getNorm(), 0);
+        }
+    }
+
+    @Test
+    public void scoresErrorBound() throws Exception {
+        Random random = new Random(9);
+        Map<String, List<String>> corpus = new LinkedHashMap<>();
+        for (int i = 0; i < 300; ++i) {
+            List<String> tokens = new ArrayList<>();
+            int length = 1 + random.nextInt(20);
+            for (int j = 0; j < length; ++j) {
+                double value = random.nextDouble();
+                tokens.add("w" + (int) (value * value * 200));
+            }
+            corpus.put("R" + i, tokens);
+        }
+        SimilarityAlgorithmTfIdf algorithm = new SimilarityAlgorithmTfIdf(-1, false, true);
+        SimilarityModelTfIdf model = (SimilarityModelTfIdf) algorithm.buildModel(corpus);
+        List<String> ids = new ArrayList<>(corpus.keySet());
+
+        String[] formats = {WeightsQuantizationTfIdf.FLOAT32, WeightsQuantizationTfIdf.FLOAT16, WeightsQuantizationTfIdf.INT8};
+        //the maximum score errors, a bit higher than the ones measured with bigger organizations
+        double[] maxErrors = {1e-7, 1e-3, 5e-3};
+        for (int k = 0; k < formats.length; ++k) {
+            Map<String, SparseVector> docs = new HashMap<>();
+            Map<String, Double> vectorErrors = new HashMap<>();
+            for (Map.Entry<String, SparseVector> entry : model.getDocs().entrySet()) {
+                docs.put(entry.getKey(), roundTrip(entry.getValue(), formats[k]));
+                vectorErrors.put(entry.getKey(), relativeErrorBound(entry.getValue(), formats[k]));
+            }
+            SimilarityModelTfIdf quantizedModel = new SimilarityModelTfIdf(docs, model.getDictionary());
+            double maxError = 0;
+            for (int i = 0; i < ids.size(); ++i) {
+                for (int j = i + 1; j < ids.size(); ++j) {
+                    double error = Math.abs(algorithm.computeSimilarity(model, ids.get(i), ids.get(j)) - algorithm.computeSimilarity(quantizedModel, ids.get(i), ids.get(j)));
+                    //the cosine changes at most twice the relative error of each vector
+                    assertTrue(formats[k], error <= 2 * (vectorErrors.get(ids.get(i)) + vectorErrors.get(ids.get(j))) + 1e-12);
+                    maxError = Math.max(maxError, error);
+                }
+            }
+            assertTrue(formats[k] + " " + maxError, maxError <= maxErrors[k]);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void doubleIsNotABinaryFormat() {
+        WeightsQuantizationTfIdf.encode(new SparseVector(new int[]{1}, new double[]{1}), WeightsQuantizationTfIdf.DOUBLE);
+    }
+
+    /*
+    Private methods
+     */
+
+    /**
+     * Sorted term ids with gaps of different sizes (the gaps are saved with a variable number of bytes) and positive weights
+     */
+    private SparseVector randomVector(Random random) {
+        int size = random.nextInt(50);
+        int[] termIds = new int[size];
+        double[] weights = new double[size];
+        int termId = random.nextInt(3);
+        for (int i = 0; i < size; ++i) {
+            termIds[i] = termId;
+            termId += 1 + random.nextInt(1 << (7 * (1 + random.nextInt(3))));
+            weights[i] = Math.exp(random.nextGaussian() * 2);
+        }
+        return new SparseVector(termIds, weights);
+    }
+
+    /**
+     * The bound of the norm of the error of the vector divided by its norm, from the error bounds of each weight
+     */
+    private double relativeErrorBound(SparseVector vector, String format) {
+        if (vector.getNorm() == 0) return 0;
+        if (format.equals(WeightsQuantizationTfIdf.FLOAT32)) return 6e-8;
+        if (format.equals(WeightsQuantizationTfIdf.FLOAT16)) return 5e-4;
+        double max = 0;
+        for (double weight : vector.getWeights()) max = Math.max(max, Math.abs(weight));
+        return 0.002 * max * Math.sqrt(vector.size()) / vector.getNorm();
+    }
+
+    private SparseVector roundTrip(SparseVector vector, String format) {
+        SparseVector result = WeightsQuantizationTfIdf.decode(WeightsQuantizationTfIdf.encode(vector, format), format);
+        assertArrayEquals(vector.getTermIds(), result.getTermIds());
+        //the norm is computed again with the converted weights
+        double norm = 0;
+        for (double weight : result.getWeights()) norm += weight * weight;
+        assertEquals(Math.sqrt(norm), result.getNorm(), 1e-9 * Math.max(1, result.getNorm()));
+        return result;
+    }
+}
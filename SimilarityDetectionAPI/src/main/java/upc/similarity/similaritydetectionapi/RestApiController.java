@@ -84,6 +84,27 @@ public class RestApiController {
         }
     }
 
+    @CrossOrigin
+    @PostMapping(value = "/BuildModelStreaming", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Builds a tf-idf model with the requirements of the input file.", notes = "<p><i>Asynchronous</i> method.</p><p>Same as BuildModel, but the requirements are uploaded as a JSON file " +
+            "(an array of requirements or an object with a <i>requirements</i> array, as the BuildClusters files). The requirements are read, pre-processed and added to the model in batches, and the tf-idf vectors are computed in a second pass and " +
+            "saved directly to the database, so the memory used depends on the size of the vocabulary instead of the number of requirements. The algorithms that do not support it build the model in memory as BuildModel.</p>", tags = "Similarity without clusters")
+    @ApiResponses(value = {@ApiResponse(code=200, message = "OK"),
+            @ApiResponse(code=400, message = "Bad request"),
+            @ApiResponse(code=500, message = "Internal error")})
+    public ResponseEntity buildModelStreaming(@ApiParam(value="Organization", required = true, example = "UPC") @RequestParam("organization") String organization,
+                                              @ApiParam(value="Use the text field of the requirements to construct the model", required = false, example = "true") @RequestParam(value = "compare",required = false) boolean compare,
+                                              @ApiParam(value="Use the component attribute in the similarity comparison", required = false, example = "true") @RequestParam(value = "useComponent",required = false) boolean useComponent,
+                                              @ApiParam(value="The url where the result of the operation will be returned", required = false, example = "http://localhost:9406/upload/PostResult") @RequestParam(value = "url", required = false) String url,
+                                              @ApiParam(value="OpenReq JSON with requirements", required = true) @RequestParam("file") MultipartFile file) {
+        try {
+            if(url != null) urlOk(url);
+            return new ResponseEntity<>(similarityService.buildModelStreaming(url,organization,compare,useComponent,file),HttpStatus.OK);
+        } catch (ComponentException e) {
+            return getComponentError(e);
+        }
+    }
+
     @CrossOrigin
     @PostMapping(value = "/AddRequirements", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
     @ApiOperation(value = "Adds requirements to the tf-idf model of an organization.", notes = "<p><i>Asynchronous</i> method.</p><p>Given a list of requirements, the endpoint pre-processes them and adds them to a specified " +
@@ -152,11 +173,13 @@ public class RestApiController {
                                              @ApiParam(value="The url where the result of the operation will be returned", required = false, example = "http://localhost:9406/upload/PostResult") @RequestParam(value = "url", required = false) String url,
                                              @ApiParam(value="Double between 0 and 1 that establishes the minimum similarity score that the added dependencies should have", required = true, example = "0.1") @RequestParam("threshold") double threshold,
                                              @ApiParam(value="Max number of dependencies to return", required = false, example = "0") @RequestParam(value = "maxNumber", required = false) Integer maxNumber,
+                                             @ApiParam(value="Compare only with the requirements whose SimHash signatures share a band (faster, some pairs may be missing)", required = false, example = "false") @RequestParam(value = "approximate", required = false) boolean approximate,
+                                             @ApiParam(value="Only compare the requirements that have the same words after the preprocessing (in any order, but the same number of times each one)", required = false, example = "false") @RequestParam(value = "duplicates", required = false) boolean duplicates,
                                              @ApiParam(value="Id of the requirements to compare", required = true, example = "UPC-1") @RequestParam("req") List<String> input) {
         try {
             if(url != null) urlOk(url);
             if (maxNumber == null) maxNumber = 0;
-            return new ResponseEntity<>(similarityService.simReqOrganization(url,organization,threshold,input,maxNumber),HttpStatus.OK);
+            return new ResponseEntity<>(similarityService.simReqOrganization(url,organization,threshold,input,maxNumber,approximate,duplicates),HttpStatus.OK);
         } catch (ComponentException e) {
             return getComponentError(e);
         }
@@ -174,11 +197,12 @@ public class RestApiController {
                                                 @ApiParam(value="The url where the result of the operation will be returned", required = false, example = "http://localhost:9406/upload/PostResult") @RequestParam(value = "url", required = false) String url,
                                                 @ApiParam(value="Double between 0 and 1 that establishes the minimum similarity score that the added dependencies should have", required = true, example = "0.1") @RequestParam("threshold") double threshold,
                                                 @ApiParam(value="Max number of dependencies to return", required = false, example = "0") @RequestParam(value = "maxNumber", required = false) Integer maxNumber,
+                                                @ApiParam(value="Compare only with the requirements whose SimHash signatures share a band (faster, some pairs may be missing)", required = false, example = "false") @RequestParam(value = "approximate", required = false) boolean approximate,
                                                 @ApiParam(value="OpenReq JSON with the requirements to compare", required = true) @RequestBody RequirementsModel input) {
         try {
             if(url != null) urlOk(url);
             if (maxNumber == null) maxNumber = 0;
-            return new ResponseEntity<>(similarityService.simNewReqOrganization(url,organization,threshold,input,maxNumber),HttpStatus.OK);
+            return new ResponseEntity<>(similarityService.simNewReqOrganization(url,organization,threshold,input,maxNumber,approximate),HttpStatus.OK);
         } catch (ComponentException e) {
             return getComponentError(e);
         }
@@ -223,11 +247,12 @@ public class RestApiController {
                                      @ApiParam(value="Double between 0 and 1 that establishes the minimum similarity score that the added dependencies should have", required = true, example = "0.1") @RequestParam("threshold") double threshold,
                                      @ApiParam(value="The url where the result of the operation will be returned", required = false, example = "http://localhost:9406/upload/PostResult") @RequestParam(value = "url", required = false) String url,
                                      @ApiParam(value="Max number of dependencies to return", required = false, example = "0") @RequestParam(value = "maxNumber", required = false) Integer maxNumber,
+                                     @ApiParam(value="Only compare the requirements that have the same words after the preprocessing (in any order, but the same number of times each one)", required = false, example = "false") @RequestParam(value = "duplicates", required = false) boolean duplicates,
                                      @ApiParam(value="OpenReq JSON with the project specifying the id of the requirements the project has", required = true) @RequestBody ProjectsModel input) {
         try {
             if(url != null) urlOk(url);
             if (maxNumber == null) maxNumber = 0;
-            return new ResponseEntity<>(similarityService.simProject(url,organization,project,threshold,input,maxNumber), HttpStatus.OK);
+            return new ResponseEntity<>(similarityService.simProject(url,organization,project,threshold,input,maxNumber,duplicates), HttpStatus.OK);
         } catch (ComponentException e) {
             return getComponentError(e);
         }
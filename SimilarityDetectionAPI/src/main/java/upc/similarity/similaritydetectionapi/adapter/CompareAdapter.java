@@ -38,6 +38,23 @@ public class CompareAdapter extends ComponentAdapter{
         connectionComponentPost(URL + "BuildModelAndCompute?responseId=" + responseId + "&compare=" + compare + "&organization=" + organization + "&threshold=" + threshold + "&maxDeps=" + maxNumDeps + "&useComponent=" + useComponent, requirementsJson);
     }
 
+    @Override
+    public void buildModelStreaming(String responseId, String organization, boolean compare, boolean useComponent, Path p) throws ComponentException {
+        try {
+            try {
+                InputStream inputStream = new FileInputStream(p.toFile());
+                connectionComponentPostMultipart(URL + "BuildModelStreaming?responseId=" + responseId + "&compare=" + compare + "&organization=" + organization + "&useComponent=" + useComponent, inputStream);
+                Files.delete(p);
+            } catch (ComponentException e) {
+                Files.delete(p);
+                throw e;
+            }
+        } catch (IOException e) {
+            Control.getInstance().showErrorMessage(e.getMessage());
+            throw new InternalErrorException("Error while deleting multipart file");
+        }
+    }
+
     @Override
     public void addRequirements(String responseId, String organization, List<Requirement> requirements) throws ComponentException {
 
@@ -61,19 +78,19 @@ public class CompareAdapter extends ComponentAdapter{
     }
 
     @Override
-    public void simReqOrganization(String responseId, String organization, double threshold, List<String> requirements, int maxNumDeps) throws ComponentException {
+    public void simReqOrganization(String responseId, String organization, double threshold, List<String> requirements, int maxNumDeps, boolean approximate, boolean duplicates) throws ComponentException {
 
         JSONArray requirementsJson = new JSONArray(requirements);
 
-        connectionComponentPost(URL + "SimReqOrganization?responseId=" + responseId + "&organization=" + organization + "&threshold=" + threshold + "&maxDeps=" + maxNumDeps, requirementsJson);
+        connectionComponentPost(URL + "SimReqOrganization?responseId=" + responseId + "&organization=" + organization + "&threshold=" + threshold + "&maxDeps=" + maxNumDeps + "&approximate=" + approximate + "&duplicates=" + duplicates, requirementsJson);
     }
 
     @Override
-    public void simNewReqOrganization(String responseId, String organization, double threshold, List<Requirement> requirements, int maxNumDeps) throws ComponentException {
+    public void simNewReqOrganization(String responseId, String organization, double threshold, List<Requirement> requirements, int maxNumDeps, boolean approximate) throws ComponentException {
 
         JSONArray requirementsJson = listRequirementsToJson(requirements);
 
-        connectionComponentPost(URL + "SimNewReqOrganization?responseId=" + responseId + "&organization=" + organization + "&threshold=" + threshold + "&maxDeps=" + maxNumDeps, requirementsJson);
+        connectionComponentPost(URL + "SimNewReqOrganization?responseId=" + responseId + "&organization=" + organization + "&threshold=" + threshold + "&maxDeps=" + maxNumDeps + "&approximate=" + approximate, requirementsJson);
     }
 
     @Override
@@ -90,12 +107,12 @@ public class CompareAdapter extends ComponentAdapter{
     }
 
     @Override
-    public void simProject(String responseId, String organization, double threshold, List<String> requirements, int maxNumDeps) throws ComponentException {
+    public void simProject(String responseId, String organization, double threshold, List<String> requirements, int maxNumDeps, boolean duplicates) throws ComponentException {
 
         JSONArray jsonToSend = new JSONArray();
         for (String aux: requirements) jsonToSend.put(aux);
 
-        connectionComponentPost(URL + "SimProject?organization=" + organization + "&responseId=" + responseId + "&threshold=" + threshold + "&maxDeps=" + maxNumDeps, jsonToSend);
+        connectionComponentPost(URL + "SimProject?organization=" + organization + "&responseId=" + responseId + "&threshold=" + threshold + "&maxDeps=" + maxNumDeps + "&duplicates=" + duplicates, jsonToSend);
     }
 
     @Override
@@ -34,19 +34,21 @@ public abstract class ComponentAdapter {
 
     public abstract void buildModelAndCompute(String responseId, String organization, boolean compare, boolean useComponent, double threshold, List<Requirement> requirements, int maxNumDeps) throws ComponentException;
 
+    public abstract void buildModelStreaming(String responseId, String organization, boolean compare, boolean useComponent, Path p) throws ComponentException;
+
     public abstract void addRequirements(String responseId, String organization, List<Requirement> requirements) throws ComponentException;
 
     public abstract void deleteRequirements(String responseId, String organization, List<Requirement> requirements) throws ComponentException;
 
     public abstract String simReqReq(String responseId, String organization, String req1, String req2) throws ComponentException;
 
-    public abstract void simReqOrganization(String responseId, String organization, double threshold, List<String> requirements, int maxNumDeps) throws ComponentException;
+    public abstract void simReqOrganization(String responseId, String organization, double threshold, List<String> requirements, int maxNumDeps, boolean approximate, boolean duplicates) throws ComponentException;
 
-    public abstract void simNewReqOrganization(String responseId, String organization, double threshold, List<Requirement> requirements, int maxNumDeps) throws ComponentException;
+    public abstract void simNewReqOrganization(String responseId, String organization, double threshold, List<Requirement> requirements, int maxNumDeps, boolean approximate) throws ComponentException;
 
     public abstract void simReqProject(String responseId, String organization, double threshold, List<String> req, List<String> reqs, int maxNumDeps) throws ComponentException;
 
-    public abstract void simProject(String responseId, String organization, double threshold, List<String> reqs, int maxNumDeps) throws ComponentException;
+    public abstract void simProject(String responseId, String organization, double threshold, List<String> reqs, int maxNumDeps, boolean duplicates) throws ComponentException;
 
     public abstract void simProjectProject(String responseId, String organization, double threshold, List<String> firstProjectRequirements, List<String> secondProjectRequirements, int maxNumDeps) throws ComponentException;
 
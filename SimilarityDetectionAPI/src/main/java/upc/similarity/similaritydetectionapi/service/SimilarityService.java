@@ -17,19 +17,21 @@ public interface SimilarityService {
 
     ResultId buildModelAndCompute(String url, String organization, boolean compare, boolean useComponent, double threshold, RequirementsModel input, int maxNumDeps) throws BadRequestException;
 
+    ResultId buildModelStreaming(String url, String organization, boolean compare, boolean useComponent, MultipartFile input) throws InternalErrorException;
+
     ResultId addRequirements(String url, String organization, RequirementsModel input) throws BadRequestException;
 
     ResultId deleteRequirements(String url, String organization, RequirementsModel input) throws BadRequestException;
 
     String simReqReq(String organization, String req1, String req2) throws ComponentException;
 
-    ResultId simReqOrganization(String url, String organization, double threshold, List<String> input, int maxNumDeps) throws InternalErrorException, BadRequestException;
+    ResultId simReqOrganization(String url, String organization, double threshold, List<String> input, int maxNumDeps, boolean approximate, boolean duplicates) throws InternalErrorException, BadRequestException;
 
-    ResultId simNewReqOrganization(String url, String organization, double threshold, RequirementsModel input, int maxNumDeps) throws InternalErrorException, BadRequestException;
+    ResultId simNewReqOrganization(String url, String organization, double threshold, RequirementsModel input, int maxNumDeps, boolean approximate) throws InternalErrorException, BadRequestException;
 
     ResultId simReqProject(String url, String organization, List<String> req, String project, double threshold, ProjectsModel input, int maxNumDeps) throws NotFoundException, BadRequestException;
 
-    ResultId simProject(String url, String organization, String project, double threshold, ProjectsModel input, int maxNumDeps) throws NotFoundException, BadRequestException;
+    ResultId simProject(String url, String organization, String project, double threshold, ProjectsModel input, int maxNumDeps, boolean duplicates) throws NotFoundException, BadRequestException;
 
     ResultId simProjectProject(String url, String organization, String firstProject, String secondProject, double threshold, ProjectsModel input, int maxNumDeps) throws NotFoundException, BadRequestException;
 
@@ -135,7 +135,32 @@ public class SimilarityServiceImpl implements SimilarityService {
     }
 
     @Override
-    public ResultId simReqOrganization(String url, String organization, double threshold, List<String> input, int maxNumDeps) throws BadRequestException {
+    public ResultId buildModelStreaming(String url, String organization, boolean compare, boolean useComponent, MultipartFile input) throws InternalErrorException {
+
+        ResultId id = getId();
+        Path p = writeMultipartFile(id.getId(),input);
+
+        //New thread
+        Thread thread = new Thread(() -> {
+            ResultJson result = new ResultJson(id.getId(),"BuildModelStreaming");
+            try {
+                ComponentAdapter componentAdapter = AdaptersController.getInstance().getAdapter(component);
+                componentAdapter.buildModelStreaming(id.getId(),organization,compare,useComponent,p);
+                result.setCode(200);
+            } catch (ComponentException e) {
+                result.setException(e.getStatus(),e.getError(),e.getMessage());
+            }
+            finally {
+                updateClient(result,url);
+            }
+        });
+
+        thread.start();
+        return id;
+    }
+
+    @Override
+    public ResultId simReqOrganization(String url, String organization, double threshold, List<String> input, int maxNumDeps, boolean approximate, boolean duplicates) throws BadRequestException {
 
         if (input.isEmpty()) throw new BadRequestException("The input array is empty");
         checkThreshold(threshold);
@@ -146,7 +171,7 @@ public class SimilarityServiceImpl implements SimilarityService {
             ResultJson result = new ResultJson(id.getId(),"ReqOrganization");
             try {
                 ComponentAdapter componentAdapter = AdaptersController.getInstance().getAdapter(component);
-                componentAdapter.simReqOrganization(id.getId(),organization,threshold,input,maxNumDeps);
+                componentAdapter.simReqOrganization(id.getId(),organization,threshold,input,maxNumDeps,approximate,duplicates);
                 result.setCode(200);
             } catch (ComponentException e) {
                 result.setException(e.getStatus(),e.getError(),e.getMessage());
@@ -161,7 +186,7 @@ public class SimilarityServiceImpl implements SimilarityService {
     }
 
     @Override
-    public ResultId simNewReqOrganization(String url, String organization, double threshold, RequirementsModel input, int maxNumDeps) throws BadRequestException {
+    public ResultId simNewReqOrganization(String url, String organization, double threshold, RequirementsModel input, int maxNumDeps, boolean approximate) throws BadRequestException {
 
         checkInput(input);
         ResultId id = getId();
@@ -171,7 +196,7 @@ public class SimilarityServiceImpl implements SimilarityService {
             ResultJson result = new ResultJson(id.getId(),"NewReqOrganization");
             try {
                 ComponentAdapter componentAdapter = AdaptersController.getInstance().getAdapter(component);
-                componentAdapter.simNewReqOrganization(id.getId(),organization,threshold,input.getRequirements(),maxNumDeps);
+                componentAdapter.simNewReqOrganization(id.getId(),organization,threshold,input.getRequirements(),maxNumDeps,approximate);
                 result.setCode(200);
             } catch (ComponentException e) {
                 result.setException(e.getStatus(),e.getError(),e.getMessage());
@@ -224,7 +249,7 @@ public class SimilarityServiceImpl implements SimilarityService {
     }
 
     @Override
-    public ResultId simProject(String url, String organization, String projectId, double threshold, ProjectsModel input, int maxNumDeps) throws NotFoundException, BadRequestException {
+    public ResultId simProject(String url, String organization, String projectId, double threshold, ProjectsModel input, int maxNumDeps, boolean duplicates) throws NotFoundException, BadRequestException {
 
         checkInput(input);
         checkThreshold(threshold);
@@ -236,7 +261,7 @@ public class SimilarityServiceImpl implements SimilarityService {
             ResultJson result = new ResultJson(id.getId(),"Project");
             try {
                 ComponentAdapter componentAdapter = AdaptersController.getInstance().getAdapter(component);
-                componentAdapter.simProject(id.getId(),organization,threshold,project.getSpecifiedRequirements(),maxNumDeps);
+                componentAdapter.simProject(id.getId(),organization,threshold,project.getSpecifiedRequirements(),maxNumDeps,duplicates);
                 result.setCode(200);
             } catch (ComponentException e) {
                 result.setException(e.getStatus(),e.getError(),e.getMessage());